@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.benchmarks;
+
+import better.files.File;
+import nl.knaw.dans.easy.dd2d.Deposit;
+import nl.knaw.dans.easy.dd2d.mapping.FileElement;
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import scala.collection.JavaConverters;
+import scala.xml.Node;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading a deposit: construction of {@link Deposit}, parsing of the DDM and files.xml, mapping of the file elements and reading the SHA-1 manifest.
+ * Each benchmark creates a new {@link Deposit}, because the parsed results are cached in lazy vals.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DepositBenchmark {
+
+    @Param({ "10", "1000", "10000" })
+    public int numberOfFiles;
+
+    private Path depositDir;
+    private File depositFile;
+    private List<Node> fileElements;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        depositDir = SyntheticDeposits.create(numberOfFiles, 10);
+        depositFile = File.apply(depositDir);
+        fileElements = JavaConverters.seqAsJavaList(new Deposit(depositFile).tryFilesXml().get().$bslash("file"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        SyntheticDeposits.delete(depositDir);
+    }
+
+    @Benchmark
+    public Deposit constructDeposit() {
+        return new Deposit(depositFile);
+    }
+
+    @Benchmark
+    public Node parseDdm() {
+        return new Deposit(depositFile).tryDdm().get();
+    }
+
+    @Benchmark
+    public Node parseFilesXml() {
+        return new Deposit(depositFile).tryFilesXml().get();
+    }
+
+    @Benchmark
+    public void mapFileElements(Blackhole blackhole) {
+        for (Node fileElement : fileElements) {
+            FileMeta fileMeta = FileElement.toFileMeta(fileElement, true);
+            blackhole.consume(fileMeta);
+        }
+    }
+
+    @Benchmark
+    public Map<Path, String> readFilePathToSha1() {
+        return JavaConverters.mapAsJavaMap(new Deposit(depositFile).tryFilePathToSha1().get());
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.benchmarks;
+
+import better.files.File;
+import nl.knaw.dans.easy.dd2d.Deposit;
+import nl.knaw.dans.easy.dd2d.DepositIngestTaskFactory;
+import nl.knaw.dans.easy.dd2d.DepositToDvDatasetMetadataMapper;
+import nl.knaw.dans.easy.dd2d.mapping.LanguageVocabulary;
+import nl.knaw.dans.lib.dataverse.model.dataset.Dataset;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import scala.Option;
+import scala.collection.JavaConverters;
+import scala.collection.immutable.Map;
+import scala.xml.Elem;
+import scala.xml.Node;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping of the DDM to Dataverse dataset metadata with all metadata blocks active, for DDMs with an increasing number of subject and spatial elements. A new
+ * mapper is created for each invocation, as in the ingest tasks, because the mapper collects the fields of one dataset.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetadataMapperBenchmark {
+
+    @Param({ "10", "1000", "5000" })
+    public int numberOfSubjects;
+
+    private Path depositDir;
+    private Deposit deposit;
+    private Node ddm;
+    private Option<Node> optAgreements;
+    private Elem narcisClassification;
+    private LanguageVocabulary languages;
+    private Map<String, String> reportIdToTerm;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        depositDir = SyntheticDeposits.create(0, numberOfSubjects);
+        deposit = new Deposit(File.apply(depositDir));
+        ddm = deposit.tryDdm().get();
+        optAgreements = deposit.tryOptAgreementsXml().get();
+        Path mappingDefsDir = SyntheticDeposits.getMappingDefsDir();
+        narcisClassification = DepositIngestTaskFactory.readXml(mappingDefsDir.resolve("narcis_classification.xml").toFile());
+        languages = new LanguageVocabulary(
+            DepositIngestTaskFactory.loadCsvToMap(File.apply(mappingDefsDir.resolve("iso639-1-to-dv.csv")), "ISO639-1", "Dataverse-language").get(),
+            DepositIngestTaskFactory.loadCsvToMap(File.apply(mappingDefsDir.resolve("iso639-2-to-dv.csv")), "ISO639-2", "Dataverse-language").get());
+        reportIdToTerm = DepositIngestTaskFactory.loadCsvToMap(File.apply(mappingDefsDir.resolve("ABR-reports.csv")), "URI-suffix", "Term").get();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        SyntheticDeposits.delete(depositDir);
+    }
+
+    @Benchmark
+    public Dataset toDataverseDataset() {
+        DepositToDvDatasetMetadataMapper mapper = new DepositToDvDatasetMetadataMapper(
+            false,
+            toScalaList(Arrays.asList("citation", "dansRights", "dansRelationMetadata", "dansArchaeologyMetadata", "dansTemporalSpatial", "dansDataVaultMetadata")),
+            narcisClassification,
+            languages,
+            reportIdToTerm);
+        return mapper.toDataverseDataset(ddm, Option.empty(), optAgreements, Option.empty(), toScalaList(Collections.emptyList()), deposit.vaultMetadata()).get();
+    }
+
+    private static <T> scala.collection.immutable.List<T> toScalaList(java.util.List<T> list) {
+        return JavaConverters.asScalaBuffer(list).toList();
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.benchmarks;
+
+import better.files.File;
+import nl.knaw.dans.easy.dd2d.Deposit;
+import nl.knaw.dans.easy.dd2d.migrationinfo.BasicFileMeta;
+import nl.knaw.dans.easy.dd2d.migrationinfo.PrestagedFileIndex;
+import nl.knaw.dans.lib.dataverse.model.file.prestaged.PrestagedFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import scala.Option;
+import scala.collection.JavaConverters;
+import scala.collection.immutable.Set;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matching all files of a migration deposit to the basic file metas of the pre-staged files of its dataset version: the linear scan per file that
+ * <code>DatasetEditor</code> used to do, against building a {@link PrestagedFileIndex} and looking up each file in it. Every file has a pre-staged
+ * counterpart; every hundredth also has a copy with the same checksum at another path, so that the match by path is exercised as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class PrestagedFileMatchingBenchmark {
+
+    @Param({ "10000", "50000" })
+    public int numberOfFiles;
+
+    private Path depositDir;
+    private List<DepositedFile> depositedFiles;
+    private Set<BasicFileMeta> basicFileMetas;
+    private List<BasicFileMeta> basicFileMetaList;
+
+    private static class DepositedFile {
+        private final String checksum;
+        private final Option<String> directoryLabel;
+        private final Option<String> label;
+
+        private DepositedFile(String checksum, Option<String> directoryLabel, Option<String> label) {
+            this.checksum = checksum;
+            this.directoryLabel = directoryLabel;
+            this.label = label;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        depositDir = SyntheticDeposits.create(numberOfFiles, 10);
+        depositedFiles = new ArrayList<>();
+        // FileInfo is declared in a package object, so its type cannot be named here
+        for (var fileInfo : JavaConverters.seqAsJavaList(new Deposit(File.apply(depositDir)).getPathToFileInfo().get().values().toList())) {
+            depositedFiles.add(new DepositedFile(fileInfo.checksum(), fileInfo.metadata().directoryLabel(), fileInfo.metadata().label()));
+        }
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < depositedFiles.size(); i++) {
+            DepositedFile file = depositedFiles.get(i);
+            appendBasicFileMeta(json, file.directoryLabel, file.label.get(), file.checksum, "s" + i);
+            if (i % 100 == 0) {
+                appendBasicFileMeta(json, Option.apply("copies"), file.label.get(), file.checksum, "c" + i);
+            }
+        }
+        json.setCharAt(json.length() - 1, ']');
+        basicFileMetas = BasicFileMeta.listFromJson(json.toString()).toSet();
+        basicFileMetaList = new ArrayList<>(JavaConverters.setAsJavaSet(basicFileMetas));
+    }
+
+    private static void appendBasicFileMeta(StringBuilder json, Option<String> directoryLabel, String label, String checksum, String storageIdentifier) {
+        json.append("{\"label\":\"").append(label).append("\",");
+        if (directoryLabel.isDefined()) {
+            json.append("\"directoryLabel\":\"").append(directoryLabel.get()).append("\",");
+        }
+        json.append("\"versionSequenceNumber\":1,\"prestagedFile\":{")
+            .append("\"storageIdentifier\":\"").append(storageIdentifier).append("\",")
+            .append("\"fileName\":\"").append(label).append("\",")
+            .append("\"mimeType\":\"text/plain\",")
+            .append("\"checksum\":{\"@type\":\"SHA-1\",\"@value\":\"").append(checksum).append("\"},")
+            .append("\"categories\":[],\"restrict\":false,\"forceReplace\":false}},");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        SyntheticDeposits.delete(depositDir);
+    }
+
+    @Benchmark
+    public void linearScan(Blackhole blackhole) {
+        for (DepositedFile file : depositedFiles) {
+            blackhole.consume(scanFor(file));
+        }
+    }
+
+    @Benchmark
+    public void indexed(Blackhole blackhole) {
+        PrestagedFileIndex index = new PrestagedFileIndex(basicFileMetas);
+        for (DepositedFile file : depositedFiles) {
+            blackhole.consume(index.find(file.checksum, file.directoryLabel, file.label));
+        }
+    }
+
+    /*
+     * The matching as DatasetEditor.getPrestagedFileFor did it before the index: filter on checksum and, if that is ambiguous, filter all metas on path.
+     */
+    private PrestagedFile scanFor(DepositedFile file) {
+        List<BasicFileMeta> matchingChecksums = new ArrayList<>();
+        for (BasicFileMeta basicFileMeta : basicFileMetaList) {
+            if (basicFileMeta.prestagedFile().checksum().$atvalue().equals(file.checksum)) {
+                matchingChecksums.add(basicFileMeta);
+            }
+        }
+        if (matchingChecksums.size() == 1) {
+            return matchingChecksums.get(0).prestagedFile();
+        }
+        if (matchingChecksums.isEmpty()) {
+            return null;
+        }
+        List<BasicFileMeta> matchingPaths = new ArrayList<>();
+        for (BasicFileMeta basicFileMeta : basicFileMetaList) {
+            if (basicFileMeta.label().equals(file.label.get()) && basicFileMeta.directoryLabel().equals(file.directoryLabel)) {
+                matchingPaths.add(basicFileMeta);
+            }
+        }
+        if (matchingPaths.size() == 1) {
+            return matchingPaths.get(0).prestagedFile();
+        }
+        if (matchingPaths.isEmpty()) {
+            return null;
+        }
+        throw new IllegalArgumentException("Found multiple basic file metas with the same path in a single dataset version");
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.benchmarks;
+
+import nl.knaw.dans.ingest.core.TaskEvent;
+import nl.knaw.dans.ingest.core.sequencing.TargetedTask;
+import nl.knaw.dans.ingest.core.sequencing.TargetedTaskSequenceManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduling overhead of {@link TargetedTaskSequenceManager}: schedules a batch of empty tasks, spread over a number of targets, and waits until all of them
+ * have run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SequencingBenchmark {
+    private static final int TASKS_PER_BATCH = 10000;
+
+    @Param({ "1", "64", "10000" })
+    public int numberOfTargets;
+
+    @Param({ "8" })
+    public int workerThreads;
+
+    private ExecutorService workers;
+    private TargetedTaskSequenceManager manager;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        workers = Executors.newFixedThreadPool(workerThreads);
+        manager = new TargetedTaskSequenceManager(workers);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        workers.shutdown();
+        workers.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public void scheduleBatch() throws Exception {
+        CountDownLatch done = new CountDownLatch(TASKS_PER_BATCH);
+        for (int i = 0; i < TASKS_PER_BATCH; i++) {
+            manager.scheduleTask(new EmptyTask("target-" + (i % numberOfTargets), done));
+        }
+        done.await();
+    }
+
+    private static class EmptyTask implements TargetedTask {
+        private final String target;
+        private final CountDownLatch done;
+
+        private EmptyTask(String target, CountDownLatch done) {
+            this.target = target;
+            this.done = done;
+        }
+
+        @Override
+        public String getTarget() {
+            return target;
+        }
+
+        @Override
+        public void writeEvent(TaskEvent.EventType eventType, TaskEvent.Result result, String message) {
+        }
+
+        @Override
+        public void run() {
+            done.countDown();
+        }
+    }
+}
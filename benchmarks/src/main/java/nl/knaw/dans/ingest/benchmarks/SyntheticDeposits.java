@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.benchmarks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Generates deposits of a given size, based on the example deposit <code>valid-easy-submitted</code> in <code>src/test/resources/examples</code>. The payload
+ * is extended with <code>numberOfFiles</code> small files, which are also added to <code>files.xml</code> and the SHA-1 manifest, and the DDM is extended with
+ * <code>numberOfSubjects</code> subject and spatial elements.
+ */
+public class SyntheticDeposits {
+    private static final Path EXAMPLES_DIR = Paths.get(System.getProperty("dd-ingest-flow.examples", "src/test/resources/examples"));
+    private static final Path MAPPING_DEFS_DIR = Paths.get(System.getProperty("dd-ingest-flow.mapping-defs", "src/main/assembly/dist/cfg"));
+    private static final String TEMPLATE = "valid-easy-submitted";
+    private static final String BAG = "example-bag-medium";
+
+    public static Path getMappingDefsDir() {
+        return MAPPING_DEFS_DIR;
+    }
+
+    public static Path create(int numberOfFiles, int numberOfSubjects) throws IOException {
+        Path depositDir = Files.createTempDirectory("benchmark-deposits").resolve(UUID.randomUUID().toString());
+        copyDirectory(EXAMPLES_DIR.resolve(TEMPLATE), depositDir);
+        Path bagDir = depositDir.resolve(BAG);
+        addFiles(bagDir, numberOfFiles);
+        addSubjects(bagDir.resolve("metadata/dataset.xml"), numberOfSubjects);
+        return depositDir;
+    }
+
+    public static void delete(Path depositDir) throws IOException {
+        try (Stream<Path> paths = Files.walk(depositDir.getParent())) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> {
+                try {
+                    Files.delete(p);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    private static void addFiles(Path bagDir, int numberOfFiles) throws IOException {
+        StringBuilder manifest = new StringBuilder();
+        StringBuilder fileElements = new StringBuilder();
+        Path generatedDir = Files.createDirectories(bagDir.resolve("data/generated"));
+        for (int i = 0; i < numberOfFiles; i++) {
+            String name = String.format("file-%06d.txt", i);
+            byte[] content = ("Generated file " + i + "\n").getBytes(StandardCharsets.UTF_8);
+            Files.write(generatedDir.resolve(name), content);
+            manifest.append(sha1(content)).append("  data/generated/").append(name).append('\n');
+            fileElements.append("    <file filepath=\"data/generated/").append(name).append("\">\n")
+                .append("        <dcterms:format>text/plain</dcterms:format>\n")
+                .append("        <dcterms:description>Generated file ").append(i).append("</dcterms:description>\n")
+                .append("        <accessibleToRights>ANONYMOUS</accessibleToRights>\n")
+                .append("    </file>\n");
+        }
+        Files.write(bagDir.resolve("manifest-sha1.txt"), manifest.toString().getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        insertBefore(bagDir.resolve("metadata/files.xml"), "</files>", fileElements.toString());
+    }
+
+    private static void addSubjects(Path ddm, int numberOfSubjects) throws IOException {
+        StringBuilder elements = new StringBuilder();
+        for (int i = 0; i < numberOfSubjects; i++) {
+            elements.append("        <dc:subject>Subject ").append(i).append("</dc:subject>\n")
+                .append("        <dcterms:spatial>Place ").append(i).append("</dcterms:spatial>\n");
+        }
+        insertBefore(ddm, "</ddm:dcmiMetadata>", elements.toString());
+    }
+
+    private static void insertBefore(Path file, String marker, String text) throws IOException {
+        String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        int i = content.lastIndexOf(marker);
+        if (i < 0) {
+            throw new IllegalStateException(marker + " not found in " + file);
+        }
+        Files.write(file, (content.substring(0, i) + text + content.substring(i)).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String sha1(byte[] content) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-1").digest(content)) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void copyDirectory(Path source, Path target) throws IOException {
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.copy(file, target.resolve(source.relativize(file).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
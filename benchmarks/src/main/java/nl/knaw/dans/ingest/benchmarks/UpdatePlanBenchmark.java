@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.benchmarks;
+
+import better.files.File;
+import nl.knaw.dans.easy.dd2d.Deposit;
+import nl.knaw.dans.easy.dd2d.PublishedFile;
+import nl.knaw.dans.easy.dd2d.UpdatePlan;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import scala.Tuple2;
+import scala.collection.JavaConverters;
+import scala.collection.immutable.HashMap;
+import scala.collection.immutable.Map;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Planning the file changes of an update deposit with {@link UpdatePlan}. Of the files in the latest published version, one in a hundred has been moved
+ * in the deposit, one in a hundred replaced and one in a hundred deleted; the deposit also adds one new file in a hundred.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class UpdatePlanBenchmark {
+
+    @Param({ "10000", "100000" })
+    public int numberOfFiles;
+
+    private Path depositDir;
+    // FileInfo is declared in a package object, so its type cannot be named here
+    @SuppressWarnings("rawtypes")
+    private Map pathToFileInfo;
+    private Map<Path, PublishedFile> pathToPublishedFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        depositDir = SyntheticDeposits.create(numberOfFiles, 10);
+        var deposited = new Deposit(File.apply(depositDir)).getPathToFileInfo().get();
+        pathToFileInfo = deposited;
+        HashMap<Path, PublishedFile> published = new HashMap<>();
+        int i = 0;
+        for (var entry : JavaConverters.mapAsJavaMap(deposited).entrySet()) {
+            Path path = entry.getKey();
+            String checksum = entry.getValue().checksum();
+            switch (i % 100) {
+                case 0: // moved in the deposit
+                    published = published.$plus(new Tuple2<>(path.resolveSibling("old-" + path.getFileName()), new PublishedFile(i, checksum)));
+                    break;
+                case 1: // replaced in the deposit
+                    published = published.$plus(new Tuple2<>(path, new PublishedFile(i, "old-" + checksum)));
+                    break;
+                case 2: // added by the deposit
+                    break;
+                case 3: // deleted by the deposit
+                    published = published.$plus(new Tuple2<>(path.resolveSibling("deleted-" + path.getFileName()), new PublishedFile(numberOfFiles + i, "deleted-" + i)));
+                    // fall through
+                default:
+                    published = published.$plus(new Tuple2<>(path, new PublishedFile(i, checksum)));
+            }
+            i++;
+        }
+        pathToPublishedFile = published;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        SyntheticDeposits.delete(depositDir);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public UpdatePlan create() {
+        return UpdatePlan.create(pathToFileInfo, pathToPublishedFile);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.benchmarks;
+
+import better.files.File;
+import nl.knaw.dans.easy.dd2d.DepositIngestTaskFactory;
+import nl.knaw.dans.easy.dd2d.MappingDefinitions;
+import nl.knaw.dans.easy.dd2d.mapping.Audience;
+import nl.knaw.dans.easy.dd2d.mapping.Language;
+import nl.knaw.dans.easy.dd2d.mapping.License;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import scala.collection.JavaConverters;
+import scala.xml.Node;
+import scala.xml.XML$;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The controlled-vocabulary look-ups of one deposit with an increasing number of audience and language elements and one license: the linear and regex
+ * work that the mapping objects used to do per element, against the vocabularies compiled once by {@link MappingDefinitions}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VocabularyBenchmark {
+    private static final String[] NARCIS_CODES = { "D11000", "D12300", "D22200", "D36000", "D41100", "D42100", "D65000", "D99999", "E15000", "D15300" };
+    private static final String[] LANGUAGE_CODES = { "eng", "nl", "fr", "de", "dut", "bul", "xyz", "en", "ger", "fre" };
+
+    @Param({ "10", "1000" })
+    public int numberOfTerms;
+
+    private MappingDefinitions mappingDefinitions;
+    private Map<String, String> narcisToSubject;
+    private Map<String, String> iso1ToDataverse;
+    private Map<String, String> iso2ToDataverse;
+    private Map<String, String> variantToLicense;
+    private List<URI> supportedLicenses;
+    private List<Node> audiences;
+    private List<Node> languages;
+    private Node license;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        mappingDefinitions = MappingDefinitions.load(File.apply(SyntheticDeposits.getMappingDefsDir())).get();
+        narcisToSubject = JavaConverters.mapAsJavaMap(Audience.narcisToSubject());
+        iso1ToDataverse = loadCsv("iso639-1-to-dv.csv", "ISO639-1", "Dataverse-language");
+        iso2ToDataverse = loadCsv("iso639-2-to-dv.csv", "ISO639-2", "Dataverse-language");
+        variantToLicense = loadCsv("license-uri-variants.csv", "Variant", "Normalized");
+        supportedLicenses = JavaConverters.seqAsJavaList(
+            DepositIngestTaskFactory.loadTxtToUriList(File.apply(SyntheticDeposits.getMappingDefsDir().resolve("supported-licenses.txt"))).get());
+        audiences = new ArrayList<>();
+        languages = new ArrayList<>();
+        for (int i = 0; i < numberOfTerms; i++) {
+            audiences.add(XML$.MODULE$.loadString("<ddm:audience xmlns:ddm=\"http://easy.dans.knaw.nl/schemas/md/ddm/\">" + NARCIS_CODES[i % NARCIS_CODES.length]
+                + "</ddm:audience>"));
+            languages.add(XML$.MODULE$.loadString("<dc:language xmlns:dc=\"http://purl.org/dc/elements/1.1/\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\""
+                + " xsi:type=\"ISO639-2\" code=\"" + LANGUAGE_CODES[i % LANGUAGE_CODES.length] + "\">Not used</dc:language>"));
+        }
+        // The last supported license, which is the worst case for the linear search
+        license = XML$.MODULE$.loadString("<dct:license xmlns:dct=\"http://purl.org/dc/terms/\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\""
+            + " xsi:type=\"dcterms:URI\">" + supportedLicenses.get(supportedLicenses.size() - 1) + "</dct:license>");
+    }
+
+    private static Map<String, String> loadCsv(String fileName, String keyColumn, String valueColumn) {
+        return JavaConverters.mapAsJavaMap(
+            DepositIngestTaskFactory.loadCsvToMap(File.apply(SyntheticDeposits.getMappingDefsDir().resolve(fileName)), keyColumn, valueColumn).get());
+    }
+
+    @Benchmark
+    public void former(Blackhole blackhole) {
+        for (Node audience : audiences) {
+            blackhole.consume(formerSubject(audience));
+        }
+        for (Node language : languages) {
+            String code = language.attribute("code").get().head().text();
+            blackhole.consume(code.length() == 2 ? iso1ToDataverse.get(code) : iso2ToDataverse.get(code));
+        }
+        blackhole.consume(formerLicense(license));
+    }
+
+    @Benchmark
+    public void compiled(Blackhole blackhole) {
+        for (Node audience : audiences) {
+            blackhole.consume(Audience.toCitationBlockSubject(audience));
+        }
+        for (Node language : languages) {
+            blackhole.consume(Language.toCitationBlockLanguage(mappingDefinitions.languages(), language));
+        }
+        blackhole.consume(License.getLicenseUri(mappingDefinitions.licenses(), license));
+    }
+
+    /*
+     * As Audience.toCitationBlockSubject did it: a regex match, then a filter of all codes on prefix and the longest of those.
+     */
+    private String formerSubject(Node audience) {
+        if (!audience.text().matches("^[D|E]\\d{5}$")) {
+            throw new RuntimeException("NARCIS classification code incorrectly formatted");
+        }
+        String best = null;
+        for (Map.Entry<String, String> entry : narcisToSubject.entrySet()) {
+            if (audience.text().startsWith(entry.getKey()) && (best == null || entry.getKey().length() > best.length())) {
+                best = entry.getKey();
+            }
+        }
+        return best == null ? "Other" : narcisToSubject.get(best);
+    }
+
+    /*
+     * As License.normalizeScheme did it: a linear search of the supported licenses.
+     */
+    private URI formerLicense(Node node) {
+        String text = node.text().endsWith("/") ? node.text().substring(0, node.text().length() - 1) : node.text();
+        URI uri = URI.create(variantToLicense.getOrDefault(text, text));
+        for (URI supported : supportedLicenses) {
+            if (Objects.equals(uri.getHost(), supported.getHost())
+                && Objects.equals(uri.getPath(), supported.getPath())
+                && uri.getPort() == supported.getPort()
+                && Objects.equals(uri.getQuery(), supported.getQuery())) {
+                if (supported.getScheme().equals("http") || supported.getScheme().equals("https")) {
+                    return supported;
+                }
+                break;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported license: " + uri);
+    }
+}
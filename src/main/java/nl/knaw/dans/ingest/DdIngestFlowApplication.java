@@ -16,32 +16,69 @@
 
 package nl.knaw.dans.ingest;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.httpclient.HttpClientMetricNameStrategies;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
 import io.dropwizard.Application;
+import io.dropwizard.client.HttpClientBuilder;
 import io.dropwizard.db.PooledDataSourceFactory;
 import io.dropwizard.health.conf.HealthConfiguration;
 import io.dropwizard.health.core.HealthCheckBundle;
 import io.dropwizard.hibernate.HibernateBundle;
 import io.dropwizard.hibernate.UnitOfWorkAwareProxyFactory;
+import io.dropwizard.lifecycle.ExecutorServiceManager;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
+import io.dropwizard.util.Duration;
+import nl.knaw.dans.easy.dd2d.ZipFileHandler;
+import nl.knaw.dans.easy.dd2d.DepositCheckpointStore;
+import nl.knaw.dans.easy.dd2d.FileMutationExecutor;
+import nl.knaw.dans.easy.dd2d.PersistentIdIndex;
+import nl.knaw.dans.easy.dd2d.dansbag.ValidationResultCache;
 import nl.knaw.dans.ingest.core.AutoIngestArea;
 import nl.knaw.dans.ingest.core.CsvMessageBodyWriter;
+import nl.knaw.dans.ingest.core.DepositCheckpointEntry;
 import nl.knaw.dans.ingest.core.ImportArea;
+import nl.knaw.dans.ingest.core.PersistentIdIndexEntry;
 import nl.knaw.dans.ingest.core.TaskEvent;
+import nl.knaw.dans.ingest.core.ValidationResultCacheEntry;
 import nl.knaw.dans.ingest.core.health.DansBagValidatorHealthCheck;
 import nl.knaw.dans.ingest.core.health.DataverseHealthCheck;
+import nl.knaw.dans.ingest.core.config.FileMutationsConfig;
+import nl.knaw.dans.ingest.core.config.MappingDefsConfig;
+import nl.knaw.dans.ingest.core.config.PreparationConfig;
+import nl.knaw.dans.ingest.core.config.PrestagedFilesConfig;
+import nl.knaw.dans.ingest.core.config.PublicationAwaitConfig;
+import nl.knaw.dans.ingest.core.config.TaskEventWriterConfig;
+import nl.knaw.dans.ingest.core.config.TaskExecutionConfig;
+import nl.knaw.dans.ingest.core.config.TaskExecutionMode;
+import nl.knaw.dans.ingest.core.config.ValidationResultCacheConfig;
 import nl.knaw.dans.ingest.core.legacy.DepositIngestTaskFactoryWrapper;
+import nl.knaw.dans.ingest.core.sequencing.LightweightExecutors;
+import nl.knaw.dans.ingest.core.sequencing.PreparationStage;
 import nl.knaw.dans.ingest.core.sequencing.TargetedTaskSequenceManager;
+import nl.knaw.dans.ingest.core.service.BatchingTaskEventService;
+import nl.knaw.dans.ingest.core.service.PublicationAwaiter;
+import nl.knaw.dans.ingest.core.service.DepositCheckpointStoreImpl;
 import nl.knaw.dans.ingest.core.service.EnqueuingService;
 import nl.knaw.dans.ingest.core.service.EnqueuingServiceImpl;
+import nl.knaw.dans.ingest.core.service.MappingDefinitionsRegistryImpl;
+import nl.knaw.dans.ingest.core.service.PersistentIdIndexImpl;
 import nl.knaw.dans.ingest.core.service.TaskEventService;
 import nl.knaw.dans.ingest.core.service.TaskEventServiceImpl;
+import nl.knaw.dans.ingest.core.service.ValidationResultCacheImpl;
+import nl.knaw.dans.ingest.db.DepositCheckpointDAO;
+import nl.knaw.dans.ingest.db.PersistentIdIndexDAO;
 import nl.knaw.dans.ingest.db.TaskEventDAO;
+import nl.knaw.dans.ingest.db.ValidationResultCacheDAO;
 import nl.knaw.dans.ingest.resources.EventsResource;
 import nl.knaw.dans.ingest.resources.ImportsResource;
 import nl.knaw.dans.ingest.resources.MigrationsResource;
+import org.apache.http.impl.client.CloseableHttpClient;
+import scala.Option;
 
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
 
 public class DdIngestFlowApplication extends Application<DdIngestFlowConfiguration> {
 
@@ -49,7 +86,8 @@ public class DdIngestFlowApplication extends Application<DdIngestFlowConfigurati
         new DdIngestFlowApplication().run(args);
     }
 
-    private final HibernateBundle<DdIngestFlowConfiguration> hibernateBundle = new HibernateBundle<DdIngestFlowConfiguration>(TaskEvent.class) {
+    private final HibernateBundle<DdIngestFlowConfiguration> hibernateBundle = new HibernateBundle<DdIngestFlowConfiguration>(TaskEvent.class, ValidationResultCacheEntry.class, DepositCheckpointEntry.class,
+        PersistentIdIndexEntry.class) {
 
         @Override
         public PooledDataSourceFactory getDataSourceFactory(DdIngestFlowConfiguration configuration) {
@@ -76,24 +114,124 @@ public class DdIngestFlowApplication extends Application<DdIngestFlowConfigurati
 
     @Override
     public void run(final DdIngestFlowConfiguration configuration, final Environment environment) {
-        final ExecutorService taskExecutor = configuration.getIngestFlow().getTaskQueue().build(environment);
+        final TaskExecutionConfig taskExecutionConfig = configuration.getIngestFlow().getTaskExecution();
+        final ExecutorService taskExecutor;
+        final Semaphore dataverseEditPermits;
+        if (taskExecutionConfig.getMode() == TaskExecutionMode.LIGHTWEIGHT) {
+            taskExecutor = LightweightExecutors.create(taskExecutionConfig.getFallbackThreads(), "ingest-worker-%d");
+            environment.lifecycle().manage(new ExecutorServiceManager(taskExecutor, Duration.seconds(5), "ingest-worker"));
+            // With (virtual) threads to spare, this is what limits the load on Dataverse
+            dataverseEditPermits = new Semaphore(taskExecutionConfig.getMaxConcurrentDataverseEdits(), true);
+        }
+        else {
+            taskExecutor = configuration.getIngestFlow().getTaskQueue().build(environment);
+            dataverseEditPermits = null;
+        }
         final TargetedTaskSequenceManager targetedTaskSequenceManager = new TargetedTaskSequenceManager(taskExecutor);
+        final PreparationConfig preparationConfig = configuration.getIngestFlow().getPreparation();
+        final PreparationStage preparationStage = preparationConfig.isAhead()
+            ? new PreparationStage(
+            environment.lifecycle().executorService("deposit-preparation-%d").minThreads(preparationConfig.getThreads()).maxThreads(preparationConfig.getThreads()).build(),
+            taskExecutor,
+            preparationConfig.getMaxPreparedAhead())
+            : null;
+        final PublicationAwaitConfig publicationAwaitConfig = configuration.getIngestFlow().getPublicationAwait();
+        final PublicationAwaiter publicationAwaiter = publicationAwaitConfig.isAsync()
+            ? new PublicationAwaiter(publicationAwaitConfig.getInitialPollIntervalMs(), publicationAwaitConfig.getMaxPollIntervalMs(), taskExecutor,
+            configuration.getDepositCheckpoints().isEnabled())
+            : null;
+        final ValidationResultCacheConfig validationResultCacheConfig = configuration.getValidationResultCache();
+        final ValidationResultCache validationResultCache = validationResultCacheConfig.isEnabled()
+            ? new UnitOfWorkAwareProxyFactory(hibernateBundle).create(
+            ValidationResultCacheImpl.class,
+            new Class<?>[] { ValidationResultCacheDAO.class, Integer.class, Duration.class, Integer.class },
+            new Object[] { new ValidationResultCacheDAO(hibernateBundle.getSessionFactory()), validationResultCacheConfig.getMaxEntries(), validationResultCacheConfig.getMaxAge(),
+                validationResultCacheConfig.getEvictionInterval() })
+            : null;
+        final DepositCheckpointStore depositCheckpointStore = configuration.getDepositCheckpoints().isEnabled()
+            ? new UnitOfWorkAwareProxyFactory(hibernateBundle).create(DepositCheckpointStoreImpl.class, DepositCheckpointDAO.class,
+            new DepositCheckpointDAO(hibernateBundle.getSessionFactory()))
+            : null;
+        final PersistentIdIndex persistentIdIndex = configuration.getPersistentIdIndex().isEnabled()
+            ? new UnitOfWorkAwareProxyFactory(hibernateBundle).create(PersistentIdIndexImpl.class, PersistentIdIndexDAO.class,
+            new PersistentIdIndexDAO(hibernateBundle.getSessionFactory()))
+            : null;
+        // Shared by the calls to the validator and migration-info services, with request metrics per host
+        final CloseableHttpClient httpClient = new HttpClientBuilder(environment)
+            .using(configuration.getHttpClient())
+            .using(HttpClientMetricNameStrategies.HOST_AND_METHOD)
+            .build("http-client");
+        final PrestagedFilesConfig prestagedFilesConfig = configuration.getIngestFlow().getPrestagedFiles();
+        final ExecutorService prestagedFilesPrefetch = prestagedFilesConfig.isEnabled() && prestagedFilesConfig.getPrefetchThreads() > 0
+            ? environment.lifecycle().executorService("prestaged-files-prefetch-%d")
+            .minThreads(prestagedFilesConfig.getPrefetchThreads())
+            .maxThreads(prestagedFilesConfig.getPrefetchThreads())
+            .build()
+            : null;
+        // Shared by both task factories, so that the concurrency limit holds for all datasets
+        final FileMutationsConfig fileMutationsConfig = configuration.getIngestFlow().getFileMutations();
+        final FileMutationExecutor fileMutationExecutor = fileMutationsConfig.getConcurrency() > 1
+            ? new FileMutationExecutor(fileMutationsConfig.getConcurrency(), fileMutationsConfig.getBatchSize(), Option.apply(
+            environment.lifecycle().executorService("file-mutation-%d")
+                .minThreads(fileMutationsConfig.getConcurrency())
+                .maxThreads(fileMutationsConfig.getConcurrency())
+                .build()))
+            : FileMutationExecutor.sequential();
+        // Shared by both task factories, so that the definitions are loaded only once
+        final MappingDefsConfig mappingDefsConfig = configuration.getIngestFlow().getMappingDefs();
+        final MappingDefinitionsRegistryImpl mappingDefinitionsRegistry = new MappingDefinitionsRegistryImpl(
+            configuration.getIngestFlow().getMappingDefsDir(),
+            DepositIngestTaskFactoryWrapper.createDataverseInstance(configuration.getDataverse()),
+            mappingDefsConfig.isHotReload(),
+            mappingDefsConfig.getActiveMetadataBlocksRefreshInterval());
+        environment.lifecycle().manage(mappingDefinitionsRegistry);
+        final DepositIngestTaskFactoryWrapper.Collaborators collaborators = new DepositIngestTaskFactoryWrapper.Collaborators()
+            .withPublicationAwaiter(publicationAwaiter)
+            .withDataverseEditPermits(dataverseEditPermits)
+            .withPreparationStage(preparationStage)
+            .withValidationResultCache(validationResultCache)
+            .withHttpClient(httpClient)
+            .withCheckpointStore(depositCheckpointStore)
+            .withPersistentIdIndex(persistentIdIndex)
+            .withMappingDefinitions(mappingDefinitionsRegistry)
+            .withFileMutationExecutor(fileMutationExecutor);
         final DepositIngestTaskFactoryWrapper ingestTaskFactoryWrapper = new DepositIngestTaskFactoryWrapper(
             false,
             configuration.getIngestFlow(),
             configuration.getDataverse(),
             configuration.getManagePrestaging(),
-            configuration.getValidateDansBag());
+            configuration.getValidateDansBag(),
+            collaborators);
         final DepositIngestTaskFactoryWrapper migrationTaskFactoryWrapper = new DepositIngestTaskFactoryWrapper(
             true,
             configuration.getIngestFlow(),
             configuration.getDataverse(),
             configuration.getManagePrestaging(),
-            configuration.getValidateDansBag());
+            configuration.getValidateDansBag(),
+            collaborators.withPrestagedFilesPrefetch(prestagedFilesPrefetch));
 
         final EnqueuingService enqueuingService = new EnqueuingServiceImpl(targetedTaskSequenceManager, 3 /* Must support importArea, migrationArea and autoIngestArea */);
         final TaskEventDAO taskEventDAO = new TaskEventDAO(hibernateBundle.getSessionFactory());
-        final TaskEventService taskEventService = new UnitOfWorkAwareProxyFactory(hibernateBundle).create(TaskEventServiceImpl.class, TaskEventDAO.class, taskEventDAO);
+        final TaskEventServiceImpl taskEventServiceImpl = new UnitOfWorkAwareProxyFactory(hibernateBundle).create(TaskEventServiceImpl.class, TaskEventDAO.class, taskEventDAO);
+        final TaskEventWriterConfig taskEventWriterConfig = configuration.getTaskEventWriter();
+        final TaskEventService taskEventService;
+        if (taskEventWriterConfig.isAsync()) {
+            final BatchingTaskEventService batchingTaskEventService = new BatchingTaskEventService(
+                taskEventServiceImpl,
+                taskEventWriterConfig.getQueueSize(),
+                taskEventWriterConfig.getBatchSize(),
+                taskEventWriterConfig.getMaxDelayMs());
+            // Must be registered before the ingest areas, so that it is stopped after them and drains their last events
+            environment.lifecycle().manage(batchingTaskEventService);
+            taskEventService = batchingTaskEventService;
+        }
+        else {
+            taskEventService = taskEventServiceImpl;
+        }
+        if (publicationAwaiter != null) {
+            // Stopped before the task event writer and the task executor, which it still needs to finish the pending deposits
+            environment.lifecycle().manage(publicationAwaiter);
+        }
 
         final ImportArea importArea = new ImportArea(
             configuration.getIngestFlow().getImportConfig().getInbox(),
@@ -112,8 +250,7 @@ public class DdIngestFlowApplication extends Application<DdIngestFlowConfigurati
             enqueuingService);
 
         final AutoIngestArea autoIngestArea = new AutoIngestArea(
-            configuration.getIngestFlow().getAutoIngest().getInbox(),
-            configuration.getIngestFlow().getAutoIngest().getOutbox(),
+            configuration.getIngestFlow().getAutoIngest(),
             ingestTaskFactoryWrapper,
             taskEventService,
             enqueuingService
@@ -121,11 +258,16 @@ public class DdIngestFlowApplication extends Application<DdIngestFlowConfigurati
 
         environment.healthChecks().register("Dataverse", new DataverseHealthCheck(ingestTaskFactoryWrapper.getDataverseInstance()));
         environment.healthChecks().register("DansBagValidator", new DansBagValidatorHealthCheck(ingestTaskFactoryWrapper.getDansBagValidatorInstance()));
+        environment.metrics().register(MetricRegistry.name(ZipFileHandler.class, "import", "mime-detection-per-deposit"),
+            ingestTaskFactoryWrapper.getZipFileHandler().detectionTimer());
+        environment.metrics().register(MetricRegistry.name(ZipFileHandler.class, "migration", "mime-detection-per-deposit"),
+            migrationTaskFactoryWrapper.getZipFileHandler().detectionTimer());
 
         environment.lifecycle().manage(autoIngestArea);
         environment.jersey().register(new ImportsResource(importArea));
         environment.jersey().register(new MigrationsResource(migrationArea));
-        environment.jersey().register(new EventsResource(taskEventDAO));
-        environment.jersey().register(new CsvMessageBodyWriter());
+        final CsvMapper csvMapper = CsvMessageBodyWriter.createCsvMapper();
+        environment.jersey().register(new EventsResource(taskEventDAO, csvMapper, environment.getObjectMapper()));
+        environment.jersey().register(new CsvMessageBodyWriter(csvMapper));
     }
 }
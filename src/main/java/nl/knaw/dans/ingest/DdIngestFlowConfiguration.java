@@ -18,11 +18,16 @@ package nl.knaw.dans.ingest;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import io.dropwizard.Configuration;
+import io.dropwizard.client.HttpClientConfiguration;
 import io.dropwizard.db.DataSourceFactory;
 import io.dropwizard.health.conf.HealthConfiguration;
 import nl.knaw.dans.ingest.core.config.DataverseConfigScala;
 import nl.knaw.dans.ingest.core.config.HttpServiceConfig;
+import nl.knaw.dans.ingest.core.config.DepositCheckpointsConfig;
 import nl.knaw.dans.ingest.core.config.IngestFlowConfig;
+import nl.knaw.dans.ingest.core.config.PersistentIdIndexConfig;
+import nl.knaw.dans.ingest.core.config.TaskEventWriterConfig;
+import nl.knaw.dans.ingest.core.config.ValidationResultCacheConfig;
 
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
@@ -33,8 +38,28 @@ public class DdIngestFlowConfiguration extends Configuration {
     private DataverseConfigScala dataverse;
     private HttpServiceConfig validateDansBag;
     private HttpServiceConfig managePrestaging;
+
+    @Valid
+    @NotNull
+    private HttpClientConfiguration httpClient = new HttpClientConfiguration();
     private DataSourceFactory taskEventDatabase;
 
+    @Valid
+    @NotNull
+    private TaskEventWriterConfig taskEventWriter = new TaskEventWriterConfig();
+
+    @Valid
+    @NotNull
+    private ValidationResultCacheConfig validationResultCache = new ValidationResultCacheConfig();
+
+    @Valid
+    @NotNull
+    private DepositCheckpointsConfig depositCheckpoints = new DepositCheckpointsConfig();
+
+    @Valid
+    @NotNull
+    private PersistentIdIndexConfig persistentIdIndex = new PersistentIdIndexConfig();
+
     @Valid
     @NotNull
     @JsonProperty("health")
@@ -80,6 +105,14 @@ public class DdIngestFlowConfiguration extends Configuration {
         this.managePrestaging = managePrestaging;
     }
 
+    public HttpClientConfiguration getHttpClient() {
+        return httpClient;
+    }
+
+    public void setHttpClient(HttpClientConfiguration httpClient) {
+        this.httpClient = httpClient;
+    }
+
     public DataSourceFactory getTaskEventDatabase() {
         return taskEventDatabase;
     }
@@ -88,4 +121,36 @@ public class DdIngestFlowConfiguration extends Configuration {
         this.taskEventDatabase = dataSourceFactory;
     }
 
+    public TaskEventWriterConfig getTaskEventWriter() {
+        return taskEventWriter;
+    }
+
+    public void setTaskEventWriter(TaskEventWriterConfig taskEventWriter) {
+        this.taskEventWriter = taskEventWriter;
+    }
+
+    public ValidationResultCacheConfig getValidationResultCache() {
+        return validationResultCache;
+    }
+
+    public void setValidationResultCache(ValidationResultCacheConfig validationResultCache) {
+        this.validationResultCache = validationResultCache;
+    }
+
+    public DepositCheckpointsConfig getDepositCheckpoints() {
+        return depositCheckpoints;
+    }
+
+    public void setDepositCheckpoints(DepositCheckpointsConfig depositCheckpoints) {
+        this.depositCheckpoints = depositCheckpoints;
+    }
+
+    public PersistentIdIndexConfig getPersistentIdIndex() {
+        return persistentIdIndex;
+    }
+
+    public void setPersistentIdIndex(PersistentIdIndexConfig persistentIdIndex) {
+        this.persistentIdIndex = persistentIdIndex;
+    }
+
 }
@@ -16,26 +16,28 @@
 package nl.knaw.dans.ingest.core;
 
 import io.dropwizard.lifecycle.Managed;
+import nl.knaw.dans.ingest.core.config.AutoIngestAreaConfig;
 import nl.knaw.dans.ingest.core.legacy.DepositIngestTaskFactoryWrapper;
 import nl.knaw.dans.ingest.core.service.UnboundedTargetedTaskSource;
 import nl.knaw.dans.ingest.core.service.EnqueuingService;
 import nl.knaw.dans.ingest.core.service.TaskEventService;
 
-import java.nio.file.Path;
-
 public class AutoIngestArea extends AbstractIngestArea implements Managed {
+    private final AutoIngestAreaConfig config;
     private UnboundedTargetedTaskSource taskSource;
 
-    public AutoIngestArea(Path inboxDir, Path outboxDir, DepositIngestTaskFactoryWrapper taskFactory,
+    public AutoIngestArea(AutoIngestAreaConfig config, DepositIngestTaskFactoryWrapper taskFactory,
         TaskEventService taskEventService, EnqueuingService enqueuingService) {
-        super(inboxDir, outboxDir, taskFactory, taskEventService, enqueuingService);
+        super(config.getInbox(), config.getOutbox(), taskFactory, taskEventService, enqueuingService);
+        this.config = config;
     }
 
     @Override
     public void start() throws Exception {
         validateInDir(inboxDir);
         initOutbox(outboxDir, true);
-        taskSource = new UnboundedTargetedTaskSource("auto-ingest", inboxDir, outboxDir, taskEventService, taskFactory);
+        taskSource = new UnboundedTargetedTaskSource("auto-ingest", inboxDir, outboxDir,
+            config.getWatchMode(), config.getPollingIntervalMs(), config.getQuietPeriodMs(), config.getMaxPendingMs(), taskEventService, taskFactory);
         enqueuingService.executeEnqueue(taskSource);
     }
 
@@ -36,6 +36,18 @@ import java.util.List;
 @Provider
 @Produces("text/csv")
 public class CsvMessageBodyWriter implements MessageBodyWriter<List<?>> {
+    private final CsvMapper mapper;
+
+    public CsvMessageBodyWriter(CsvMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    public static CsvMapper createCsvMapper() {
+        CsvMapper mapper = new CsvMapper();
+        mapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
+        mapper.registerModule(new JavaTimeModule());
+        return mapper;
+    }
 
     @Override
     public boolean isWriteable(Class type, Type genericType, Annotation[] annotations, MediaType mediaType) {
@@ -46,13 +58,9 @@ public class CsvMessageBodyWriter implements MessageBodyWriter<List<?>> {
     public void writeTo(List data, Class aClass, Type type, Annotation[] annotations, MediaType mediaType, MultivaluedMap multivaluedMap, OutputStream outputStream) throws
         IOException, WebApplicationException {
         if (data != null && data.size() > 0) {
-            // TODO: pass the mapper in at configuration time
-            CsvMapper mapper = new CsvMapper();
             Object o = data.get(0);
             CsvSchema schema = mapper.schemaFor(o.getClass())
                 .withHeader();
-            mapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
-            mapper.registerModule(new JavaTimeModule());
             mapper.writer(schema).writeValue(outputStream, data);
         }
     }
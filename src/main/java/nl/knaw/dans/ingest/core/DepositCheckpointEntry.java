@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.OffsetDateTime;
+
+@Entity
+@Table(name = "deposit_checkpoint")
+public class DepositCheckpointEntry {
+    @Id
+    @Column(name = "deposit_id")
+    private String depositId;
+
+    @Column(name = "stage", nullable = false)
+    private String stage;
+
+    @Column(name = "persistent_id")
+    private String persistentId;
+
+    @Column(name = "updated", nullable = false)
+    private OffsetDateTime updated;
+
+    public DepositCheckpointEntry() {
+    }
+
+    public DepositCheckpointEntry(String depositId, String stage, String persistentId, OffsetDateTime updated) {
+        this.depositId = depositId;
+        this.stage = stage;
+        this.persistentId = persistentId;
+        this.updated = updated;
+    }
+
+    public String getDepositId() {
+        return depositId;
+    }
+
+    public void setDepositId(String depositId) {
+        this.depositId = depositId;
+    }
+
+    public String getStage() {
+        return stage;
+    }
+
+    public void setStage(String stage) {
+        this.stage = stage;
+    }
+
+    public String getPersistentId() {
+        return persistentId;
+    }
+
+    public void setPersistentId(String persistentId) {
+        this.persistentId = persistentId;
+    }
+
+    public OffsetDateTime getUpdated() {
+        return updated;
+    }
+
+    public void setUpdated(OffsetDateTime updated) {
+        this.updated = updated;
+    }
+}
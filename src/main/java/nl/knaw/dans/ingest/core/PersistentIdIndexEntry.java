@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.OffsetDateTime;
+
+@Entity
+@Table(name = "persistent_id_index", indexes = @Index(name = "persistent_id_index_sword_token", columnList = "sword_token"))
+public class PersistentIdIndexEntry {
+    @Id
+    @Column(name = "bag_id")
+    private String bagId;
+
+    @Column(name = "persistent_id", nullable = false)
+    private String persistentId;
+
+    @Column(name = "sword_token")
+    private String swordToken;
+
+    @Column(name = "nbn")
+    private String nbn;
+
+    @Column(name = "created", nullable = false)
+    private OffsetDateTime created;
+
+    public PersistentIdIndexEntry() {
+    }
+
+    public PersistentIdIndexEntry(String bagId, String persistentId, String swordToken, String nbn, OffsetDateTime created) {
+        this.bagId = bagId;
+        this.persistentId = persistentId;
+        this.swordToken = swordToken;
+        this.nbn = nbn;
+        this.created = created;
+    }
+
+    public String getBagId() {
+        return bagId;
+    }
+
+    public void setBagId(String bagId) {
+        this.bagId = bagId;
+    }
+
+    public String getPersistentId() {
+        return persistentId;
+    }
+
+    public void setPersistentId(String persistentId) {
+        this.persistentId = persistentId;
+    }
+
+    public String getSwordToken() {
+        return swordToken;
+    }
+
+    public void setSwordToken(String swordToken) {
+        this.swordToken = swordToken;
+    }
+
+    public String getNbn() {
+        return nbn;
+    }
+
+    public void setNbn(String nbn) {
+        this.nbn = nbn;
+    }
+
+    public OffsetDateTime getCreated() {
+        return created;
+    }
+
+    public void setCreated(OffsetDateTime created) {
+        this.created = created;
+    }
+}
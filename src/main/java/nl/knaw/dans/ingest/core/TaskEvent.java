@@ -22,12 +22,16 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.Table;
 import java.time.OffsetDateTime;
 import java.util.UUID;
 
 @Entity
-@Table(name = "task_event")
+@Table(name = "task_event", indexes = {
+    @Index(name = "task_event_source_deposit_id_timestamp", columnList = "source, deposit_id, timestamp"),
+    @Index(name = "task_event_timestamp_id", columnList = "timestamp, id")
+})
 public class TaskEvent {
     public enum EventType {
         ENQUEUE,
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.OffsetDateTime;
+
+@Entity
+@Table(name = "validation_result_cache", indexes = @Index(name = "validation_result_cache_last_used", columnList = "last_used"))
+public class ValidationResultCacheEntry {
+    @Id
+    @Column(name = "bag_digest", length = 64)
+    private String bagDigest;
+
+    @Column(name = "profile_version", nullable = false)
+    private int profileVersion;
+
+    @Column(name = "result", nullable = false, length = 100000)
+    private String result;
+
+    @Column(name = "created", nullable = false)
+    private OffsetDateTime created;
+
+    @Column(name = "last_used", nullable = false)
+    private OffsetDateTime lastUsed;
+
+    public ValidationResultCacheEntry() {
+    }
+
+    public ValidationResultCacheEntry(String bagDigest, int profileVersion, String result, OffsetDateTime created) {
+        this.bagDigest = bagDigest;
+        this.profileVersion = profileVersion;
+        this.result = result;
+        this.created = created;
+        this.lastUsed = created;
+    }
+
+    public String getBagDigest() {
+        return bagDigest;
+    }
+
+    public void setBagDigest(String bagDigest) {
+        this.bagDigest = bagDigest;
+    }
+
+    public int getProfileVersion() {
+        return profileVersion;
+    }
+
+    public void setProfileVersion(int profileVersion) {
+        this.profileVersion = profileVersion;
+    }
+
+    public String getResult() {
+        return result;
+    }
+
+    public void setResult(String result) {
+        this.result = result;
+    }
+
+    public OffsetDateTime getCreated() {
+        return created;
+    }
+
+    public void setCreated(OffsetDateTime created) {
+        this.created = created;
+    }
+
+    public OffsetDateTime getLastUsed() {
+        return lastUsed;
+    }
+
+    public void setLastUsed(OffsetDateTime lastUsed) {
+        this.lastUsed = lastUsed;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.config;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+public class AutoIngestAreaConfig extends IngestAreaConfig {
+    @NotNull
+    private InboxWatchMode watchMode = InboxWatchMode.AUTO;
+
+    @Min(1)
+    private long pollingIntervalMs = 500;
+
+    @Min(0)
+    private long quietPeriodMs = 2000;
+
+    @Min(1)
+    private long maxPendingMs = 600000;
+
+    public InboxWatchMode getWatchMode() {
+        return watchMode;
+    }
+
+    public void setWatchMode(InboxWatchMode watchMode) {
+        this.watchMode = watchMode;
+    }
+
+    public long getPollingIntervalMs() {
+        return pollingIntervalMs;
+    }
+
+    public void setPollingIntervalMs(long pollingIntervalMs) {
+        this.pollingIntervalMs = pollingIntervalMs;
+    }
+
+    public long getQuietPeriodMs() {
+        return quietPeriodMs;
+    }
+
+    public void setQuietPeriodMs(long quietPeriodMs) {
+        this.quietPeriodMs = quietPeriodMs;
+    }
+
+    public long getMaxPendingMs() {
+        return maxPendingMs;
+    }
+
+    public void setMaxPendingMs(long maxPendingMs) {
+        this.maxPendingMs = maxPendingMs;
+    }
+}
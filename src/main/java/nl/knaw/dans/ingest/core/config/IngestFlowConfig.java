@@ -19,6 +19,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import nl.knaw.dans.lib.util.ExecutorServiceFactory;
 
 import javax.validation.Valid;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import java.nio.file.Path;
 
@@ -35,16 +36,45 @@ public class IngestFlowConfig {
 
     @NotNull
     @Valid
-    private IngestAreaConfig autoIngest;
+    private AutoIngestAreaConfig autoIngest;
 
     @NotNull
     @Valid
     private Path zipWrappingTempDir;
 
+    @Min(0)
+    private int zipWrappingThreads = 2;
+
+    private boolean zipWrappingStreaming = true;
+
+    @Valid
+    @NotNull
+    private PublicationAwaitConfig publicationAwait = new PublicationAwaitConfig();
+
+    @Valid
+    @NotNull
+    private TaskExecutionConfig taskExecution = new TaskExecutionConfig();
+
+    @Valid
+    @NotNull
+    private PreparationConfig preparation = new PreparationConfig();
+
+    @Valid
+    @NotNull
+    private PrestagedFilesConfig prestagedFiles = new PrestagedFilesConfig();
+
+    @Valid
+    @NotNull
+    private FileMutationsConfig fileMutations = new FileMutationsConfig();
+
     @NotNull
     @Valid
     private Path mappingDefsDir;
 
+    @NotNull
+    @Valid
+    private MappingDefsConfig mappingDefs = new MappingDefsConfig();
+
     @NotNull
     @Valid
     private String fileExclusionPattern;
@@ -76,11 +106,11 @@ public class IngestFlowConfig {
         this.migration = migration;
     }
 
-    public IngestAreaConfig getAutoIngest() {
+    public AutoIngestAreaConfig getAutoIngest() {
         return autoIngest;
     }
 
-    public void setAutoIngest(IngestAreaConfig autoIngest) {
+    public void setAutoIngest(AutoIngestAreaConfig autoIngest) {
         this.autoIngest = autoIngest;
     }
 
@@ -92,6 +122,62 @@ public class IngestFlowConfig {
         this.zipWrappingTempDir = zipWrappingTempDir;
     }
 
+    public PublicationAwaitConfig getPublicationAwait() {
+        return publicationAwait;
+    }
+
+    public void setPublicationAwait(PublicationAwaitConfig publicationAwait) {
+        this.publicationAwait = publicationAwait;
+    }
+
+    public TaskExecutionConfig getTaskExecution() {
+        return taskExecution;
+    }
+
+    public void setTaskExecution(TaskExecutionConfig taskExecution) {
+        this.taskExecution = taskExecution;
+    }
+
+    public PreparationConfig getPreparation() {
+        return preparation;
+    }
+
+    public void setPreparation(PreparationConfig preparation) {
+        this.preparation = preparation;
+    }
+
+    public PrestagedFilesConfig getPrestagedFiles() {
+        return prestagedFiles;
+    }
+
+    public void setPrestagedFiles(PrestagedFilesConfig prestagedFiles) {
+        this.prestagedFiles = prestagedFiles;
+    }
+
+    public FileMutationsConfig getFileMutations() {
+        return fileMutations;
+    }
+
+    public void setFileMutations(FileMutationsConfig fileMutations) {
+        this.fileMutations = fileMutations;
+    }
+
+    public int getZipWrappingThreads() {
+        return zipWrappingThreads;
+    }
+
+    public void setZipWrappingThreads(int zipWrappingThreads) {
+        this.zipWrappingThreads = zipWrappingThreads;
+    }
+
+    public boolean isZipWrappingStreaming() {
+        return zipWrappingStreaming;
+    }
+
+    public void setZipWrappingStreaming(boolean zipWrappingStreaming) {
+        this.zipWrappingStreaming = zipWrappingStreaming;
+    }
+
     public Path getMappingDefsDir() {
         return mappingDefsDir;
     }
@@ -100,6 +186,14 @@ public class IngestFlowConfig {
         this.mappingDefsDir = mappingDefsDir;
     }
 
+    public MappingDefsConfig getMappingDefs() {
+        return mappingDefs;
+    }
+
+    public void setMappingDefs(MappingDefsConfig mappingDefs) {
+        this.mappingDefs = mappingDefs;
+    }
+
     public String getFileExclusionPattern() {
         return fileExclusionPattern;
     }
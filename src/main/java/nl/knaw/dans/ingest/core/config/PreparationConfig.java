@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.config;
+
+import javax.validation.constraints.Min;
+
+public class PreparationConfig {
+    private boolean ahead = true;
+
+    @Min(1)
+    private int threads = 2;
+
+    @Min(1)
+    private int maxPreparedAhead = 20;
+
+    public boolean isAhead() {
+        return ahead;
+    }
+
+    public void setAhead(boolean ahead) {
+        this.ahead = ahead;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getMaxPreparedAhead() {
+        return maxPreparedAhead;
+    }
+
+    public void setMaxPreparedAhead(int maxPreparedAhead) {
+        this.maxPreparedAhead = maxPreparedAhead;
+    }
+}
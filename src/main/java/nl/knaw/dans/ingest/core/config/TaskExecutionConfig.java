@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.config;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+public class TaskExecutionConfig {
+    @NotNull
+    private TaskExecutionMode mode = TaskExecutionMode.PLATFORM;
+
+    @Min(1)
+    private int maxConcurrentDataverseEdits = 5;
+
+    @Min(1)
+    private int fallbackThreads = 100;
+
+    public TaskExecutionMode getMode() {
+        return mode;
+    }
+
+    public void setMode(TaskExecutionMode mode) {
+        this.mode = mode;
+    }
+
+    public int getMaxConcurrentDataverseEdits() {
+        return maxConcurrentDataverseEdits;
+    }
+
+    public void setMaxConcurrentDataverseEdits(int maxConcurrentDataverseEdits) {
+        this.maxConcurrentDataverseEdits = maxConcurrentDataverseEdits;
+    }
+
+    public int getFallbackThreads() {
+        return fallbackThreads;
+    }
+
+    public void setFallbackThreads(int fallbackThreads) {
+        this.fallbackThreads = fallbackThreads;
+    }
+}
@@ -19,17 +19,25 @@ import gov.loc.repository.bagit.domain.Bag;
 import gov.loc.repository.bagit.domain.Metadata;
 import nl.knaw.dans.easy.dd2d.DepositIngestTask;
 import nl.knaw.dans.easy.dd2d.FailedDepositException;
+import nl.knaw.dans.easy.dd2d.InterruptedDepositException;
 import nl.knaw.dans.easy.dd2d.RejectedDepositException;
 import nl.knaw.dans.ingest.core.TaskEvent;
+import nl.knaw.dans.ingest.core.sequencing.PreparationStage;
 import nl.knaw.dans.ingest.core.sequencing.TargetedTask;
 import nl.knaw.dans.ingest.core.service.EventWriter;
+import nl.knaw.dans.ingest.core.service.PublicationAwaiter;
+import nl.knaw.dans.lib.dataverse.model.dataset.Dataset;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 
 public class DepositImportTaskWrapper implements TargetedTask, Comparable<DepositImportTaskWrapper> {
     private static final Logger log = LoggerFactory.getLogger(DepositImportTaskWrapper.class);
@@ -37,16 +45,63 @@ public class DepositImportTaskWrapper implements TargetedTask, Comparable<Deposi
     private final DepositIngestTask task;
     private final Instant created;
     private final EventWriter eventWriter;
+    private final PublicationAwaiter publicationAwaiter;
+    private final long publicationTimeoutMs;
+    private final PreparationStage preparationStage;
+    private volatile CompletableFuture<Optional<Dataset>> preparedAhead;
 
     public DepositImportTaskWrapper(DepositIngestTask task, EventWriter eventWriter) {
+        this(task, getCreatedInstant(task), eventWriter);
+    }
+
+    /**
+     * Creates a wrapper for a task of which the <code>Created</code> timestamp is already known, so that the bag does not have to be read to find it.
+     *
+     * @param task        the task to wrap
+     * @param created     the <code>Created</code> timestamp of the deposit's bag
+     * @param eventWriter the writer for task events
+     */
+    public DepositImportTaskWrapper(DepositIngestTask task, Instant created, EventWriter eventWriter) {
+        this(task, created, eventWriter, null, 0);
+    }
+
+    /**
+     * Creates a wrapper that does not block a thread while the dataset is being published, but hands the wait over to <code>publicationAwaiter</code>.
+     *
+     * @param task                 the task to wrap
+     * @param created              the <code>Created</code> timestamp of the deposit's bag
+     * @param eventWriter          the writer for task events
+     * @param publicationAwaiter   the awaiter to wait for the publication with, or <code>null</code> to wait on the task's own thread
+     * @param publicationTimeoutMs the maximum time to wait for the publication
+     */
+    public DepositImportTaskWrapper(DepositIngestTask task, Instant created, EventWriter eventWriter, PublicationAwaiter publicationAwaiter, long publicationTimeoutMs) {
+        this(task, created, eventWriter, publicationAwaiter, publicationTimeoutMs, null);
+    }
+
+    /**
+     * Creates a wrapper that checks, validates and maps the deposit in <code>preparationStage</code> as soon as it is scheduled, ahead of earlier deposits for
+     * the same dataset.
+     *
+     * @param task                 the task to wrap
+     * @param created              the <code>Created</code> timestamp of the deposit's bag
+     * @param eventWriter          the writer for task events
+     * @param publicationAwaiter   the awaiter to wait for the publication with, or <code>null</code> to wait on the task's own thread
+     * @param publicationTimeoutMs the maximum time to wait for the publication
+     * @param preparationStage     the stage to prepare the deposit in, or <code>null</code> to prepare it when the task starts
+     */
+    public DepositImportTaskWrapper(DepositIngestTask task, Instant created, EventWriter eventWriter, PublicationAwaiter publicationAwaiter, long publicationTimeoutMs,
+        PreparationStage preparationStage) {
         this.task = task;
-        this.created = getCreatedInstant(task);
+        this.created = created;
         this.eventWriter = eventWriter;
+        this.publicationAwaiter = publicationAwaiter;
+        this.publicationTimeoutMs = publicationTimeoutMs;
+        this.preparationStage = preparationStage;
     }
 
     @Override
     public String getTarget() {
-        return task.deposit().doi();
+        return task.sequencingTarget();
     }
 
     public UUID getDepositId() {
@@ -59,17 +114,99 @@ public class DepositImportTaskWrapper implements TargetedTask, Comparable<Deposi
         eventWriter.write(getDepositId(), eventType, result, message);
     }
 
+    @Override
+    public void onScheduled() {
+        if (preparationStage != null) {
+            preparedAhead = preparationStage.prepareAhead(this::prepare);
+        }
+    }
+
     @Override
     public void run() {
+        prepare().ifPresent(this::runPrepared);
+    }
+
+    @Override
+    public CompletionStage<Void> start() {
+        CompletableFuture<Optional<Dataset>> prepared = preparedAhead;
+        if (prepared == null) {
+            return continueWith(prepare());
+        }
+        return preparationStage.continueWith(prepared, this::continueWith);
+    }
+
+    /*
+     * Returns empty if the deposit was rejected or failed; it is then already in the outbox, and its processing has ended. It also returns empty if the
+     * deposit was interrupted; it then stays in the inbox to be resumed.
+     */
+    private Optional<Dataset> prepare() {
         writeEvent(TaskEvent.EventType.START_PROCESSING, TaskEvent.Result.OK, null);
         try {
-            task.run().get();
+            return Optional.of(task.prepareIngest().get());
+        }
+        catch (Exception e) {
+            writeEndProcessingFailure(e);
+            return Optional.empty();
+        }
+    }
+
+    private CompletionStage<Void> continueWith(Optional<Dataset> prepared) {
+        if (!prepared.isPresent()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (publicationAwaiter == null) {
+            runPrepared(prepared.get());
+            return CompletableFuture.completedFuture(null);
+        }
+        return startPrepared(prepared.get());
+    }
+
+    private void runPrepared(Dataset dataverseDataset) {
+        try {
+            task.run(dataverseDataset).get();
             writeEvent(TaskEvent.EventType.END_PROCESSING, TaskEvent.Result.OK, null);
         }
-        catch (RejectedDepositException e) {
+        catch (Exception e) {
+            writeEndProcessingFailure(e);
+        }
+    }
+
+    private CompletionStage<Void> startPrepared(Dataset dataverseDataset) {
+        String persistentId;
+        try {
+            persistentId = task.startIngest(dataverseDataset).get();
+        }
+        catch (Exception e) {
+            writeEndProcessingFailure(e);
+            return CompletableFuture.completedFuture(null);
+        }
+        return publicationAwaiter.await(persistentId, () -> (Boolean) task.isPublicationFinished(persistentId).get(), publicationTimeoutMs)
+            .handle((r, e) -> {
+                try {
+                    if (e == null) {
+                        task.finishIngest(persistentId).get();
+                    }
+                    else {
+                        task.failIngest(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e).get();
+                    }
+                    writeEvent(TaskEvent.EventType.END_PROCESSING, TaskEvent.Result.OK, null);
+                }
+                catch (Exception ex) {
+                    writeEndProcessingFailure(ex);
+                }
+                return null;
+            });
+    }
+
+    private void writeEndProcessingFailure(Exception e) {
+        if (e instanceof InterruptedDepositException) {
+            // Processing has not ended; the deposit is resumed from its inbox on the next run
+            log.info("Deposit {} interrupted; not writing an end of processing event", getDepositId(), e);
+        }
+        else if (e instanceof RejectedDepositException) {
             writeEvent(TaskEvent.EventType.END_PROCESSING, TaskEvent.Result.REJECTED, e.getMessage());
         }
-        catch (Exception e) { // Not necessarily a FailedDepositException !
+        else { // Not necessarily a FailedDepositException !
             writeEvent(TaskEvent.EventType.END_PROCESSING, TaskEvent.Result.FAILED, e.getMessage());
         }
     }
@@ -79,7 +216,7 @@ public class DepositImportTaskWrapper implements TargetedTask, Comparable<Deposi
         return created.compareTo(o.created);
     }
 
-    private static Instant getCreatedInstant(DepositIngestTask t) {
+    static Instant getCreatedInstant(DepositIngestTask t) {
         Bag bag;
         try {
             bag = t.deposit().tryBag().get();
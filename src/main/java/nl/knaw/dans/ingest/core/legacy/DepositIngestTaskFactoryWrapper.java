@@ -16,28 +16,41 @@
 package nl.knaw.dans.ingest.core.legacy;
 
 import better.files.File;
+import nl.knaw.dans.easy.dd2d.DepositCheckpointStore;
 import nl.knaw.dans.easy.dd2d.Deposit;
+import nl.knaw.dans.easy.dd2d.DepositIngestTask;
 import nl.knaw.dans.easy.dd2d.DepositIngestTaskFactory;
+import nl.knaw.dans.easy.dd2d.FileMutationExecutor;
+import nl.knaw.dans.easy.dd2d.HttpServiceClient;
+import nl.knaw.dans.easy.dd2d.MappingDefinitionsRegistry;
+import nl.knaw.dans.easy.dd2d.PersistentIdIndex;
+import nl.knaw.dans.easy.dd2d.StreamingFileUploader;
 import nl.knaw.dans.easy.dd2d.ZipFileHandler;
 import nl.knaw.dans.easy.dd2d.dansbag.DansBagValidator;
+import nl.knaw.dans.easy.dd2d.dansbag.ValidationResultCache;
 import nl.knaw.dans.easy.dd2d.migrationinfo.MigrationInfo;
 import nl.knaw.dans.easy.dd2d.migrationinfo.MigrationInfoConfig;
 import nl.knaw.dans.ingest.core.config.DataverseConfigScala;
 import nl.knaw.dans.ingest.core.config.HttpServiceConfig;
 import nl.knaw.dans.ingest.core.config.IngestFlowConfig;
+import nl.knaw.dans.ingest.core.sequencing.PreparationStage;
 import nl.knaw.dans.ingest.core.service.EventWriter;
+import nl.knaw.dans.ingest.core.service.MappingDefinitionsRegistryImpl;
+import nl.knaw.dans.ingest.core.service.PublicationAwaiter;
 import nl.knaw.dans.lib.dataverse.DataverseInstance;
 import nl.knaw.dans.lib.dataverse.DataverseInstanceConfig;
+import org.apache.http.client.HttpClient;
 import scala.Option;
-import scala.collection.immutable.List;
-import scala.collection.immutable.Map;
+import scala.collection.JavaConverters;
 import scala.runtime.BoxedUnit;
 import scala.util.Try;
-import scala.xml.Elem;
 
-import java.net.URI;
 import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 /**
  * Wraps the legacy Scala ingest task factory
@@ -46,80 +59,111 @@ public class DepositIngestTaskFactoryWrapper {
     private final DepositIngestTaskFactory factory;
     private final DataverseInstance dataverseInstance;
     private final DansBagValidator validator;
+    private final MigrationInfo migrationInfo;
+    private final ZipFileHandler zipFileHandler;
+    private final PublicationAwaiter publicationAwaiter;
+    private final long publicationTimeoutMs;
+    private final PreparationStage preparationStage;
 
+    /**
+     * @param collaborators the optional collaborators of the created tasks; see {@link Collaborators} for what is used when one is not set
+     */
     public DepositIngestTaskFactoryWrapper(
         boolean isMigration,
         IngestFlowConfig ingestFlowConfig,
         DataverseConfigScala dataverseConfigScala,
         HttpServiceConfig migrationInfoConfig,
-        HttpServiceConfig validationDansBagConfig) {
+        HttpServiceConfig validationDansBagConfig,
+        Collaborators collaborators) {
+        this.publicationAwaiter = collaborators.publicationAwaiter;
+        this.preparationStage = collaborators.preparationStage;
+        // The same total wait as the blocking implementation
+        this.publicationTimeoutMs = (long) dataverseConfigScala.getApi().getPublishAwaitUnlockMaxRetries() * dataverseConfigScala.getApi().getPublishAwaitUnlockWaitTimeMs();
 
-        dataverseInstance = new DataverseInstance(new DataverseInstanceConfig(
-            DepositIngestTaskFactory.appendSlash(dataverseConfigScala.getHttp().getBaseUrl()),
-            dataverseConfigScala.getApi().getApiKey(),
-            Option.apply(dataverseConfigScala.getApi().getUnblockKey()),
-            dataverseConfigScala.getHttp().getConnectionTimeoutMs(),
-            dataverseConfigScala.getHttp().getReadTimeoutMs(),
-            Integer.toString(dataverseConfigScala.getApi().getApiVersion()),
-            dataverseConfigScala.getApi().getAwaitUnlockMaxRetries(),
-            dataverseConfigScala.getApi().getAwaitUnlockWaitTimeMs()));
+        dataverseInstance = createDataverseInstance(dataverseConfigScala);
 
         validator = new DansBagValidator(
             DepositIngestTaskFactory.appendSlash(validationDansBagConfig.getBaseUrl()),
             validationDansBagConfig.getConnectionTimeoutMs(),
-            validationDansBagConfig.getReadTimeoutMs());
+            validationDansBagConfig.getReadTimeoutMs(),
+            Option.apply(collaborators.validationResultCache),
+            collaborators.httpClient);
 
-        final MigrationInfo migrationInfo = new MigrationInfo(
+        // Pre-staged files only exist for migrations
+        migrationInfo = new MigrationInfo(
             new MigrationInfoConfig(
                 DepositIngestTaskFactory.appendSlash(migrationInfoConfig.getBaseUrl()),
                 migrationInfoConfig.getConnectionTimeoutMs(),
                 migrationInfoConfig.getReadTimeoutMs()),
-            false // TODO: make configurable
+            isMigration && ingestFlowConfig.getPrestagedFiles().isEnabled(),
+            collaborators.httpClient,
+            Option.apply(collaborators.prestagedFilesPrefetch),
+            ingestFlowConfig.getPrestagedFiles().getMaxPrefetched()
         );
 
-        final Elem narcisClassification = DepositIngestTaskFactory.readXml(ingestFlowConfig.getMappingDefsDir().resolve("narcis_classification.xml").toFile());
-        final Map<String, String> iso1ToDataverseLanguage = getMap(ingestFlowConfig, "iso639-1-to-dv.csv", "ISO639-1", "Dataverse-language");
-        final Map<String, String> iso2ToDataverseLanguage = getMap(ingestFlowConfig, "iso639-2-to-dv.csv", "ISO639-2", "Dataverse-language");
-        final Map<String, String> reportIdToTerm = getMap(ingestFlowConfig, "ABR-reports.csv", "URI-suffix", "Term");
-        final Map<String, String> variantToLicense = getMap(ingestFlowConfig, "license-uri-variants.csv", "Variant", "Normalized");
-        final List<URI> supportedLicenses = getUriList(ingestFlowConfig, "supported-licenses.txt");
+        final StreamingFileUploader streamingFileUploader = ingestFlowConfig.isZipWrappingStreaming()
+            ? new StreamingFileUploader(
+            DepositIngestTaskFactory.appendSlash(dataverseConfigScala.getHttp().getBaseUrl()),
+            dataverseConfigScala.getApi().getApiKey(),
+            dataverseConfigScala.getHttp().getConnectionTimeoutMs(),
+            dataverseConfigScala.getHttp().getReadTimeoutMs())
+            : null;
+
+        zipFileHandler = new ZipFileHandler(File.apply(ingestFlowConfig.getZipWrappingTempDir()), ingestFlowConfig.getZipWrappingThreads(), Option.apply(streamingFileUploader));
+
+        final MappingDefinitionsRegistry mappingDefinitionsRegistry = collaborators.mappingDefinitions != null
+            ? collaborators.mappingDefinitions
+            : new MappingDefinitionsRegistryImpl(ingestFlowConfig.getMappingDefsDir(), dataverseInstance, false, ingestFlowConfig.getMappingDefs().getActiveMetadataBlocksRefreshInterval());
 
         factory = new DepositIngestTaskFactory(
             isMigration,
             Option.apply(Pattern.compile(ingestFlowConfig.getFileExclusionPattern())),
-            new ZipFileHandler(File.apply(ingestFlowConfig.getZipWrappingTempDir())),
+            zipFileHandler,
             ingestFlowConfig.getDepositorRole(),
             false,
             ingestFlowConfig.isDeduplicate(),
-            DepositIngestTaskFactory.getActiveMetadataBlocks(dataverseInstance).get(),
             Option.apply(validator),
             dataverseInstance,
             Option.apply(migrationInfo),
             dataverseConfigScala.getApi().getPublishAwaitUnlockMaxRetries(),
             dataverseConfigScala.getApi().getPublishAwaitUnlockWaitTimeMs(),
-            narcisClassification,
-            iso1ToDataverseLanguage,
-            iso2ToDataverseLanguage,
-            variantToLicense,
-            supportedLicenses,
-            reportIdToTerm);
+            mappingDefinitionsRegistry,
+            Option.apply(collaborators.dataverseEditPermits),
+            Option.apply(collaborators.checkpointStore),
+            collaborators.fileMutationExecutor,
+            Option.apply(collaborators.persistentIdIndex));
     }
 
-    private Map<String, String> getMap(IngestFlowConfig ingestFlowConfig, String mappingCsv, String keyColumn, String valueColumn) {
-        return DepositIngestTaskFactory
-            .loadCsvToMap(File.apply(ingestFlowConfig.getMappingDefsDir().resolve(mappingCsv)),
-                keyColumn,
-                valueColumn).get();
+    public static DataverseInstance createDataverseInstance(DataverseConfigScala dataverseConfigScala) {
+        return new DataverseInstance(new DataverseInstanceConfig(
+            DepositIngestTaskFactory.appendSlash(dataverseConfigScala.getHttp().getBaseUrl()),
+            dataverseConfigScala.getApi().getApiKey(),
+            Option.apply(dataverseConfigScala.getApi().getUnblockKey()),
+            dataverseConfigScala.getHttp().getConnectionTimeoutMs(),
+            dataverseConfigScala.getHttp().getReadTimeoutMs(),
+            Integer.toString(dataverseConfigScala.getApi().getApiVersion()),
+            dataverseConfigScala.getApi().getAwaitUnlockMaxRetries(),
+            dataverseConfigScala.getApi().getAwaitUnlockWaitTimeMs()));
     }
 
-    private List<URI> getUriList(IngestFlowConfig ingestFlowConfig, String listFile) {
-        return DepositIngestTaskFactory
-            .loadTxtToUriList(File.apply(ingestFlowConfig.getMappingDefsDir().resolve(listFile)))
-            .get();
+    public DepositImportTaskWrapper createIngestTask(Path depositDir, Path outboxDir, EventWriter eventWriter) {
+        DepositIngestTask task = factory.createDepositIngestTask(new Deposit(File.apply(depositDir)), File.apply(outboxDir));
+        return new DepositImportTaskWrapper(task, DepositImportTaskWrapper.getCreatedInstant(task), eventWriter, publicationAwaiter, publicationTimeoutMs, preparationStage);
     }
 
-    public DepositImportTaskWrapper createIngestTask(Path depositDir, Path outboxDir, EventWriter eventWriter) {
-        return new DepositImportTaskWrapper(factory.createDepositIngestTask(new Deposit(File.apply(depositDir)), File.apply(outboxDir)), eventWriter);
+    public DepositImportTaskWrapper createIngestTask(Path depositDir, Path outboxDir, EventWriter eventWriter, Instant created) {
+        return new DepositImportTaskWrapper(factory.createDepositIngestTask(new Deposit(File.apply(depositDir)), File.apply(outboxDir)), created, eventWriter, publicationAwaiter, publicationTimeoutMs,
+            preparationStage);
+    }
+
+    /**
+     * Starts prefetching the basic file metas of pre-staged files for a batch of deposits, if pre-staged files are used and prefetching is enabled.
+     *
+     * @param depositDirs the deposit directories, in the order in which they will be processed
+     */
+    public void prefetchForBatch(java.util.List<Path> depositDirs) {
+        final java.util.List<File> dirs = depositDirs.stream().map(dir -> File.apply(dir)).collect(Collectors.toList());
+        migrationInfo.prefetchForBatch(JavaConverters.asScalaBufferConverter(dirs).asScala().toList());
     }
 
     public DataverseInstance getDataverseInstance() {
@@ -129,4 +173,136 @@ public class DepositIngestTaskFactoryWrapper {
     public DansBagValidator getDansBagValidatorInstance() {
         return validator;
     }
+
+    public ZipFileHandler getZipFileHandler() {
+        return zipFileHandler;
+    }
+
+    /**
+     * The optional collaborators of the created tasks. Each one that is not set is left out, as described with its <code>with</code>-method. Instances are
+     * immutable, so that one can be shared as the basis of the collaborators of several factories.
+     */
+    public static final class Collaborators {
+        private PublicationAwaiter publicationAwaiter;
+        private Semaphore dataverseEditPermits;
+        private PreparationStage preparationStage;
+        private ValidationResultCache validationResultCache;
+        private HttpClient httpClient = HttpServiceClient.defaultHttpClient();
+        private ExecutorService prestagedFilesPrefetch;
+        private DepositCheckpointStore checkpointStore;
+        private PersistentIdIndex persistentIdIndex;
+        private MappingDefinitionsRegistry mappingDefinitions;
+        private FileMutationExecutor fileMutationExecutor = FileMutationExecutor.sequential();
+
+        public Collaborators() {
+        }
+
+        private Collaborators(Collaborators other) {
+            publicationAwaiter = other.publicationAwaiter;
+            dataverseEditPermits = other.dataverseEditPermits;
+            preparationStage = other.preparationStage;
+            validationResultCache = other.validationResultCache;
+            httpClient = other.httpClient;
+            prestagedFilesPrefetch = other.prestagedFilesPrefetch;
+            checkpointStore = other.checkpointStore;
+            persistentIdIndex = other.persistentIdIndex;
+            mappingDefinitions = other.mappingDefinitions;
+            fileMutationExecutor = other.fileMutationExecutor;
+        }
+
+        /**
+         * @param publicationAwaiter the awaiter that the created tasks hand the wait for publication over to; without it they wait on their own thread
+         */
+        public Collaborators withPublicationAwaiter(PublicationAwaiter publicationAwaiter) {
+            final Collaborators copy = new Collaborators(this);
+            copy.publicationAwaiter = publicationAwaiter;
+            return copy;
+        }
+
+        /**
+         * @param dataverseEditPermits the permits that the created tasks must acquire before editing a dataset in Dataverse; without them there is no limit
+         *                             other than the number of task threads
+         */
+        public Collaborators withDataverseEditPermits(Semaphore dataverseEditPermits) {
+            final Collaborators copy = new Collaborators(this);
+            copy.dataverseEditPermits = dataverseEditPermits;
+            return copy;
+        }
+
+        /**
+         * @param preparationStage the stage that the created tasks are checked, validated and mapped in ahead of earlier tasks; without it this is done when
+         *                         they start
+         */
+        public Collaborators withPreparationStage(PreparationStage preparationStage) {
+            final Collaborators copy = new Collaborators(this);
+            copy.preparationStage = preparationStage;
+            return copy;
+        }
+
+        /**
+         * @param validationResultCache the store of earlier validation results; without it the validation service is always called
+         */
+        public Collaborators withValidationResultCache(ValidationResultCache validationResultCache) {
+            final Collaborators copy = new Collaborators(this);
+            copy.validationResultCache = validationResultCache;
+            return copy;
+        }
+
+        /**
+         * @param httpClient the pooled client for the calls to the DANS bag validator and the migration-info service; without it a default client is used
+         */
+        public Collaborators withHttpClient(HttpClient httpClient) {
+            final Collaborators copy = new Collaborators(this);
+            copy.httpClient = httpClient;
+            return copy;
+        }
+
+        /**
+         * @param prestagedFilesPrefetch the executor to prefetch the basic file metas of pre-staged files on; without it they are only retrieved when needed
+         */
+        public Collaborators withPrestagedFilesPrefetch(ExecutorService prestagedFilesPrefetch) {
+            final Collaborators copy = new Collaborators(this);
+            copy.prestagedFilesPrefetch = prestagedFilesPrefetch;
+            return copy;
+        }
+
+        /**
+         * @param checkpointStore the store in which the created tasks record the stages they complete; without it a deposit is always started from the
+         *                        beginning
+         */
+        public Collaborators withCheckpointStore(DepositCheckpointStore checkpointStore) {
+            final Collaborators copy = new Collaborators(this);
+            copy.checkpointStore = checkpointStore;
+            return copy;
+        }
+
+        /**
+         * @param persistentIdIndex the local index in which the created tasks record the datasets they ingest and look up the datasets they update; without
+         *                          it these are always looked up with a search in Dataverse
+         */
+        public Collaborators withPersistentIdIndex(PersistentIdIndex persistentIdIndex) {
+            final Collaborators copy = new Collaborators(this);
+            copy.persistentIdIndex = persistentIdIndex;
+            return copy;
+        }
+
+        /**
+         * @param mappingDefinitions the registry of mapping definitions shared by all factories; without it the definitions are loaded for this factory only,
+         *                           and not reloaded
+         */
+        public Collaborators withMappingDefinitions(MappingDefinitionsRegistry mappingDefinitions) {
+            final Collaborators copy = new Collaborators(this);
+            copy.mappingDefinitions = mappingDefinitions;
+            return copy;
+        }
+
+        /**
+         * @param fileMutationExecutor performs the file deletions and replacements of updates; without it they are performed one by one
+         */
+        public Collaborators withFileMutationExecutor(FileMutationExecutor fileMutationExecutor) {
+            final Collaborators copy = new Collaborators(this);
+            copy.fileMutationExecutor = fileMutationExecutor;
+            return copy;
+        }
+    }
 }
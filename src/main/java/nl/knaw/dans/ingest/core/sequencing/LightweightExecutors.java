@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.sequencing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the executor for {@link nl.knaw.dans.ingest.core.config.TaskExecutionMode#LIGHTWEIGHT}: one virtual thread per task if the JVM supports virtual
+ * threads, otherwise a pool of platform threads that is created on demand and shrinks when idle.
+ */
+public final class LightweightExecutors {
+    private static final Logger log = LoggerFactory.getLogger(LightweightExecutors.class);
+
+    private LightweightExecutors() {
+    }
+
+    /**
+     * @param fallbackThreads the maximum number of platform threads to use if virtual threads are not available
+     * @param nameFormat      the name format of the platform threads, with one <code>%d</code> for the thread number
+     * @return the executor
+     */
+    public static ExecutorService create(int fallbackThreads, String nameFormat) {
+        try {
+            // Looked up at runtime, so that the service still runs on a JVM without virtual threads
+            Method newVirtualThreadPerTaskExecutor = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            log.info("Running ingest tasks on virtual threads");
+            return (ExecutorService) newVirtualThreadPerTaskExecutor.invoke(null);
+        }
+        catch (NoSuchMethodException e) {
+            log.warn("Virtual threads are not available on this JVM; running ingest tasks on at most {} platform threads", fallbackThreads);
+        }
+        catch (ReflectiveOperationException e) {
+            log.warn("Could not create virtual thread executor; running ingest tasks on at most {} platform threads", fallbackThreads, e);
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(fallbackThreads, fallbackThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, String.format(nameFormat, threadNumber.getAndIncrement()));
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.sequencing;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Runs the part of tasks that does not depend on earlier tasks for the same target ahead of them, with its own threads. The results are kept until the tasks
+ * start. To bound the memory this takes, only a limited number of tasks is prepared ahead; the others have to prepare themselves when they start.
+ */
+public class PreparationStage {
+    private final Executor preparationExecutor;
+    private final Executor continuationExecutor;
+    private final Semaphore aheadPermits;
+
+    /**
+     * @param preparationExecutor  the executor to prepare the tasks on
+     * @param continuationExecutor the executor to continue tasks on that were started before their preparation was finished
+     * @param maxPreparedAhead     the maximum number of tasks that are prepared, or being prepared, and not yet started
+     */
+    public PreparationStage(Executor preparationExecutor, Executor continuationExecutor, int maxPreparedAhead) {
+        this.preparationExecutor = preparationExecutor;
+        this.continuationExecutor = continuationExecutor;
+        this.aheadPermits = new Semaphore(maxPreparedAhead);
+    }
+
+    /**
+     * Starts the preparation of a task, if the maximum number of tasks prepared ahead has not been reached.
+     *
+     * @param preparation the preparation
+     * @param <T>         the type of the result of the preparation
+     * @return the future result, to pass to {@link #continueWith(CompletableFuture, Function)} when the task starts, or <code>null</code> if the task must
+     * prepare itself
+     */
+    public <T> CompletableFuture<T> prepareAhead(Supplier<T> preparation) {
+        if (!aheadPermits.tryAcquire()) {
+            return null;
+        }
+        try {
+            return CompletableFuture.supplyAsync(preparation, preparationExecutor);
+        }
+        catch (RejectedExecutionException e) {
+            aheadPermits.release();
+            return null;
+        }
+    }
+
+    /**
+     * Continues a started task with the result of its preparation. If the preparation is finished, the continuation runs on the calling thread; otherwise it
+     * runs on the continuation executor when the preparation is finished, so that the preparation threads are kept free for preparing.
+     *
+     * @param prepared     the result of {@link #prepareAhead(Supplier)}
+     * @param continuation the rest of the task
+     * @param <T>          the type of the result of the preparation
+     * @param <R>          the type of the result of the task
+     * @return the result of the task
+     */
+    public <T, R> CompletionStage<R> continueWith(CompletableFuture<T> prepared, Function<T, CompletionStage<R>> continuation) {
+        CompletableFuture<T> consumed = prepared.whenComplete((r, e) -> aheadPermits.release());
+        if (consumed.isDone()) {
+            return consumed.thenCompose(continuation);
+        }
+        return consumed.thenComposeAsync(continuation, continuationExecutor);
+    }
+
+    public int getNumberOfAvailablePermits() {
+        return aheadPermits.availablePermits();
+    }
+}
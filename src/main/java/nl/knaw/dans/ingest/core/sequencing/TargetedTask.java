@@ -17,9 +17,30 @@ package nl.knaw.dans.ingest.core.sequencing;
 
 import nl.knaw.dans.ingest.core.TaskEvent;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
 public interface TargetedTask extends Runnable {
 
     String getTarget();
 
     void writeEvent(TaskEvent.EventType eventType, TaskEvent.Result result, String message);
+
+    /**
+     * Called when the task is scheduled, before it waits for earlier tasks for the same target. Work that does not depend on those tasks can be started
+     * here. The default implementation does nothing.
+     */
+    default void onScheduled() {
+    }
+
+    /**
+     * Starts the task. A task that has to wait for an external process may return before it is done, with a stage that completes when it is. The next
+     * task for the same target is not started before that. The default implementation runs the task to completion on the calling thread.
+     *
+     * @return a stage that completes when the task is done
+     */
+    default CompletionStage<Void> start() {
+        run();
+        return CompletableFuture.completedFuture(null);
+    }
 }
@@ -18,41 +18,92 @@ package nl.knaw.dans.ingest.core.sequencing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Manages the process of ingesting deposits in the correct order by ensuring that deposits that target the same dataset are not concurrently scheduled on different threads. If an unfinished deposit
  * for the same dataset is still present, the next deposit for that dataset will be queued on the same thread, ensuring that it cannot overtake the already processing deposit.
+ *
+ * The hand-off between the enqueuing threads and a sequencer that is finishing its last task is done atomically per target, using the per-key locking of
+ * {@link ConcurrentHashMap#compute}, so that tasks for unrelated targets never block each other.
  */
 public class TargetedTaskSequenceManager {
     private static final Logger log = LoggerFactory.getLogger(TargetedTaskSequenceManager.class);
-    private final LinkedHashMap<String, TargetedTaskSequencer> sequencers = new LinkedHashMap<>();
+    private final ConcurrentHashMap<String, TargetedTaskSequencer> sequencers = new ConcurrentHashMap<>();
     private final ExecutorService executorService;
 
     public TargetedTaskSequenceManager(ExecutorService executorService) {
         this.executorService = executorService;
     }
 
-    public synchronized void scheduleTask(TargetedTask targetedTask) {
+    public void scheduleTask(TargetedTask targetedTask) {
         log.trace("Scheduling targeted task {}", targetedTask);
-        // TODO: Use Is-Version-Of in autoIngest service (DOI is not available there)
-        TargetedTaskSequencer sequencer = sequencers.get(targetedTask.getTarget());
-        if (sequencer == null) {
-            log.debug("Creating NEW sequencer for target {}", targetedTask.getTarget());
-            sequencer = new TargetedTaskSequencer(this, targetedTask);
-            sequencers.put(targetedTask.getTarget(), sequencer);
+        targetedTask.onScheduled();
+        String target = targetedTask.getTarget();
+        AtomicBoolean created = new AtomicBoolean(false);
+        TargetedTaskSequencer sequencer = sequencers.compute(target, (t, existing) -> {
+            if (existing == null) {
+                log.debug("Creating NEW sequencer for target {}", t);
+                created.set(true);
+                return new TargetedTaskSequencer(this, targetedTask);
+            }
+            log.debug("Using EXISTING sequencer for target {}", t);
+            existing.enqueue(targetedTask);
+            return existing;
+        });
+        if (created.get()) {
+            try {
+                executorService.execute(sequencer);
+            }
+            catch (RejectedExecutionException e) {
+                sequencers.remove(target, sequencer);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Takes the next task from the queue of the sequencer. If there is none, the sequencer is removed, so that the next task for its target will start a new
+     * sequencer. Both happen atomically with respect to {@link #scheduleTask(TargetedTask)} for the same target.
+     *
+     * @param sequencer the sequencer asking for its next task
+     * @return the next task, or <code>null</code> if the sequencer has been removed
+     */
+    TargetedTask nextTaskOrRemove(TargetedTaskSequencer sequencer) {
+        TargetedTask[] next = new TargetedTask[1];
+        sequencers.computeIfPresent(sequencer.getTarget(), (t, s) -> {
+            if (s != sequencer) {
+                return s;
+            }
+            next[0] = s.poll();
+            if (next[0] == null) {
+                log.trace("Removing sequencer for target {}", t);
+                return null;
+            }
+            return s;
+        });
+        return next[0];
+    }
+
+    /**
+     * Resubmits a sequencer of which the current task has completed asynchronously, so that it continues with the next task for its target.
+     *
+     * @param sequencer the sequencer to resume
+     */
+    void resume(TargetedTaskSequencer sequencer) {
+        log.trace("Resuming sequencer for target {}", sequencer.getTarget());
+        try {
             executorService.execute(sequencer);
         }
-        else {
-            log.debug("Using EXISTING sequencer for target {}", targetedTask.getTarget());
-            sequencer.enqueue(targetedTask);
+        catch (RejectedExecutionException e) {
+            log.error("Could not resume sequencer for target {}; remaining tasks for this target will not be processed", sequencer.getTarget(), e);
         }
     }
 
-    synchronized void removeSequencer(TargetedTaskSequencer sequencer) {
-        log.trace("Removing sequencer for target {}", sequencer.getTarget());
-        sequencers.remove(sequencer.getTarget());
+    int getNumberOfActiveSequencers() {
+        return sequencers.size();
     }
-
 }
@@ -19,6 +19,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedDeque;
 
 class TargetedTaskSequencer implements Runnable {
@@ -26,6 +27,8 @@ class TargetedTaskSequencer implements Runnable {
     private final Queue<TargetedTask> localQueue = new ConcurrentLinkedDeque<>();
     private final TargetedTaskSequenceManager targetedTaskSequenceManager;
     private final String target;
+    // Set while a task is waiting to complete; the next run must then continue with the task after it
+    private volatile boolean resuming = false;
 
     public TargetedTaskSequencer(TargetedTaskSequenceManager targetedTaskSequenceManager, TargetedTask task) {
         this.targetedTaskSequenceManager = targetedTaskSequenceManager;
@@ -33,7 +36,7 @@ class TargetedTaskSequencer implements Runnable {
         enqueue(task);
     }
 
-    public synchronized void enqueue(TargetedTask task) {
+    public void enqueue(TargetedTask task) {
         log.debug("Adding task {} to sequencer queue", task);
         if (task.getTarget().equals(target)) {
             localQueue.add(task);
@@ -47,25 +50,48 @@ class TargetedTaskSequencer implements Runnable {
         return target;
     }
 
+    TargetedTask poll() {
+        return localQueue.poll();
+    }
+
     @Override
     public void run() {
-        TargetedTask task = localQueue.poll();
+        TargetedTask task = resuming ? getNextTask() : localQueue.poll();
+        resuming = false;
 
         while (task != null) {
             log.debug("Processing task {}", task);
-            task.run();
+            CompletableFuture<Void> completion;
+            try {
+                completion = task.start().toCompletableFuture();
+            }
+            catch (RuntimeException e) {
+                // Keep going, otherwise the sequencer is never removed and no further tasks for this target are processed
+                log.error("Task {} failed", task, e);
+                completion = CompletableFuture.completedFuture(null);
+            }
+            if (!completion.isDone()) {
+                // Free the thread; the sequencer keeps its target until the task completes and is then resubmitted
+                log.debug("Task {} is waiting; suspending sequencer for target {}", task, target);
+                resuming = true;
+                TargetedTask waitingTask = task;
+                completion.whenComplete((r, e) -> {
+                    if (e != null) {
+                        log.error("Task {} failed", waitingTask, e);
+                    }
+                    targetedTaskSequenceManager.resume(this);
+                });
+                return;
+            }
             task = getNextTask();
         }
     }
 
     private TargetedTask getNextTask() {
-        synchronized (targetedTaskSequenceManager) {
-            TargetedTask task = localQueue.poll();
-            if (task == null) {
-                log.debug("No more tasks on sequencer queue. Removing sequencer for target {}", target);
-                targetedTaskSequenceManager.removeSequencer(this);
-            }
-            return task;
+        TargetedTask task = targetedTaskSequenceManager.nextTaskOrRemove(this);
+        if (task == null) {
+            log.debug("No more tasks on sequencer queue. Removed sequencer for target {}", target);
         }
+        return task;
     }
 }
@@ -23,12 +23,21 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+/**
+ * Iterates over the deposits in an inbox in the order of their <code>Created</code> timestamp. Only a compact {@link DepositLocation} is kept for each deposit that is
+ * waiting to be handed out; the ingest task itself is created when it is requested with {@link #next()}.
+ */
 public abstract class AbstractDepositsImportTaskIterator implements Iterator<DepositImportTaskWrapper>  {
     private static final Logger log = LoggerFactory.getLogger(AbstractDepositsImportTaskIterator.class);
-    private final LinkedBlockingDeque<DepositImportTaskWrapper> deque = new LinkedBlockingDeque<>();
+    private final LinkedBlockingDeque<DepositLocation> deque = new LinkedBlockingDeque<>();
     private final Path inboxDir;
     private final Path outBox;
     private final DepositIngestTaskFactoryWrapper taskFactory;
@@ -43,10 +52,11 @@ public abstract class AbstractDepositsImportTaskIterator implements Iterator<Dep
     }
 
     protected boolean readAllDepositsFromInbox() {
-        try {
-            Files.list(inboxDir)
-                .map(d -> taskFactory.createIngestTask(d, outBox, eventWriter))
+        try (Stream<Path> depositDirs = Files.list(inboxDir)) {
+            depositDirs
+                .map(DepositLocation::readFrom)
                 .sorted().forEach(deque::add);
+            log.debug("Found {} deposits in inbox {}", deque.size(), inboxDir);
             return !deque.isEmpty();
         }
         catch (IOException e) {
@@ -54,8 +64,41 @@ public abstract class AbstractDepositsImportTaskIterator implements Iterator<Dep
         }
     }
 
+    /**
+     * Adds the given deposits to the queue, in the order of their <code>Created</code> timestamp. Deposits whose <code>Created</code> timestamp cannot be read are
+     * logged and skipped.
+     *
+     * @param dirs the deposit directories
+     */
+    protected void addDepositsInOrder(Collection<Path> dirs) {
+        dirs.stream()
+            .map(this::readLocation)
+            .filter(Objects::nonNull)
+            .sorted().forEach(deque::add);
+    }
+
+    /**
+     * @return the directories of the deposits that are waiting to be handed out, in the order in which they will be handed out
+     */
+    protected List<Path> getQueuedDepositDirs() {
+        return deque.stream().map(DepositLocation::getDir).collect(Collectors.toList());
+    }
+
     protected void addTaskForDeposit(Path dir) {
-        deque.add(taskFactory.createIngestTask(dir, outBox, eventWriter));
+        DepositLocation location = readLocation(dir);
+        if (location != null) {
+            deque.add(location);
+        }
+    }
+
+    private DepositLocation readLocation(Path dir) {
+        try {
+            return DepositLocation.readFrom(dir);
+        }
+        catch (RuntimeException e) {
+            log.error("Could not add deposit {} to the queue", dir, e);
+            return null;
+        }
     }
 
     @Override
@@ -66,7 +109,8 @@ public abstract class AbstractDepositsImportTaskIterator implements Iterator<Dep
     @Override
     public DepositImportTaskWrapper next() {
         try {
-            return deque.take();
+            DepositLocation location = deque.take();
+            return taskFactory.createIngestTask(location.getDir(), outBox, eventWriter, location.getCreated());
         }
         catch (InterruptedException e) {
             log.warn("Deque threw error", e);
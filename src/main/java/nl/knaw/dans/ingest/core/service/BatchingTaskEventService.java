@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import io.dropwizard.lifecycle.Managed;
+import nl.knaw.dans.ingest.core.TaskEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes task events asynchronously. Events are put on a bounded queue and written by a background thread in batches, as soon as <code>batchSize</code> events
+ * are waiting or the oldest waiting event is <code>maxDelayMs</code> old. If the queue is full, callers block until there is room again. When the service is stopped,
+ * all waiting events are written before {@link #stop()} returns. While the service is not running, or if the writer thread has ended unexpectedly, events are written
+ * synchronously.
+ */
+public class BatchingTaskEventService implements TaskEventService, Managed {
+    private static final Logger log = LoggerFactory.getLogger(BatchingTaskEventService.class);
+
+    private final TaskEventServiceImpl delegate;
+    private final BlockingQueue<TaskEvent> queue;
+    private final int batchSize;
+    private final long maxDelayMs;
+    private Thread writerThread;
+    private volatile boolean running = false;
+    private volatile boolean writerAlive = false;
+
+    public BatchingTaskEventService(TaskEventServiceImpl delegate, int queueSize, int batchSize, long maxDelayMs) {
+        this.delegate = delegate;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.batchSize = batchSize;
+        this.maxDelayMs = maxDelayMs;
+    }
+
+    @Override
+    public void writeEvent(String batch, UUID depositId, TaskEvent.EventType eventType, TaskEvent.Result result, String message) {
+        TaskEvent taskEvent = new TaskEvent(batch, OffsetDateTime.now(), depositId, eventType, result, message);
+        try {
+            // Not a plain put, so that a full queue cannot block the caller forever when the writer thread is gone
+            while (running && writerAlive) {
+                if (queue.offer(taskEvent, maxDelayMs, TimeUnit.MILLISECONDS)) {
+                    if (!writerAlive) {
+                        writeQueued();
+                    }
+                    return;
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        write(Collections.singletonList(taskEvent));
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        writerAlive = true;
+        writerThread = new Thread(this::writeLoop, "task-event-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @Override
+    public void stop() throws InterruptedException {
+        running = false;
+        writerThread.join();
+        // Events that were put on the queue while the writer thread was finishing
+        writeQueued();
+    }
+
+    private void writeQueued() {
+        List<TaskEvent> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        write(remaining);
+    }
+
+    private void writeLoop() {
+        List<TaskEvent> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                TaskEvent first = queue.poll(maxDelayMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remainingNanos = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remainingNanos <= 0 || !running) {
+                        break;
+                    }
+                    TaskEvent next = queue.poll(remainingNanos, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                write(batch);
+                batch.clear();
+            }
+            catch (InterruptedException e) {
+                log.warn("Task event writer interrupted; writing task events synchronously from now on");
+                writerAlive = false;
+                write(batch);
+                writeQueued();
+                return;
+            }
+        }
+        writerAlive = false;
+    }
+
+    private void write(List<TaskEvent> taskEvents) {
+        if (taskEvents.isEmpty()) {
+            return;
+        }
+        log.trace("Writing {} task events", taskEvents.size());
+        try {
+            delegate.writeEvents(new ArrayList<>(taskEvents));
+        }
+        catch (RuntimeException e) {
+            log.error("Could not write {} task events", taskEvents.size(), e);
+            for (TaskEvent taskEvent : taskEvents) {
+                log.error("Lost task event: source = {}, depositId = {}, eventType = {}, result = {}, message = {}",
+                    taskEvent.getSource(), taskEvent.getDepositId(), taskEvent.getEvenType(), taskEvent.getResult(), taskEvent.getMessage());
+            }
+        }
+    }
+}
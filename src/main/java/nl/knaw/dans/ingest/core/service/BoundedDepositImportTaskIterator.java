@@ -24,5 +24,6 @@ public class BoundedDepositImportTaskIterator extends  AbstractDepositsImportTas
         EventWriter eventWriter) {
         super(inboxDir, outBox, taskFactory, eventWriter);
         readAllDepositsFromInbox();
+        taskFactory.prefetchForBatch(getQueuedDepositDirs());
     }
 }
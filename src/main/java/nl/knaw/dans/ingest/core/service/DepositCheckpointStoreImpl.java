@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import io.dropwizard.hibernate.UnitOfWork;
+import nl.knaw.dans.easy.dd2d.DepositCheckpoint;
+import nl.knaw.dans.easy.dd2d.DepositCheckpointStore;
+import nl.knaw.dans.ingest.core.DepositCheckpointEntry;
+import nl.knaw.dans.ingest.db.DepositCheckpointDAO;
+import scala.Option;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Stores the checkpoints of the deposits in progress in the task event database, so that they survive a restart of the service.
+ */
+public class DepositCheckpointStoreImpl implements DepositCheckpointStore {
+    private final DepositCheckpointDAO depositCheckpointDAO;
+
+    public DepositCheckpointStoreImpl(DepositCheckpointDAO depositCheckpointDAO) {
+        this.depositCheckpointDAO = depositCheckpointDAO;
+    }
+
+    @Override
+    @UnitOfWork
+    public Option<DepositCheckpoint> get(String depositId) {
+        return Option.apply(depositCheckpointDAO.get(depositId)
+            .map(e -> new DepositCheckpoint(e.getStage(), Option.apply(e.getPersistentId())))
+            .orElse(null));
+    }
+
+    @Override
+    @UnitOfWork
+    public void put(String depositId, DepositCheckpoint checkpoint) {
+        String persistentId = checkpoint.persistentId().isDefined() ? checkpoint.persistentId().get() : null;
+        depositCheckpointDAO.save(new DepositCheckpointEntry(depositId, checkpoint.stage(), persistentId, OffsetDateTime.now()));
+    }
+
+    @Override
+    @UnitOfWork
+    public void remove(String depositId) {
+        depositCheckpointDAO.delete(depositId);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compact record of a deposit directory in an inbox and the <code>Created</code> timestamp from its <code>bag-info.txt</code>. Used to sort the deposits in an inbox
+ * without having to read the complete bag of each deposit. The <code>bag-info.txt</code> is read directly, so that the deposit and its bag are only fully loaded when
+ * the ingest task is actually created.
+ */
+public class DepositLocation implements Comparable<DepositLocation> {
+    private static final String CREATED = "Created";
+
+    private final Path dir;
+    private final Instant created;
+
+    public DepositLocation(Path dir, Instant created) {
+        this.dir = dir;
+        this.created = created;
+    }
+
+    /**
+     * Reads the <code>Created</code> timestamp from the <code>bag-info.txt</code> of the bag in the deposit directory.
+     *
+     * @param depositDir the deposit directory
+     * @return the deposit location
+     * @throws IllegalArgumentException if the bag-info.txt cannot be found or does not contain exactly one Created element
+     */
+    public static DepositLocation readFrom(Path depositDir) {
+        Path bagInfo = findBagDir(depositDir).resolve("bag-info.txt");
+        if (!Files.isRegularFile(bagInfo)) {
+            throw new IllegalArgumentException("bag-info.txt not found in bag; deposit = " + depositDir);
+        }
+        List<String> createdValues = readValues(bagInfo, CREATED);
+        if (createdValues.isEmpty()) {
+            throw new IllegalArgumentException("No Created value found in bag; deposit = " + depositDir);
+        }
+        if (createdValues.size() != 1) {
+            throw new IllegalArgumentException("There should be exactly one Created value; found " + createdValues.size() + "; deposit = " + depositDir);
+        }
+        return new DepositLocation(depositDir, OffsetDateTime.parse(createdValues.get(0)).toInstant());
+    }
+
+    private static Path findBagDir(Path depositDir) {
+        try (Stream<Path> files = Files.list(depositDir)) {
+            List<Path> subdirs = files.filter(Files::isDirectory).collect(Collectors.toList());
+            if (subdirs.size() != 1) {
+                throw new IllegalArgumentException(depositDir + " has more or fewer than one subdirectory");
+            }
+            return subdirs.get(0);
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException("Unable to find bag; deposit = " + depositDir, e);
+        }
+    }
+
+    /*
+     * Minimal bag-info.txt parser: "Label: value" lines, where a line starting with whitespace continues the value of the previous line.
+     */
+    private static List<String> readValues(Path bagInfo, String label) {
+        List<String> values = new ArrayList<>();
+        StringBuilder current = null;
+        try {
+            for (String line : Files.readAllLines(bagInfo, StandardCharsets.UTF_8)) {
+                if (!line.isEmpty() && Character.isWhitespace(line.charAt(0))) {
+                    if (current != null) {
+                        current.append(' ').append(line.trim());
+                    }
+                    continue;
+                }
+                if (current != null) {
+                    values.add(current.toString());
+                    current = null;
+                }
+                int colon = line.indexOf(':');
+                if (colon > 0 && line.substring(0, colon).trim().equals(label)) {
+                    current = new StringBuilder(line.substring(colon + 1).trim());
+                }
+            }
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException("Unable to read " + bagInfo, e);
+        }
+        if (current != null) {
+            values.add(current.toString());
+        }
+        return values;
+    }
+
+    public Path getDir() {
+        return dir;
+    }
+
+    public Instant getCreated() {
+        return created;
+    }
+
+    @Override
+    public int compareTo(DepositLocation o) {
+        int result = created.compareTo(o.created);
+        return result != 0 ? result : dir.compareTo(o.dir);
+    }
+
+    @Override
+    public String toString() {
+        return "DepositLocation{" +
+            "dir=" + dir +
+            ", created=" + created +
+            '}';
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import nl.knaw.dans.ingest.core.config.InboxWatchMode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Watches an inbox for new deposit directories. By default, file system events are used, so that an idle inbox costs nothing, no matter how many deposits it contains.
+ * For network file systems, which do not reliably deliver events, the inbox is polled instead.
+ *
+ * A new directory is only reported when it looks like a complete deposit: it contains a <code>deposit.properties</code> file and exactly one bag directory with
+ * <code>bagit.txt</code> and <code>bag-info.txt</code>, and nothing in it has been modified for at least the quiet period. To have a deposit picked up without waiting
+ * for the quiet period, move it into the inbox in one step, e.g. with <code>mv</code> from a directory on the same file system, and set the quiet period to 0.
+ * Directories that are not complete yet are kept as pending and checked again every polling interval. A directory that has not become complete, nor changed, during the
+ * maximum pending time is reported anyway, so that processing rejects or fails it with a reason instead of it being ignored silently.
+ */
+public class InboxWatcher implements Runnable {
+    private static final Logger log = LoggerFactory.getLogger(InboxWatcher.class);
+    private static final List<String> NETWORK_FILE_SYSTEM_TYPES = Arrays.asList("nfs", "cifs", "smb", "fuse");
+
+    private final Path inbox;
+    private final long pollingIntervalMs;
+    private final long quietPeriodMs;
+    private final long maxPendingMs;
+    private final Consumer<Path> onNewDeposit;
+    private final Set<Path> seen = new HashSet<>();
+    private final Map<Path, Long> pending = new LinkedHashMap<>(); // directory -> time it was first seen
+    private boolean polling;
+    private WatchService watchService;
+    private Thread thread;
+    private volatile boolean keepRunning = true;
+
+    public InboxWatcher(Path inbox, InboxWatchMode mode, long pollingIntervalMs, long quietPeriodMs, long maxPendingMs, Consumer<Path> onNewDeposit) {
+        this.inbox = inbox;
+        this.pollingIntervalMs = pollingIntervalMs;
+        this.quietPeriodMs = quietPeriodMs;
+        this.maxPendingMs = maxPendingMs;
+        this.onNewDeposit = onNewDeposit;
+        this.polling = mode == InboxWatchMode.POLLING || (mode == InboxWatchMode.AUTO && isNetworkFileSystem(inbox));
+    }
+
+    /**
+     * Starts registering changes to the inbox and returns the deposits that are already present and complete. Those deposits will not be reported to the callback.
+     * Deposits that are present, but not complete yet, will be reported as soon as they are complete. Call {@link #start()} to start reporting new deposits.
+     *
+     * @return the complete deposits present in the inbox
+     * @throws IOException if the inbox cannot be read
+     */
+    public List<Path> scanExisting() throws IOException {
+        if (!polling) {
+            try {
+                watchService = FileSystems.getDefault().newWatchService();
+                inbox.register(watchService, ENTRY_CREATE, ENTRY_DELETE);
+            }
+            catch (IOException | UnsupportedOperationException e) {
+                log.warn("Cannot watch {} for file system events; falling back to polling", inbox, e);
+                polling = true;
+            }
+        }
+        log.info("Watching inbox {} by {}", inbox, polling ? "polling every " + pollingIntervalMs + " ms" : "file system events");
+        List<Path> complete = new ArrayList<>();
+        for (Path dir : listDirectories()) {
+            seen.add(dir);
+            if (isComplete(dir)) {
+                complete.add(dir);
+            }
+            else {
+                pending.put(dir, System.currentTimeMillis());
+            }
+        }
+        return complete;
+    }
+
+    /**
+     * Starts reporting new deposits on a background thread.
+     */
+    public void start() {
+        thread = new Thread(this, "inbox-watcher-" + inbox.getFileName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        keepRunning = false;
+        if (watchService != null) {
+            try {
+                watchService.close();
+            }
+            catch (IOException e) {
+                log.warn("Could not close watch service for {}", inbox, e);
+            }
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (keepRunning) {
+            try {
+                if (polling) {
+                    Thread.sleep(pollingIntervalMs);
+                    scan();
+                }
+                else {
+                    // Only wake up periodically if there are incomplete deposits to check again
+                    WatchKey key = pending.isEmpty() ? watchService.take() : watchService.poll(pollingIntervalMs, TimeUnit.MILLISECONDS);
+                    if (key != null) {
+                        processEvents(key);
+                    }
+                }
+                checkPending();
+            }
+            catch (InterruptedException | ClosedWatchServiceException e) {
+                log.debug("Stopped watching {}", inbox);
+                return;
+            }
+            catch (IOException | UncheckedIOException e) {
+                log.error("Error while watching {}", inbox, e);
+            }
+        }
+    }
+
+    private void processEvents(WatchKey key) throws IOException {
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                log.debug("Events for {} were lost; rescanning inbox", inbox);
+                scan();
+                continue;
+            }
+            Path dir = inbox.resolve((Path) event.context());
+            if (event.kind() == ENTRY_CREATE) {
+                if (Files.isDirectory(dir) && seen.add(dir)) {
+                    log.trace("New directory: {}", dir);
+                    pending.put(dir, System.currentTimeMillis());
+                }
+            }
+            else if (event.kind() == ENTRY_DELETE) {
+                seen.remove(dir);
+                pending.remove(dir);
+            }
+        }
+        if (!key.reset()) {
+            log.error("Inbox {} can no longer be watched", inbox);
+            keepRunning = false;
+        }
+    }
+
+    private void scan() throws IOException {
+        List<Path> current = listDirectories();
+        seen.retainAll(current);
+        pending.keySet().retainAll(current);
+        for (Path dir : current) {
+            if (seen.add(dir)) {
+                log.trace("New directory: {}", dir);
+                pending.put(dir, System.currentTimeMillis());
+            }
+        }
+    }
+
+    private void checkPending() {
+        Iterator<Map.Entry<Path, Long>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Path, Long> entry = it.next();
+            Path dir = entry.getKey();
+            if (!Files.isDirectory(dir)) {
+                it.remove();
+            }
+            else if (isComplete(dir)) {
+                it.remove();
+                report(dir);
+            }
+            else if (isPendingTooLong(dir, entry.getValue())) {
+                log.warn("{} has not become a complete deposit in {} ms; passing it on for processing", dir, maxPendingMs);
+                it.remove();
+                report(dir);
+            }
+        }
+    }
+
+    private void report(Path dir) {
+        try {
+            onNewDeposit.accept(dir);
+        }
+        catch (Exception e) {
+            log.error("Could not process new deposit {}", dir, e);
+        }
+    }
+
+    private boolean isPendingTooLong(Path dir, long firstSeen) {
+        long lastChange = firstSeen;
+        try {
+            lastChange = Math.max(firstSeen, getLastModified(dir));
+        }
+        catch (IOException | UncheckedIOException e) {
+            log.warn("Could not determine the last modification time of {}", dir, e);
+        }
+        return System.currentTimeMillis() - lastChange >= maxPendingMs;
+    }
+
+    private List<Path> listDirectories() throws IOException {
+        try (Stream<Path> files = Files.list(inbox)) {
+            return files.filter(Files::isDirectory).collect(Collectors.toList());
+        }
+    }
+
+    boolean isComplete(Path dir) {
+        if (!Files.isRegularFile(dir.resolve("deposit.properties"))) {
+            return false;
+        }
+        try {
+            List<Path> subdirs;
+            try (Stream<Path> files = Files.list(dir)) {
+                subdirs = files.filter(Files::isDirectory).collect(Collectors.toList());
+            }
+            if (subdirs.size() != 1
+                || !Files.isRegularFile(subdirs.get(0).resolve("bagit.txt"))
+                || !Files.isRegularFile(subdirs.get(0).resolve("bag-info.txt"))) {
+                return false;
+            }
+            return quietPeriodMs == 0 || System.currentTimeMillis() - getLastModified(dir) >= quietPeriodMs;
+        }
+        catch (IOException | UncheckedIOException e) {
+            log.warn("Could not check completeness of {}", dir, e);
+            return false;
+        }
+    }
+
+    /**
+     * Returns the latest modification time of the deposit directory and everything in it. The whole tree is visited, because a copy tool like <code>cp -r</code> or
+     * <code>rsync</code> may spend a long time on a single payload file deep in the bag, without touching anything closer to the top. Only the file attributes are
+     * read, not the files themselves.
+     */
+    private long getLastModified(Path dir) throws IOException {
+        AtomicLong max = new AtomicLong();
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) {
+                max.accumulateAndGet(attrs.lastModifiedTime().toMillis(), Math::max);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                max.accumulateAndGet(attrs.lastModifiedTime().toMillis(), Math::max);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return max.get();
+    }
+
+    private static boolean isNetworkFileSystem(Path dir) {
+        try {
+            String type = Files.getFileStore(dir).type().toLowerCase(Locale.ROOT);
+            return NETWORK_FILE_SYSTEM_TYPES.stream().anyMatch(type::startsWith);
+        }
+        catch (IOException e) {
+            log.warn("Could not determine file system type of {}; assuming it does not deliver events", dir, e);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import better.files.File;
+import io.dropwizard.lifecycle.Managed;
+import io.dropwizard.util.Duration;
+import nl.knaw.dans.easy.dd2d.DepositIngestTaskFactory;
+import nl.knaw.dans.easy.dd2d.MappingDefinitions;
+import nl.knaw.dans.easy.dd2d.MappingDefinitionsRegistry;
+import nl.knaw.dans.lib.dataverse.DataverseInstance;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import scala.collection.immutable.List;
+import scala.util.Success;
+import scala.util.Try;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * Loads the mapping definitions once, at startup, and shares them between all task factories. If hot reload is enabled, the mapping-definitions directory
+ * is watched, and the definitions are loaded again when files in it change. If that fails, the previous definitions are kept.
+ *
+ * The active metadata blocks are not retrieved at startup, so that the service also starts while Dataverse is unavailable. They are retrieved in the
+ * background when the registry is started, and again when they are older than the refresh interval. Until they were retrieved once, a task that needs them
+ * retrieves them itself.
+ */
+public class MappingDefinitionsRegistryImpl implements MappingDefinitionsRegistry, Managed {
+    private static final Logger log = LoggerFactory.getLogger(MappingDefinitionsRegistryImpl.class);
+    // Editors and deployment tools may write a file in several steps
+    private static final long RELOAD_QUIET_PERIOD_MS = 1000;
+
+    private final Path mappingDefsDir;
+    private final DataverseInstance dataverse;
+    private final boolean hotReload;
+    private final long activeMetadataBlocksRefreshIntervalMs;
+    private final ExecutorService refresher;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private volatile MappingDefinitions mappingDefinitions;
+    private volatile ActiveMetadataBlocks activeMetadataBlocks;
+    private volatile boolean keepRunning = true;
+    private WatchService watchService;
+    private Thread watcher;
+
+    public MappingDefinitionsRegistryImpl(Path mappingDefsDir, DataverseInstance dataverse, boolean hotReload, Duration activeMetadataBlocksRefreshInterval) {
+        this.mappingDefsDir = mappingDefsDir;
+        this.dataverse = dataverse;
+        this.hotReload = hotReload;
+        this.activeMetadataBlocksRefreshIntervalMs = activeMetadataBlocksRefreshInterval.toMilliseconds();
+        this.refresher = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "active-metadata-blocks-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Invalid definitions at startup are a configuration error
+        this.mappingDefinitions = MappingDefinitions.load(File.apply(mappingDefsDir)).get();
+    }
+
+    @Override
+    public MappingDefinitions mappingDefinitions() {
+        return mappingDefinitions;
+    }
+
+    @Override
+    public Try<List<String>> activeMetadataBlocks() {
+        ActiveMetadataBlocks current = activeMetadataBlocks;
+        if (current == null) {
+            return retrieveActiveMetadataBlocks();
+        }
+        if (System.currentTimeMillis() - current.retrieved > activeMetadataBlocksRefreshIntervalMs) {
+            refreshActiveMetadataBlocks();
+        }
+        return new Success<>(current.blocks);
+    }
+
+    @Override
+    public void start() {
+        refreshActiveMetadataBlocks();
+        if (hotReload) {
+            try {
+                watchService = FileSystems.getDefault().newWatchService();
+                mappingDefsDir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+                watcher = new Thread(this::watch, "mapping-defs-watcher");
+                watcher.setDaemon(true);
+                watcher.start();
+                log.info("Watching {} for changes to the mapping definitions", mappingDefsDir);
+            }
+            catch (IOException | UnsupportedOperationException e) {
+                log.warn("Cannot watch {}; changes to the mapping definitions require a restart", mappingDefsDir, e);
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        keepRunning = false;
+        refresher.shutdownNow();
+        if (watchService != null) {
+            try {
+                watchService.close();
+            }
+            catch (IOException e) {
+                log.warn("Could not close watch service for {}", mappingDefsDir, e);
+            }
+        }
+        if (watcher != null) {
+            watcher.interrupt();
+        }
+    }
+
+    /**
+     * Loads the mapping definitions again. If that fails, the current definitions are kept.
+     *
+     * @return whether the definitions were replaced
+     */
+    public boolean reload() {
+        Try<MappingDefinitions> result = MappingDefinitions.load(File.apply(mappingDefsDir));
+        if (result.isFailure()) {
+            log.error("Could not reload the mapping definitions from {}; keeping the previous ones", mappingDefsDir, result.failed().get());
+            return false;
+        }
+        mappingDefinitions = result.get();
+        log.info("Reloaded the mapping definitions from {}", mappingDefsDir);
+        return true;
+    }
+
+    private void watch() {
+        while (keepRunning) {
+            try {
+                WatchKey key = watchService.take();
+                do {
+                    key.pollEvents();
+                    key.reset();
+                    key = watchService.poll(RELOAD_QUIET_PERIOD_MS, TimeUnit.MILLISECONDS);
+                } while (key != null);
+                reload();
+            }
+            catch (InterruptedException | ClosedWatchServiceException e) {
+                log.debug("Stopped watching {}", mappingDefsDir);
+                return;
+            }
+        }
+    }
+
+    private void refreshActiveMetadataBlocks() {
+        if (refreshing.compareAndSet(false, true)) {
+            try {
+                refresher.execute(() -> {
+                    try {
+                        retrieveActiveMetadataBlocks();
+                    }
+                    finally {
+                        refreshing.set(false);
+                    }
+                });
+            }
+            catch (RuntimeException e) {
+                refreshing.set(false);
+                log.debug("Could not schedule refresh of the active metadata blocks", e);
+            }
+        }
+    }
+
+    private Try<List<String>> retrieveActiveMetadataBlocks() {
+        Try<List<String>> result = DepositIngestTaskFactory.getActiveMetadataBlocks(dataverse);
+        if (result.isSuccess()) {
+            activeMetadataBlocks = new ActiveMetadataBlocks(result.get(), System.currentTimeMillis());
+            log.debug("Active metadata blocks: {}", result.get());
+        }
+        else {
+            log.warn("Could not retrieve the active metadata blocks from Dataverse", result.failed().get());
+        }
+        return result;
+    }
+
+    private static class ActiveMetadataBlocks {
+        private final List<String> blocks;
+        private final long retrieved;
+
+        private ActiveMetadataBlocks(List<String> blocks, long retrieved) {
+            this.blocks = blocks;
+            this.retrieved = retrieved;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import io.dropwizard.hibernate.UnitOfWork;
+import nl.knaw.dans.easy.dd2d.PersistentIdIndex;
+import nl.knaw.dans.ingest.core.PersistentIdIndexEntry;
+import nl.knaw.dans.ingest.db.PersistentIdIndexDAO;
+import org.apache.commons.lang3.StringUtils;
+import scala.Option;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Keeps the index of the datasets ingested by this service in the task event database.
+ */
+public class PersistentIdIndexImpl implements PersistentIdIndex {
+    private final PersistentIdIndexDAO persistentIdIndexDAO;
+
+    public PersistentIdIndexImpl(PersistentIdIndexDAO persistentIdIndexDAO) {
+        this.persistentIdIndexDAO = persistentIdIndexDAO;
+    }
+
+    @Override
+    @UnitOfWork
+    public Option<String> findByBagId(String bagId) {
+        return Option.apply(persistentIdIndexDAO.getByBagId(bagId).map(PersistentIdIndexEntry::getPersistentId).orElse(null));
+    }
+
+    @Override
+    @UnitOfWork
+    public Option<String> findBySwordToken(String swordToken) {
+        return Option.apply(persistentIdIndexDAO.getBySwordToken(swordToken).map(PersistentIdIndexEntry::getPersistentId).orElse(null));
+    }
+
+    @Override
+    @UnitOfWork
+    public void put(String bagId, String swordToken, String nbn, String persistentId) {
+        persistentIdIndexDAO.save(new PersistentIdIndexEntry(bagId, persistentId, StringUtils.trimToNull(swordToken), StringUtils.trimToNull(nbn), OffsetDateTime.now()));
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import io.dropwizard.lifecycle.Managed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Waits for dataset publications to finish without blocking a worker thread per dataset. All pending publications are polled from a single timer thread,
+ * each with an exponentially increasing interval, starting at <code>initialPollIntervalMs</code> and capped at <code>maxPollIntervalMs</code>. The futures
+ * returned by {@link #await(String, Callable, long)} are completed on the completion executor, so that follow-up work does not run on the timer thread.
+ *
+ * If the deposits are resumable, a publication that is still pending when the service stops is dropped: its deposit stays in the inbox and, after the
+ * restart, resumes from its "publication submitted" checkpoint to wait for the publication again.
+ */
+public class PublicationAwaiter implements Managed {
+    private static final Logger log = LoggerFactory.getLogger(PublicationAwaiter.class);
+
+    private final long initialPollIntervalMs;
+    private final long maxPollIntervalMs;
+    private final Executor completionExecutor;
+    private final boolean resumable;
+    private final ScheduledExecutorService timer;
+    private final Set<PendingPublication> pending = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param initialPollIntervalMs the first interval between checks
+     * @param maxPollIntervalMs     the maximum interval between checks
+     * @param completionExecutor    the executor to complete the futures on
+     * @param resumable             whether deposits resume from their checkpoints after a restart; if not, pending publications are failed on stop
+     */
+    public PublicationAwaiter(long initialPollIntervalMs, long maxPollIntervalMs, Executor completionExecutor, boolean resumable) {
+        this.initialPollIntervalMs = initialPollIntervalMs;
+        this.maxPollIntervalMs = maxPollIntervalMs;
+        this.completionExecutor = completionExecutor;
+        this.resumable = resumable;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "publication-awaiter");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Polls <code>isFinished</code> until it returns <code>true</code>, it throws an exception or <code>timeoutMs</code> has passed.
+     *
+     * @param persistentId the dataset being published, for logging
+     * @param isFinished   the check; must not block for long
+     * @param timeoutMs    the maximum time to wait
+     * @return a future that completes normally when the publication has finished, or exceptionally with the failure of the check or a {@link TimeoutException}
+     */
+    public CompletableFuture<Void> await(String persistentId, Callable<Boolean> isFinished, long timeoutMs) {
+        PendingPublication publication = new PendingPublication(persistentId, isFinished, System.currentTimeMillis() + timeoutMs);
+        pending.add(publication);
+        log.debug("Awaiting publication of {}; {} publications pending", persistentId, pending.size());
+        schedule(publication, initialPollIntervalMs);
+        return publication.future;
+    }
+
+    public int getNumberOfPendingPublications() {
+        return pending.size();
+    }
+
+    @Override
+    public void start() {
+    }
+
+    /**
+     * Stops polling. Each publication that is still pending is checked one last time. If it has not finished, it is dropped without completing its future if
+     * the deposits are resumable, and failed otherwise.
+     */
+    @Override
+    public void stop() {
+        timer.shutdownNow();
+        for (PendingPublication publication : pending) {
+            if (!poll(publication)) {
+                if (resumable) {
+                    pending.remove(publication);
+                    log.info("Service stopped before publication of {} finished; its deposit will resume waiting for it after the restart", publication.persistentId);
+                }
+                else {
+                    complete(publication, new IllegalStateException("Service stopped before publication of " + publication.persistentId + " finished"));
+                }
+            }
+        }
+    }
+
+    private void schedule(PendingPublication publication, long delayMs) {
+        timer.schedule(() -> {
+            if (!poll(publication)) {
+                long now = System.currentTimeMillis();
+                if (now >= publication.deadline) {
+                    complete(publication, new TimeoutException("Publication of " + publication.persistentId + " did not finish within the wait period"));
+                }
+                else {
+                    schedule(publication, Math.min(Math.min(2 * delayMs, maxPollIntervalMs), publication.deadline - now));
+                }
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * Returns true if the publication was completed, either because it finished or because the check failed.
+     */
+    private boolean poll(PendingPublication publication) {
+        try {
+            if (publication.isFinished.call()) {
+                log.debug("Publication of {} finished", publication.persistentId);
+                complete(publication, null);
+                return true;
+            }
+            return false;
+        }
+        catch (Exception e) {
+            complete(publication, e);
+            return true;
+        }
+    }
+
+    private void complete(PendingPublication publication, Exception failure) {
+        if (!pending.remove(publication)) {
+            return;
+        }
+        Runnable completion = () -> {
+            if (failure == null) {
+                publication.future.complete(null);
+            }
+            else {
+                publication.future.completeExceptionally(failure);
+            }
+        };
+        try {
+            completionExecutor.execute(completion);
+        }
+        catch (RejectedExecutionException e) {
+            log.warn("Completion executor rejected completion of publication of {}; completing on current thread", publication.persistentId);
+            completion.run();
+        }
+    }
+
+    private static class PendingPublication {
+        private final String persistentId;
+        private final Callable<Boolean> isFinished;
+        private final long deadline;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private PendingPublication(String persistentId, Callable<Boolean> isFinished, long deadline) {
+            this.persistentId = persistentId;
+            this.isFinished = isFinished;
+            this.deadline = deadline;
+        }
+    }
+}
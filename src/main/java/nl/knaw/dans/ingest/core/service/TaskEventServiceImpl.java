@@ -20,6 +20,7 @@ import nl.knaw.dans.ingest.core.TaskEvent;
 import nl.knaw.dans.ingest.db.TaskEventDAO;
 
 import java.time.OffsetDateTime;
+import java.util.List;
 import java.util.UUID;
 
 public class TaskEventServiceImpl implements TaskEventService {
@@ -34,4 +35,9 @@ public class TaskEventServiceImpl implements TaskEventService {
     public void writeEvent(String batch, UUID depositId, TaskEvent.EventType eventType, TaskEvent.Result result, String message) {
         taskEventDAO.save(new TaskEvent(batch, OffsetDateTime.now(), depositId, eventType, result, message));
     }
+
+    @UnitOfWork
+    public void writeEvents(List<TaskEvent> taskEvents) {
+        taskEventDAO.saveAll(taskEvents);
+    }
 }
@@ -15,55 +15,27 @@
  */
 package nl.knaw.dans.ingest.core.service;
 
+import nl.knaw.dans.ingest.core.config.InboxWatchMode;
 import nl.knaw.dans.ingest.core.legacy.DepositIngestTaskFactoryWrapper;
-import org.apache.commons.io.monitor.FileAlterationListenerAdaptor;
-import org.apache.commons.io.monitor.FileAlterationMonitor;
-import org.apache.commons.io.monitor.FileAlterationObserver;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
-import java.io.File;
+import java.io.IOException;
 import java.nio.file.Path;
 
 public class UnboundedDepositsImportTaskIterator extends AbstractDepositsImportTaskIterator {
-    private static final Logger log = LoggerFactory.getLogger(UnboundedDepositsImportTaskIterator.class);
-    private boolean initialized = false;
-    private boolean depositsReadInInitialization = false;
-    private boolean keepRunning = true;
+    private final InboxWatcher watcher;
+    private volatile boolean keepRunning = true;
 
-    private class EventHandler extends FileAlterationListenerAdaptor {
-        @Override
-        public void onStart(FileAlterationObserver observer) {
-            log.trace("onStart called");
-            if (!initialized) {
-                initialized = true;
-                depositsReadInInitialization = readAllDepositsFromInbox();
-            }
-        }
-
-        @Override
-        public void onDirectoryCreate(File file) {
-            log.trace("onDirectoryCreate: {}", file);
-            if (depositsReadInInitialization) {
-                depositsReadInInitialization = false;
-                return; // file already added to queue by onStart
-            }
-            addTaskForDeposit(file.toPath());
-        }
-    }
-
-    public UnboundedDepositsImportTaskIterator(Path inboxDir, Path outBox, int pollingInterval, DepositIngestTaskFactoryWrapper taskFactory, EventWriter eventWriter) {
+    public UnboundedDepositsImportTaskIterator(Path inboxDir, Path outBox, InboxWatchMode watchMode, long pollingIntervalMs, long quietPeriodMs, long maxPendingMs,
+        DepositIngestTaskFactoryWrapper taskFactory, EventWriter eventWriter) {
         super(inboxDir, outBox, taskFactory, eventWriter);
-        FileAlterationObserver observer = new FileAlterationObserver(inboxDir.toFile(), f -> f.isDirectory() && f.getParentFile().equals(inboxDir.toFile()));
-        observer.addListener(new EventHandler());
-        FileAlterationMonitor monitor = new FileAlterationMonitor(pollingInterval);
-        monitor.addObserver(observer);
+        watcher = new InboxWatcher(inboxDir, watchMode, pollingIntervalMs, quietPeriodMs, maxPendingMs, this::addTaskForDeposit);
         try {
-            monitor.start();
+            addDepositsInOrder(watcher.scanExisting());
         }
-        catch (Exception e) {
+        catch (IOException e) {
             throw new IllegalStateException(String.format("Could not start monitoring %s", inboxDir), e);
         }
+        watcher.start();
     }
 
     @Override
@@ -74,5 +46,6 @@ public class UnboundedDepositsImportTaskIterator extends AbstractDepositsImportT
 
     public void stop() {
         keepRunning = false;
+        watcher.stop();
     }
 }
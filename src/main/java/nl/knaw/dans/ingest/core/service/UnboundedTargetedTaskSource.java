@@ -15,21 +15,30 @@
  */
 package nl.knaw.dans.ingest.core.service;
 
+import nl.knaw.dans.ingest.core.config.InboxWatchMode;
 import nl.knaw.dans.ingest.core.legacy.DepositIngestTaskFactoryWrapper;
 
 import java.nio.file.Path;
 
 public class UnboundedTargetedTaskSource extends TargetedTaskSourceImpl {
+    private final InboxWatchMode watchMode;
+    private final long pollingIntervalMs;
+    private final long quietPeriodMs;
+    private final long maxPendingMs;
     private UnboundedDepositsImportTaskIterator iterator;
 
-    public UnboundedTargetedTaskSource(String name, Path inDir, Path outDir, TaskEventService taskEventService,
-        DepositIngestTaskFactoryWrapper taskFactory) {
+    public UnboundedTargetedTaskSource(String name, Path inDir, Path outDir, InboxWatchMode watchMode, long pollingIntervalMs, long quietPeriodMs, long maxPendingMs,
+        TaskEventService taskEventService, DepositIngestTaskFactoryWrapper taskFactory) {
         super(name, inDir, outDir, taskEventService, taskFactory);
+        this.watchMode = watchMode;
+        this.pollingIntervalMs = pollingIntervalMs;
+        this.quietPeriodMs = quietPeriodMs;
+        this.maxPendingMs = maxPendingMs;
     }
 
     @Override
     protected UnboundedDepositsImportTaskIterator createIterator(Path inDir, Path outDir, DepositIngestTaskFactoryWrapper taskFactory, EventWriter eventWriter) {
-        iterator = new UnboundedDepositsImportTaskIterator(inDir, outDir, 500, taskFactory, eventWriter); // TODO: make pollinginterval configurable
+        iterator = new UnboundedDepositsImportTaskIterator(inDir, outDir, watchMode, pollingIntervalMs, quietPeriodMs, maxPendingMs, taskFactory, eventWriter);
         return iterator;
     }
 
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import io.dropwizard.hibernate.UnitOfWork;
+import io.dropwizard.util.Duration;
+import nl.knaw.dans.easy.dd2d.dansbag.ValidationResultCache;
+import nl.knaw.dans.ingest.core.ValidationResultCacheEntry;
+import nl.knaw.dans.ingest.db.ValidationResultCacheDAO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import scala.Option;
+
+import java.time.OffsetDateTime;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stores validation results in the task event database. Entries that have not been used for <code>maxAge</code> are evicted, as are the least recently used
+ * entries beyond <code>maxEntries</code>. Eviction runs once every <code>evictionInterval</code> stored results, so the number of entries may exceed
+ * <code>maxEntries</code> by that many.
+ */
+public class ValidationResultCacheImpl implements ValidationResultCache {
+    private static final Logger log = LoggerFactory.getLogger(ValidationResultCacheImpl.class);
+    private final ValidationResultCacheDAO validationResultCacheDAO;
+    private final int maxEntries;
+    private final Duration maxAge;
+    private final int evictionInterval;
+    private final AtomicInteger putsSinceEviction = new AtomicInteger();
+
+    public ValidationResultCacheImpl(ValidationResultCacheDAO validationResultCacheDAO, Integer maxEntries, Duration maxAge, Integer evictionInterval) {
+        this.validationResultCacheDAO = validationResultCacheDAO;
+        this.maxEntries = maxEntries;
+        this.maxAge = maxAge;
+        this.evictionInterval = evictionInterval;
+    }
+
+    @Override
+    @UnitOfWork
+    public Option<String> get(String bagDigest, int profileVersion) {
+        Optional<ValidationResultCacheEntry> entry = validationResultCacheDAO.get(bagDigest).filter(e -> e.getProfileVersion() == profileVersion);
+        entry.ifPresent(e -> e.setLastUsed(OffsetDateTime.now()));
+        return Option.apply(entry.map(ValidationResultCacheEntry::getResult).orElse(null));
+    }
+
+    @Override
+    @UnitOfWork
+    public void put(String bagDigest, int profileVersion, String resultJson) {
+        validationResultCacheDAO.save(new ValidationResultCacheEntry(bagDigest, profileVersion, resultJson, OffsetDateTime.now()));
+        if (putsSinceEviction.incrementAndGet() >= evictionInterval) {
+            putsSinceEviction.set(0);
+            int evicted = validationResultCacheDAO.deleteLastUsedBefore(OffsetDateTime.now().minusSeconds(maxAge.toSeconds()))
+                + validationResultCacheDAO.deleteAllButMostRecentlyUsed(maxEntries);
+            if (evicted > 0) {
+                log.debug("Evicted {} validation results", evicted);
+            }
+        }
+    }
+}
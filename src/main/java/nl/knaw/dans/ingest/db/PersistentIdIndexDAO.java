@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.db;
+
+import io.dropwizard.hibernate.AbstractDAO;
+import nl.knaw.dans.ingest.core.PersistentIdIndexEntry;
+import org.hibernate.SessionFactory;
+
+import java.util.Optional;
+
+public class PersistentIdIndexDAO extends AbstractDAO<PersistentIdIndexEntry> {
+
+    public PersistentIdIndexDAO(SessionFactory sessionFactory) {
+        super(sessionFactory);
+    }
+
+    public Optional<PersistentIdIndexEntry> getByBagId(String bagId) {
+        return Optional.ofNullable(super.get(bagId));
+    }
+
+    /**
+     * All deposits of a dataset share its SWORD token, so any of their entries will do; the latest one is returned.
+     */
+    public Optional<PersistentIdIndexEntry> getBySwordToken(String swordToken) {
+        return currentSession()
+            .createQuery("from PersistentIdIndexEntry e where e.swordToken = :swordToken order by e.created desc", PersistentIdIndexEntry.class)
+            .setParameter("swordToken", swordToken)
+            .setMaxResults(1)
+            .uniqueResultOptional();
+    }
+
+    public PersistentIdIndexEntry save(PersistentIdIndexEntry entry) {
+        currentSession().saveOrUpdate(entry);
+        return entry;
+    }
+}
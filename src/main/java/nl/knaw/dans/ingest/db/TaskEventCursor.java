@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.db;
+
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.Objects;
+
+/**
+ * Position in the list of task events, which is ordered by timestamp and id. A page of events starts right after the cursor. The cursor is passed to clients as an opaque string.
+ */
+public class TaskEventCursor {
+    private final OffsetDateTime timestamp;
+    private final long id;
+
+    public TaskEventCursor(OffsetDateTime timestamp, long id) {
+        this.timestamp = Objects.requireNonNull(timestamp, "timestamp");
+        this.id = id;
+    }
+
+    /**
+     * Parses a cursor created by {@link #toString()}.
+     *
+     * @param s the cursor string
+     * @return the cursor
+     * @throws IllegalArgumentException if <code>s</code> is not a valid cursor
+     */
+    public static TaskEventCursor parse(String s) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(s), StandardCharsets.UTF_8).split(" ", 2);
+            if (parts.length == 2) {
+                return new TaskEventCursor(OffsetDateTime.parse(parts[0]), Long.parseLong(parts[1]));
+            }
+        }
+        catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + s, e);
+        }
+        throw new IllegalArgumentException("Invalid cursor: " + s);
+    }
+
+    public OffsetDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString((timestamp + " " + id).getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -17,46 +17,173 @@ package nl.knaw.dans.ingest.db;
 
 import io.dropwizard.hibernate.AbstractDAO;
 import nl.knaw.dans.ingest.core.TaskEvent;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.SessionFactory;
-import org.hibernate.criterion.Order;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.query.Query;
 
-import javax.persistence.criteria.CriteriaBuilder;
-import javax.persistence.criteria.CriteriaQuery;
-import javax.persistence.criteria.Predicate;
-import javax.persistence.criteria.Root;
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.OffsetDateTime;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Optional;
 
 public class TaskEventDAO extends AbstractDAO<TaskEvent> {
+    private static final String ORDER_BY = " order by e.timestamp, e.id";
+    private static final int FETCH_SIZE = 1000;
+    private static final String INSERT_SQL = "INSERT INTO task_event (source, timestamp, deposit_id, event_type, result, message) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private final SessionFactory sessionFactory;
+
+    public interface TaskEventHandler {
+        void handle(TaskEvent taskEvent) throws IOException;
+    }
 
     public TaskEventDAO(SessionFactory sessionFactory) {
         super(sessionFactory);
+        this.sessionFactory = sessionFactory;
     }
 
     public TaskEvent save(TaskEvent taskEvent) {
         return persist(taskEvent);
     }
 
-    public List<TaskEvent> getEvents(String sourceName, String depositId) {
-        // TODO: add filter criteria for eventType, result, max-age
-        CriteriaBuilder cb = currentSession().getCriteriaBuilder();
-        CriteriaQuery<TaskEvent> crit = cb.createQuery(TaskEvent.class);
-        Root<TaskEvent> r = crit.from(TaskEvent.class);
-        List<Predicate> predicates = new LinkedList<>();
-        if (sourceName != null) {
-            predicates.add(cb.equal(r.get("source"), sourceName));
+    /**
+     * Saves the events with a single JDBC batch insert. Hibernate cannot batch these inserts itself, because the ids are generated by the database.
+     *
+     * @param taskEvents the events to save
+     */
+    public void saveAll(List<TaskEvent> taskEvents) {
+        currentSession().doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL)) {
+                for (TaskEvent taskEvent : taskEvents) {
+                    statement.setString(1, taskEvent.getSource());
+                    statement.setTimestamp(2, Timestamp.from(taskEvent.getTimestamp().toInstant()));
+                    statement.setString(3, taskEvent.getDepositId().toString());
+                    statement.setString(4, taskEvent.getEvenType().name());
+                    statement.setString(5, taskEvent.getResult().name());
+                    statement.setString(6, taskEvent.getMessage());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        });
+    }
+
+    /**
+     * Returns the position of the last event of the page that starts after <code>after</code>, if there are more events after that page.
+     *
+     * @param filter the events to select
+     * @param after  the position to start after, or <code>null</code> to start at the first event
+     * @param limit  the maximum number of events in the page
+     * @return the cursor for the next page, if there is one
+     */
+    public Optional<TaskEventCursor> getNextPageCursor(TaskEventFilter filter, TaskEventCursor after, int limit) {
+        Query<Object[]> query = currentSession()
+            .createQuery("select e.timestamp, e.id from TaskEvent e" + whereClause(filter, after, null) + ORDER_BY, Object[].class)
+            .setFirstResult(limit - 1)
+            .setMaxResults(2);
+        setParameters(query, filter, after, null);
+        List<Object[]> keys = query.list();
+        if (keys.size() < 2) {
+            return Optional.empty();
         }
-        if (depositId != null) {
-            predicates.add(cb.equal(r.get("depositId"), depositId));
+        return Optional.of(new TaskEventCursor((OffsetDateTime) keys.get(0)[0], (Long) keys.get(0)[1]));
+    }
+
+    /**
+     * Passes the selected events to the handler, ordered by timestamp and id. The events are read with a forward-only cursor in a stateless session of their own, so that they are not held in
+     * memory and can be read after the unit of work of the request has ended.
+     *
+     * @param filter  the events to select
+     * @param after   the position to start after, or <code>null</code> to start at the first event
+     * @param upTo    the position of the last event to pass, e.g. the cursor of the next page, or <code>null</code> to pass events up to the last one
+     * @param limit   the maximum number of events, or <code>null</code> for no maximum
+     * @param handler the handler to pass the events to
+     * @throws IOException if the handler throws it
+     */
+    public void scrollEvents(TaskEventFilter filter, TaskEventCursor after, TaskEventCursor upTo, Integer limit, TaskEventHandler handler) throws IOException {
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            // Some JDBC drivers only stream the results within a transaction
+            Transaction transaction = session.beginTransaction();
+            Query<TaskEvent> query = session
+                .createQuery("from TaskEvent e" + whereClause(filter, after, upTo) + ORDER_BY, TaskEvent.class)
+                .setReadOnly(true)
+                .setFetchSize(FETCH_SIZE);
+            if (limit != null) {
+                query.setMaxResults(limit);
+            }
+            setParameters(query, filter, after, upTo);
+            try (ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY)) {
+                while (results.next()) {
+                    handler.handle((TaskEvent) results.get(0));
+                }
+            }
+            transaction.commit();
         }
-        crit
-            .select(r)
-            .where(cb.and(predicates.toArray(new Predicate[0])))
-            .orderBy(cb.asc(r.get("timestamp")));
+    }
 
-        return currentSession().createQuery(crit).list();
+    private static String whereClause(TaskEventFilter filter, TaskEventCursor after, TaskEventCursor upTo) {
+        List<String> conditions = new LinkedList<>();
+        if (filter.getSource() != null) {
+            conditions.add("e.source = :source");
+        }
+        if (filter.getDepositId() != null) {
+            conditions.add("e.depositId = :depositId");
+        }
+        if (filter.getEventType() != null) {
+            conditions.add("e.evenType = :eventType");
+        }
+        if (filter.getResult() != null) {
+            conditions.add("e.result = :result");
+        }
+        if (filter.getFrom() != null) {
+            conditions.add("e.timestamp >= :from");
+        }
+        if (filter.getUntil() != null) {
+            conditions.add("e.timestamp < :until");
+        }
+        if (after != null) {
+            conditions.add("(e.timestamp > :afterTimestamp or (e.timestamp = :afterTimestamp and e.id > :afterId))");
+        }
+        if (upTo != null) {
+            conditions.add("(e.timestamp < :upToTimestamp or (e.timestamp = :upToTimestamp and e.id <= :upToId))");
+        }
+        return conditions.isEmpty() ? "" : " where " + String.join(" and ", conditions);
     }
 
+    private static void setParameters(Query<?> query, TaskEventFilter filter, TaskEventCursor after, TaskEventCursor upTo) {
+        if (filter.getSource() != null) {
+            query.setParameter("source", filter.getSource());
+        }
+        if (filter.getDepositId() != null) {
+            query.setParameter("depositId", filter.getDepositId());
+        }
+        if (filter.getEventType() != null) {
+            query.setParameter("eventType", filter.getEventType().name());
+        }
+        if (filter.getResult() != null) {
+            query.setParameter("result", filter.getResult().name());
+        }
+        if (filter.getFrom() != null) {
+            query.setParameter("from", filter.getFrom());
+        }
+        if (filter.getUntil() != null) {
+            query.setParameter("until", filter.getUntil());
+        }
+        if (after != null) {
+            query.setParameter("afterTimestamp", after.getTimestamp());
+            query.setParameter("afterId", after.getId());
+        }
+        if (upTo != null) {
+            query.setParameter("upToTimestamp", upTo.getTimestamp());
+            query.setParameter("upToId", upTo.getId());
+        }
+    }
 
 /*
 convert to HQL to get "StateStats"
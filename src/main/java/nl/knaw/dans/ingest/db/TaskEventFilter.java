@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.db;
+
+import nl.knaw.dans.ingest.core.TaskEvent.EventType;
+import nl.knaw.dans.ingest.core.TaskEvent.Result;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Selects task events. Criteria that are <code>null</code> are not applied.
+ */
+public class TaskEventFilter {
+    private final String source;
+    private final String depositId;
+    private final EventType eventType;
+    private final Result result;
+    private final OffsetDateTime from;
+    private final OffsetDateTime until;
+
+    /**
+     * @param source    the batch or area the events were logged for
+     * @param depositId the deposit the events were logged for
+     * @param eventType the type of the events
+     * @param result    the result of the events
+     * @param from      the earliest timestamp (inclusive)
+     * @param until     the latest timestamp (exclusive)
+     */
+    public TaskEventFilter(String source, String depositId, EventType eventType, Result result, OffsetDateTime from, OffsetDateTime until) {
+        this.source = source;
+        this.depositId = depositId;
+        this.eventType = eventType;
+        this.result = result;
+        this.from = from;
+        this.until = until;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public String getDepositId() {
+        return depositId;
+    }
+
+    public EventType getEventType() {
+        return eventType;
+    }
+
+    public Result getResult() {
+        return result;
+    }
+
+    public OffsetDateTime getFrom() {
+        return from;
+    }
+
+    public OffsetDateTime getUntil() {
+        return until;
+    }
+}
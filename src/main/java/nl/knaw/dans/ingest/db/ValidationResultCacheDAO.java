@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.db;
+
+import io.dropwizard.hibernate.AbstractDAO;
+import nl.knaw.dans.ingest.core.ValidationResultCacheEntry;
+import org.hibernate.SessionFactory;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public class ValidationResultCacheDAO extends AbstractDAO<ValidationResultCacheEntry> {
+
+    public ValidationResultCacheDAO(SessionFactory sessionFactory) {
+        super(sessionFactory);
+    }
+
+    public Optional<ValidationResultCacheEntry> get(String bagDigest) {
+        return Optional.ofNullable(super.get(bagDigest));
+    }
+
+    public ValidationResultCacheEntry save(ValidationResultCacheEntry entry) {
+        currentSession().saveOrUpdate(entry);
+        return entry;
+    }
+
+    public int deleteLastUsedBefore(OffsetDateTime cutoff) {
+        return currentSession()
+            .createQuery("delete from ValidationResultCacheEntry e where e.lastUsed < :cutoff")
+            .setParameter("cutoff", cutoff)
+            .executeUpdate();
+    }
+
+    /**
+     * Deletes all entries except the <code>maxEntries</code> most recently used ones.
+     *
+     * @param maxEntries the number of entries to keep
+     * @return the number of entries deleted
+     */
+    public int deleteAllButMostRecentlyUsed(int maxEntries) {
+        List<OffsetDateTime> lastUsed = currentSession()
+            .createQuery("select e.lastUsed from ValidationResultCacheEntry e order by e.lastUsed desc", OffsetDateTime.class)
+            .setFirstResult(maxEntries)
+            .setMaxResults(1)
+            .list();
+        if (lastUsed.isEmpty()) {
+            return 0;
+        }
+        return currentSession()
+            .createQuery("delete from ValidationResultCacheEntry e where e.lastUsed <= :cutoff")
+            .setParameter("cutoff", lastUsed.get(0))
+            .executeUpdate();
+    }
+}
@@ -15,30 +15,97 @@
  */
 package nl.knaw.dans.ingest.resources;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
 import io.dropwizard.hibernate.UnitOfWork;
 import nl.knaw.dans.ingest.core.TaskEvent;
+import nl.knaw.dans.ingest.db.TaskEventCursor;
 import nl.knaw.dans.ingest.db.TaskEventDAO;
+import nl.knaw.dans.ingest.db.TaskEventFilter;
 
+import javax.ws.rs.BadRequestException;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
-import java.util.List;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Link;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriInfo;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
 
+/**
+ * Lists task events as CSV or JSON. The events are streamed from the database, ordered by timestamp and id. If a <code>limit</code> is given and there are more events, the response has a
+ * <code>Link</code> header with <code>rel="next"</code> pointing to the next page, and the page ends at the last event before that one. That page may hold more than <code>limit</code>
+ * events if events with earlier timestamps were saved while it was being read.
+ */
 @Path("/events")
 public class EventsResource {
 
     private final TaskEventDAO taskEventDAO;
+    private final ObjectWriter csvWriter;
+    private final ObjectWriter jsonWriter;
 
-    public EventsResource(TaskEventDAO taskEventDAO) {
+    public EventsResource(TaskEventDAO taskEventDAO, CsvMapper csvMapper, ObjectMapper jsonMapper) {
         this.taskEventDAO = taskEventDAO;
+        this.csvWriter = csvMapper.writer(csvMapper.schemaFor(TaskEvent.class).withHeader()).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.jsonWriter = jsonMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    @GET
+    @Produces("text/csv;charset=utf8;qs=1")
+    @UnitOfWork(readOnly = true)
+    public Response getEventsAsCsv(@QueryParam("source") String batchName, @QueryParam("depositId") String depositId, @QueryParam("eventType") String eventType,
+        @QueryParam("result") String result, @QueryParam("from") String from, @QueryParam("until") String until, @QueryParam("after") String after, @QueryParam("limit") Integer limit,
+        @Context UriInfo uriInfo) {
+        return getEvents(batchName, depositId, eventType, result, from, until, after, limit, uriInfo, csvWriter, false);
     }
 
     @GET
-    @Produces("text/csv;charset=utf8")
-    @UnitOfWork
-    public List<TaskEvent> getEvents(@QueryParam("source") String batchName, @QueryParam("depositId") String depositId) {
-        return taskEventDAO.getEvents(batchName, depositId);
+    @Produces("application/json;qs=0.5")
+    @UnitOfWork(readOnly = true)
+    public Response getEventsAsJson(@QueryParam("source") String batchName, @QueryParam("depositId") String depositId, @QueryParam("eventType") String eventType,
+        @QueryParam("result") String result, @QueryParam("from") String from, @QueryParam("until") String until, @QueryParam("after") String after, @QueryParam("limit") Integer limit,
+        @Context UriInfo uriInfo) {
+        return getEvents(batchName, depositId, eventType, result, from, until, after, limit, uriInfo, jsonWriter, true);
     }
 
+    private Response getEvents(String batchName, String depositId, String eventType, String result, String from, String until, String after, Integer limit, UriInfo uriInfo, ObjectWriter writer,
+        boolean asArray) {
+        if (limit != null && limit < 1) {
+            throw new BadRequestException("limit must be at least 1");
+        }
+        TaskEventFilter filter;
+        TaskEventCursor cursor;
+        try {
+            filter = new TaskEventFilter(batchName, depositId,
+                eventType == null ? null : TaskEvent.EventType.valueOf(eventType),
+                result == null ? null : TaskEvent.Result.valueOf(result),
+                from == null ? null : OffsetDateTime.parse(from),
+                until == null ? null : OffsetDateTime.parse(until));
+            cursor = after == null ? null : TaskEventCursor.parse(after);
+        }
+        catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+
+        Optional<TaskEventCursor> nextPageCursor = limit == null ? Optional.empty() : taskEventDAO.getNextPageCursor(filter, cursor, limit);
+        // The events are streamed in a session of their own. A page that has a next one ends exactly at the cursor of the next page, so that no event falls between the pages, even if
+        // events were saved in the meantime.
+        TaskEventCursor upTo = nextPageCursor.orElse(null);
+        StreamingOutput events = outputStream -> {
+            try (SequenceWriter sequenceWriter = asArray ? writer.writeValuesAsArray(outputStream) : writer.writeValues(outputStream)) {
+                taskEventDAO.scrollEvents(filter, cursor, upTo, upTo == null ? limit : null, sequenceWriter::write);
+            }
+        };
+        Response.ResponseBuilder response = Response.ok(events);
+        nextPageCursor.ifPresent(c -> response.links(Link.fromUriBuilder(uriInfo.getRequestUriBuilder().replaceQueryParam("after", c.toString())).rel("next").build()));
+        return response.build();
+    }
 }
@@ -15,14 +15,16 @@
  */
 package nl.knaw.dans.easy.dd2d
 
-import nl.knaw.dans.easy.dd2d.migrationinfo.{ BasicFileMeta, MigrationInfo }
+import nl.knaw.dans.easy.dd2d.DepositStage.DATASET_CREATED
+import nl.knaw.dans.easy.dd2d.mapping.LicenseVocabulary
+import nl.knaw.dans.easy.dd2d.migrationinfo.{ MigrationInfo, PrestagedFileIndex }
 import nl.knaw.dans.lib.dataverse.model.dataset.{ Dataset, DatasetCreationResult }
 import nl.knaw.dans.lib.dataverse.model.{ DefaultRole, RoleAssignment }
 import nl.knaw.dans.lib.dataverse.{ DataverseInstance, DataverseResponse }
 import nl.knaw.dans.lib.error._
 import nl.knaw.dans.lib.logging.DebugEnhancedLogging
 
-import java.net.URI
+import java.nio.file.Path
 import java.util.Date
 import java.util.regex.Pattern
 import scala.util.control.NonFatal
@@ -34,54 +36,79 @@ class DatasetCreator(deposit: Deposit,
                      depositorRole: String,
                      isMigration: Boolean = false,
                      dataverseDataset: Dataset,
-                     variantToLicense: Map[String, String],
-                     supportedLicenses: List[URI],
+                     licenses: LicenseVocabulary,
                      instance: DataverseInstance,
-                     optMigrationInfoService: Option[MigrationInfo]) extends DatasetEditor(instance, optFileExclusionPattern, zipFileHandler) with DebugEnhancedLogging {
+                     optMigrationInfoService: Option[MigrationInfo],
+                     checkpoints: DepositCheckpoints = DepositCheckpoints.none) extends DatasetEditor(instance, optFileExclusionPattern, zipFileHandler) with DebugEnhancedLogging {
   trace(deposit)
 
   override def performEdit(): Try[PersistentId] = {
-    {
-      for {
-        // autoPublish is false, because it seems there is a bug with it in Dataverse (most of the time?)
-        response <- if (isMigration)
-                      instance
-                        .dataverse("root")
-                        .importDataset(dataverseDataset, Some(s"doi:${ deposit.doi }"), autoPublish = false)
-                    else instance.dataverse("root").createDataset(dataverseDataset)
-        persistentId <- getPersistentId(response)
-      } yield persistentId
-    } match {
-      case Failure(e) => Failure(FailedDepositException(deposit, "Could not import/create dataset", e))
-      case Success(persistentId) => {
+    checkpoints.getPersistentIdIfLastReached(DATASET_CREATED).map {
+      persistentId =>
+        logger.info(s"Resuming creation of draft $persistentId for $deposit")
+        completeDataset(persistentId, resumed = true)
+    }.getOrElse {
+      {
         for {
-          _ <- setLicense(supportedLicenses)(variantToLicense)(deposit, instance.dataset(persistentId))
-          _ <- instance.dataset(persistentId).awaitUnlock()
-          pathToFileInfo <- getPathToFileInfo(deposit)
-          prestagedFiles <- optMigrationInfoService.map(_.getPrestagedDataFilesFor(s"doi:${ deposit.doi }", 1)).getOrElse(Success(Set.empty[BasicFileMeta]))
-          databaseIdsToFileInfo <- addFiles(persistentId, pathToFileInfo.values.toList, prestagedFiles)
-          _ <- updateFileMetadata(databaseIdsToFileInfo.mapValues(_.metadata))
-          _ <- instance.dataset(persistentId).awaitUnlock()
-          _ <- configureEnableAccessRequests(deposit, persistentId, canEnable = true)
-          _ <- instance.dataset(persistentId).awaitUnlock()
-          _ = debug(s"Assigning role $depositorRole to ${ deposit.depositorUserId }")
-          _ <- instance.dataset(persistentId).assignRole(RoleAssignment(s"@${ deposit.depositorUserId }", depositorRole))
-          _ <- instance.dataset(persistentId).awaitUnlock()
-          dateAvailable <- deposit.getDateAvailable
-          _ <- if (isEmbargo(dateAvailable)) embargoFiles(persistentId, dateAvailable)
-               else {
-                 logger.debug(s"Date available in the past, no embargo: $dateAvailable")
-                 Success(())
-               }
+          // autoPublish is false, because it seems there is a bug with it in Dataverse (most of the time?)
+          response <- if (isMigration)
+                        instance
+                          .dataverse("root")
+                          .importDataset(dataverseDataset, Some(s"doi:${ deposit.doi }"), autoPublish = false)
+                      else instance.dataverse("root").createDataset(dataverseDataset)
+          persistentId <- getPersistentId(response)
+          _ = checkpoints.reached(DATASET_CREATED, Some(persistentId))
         } yield persistentId
-      }.doIfFailure {
-        case NonFatal(e) =>
-          logger.error("Dataset creation failed, deleting draft", e)
-          deleteDraftIfExists(persistentId)
+      } match {
+        case Failure(e) => Failure(FailedDepositException(deposit, "Could not import/create dataset", e))
+        case Success(persistentId) => completeDataset(persistentId, resumed = false)
       }
     }
   }
 
+  /*
+   * When resumed, the files that the interrupted run already added to the draft are not added again, but their metadata is still updated. If this run is
+   * interrupted in turn, the draft is kept, so that the next run can resume from it. If the deposit fails or is rejected, it is moved to the outbox and
+   * will not be resumed, so its draft is deleted.
+   */
+  private def completeDataset(persistentId: PersistentId, resumed: Boolean): Try[PersistentId] = {
+    {
+      for {
+        _ <- setLicense(licenses)(deposit, instance.dataset(persistentId))
+        _ <- instance.dataset(persistentId).awaitUnlock()
+        pathToFileInfo <- getPathToFileInfo(deposit)
+        pathToIdInDraft <- if (resumed) getFilesInDraft(persistentId).map(DatasetCreator.matchFilesInDraft(pathToFileInfo, _))
+                           else Success(Map.empty[Path, DatabaseId])
+        filesToAdd = pathToFileInfo.filterKeys(!pathToIdInDraft.contains(_)).values.toList
+        _ = if (resumed) logger.info(s"${ pathToIdInDraft.size } files already in draft $persistentId; adding ${ filesToAdd.size } files")
+        filesInDraft = pathToIdInDraft.map { case (path, id) => id -> pathToFileInfo(path).metadata }
+        prestagedFiles <- optMigrationInfoService.map(_.getPrestagedFileIndexFor(s"doi:${ deposit.doi }", 1)).getOrElse(Success(PrestagedFileIndex.empty))
+        fileAdditions <- addFiles(persistentId, filesToAdd, prestagedFiles)
+        _ <- updateFileMetadata(filesInDraft ++ fileAdditions.metadataToUpdate)
+        _ <- instance.dataset(persistentId).awaitUnlock()
+        _ <- configureEnableAccessRequests(deposit, persistentId, canEnable = true)
+        _ <- instance.dataset(persistentId).awaitUnlock()
+        _ = debug(s"Assigning role $depositorRole to ${ deposit.depositorUserId }")
+        _ <- instance.dataset(persistentId).assignRole(RoleAssignment(s"@${ deposit.depositorUserId }", depositorRole))
+          .map(_ => ())
+          .recover { case NonFatal(e) if resumed => logger.warn(s"Could not assign role $depositorRole; assuming it was assigned before the interruption", e) }
+        _ <- instance.dataset(persistentId).awaitUnlock()
+        dateAvailable <- deposit.getDateAvailable
+        _ <- if (isEmbargo(dateAvailable)) embargoFiles(persistentId, dateAvailable)
+             else {
+               logger.debug(s"Date available in the past, no embargo: $dateAvailable")
+               Success(())
+             }
+      } yield persistentId
+    }.doIfFailure {
+      case e if checkpoints.isEnabled && DepositCheckpoints.isInterruption(e) =>
+        logger.warn(s"Dataset creation interrupted, keeping draft $persistentId to resume from", e)
+      case NonFatal(e) =>
+        logger.error("Dataset creation failed, deleting draft", e)
+        deleteDraftIfExists(persistentId)
+    }
+  }
+
   private def getPersistentId(response: DataverseResponse[DatasetCreationResult]): Try[String] = {
     response.data.map(_.persistentId)
   }
@@ -95,3 +122,29 @@ class DatasetCreator(deposit: Deposit,
     } yield ()
   }
 }
+
+object DatasetCreator {
+
+  /**
+   * Pairs the files of a deposit with the files that an interrupted run already added to the draft. The files are matched on their SHA-1 checksum, because
+   * their paths in the draft may differ from those in the deposit, e.g. for a file that was uploaded in a ZIP wrapper. Of several files with the same
+   * checksum, those with the same path on both sides are paired first, and the others in the order of their paths. Their metadata is updated afterwards
+   * anyway.
+   *
+   * @param pathToFileInfo    the files of the deposit
+   * @param pathToFileInDraft the files in the draft
+   * @return the database IDs of the files in the draft, by the path of the matching file in the deposit
+   */
+  def matchFilesInDraft(pathToFileInfo: Map[Path, FileInfo], pathToFileInDraft: Map[Path, PublishedFile]): Map[Path, DatabaseId] = {
+    val draftPathsByChecksum = pathToFileInDraft.toList.groupBy(_._2.checksum).mapValues(_.map(_._1))
+    pathToFileInfo.toList.groupBy(_._2.checksum).flatMap {
+      case (checksum, deposited) =>
+        val draftPaths = draftPathsByChecksum.getOrElse(checksum, Nil)
+        val (samePath, otherPath) = deposited.map(_._1).partition(draftPaths.contains)
+        val otherDraftPaths = draftPaths.filterNot(samePath.contains)
+        (samePath.zip(samePath) ++ otherPath.sortBy(_.toString).zip(otherDraftPaths.sortBy(_.toString))).map {
+          case (depositPath, draftPath) => depositPath -> pathToFileInDraft(draftPath).databaseId
+        }
+    }
+  }
+}
@@ -15,20 +15,19 @@
  */
 package nl.knaw.dans.easy.dd2d
 
-import nl.knaw.dans.easy.dd2d.mapping.{ AccessRights, License }
-import nl.knaw.dans.easy.dd2d.migrationinfo.BasicFileMeta
+import nl.knaw.dans.easy.dd2d.ZipFileHandler.{ StreamWrapped, TempFileWrapped, Unwrapped, Upload }
+import nl.knaw.dans.easy.dd2d.mapping.{ AccessRights, License, LicenseVocabulary }
+import nl.knaw.dans.easy.dd2d.migrationinfo.PrestagedFileIndex
 import nl.knaw.dans.lib.dataverse.model.dataset.Embargo
 import nl.knaw.dans.lib.dataverse.model.file.FileMeta
 import nl.knaw.dans.lib.dataverse.model.file.prestaged.PrestagedFile
-import nl.knaw.dans.lib.dataverse.{ DatasetApi, DataverseInstance }
+import nl.knaw.dans.lib.dataverse.{ DatasetApi, DataverseInstance, Version }
 import nl.knaw.dans.lib.error.{ TraversableTryExtensions, TryExtensions }
 import nl.knaw.dans.lib.logging.DebugEnhancedLogging
 
-import java.net.URI
 import java.nio.file.{ Path, Paths }
 import java.util.Date
 import java.util.regex.Pattern
-import scala.collection.mutable
 import scala.util.{ Failure, Success, Try }
 
 /**
@@ -45,41 +44,74 @@ abstract class DatasetEditor(instance: DataverseInstance, optFileExclusionPatter
    */
   def performEdit(): Try[PersistentId]
 
-  protected def addFiles(persistentId: String, files: List[FileInfo], prestagedFiles: Set[BasicFileMeta] = Set.empty): Try[Map[Int, FileInfo]] = Try {
+  /**
+   * The files added by [[addFiles]].
+   *
+   * @param databaseIdToFileInfo the added files by database ID
+   * @param metadataApplied      database IDs of the files whose metadata was already set completely by the add call itself
+   */
+  case class FileAdditions(databaseIdToFileInfo: Map[Int, FileInfo], metadataApplied: Set[Int]) {
+    def databaseIdToFileMeta: Map[Int, FileMeta] = databaseIdToFileInfo.map { case (id, f) => id -> f.metadata }
+
+    def metadataToUpdate: Map[Int, FileMeta] = databaseIdToFileMeta.filterNot { case (id, _) => metadataApplied.contains(id) }
+  }
+
+  protected def addFiles(persistentId: String, files: List[FileInfo], prestagedFiles: PrestagedFileIndex = PrestagedFileIndex.empty): Try[FileAdditions] = {
     trace(persistentId, files)
-    val result = mutable.Map[Int, FileInfo]()
-    for (f <- files) {
-      debug(s"Adding file, directoryLabel = ${ f.metadata.directoryLabel }, label = ${ f.metadata.label }")
-      val id = addFile(persistentId, f, prestagedFiles).get
-      instance.dataset(persistentId).awaitUnlock().unsafeGetOrThrow
-      result(id) = f
-    }
-    result.toMap
+    for {
+      filesWithPrestaged <- Try { files.map(f => (f, getPrestagedFileFor(f, prestagedFiles))) }
+      wrappedFiles = zipFileHandler.wrapAhead(filesWithPrestaged.collect { case (f, None) => f })
+      result = Try {
+        filesWithPrestaged.map {
+          case (f, optPrestagedFile) =>
+            debug(s"Adding file, directoryLabel = ${ f.metadata.directoryLabel }, label = ${ f.metadata.label }")
+            val (id, metadataApplied) = addFile(persistentId, f, optPrestagedFile, wrappedFiles).get
+            (id, f, metadataApplied)
+        }
+      }
+      _ = wrappedFiles.close()
+      added <- result
+    } yield FileAdditions(
+      databaseIdToFileInfo = added.map { case (id, f, _) => id -> f }.toMap,
+      metadataApplied = added.collect { case (id, _, true) => id }.toSet)
   }
 
-  private def addFile(doi: String, fileInfo: FileInfo, prestagedFiles: Set[BasicFileMeta]): Try[Int] = {
+  /**
+   * Adds the file and returns its database ID, together with a flag that tells whether the metadata in `fileInfo` was completely applied. This is
+   * only the case for uploaded files, for which the metadata (including the restrict flag) is sent along with the file, and if Dataverse did not
+   * change the metadata on the way. Prestaged files get their metadata from the migration info, so they always need an update.
+   */
+  private def addFile(doi: String, fileInfo: FileInfo, optPrestagedFile: Option[PrestagedFile], wrappedFiles: Iterator[Try[Upload]]): Try[(Int, Boolean)] = {
     val result = for {
-      r <- getPrestagedFileFor(fileInfo, prestagedFiles).map { prestagedFile =>
+      files <- optPrestagedFile.map { prestagedFile =>
         debug(s"Adding prestaged file: $fileInfo")
-        instance.dataset(doi).addPrestagedFile(prestagedFile)
+        instance.dataset(doi).addPrestagedFile(prestagedFile).flatMap(_.data).map(_.files)
       }.getOrElse {
         debug(s"Uploading file: $fileInfo")
-        val optWrappedZip = zipFileHandler
-          .wrapIfZipFile(fileInfo.file)
-        val r = instance.dataset(doi).addFile(Option(
-          optWrappedZip
-            .getOrElse(fileInfo.file)), Option(fileInfo.metadata))
-        optWrappedZip.foreach(_.delete(swallowIOExceptions = true))
-        r
+        wrappedFiles.next().flatMap(uploadFile(doi, fileInfo, _))
       }
-      files <- r.data
-      id = files.files.headOption.flatMap(_.dataFile.map(_.id))
+      optFileMeta = files.headOption
+      id = optFileMeta.flatMap(_.dataFile.map(_.id))
+      metadataApplied = optPrestagedFile.isEmpty && optFileMeta.exists(DatasetEditor.isMetadataApplied(fileInfo.metadata, _))
       _ <- instance.dataset(doi).awaitUnlock()
-    } yield id
+    } yield id.map((_, metadataApplied))
     debug(s"Result = $result")
     result.map(_.getOrElse(throw new IllegalStateException("Could not get DataFile ID from response")))
   }
 
+  private def uploadFile(doi: String, fileInfo: FileInfo, upload: Upload): Try[List[FileMeta]] = {
+    upload match {
+      case StreamWrapped(file) =>
+        zipFileHandler.uploadWrapped(doi, file, fileInfo.metadata)
+      case TempFileWrapped(_, wrapper) =>
+        val r = instance.dataset(doi).addFile(Option(wrapper), Option(fileInfo.metadata)).flatMap(_.data).map(_.files)
+        wrapper.delete(swallowIOExceptions = true)
+        r
+      case Unwrapped(file) =>
+        instance.dataset(doi).addFile(Option(file), Option(fileInfo.metadata)).flatMap(_.data).map(_.files)
+    }
+  }
+
   protected def getPathToFileInfo(deposit: Deposit): Try[Map[Path, FileInfo]] = {
     for {
       bagPathToFileInfo <- deposit.getPathToFileInfo
@@ -88,6 +120,10 @@ abstract class DatasetEditor(instance: DataverseInstance, optFileExclusionPatter
     } yield filteredPathToFileInfo
   }
 
+  protected def getPathFromFileMeta(fileMeta: FileMeta): Path = {
+    Paths.get(fileMeta.directoryLabel.getOrElse(""), fileMeta.label.getOrElse(""))
+  }
+
   private def excludeFiles(p2fi: Map[Path, FileInfo]): Map[Path, FileInfo] = {
     trace(p2fi)
     p2fi.toList.filter {
@@ -98,16 +134,8 @@ abstract class DatasetEditor(instance: DataverseInstance, optFileExclusionPatter
     }.toMap
   }
 
-  protected def getPrestagedFileFor(fileInfo: FileInfo, basicFileMetas: Set[BasicFileMeta]): Option[PrestagedFile] = {
-    val matchingChecksums = basicFileMetas.filter(_.prestagedFile.checksum.`@value` == fileInfo.checksum)
-    if (matchingChecksums.size == 1) Option(matchingChecksums.head.prestagedFile)
-    else if (matchingChecksums.isEmpty) Option.empty // no matches
-         else { // multiple matches
-           val matchingPaths = basicFileMetas.filter(bfm => bfm.label == fileInfo.metadata.label.get && bfm.directoryLabel == fileInfo.metadata.directoryLabel)
-           if (matchingPaths.size == 1) Option(matchingPaths.head.prestagedFile)
-           else if (matchingPaths.isEmpty) Option.empty
-                else throw new IllegalArgumentException("Found multiple basic file metas with the same path in a single dataset version")
-         }
+  protected def getPrestagedFileFor(fileInfo: FileInfo, prestagedFiles: PrestagedFileIndex): Option[PrestagedFile] = {
+    prestagedFiles.find(fileInfo)
   }
 
   protected def updateFileMetadata(databaseIdToFileInfo: Map[Int, FileMeta]): Try[Unit] = {
@@ -132,7 +160,7 @@ abstract class DatasetEditor(instance: DataverseInstance, optFileExclusionPatter
     } yield ()
   }
 
-  protected def setLicense(supportedLicenses: List[URI])(variantToNormalized: Map[String, String])(deposit: Deposit, dataset: DatasetApi): Try[Unit] = {
+  protected def setLicense(licenses: LicenseVocabulary)(deposit: Deposit, dataset: DatasetApi): Try[Unit] = {
     trace(deposit)
     for {
       ddm <- deposit.tryDdm
@@ -140,7 +168,7 @@ abstract class DatasetEditor(instance: DataverseInstance, optFileExclusionPatter
       _ <- if (optLicense.isEmpty) Failure(RejectedDepositException(deposit, "No license specified"))
            else dataset.updateMetadataFromJsonLd(
              s"""
-                |{ "http://schema.org/license": "${ License.getLicenseUri(supportedLicenses)(variantToNormalized)(optLicense.get).toASCIIString }" }
+                |{ "http://schema.org/license": "${ License.getLicenseUri(licenses)(optLicense.get).toASCIIString }" }
                 |""".stripMargin, replace = true)
     } yield ()
   }
@@ -162,6 +190,19 @@ abstract class DatasetEditor(instance: DataverseInstance, optFileExclusionPatter
     instance.dataset(persistendId).setEmbargo(Embargo(dateAvailableFormat.format(dateAvailable), "", fileIds)).map(_ => ())
   }
 
+  /**
+   * @return the files in the draft of the dataset, as far as needed to match them with the files of a deposit
+   */
+  protected def getFilesInDraft(persistentId: PersistentId): Try[Map[Path, PublishedFile]] = {
+    for {
+      response <- instance.dataset(persistentId).listFiles(Version.DRAFT)
+      files <- response.data
+      dataFiles = files.filter(_.dataFile.isDefined)
+      _ <- if (dataFiles.exists(_.dataFile.get.checksum.`type` != "SHA-1")) Failure(new IllegalArgumentException("Not all file checksums are of type SHA-1"))
+           else Success(())
+    } yield dataFiles.map(f => (getPathFromFileMeta(f), PublishedFile(f.dataFile.get.id, f.dataFile.get.checksum.value))).toMap
+  }
+
   protected def deleteDraftIfExists(persistentId: String): Unit = {
     val result = for {
       r <- instance.dataset(persistentId).viewLatestVersion()
@@ -182,3 +223,21 @@ abstract class DatasetEditor(instance: DataverseInstance, optFileExclusionPatter
     } yield ()
   }
 }
+
+object DatasetEditor {
+
+  /**
+   * Tells whether Dataverse stored the file metadata that was sent along with an upload as it was requested. Dataverse reports the requested `restrict`
+   * flag back as `restricted`, which is absent for a file that is not restricted. The categories are not compared, because the deposit does not set them.
+   *
+   * @param requested the metadata sent along with the file
+   * @param stored    the metadata that Dataverse returned for the file
+   * @return true if no update of the metadata is needed
+   */
+  def isMetadataApplied(requested: FileMeta, stored: FileMeta): Boolean = {
+    stored.label == requested.label &&
+      stored.directoryLabel == requested.directoryLabel &&
+      stored.description == requested.description &&
+      stored.restricted.getOrElse(false) == requested.restrict.getOrElse(false)
+  }
+}
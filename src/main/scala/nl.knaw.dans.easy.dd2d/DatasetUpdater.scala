@@ -15,7 +15,9 @@
  */
 package nl.knaw.dans.easy.dd2d
 
-import nl.knaw.dans.easy.dd2d.migrationinfo.{ BasicFileMeta, MigrationInfo }
+import nl.knaw.dans.easy.dd2d.DepositStage.DATASET_CREATED
+import nl.knaw.dans.easy.dd2d.mapping.LicenseVocabulary
+import nl.knaw.dans.easy.dd2d.migrationinfo.{ MigrationInfo, PrestagedFileIndex }
 import nl.knaw.dans.lib.dataverse.model.dataset.MetadataBlocks
 import nl.knaw.dans.lib.dataverse.model.file.FileMeta
 import nl.knaw.dans.lib.dataverse.model.search.DatasetResultItem
@@ -25,8 +27,7 @@ import nl.knaw.dans.lib.logging.DebugEnhancedLogging
 import org.json4s.native.Serialization
 import org.json4s.{ DefaultFormats, Formats }
 
-import java.net.URI
-import java.nio.file.{ Path, Paths }
+import java.nio.file.Path
 import java.util.regex.Pattern
 import scala.util.control.NonFatal
 import scala.util.{ Failure, Success, Try }
@@ -36,36 +37,47 @@ class DatasetUpdater(deposit: Deposit,
                      zipFileHandler: ZipFileHandler,
                      isMigration: Boolean = false,
                      metadataBlocks: MetadataBlocks,
-                     variantToLicense: Map[String, String],
-                     supportedLicenses: List[URI],
+                     licenses: LicenseVocabulary,
                      instance: DataverseInstance,
-                     optMigrationInfoService: Option[MigrationInfo]) extends DatasetEditor(instance, optFileExclusionPattern, zipFileHandler) with DebugEnhancedLogging {
+                     optMigrationInfoService: Option[MigrationInfo],
+                     checkpoints: DepositCheckpoints = DepositCheckpoints.none,
+                     fileMutationExecutor: FileMutationExecutor = FileMutationExecutor.sequential,
+                     optPersistentIdIndex: Option[PersistentIdIndex] = None) extends DatasetEditor(instance, optFileExclusionPattern, zipFileHandler) with DebugEnhancedLogging {
   trace(deposit)
 
   override def performEdit(): Try[PersistentId] = {
     {
-      for {
-        doi <- if (isMigration) getDoiByIsVersionOf // using deposit.dataversePid may lead to confusing situations when the DOI is present but erroneously so.
-               else getDoiBySwordToken
-      } yield doi
+      findIndexedDoi.map(doi => Success((doi, true))).getOrElse {
+        for {
+          doi <- if (isMigration) getDoiByIsVersionOf // using deposit.dataversePid may lead to confusing situations when the DOI is present but erroneously so.
+                 else getDoiBySwordToken
+        } yield (doi, false)
+      }
     } match {
       case Failure(e) => Failure(FailedDepositException(deposit, "Could not find persistentId of existing dataset", e))
-      case Success(doi) => {
+      case Success((doi, indexed)) => {
         for {
           dataset <- Try { instance.dataset(doi) }
+          resumed <- isInterruptedDraft(dataset, doi)
           _ <- dataset.awaitUnlock()
           /*
            * Temporary fix. If we do not wait a couple of seconds here, the first version never gets properly published, and the second version
-           * just overwrites it, becoming V1.
+           * just overwrites it, becoming V1. Not needed if the dataset was found in the local index, which does not wait for the search index.
            */
-          - <- Try { Thread.sleep(3000) }
+          - <- if (indexed) Success(())
+               else Try { Thread.sleep(3000) }
           // TODO: library should provide function waitForIndexing that uses the @Path("{identifier}/timestamps") endpoint on Datasets
           _ <- dataset.awaitUnlock()
-          _ <- checkDatasetInPublishedState(dataset)
+          _ <- if (resumed) {
+                 logger.info(s"Resuming update of the draft of $doi for $deposit")
+                 Success(())
+               }
+               else checkDatasetInPublishedState(dataset)
           _ <- dataset.updateMetadata(metadataBlocks)
+          _ = checkpoints.reached(DATASET_CREATED, Some(doi))
           _ <- dataset.awaitUnlock()
 
-          _ <- setLicense(supportedLicenses)(variantToLicense)(deposit, dataset)
+          _ <- setLicense(licenses)(deposit, dataset)
           _ <- dataset.awaitUnlock()
           pathToFileInfo <- getPathToFileInfo(deposit)
           _ = debug(s"pathToFileInfo = $pathToFileInfo")
@@ -75,75 +87,30 @@ class DatasetUpdater(deposit: Deposit,
 
           numPub <- getNumberOfPublishedVersions(dataset)
           _ = debug(s"Number of published versions so far: $numPub")
-          prestagedFiles <- optMigrationInfoService.map(_.getPrestagedDataFilesFor(doi, numPub + 1)).getOrElse(Success(Set.empty[BasicFileMeta]))
+          prestagedFiles <- optMigrationInfoService.map(_.getPrestagedFileIndexFor(doi, numPub + 1)).getOrElse(Success(PrestagedFileIndex.empty))
 
-          oldToNewPathMovedFiles <- getOldToNewPathOfFilesToMove(pathToFileMetaInLatestVersion, pathToFileInfo)
-          fileMovements = oldToNewPathMovedFiles.map { case (old, newPath) => (pathToFileMetaInLatestVersion(old).dataFile.get.id, pathToFileInfo(newPath).metadata) }
+          pathToPublishedFile = toPublishedFiles(pathToFileMetaInLatestVersion)
+          fullPlan <- Try { UpdatePlan.create(pathToFileInfo, pathToPublishedFile) }
+          _ = debug(s"plan = $fullPlan")
+          // The latest published version has not changed, so the interrupted run made the same plan; only what it did not apply yet is left
+          (plan, filesInDraft) <- if (resumed) getFilesInDraft(doi).flatMap(fullPlan.remainingFor(pathToFileInfo, pathToPublishedFile, _))
+                                  else Success((fullPlan, Map.empty[Int, FileInfo]))
+          _ = if (resumed) logger.info(s"${ filesInDraft.size } replaced or added files already in the draft of $doi; remaining: $plan")
+          fileMetaInDraft = filesInDraft.map { case (id, fileInfo) => (id, fileInfo.metadata) }
           // Movement will be realized by updating label and directoryLabel attributes of the file; there is no separate "move-file" API endpoint.
-          _ = debug(s"fileMovements = $fileMovements")
-
-          /*
-           * File replacement can only happen on files with paths that are not also involved in a rename/move action. Otherwise we end up with:
-           *
-           * - trying to update the file metadata by a database ID that is not the "HEAD" of a file version history (which Dataverse doesn't allow anyway, it
-           * fails with "You cannot edit metadata on a dataFile that has been replaced"). This happens when a file A is renamed to B, but a different file A
-           * is also added in the same update.
-           *
-           * - trying to add a file with a name that already exists. This happens when a file A is renamed to B, while B is also part of the latest version
-           */
-          fileReplacementCandidates = pathToFileMetaInLatestVersion
-            .filterNot { case (path, _) => oldToNewPathMovedFiles.keySet.contains(path) } // remove old paths of moved files
-            .filterNot { case (path, _) => oldToNewPathMovedFiles.values.toSet.contains(path) } // remove new paths of moved files
-          filesToReplace <- getFilesToReplace(pathToFileInfo, fileReplacementCandidates)
-          fileReplacements <- replaceFiles(dataset, filesToReplace, prestagedFiles)
+          fileMovements = plan.moves.map { case (id, fileInfo) => (id, fileInfo.metadata) }
+          fileReplacements <- replaceFiles(dataset, plan.replacements, prestagedFiles)
           _ = debug(s"fileReplacements = $fileReplacements")
-
-          /*
-           * To find the files to delete we start from the paths in the deposit payload. In principle, these paths are remaining, so should NOT be deleted.
-           * However, if a file is moved/renamed to a path that was also present in the latest version, then the old file at that path must first be deleted
-           * (and must therefore NOT included in candidateRemainingFiles). Otherwise we'll end up trying to use an existing (directoryLabel, label) pair.
-           */
-          candidateRemainingFiles = pathToFileInfo.keySet diff oldToNewPathMovedFiles.values.toSet
-
-          /*
-           * The paths to delete, now, are the paths in the latest version minus the remaining files. We further subtract the old paths of the moved files.
-           * This may be a bit confusing, but the goals is to make sure that the underlying FILE remains present (after all, it is to be renamed/moved). The
-           * path itself WILL be "removed" from the latest version by the move. (It MAY be filled again by a file addition in the same update, though.)
-           */
-          pathsToDelete = pathToFileMetaInLatestVersion.keySet diff candidateRemainingFiles diff oldToNewPathMovedFiles.keySet
-          _ = debug(s"pathsToDelete = $pathsToDelete")
-          fileDeletions <- getFileDeletions(pathsToDelete, pathToFileMetaInLatestVersion)
-          _ = debug(s"fileDeletions = $fileDeletions")
-          _ <- deleteFiles(dataset, fileDeletions.toList)
-
-          /*
-           * After the movements have been performed, which paths are occupied? We start from the paths of the latest version (pathToFileMetaInLatestVersion.keySet)
-           *
-           * The old paths of the moved files (oldToNewPathMovedFiles.keySet) are no longer occupied, so they must be subtracted. This is important in the case where
-           * a deposit renames/moves a file (leaving the checksum unchanges) but provides a new file for the vacated path.
-           *
-           * The paths of the deleted files (pathsToDelete) are no longer occupied, so must be subtracted. (It is not strictly necessary for the calculation
-           * of pathsToAdd, but done anyway to keep the logic consistent.)
-           *
-           * The new paths of the moved files (oldToNewPathMovedFiles.values.toSet) *are* now occupied, so the must be added. This is important to
-           * avoid those files from being marked as "new" files, i.e. files to be added.
-           *
-           * All paths in the deposit that are not occupied, are new files to be added.
-           */
-          occupiedPaths = (pathToFileMetaInLatestVersion.keySet diff oldToNewPathMovedFiles.keySet diff pathsToDelete) union oldToNewPathMovedFiles.values.toSet
-          _ = debug(s"occupiedPaths = $occupiedPaths")
-          pathsToAdd = pathToFileInfo.keySet diff occupiedPaths
-          filesToAdd = pathsToAdd.map(pathToFileInfo).toList
-          _ = debug(s"filesToAdd = $filesToAdd")
-          fileAdditions <- addFiles(doi, filesToAdd, prestagedFiles).map(_.mapValues(_.metadata))
+          _ <- deleteFiles(dataset, plan.deletions.toList)
+          fileAdditions <- addFiles(doi, plan.additions, prestagedFiles)
 
           // TODO: check that only updating the file metadata works
-          _ <- updateFileMetadata(fileReplacements ++ fileMovements ++ fileAdditions)
+          _ <- updateFileMetadata(fileReplacements ++ fileMovements ++ fileAdditions.metadataToUpdate ++ fileMetaInDraft)
           _ <- dataset.awaitUnlock()
 
           dateAvailable <- deposit.getDateAvailable
           _ <- if (isEmbargo(dateAvailable)) {
-            val fileIdsToEmbargo = (fileReplacements ++ fileAdditions).filter(f => f._2.directoryLabel.getOrElse("") != "easy-migration").keys
+            val fileIdsToEmbargo = (fileReplacements ++ fileAdditions.databaseIdToFileMeta ++ fileMetaInDraft).filter(f => f._2.directoryLabel.getOrElse("") != "easy-migration").keys
             logger.info(s"Embargoing new files until $dateAvailable")
             embargoFiles(doi, dateAvailable, fileIdsToEmbargo.toList)
           }
@@ -158,6 +125,8 @@ class DatasetUpdater(deposit: Deposit,
         } yield doi
       }.doIfFailure {
         case e: CannotUpdateDraftDatasetException => // Don't delete the draft that caused the failure
+        case e if checkpoints.isEnabled && DepositCheckpoints.isInterruption(e) =>
+          logger.warn(s"Dataset update interrupted, keeping the draft of $doi to resume from", e)
         case NonFatal(e) =>
           logger.error("Dataset update failed, deleting draft", e)
           deleteDraftIfExists(doi)
@@ -165,6 +134,19 @@ class DatasetUpdater(deposit: Deposit,
     }
   }
 
+  /*
+   * A draft that the checkpoints show this deposit to have created is resumed: the files that the interrupted run already replaced, deleted or added are
+   * not changed again. If this run is interrupted in turn, the draft is kept; if the deposit fails or is rejected, it is deleted.
+   */
+  private def isInterruptedDraft(dataset: DatasetApi, doi: String): Try[Boolean] = {
+    if (checkpoints.getPersistentIdIfLastReached(DATASET_CREATED).contains(doi))
+      for {
+        r <- dataset.viewLatestVersion()
+        v <- r.data
+      } yield v.latestVersion.versionState.contains("DRAFT")
+    else Success(false)
+  }
+
   private def checkDatasetInPublishedState(datasetApi: DatasetApi): Try[Unit] = {
     implicit val jsonFormats: Formats = DefaultFormats
     for {
@@ -178,6 +160,22 @@ class DatasetUpdater(deposit: Deposit,
     } yield ()
   }
 
+  private def findIndexedDoi: Option[String] = {
+    optPersistentIdIndex.flatMap {
+      index =>
+        Try {
+          if (isMigration) deposit.getIsVersionOf.toOption.flatMap(index.findByBagId)
+          else Option(deposit.vaultMetadata.dataverseSwordToken).filter(_.nonEmpty).flatMap(index.findBySwordToken)
+        }.doIfFailure {
+          case e => logger.warn("Could not look up dataset in local index; falling back to search", e)
+        }.toOption.flatten
+    }.map {
+      doi =>
+        debug(s"Deposit is update of dataset $doi (local index)")
+        doi
+    }
+  }
+
   private def getDoiBySwordToken: Try[String] = {
     trace(())
     debug(s"dansSwordToken = ${ deposit.vaultMetadata.dataverseSwordToken }")
@@ -213,10 +211,6 @@ class DatasetUpdater(deposit: Deposit,
     } yield pathToFileMeta
   }
 
-  private def getPathFromFileMeta(fileMeta: FileMeta): Path = {
-    Paths.get(fileMeta.directoryLabel.getOrElse(""), fileMeta.label.getOrElse(""))
-  }
-
   private def validateFileMetas(files: List[FileMeta]): Try[Unit] = {
     if (files.map(_.dataFile).exists(_.isEmpty)) Failure(new IllegalArgumentException("Found file metadata without dataFile element"))
     else if (files.map(_.dataFile.get).exists(_.checksum.`type` != "SHA-1")) Failure(new IllegalArgumentException("Not all file checksums are of type SHA-1"))
@@ -230,75 +224,34 @@ class DatasetUpdater(deposit: Deposit,
     } yield vs.count(v => v.versionState.isDefined && v.versionState.get == "RELEASED")
   }
 
-  private def getFilesToReplace(pathToFileInfo: Map[Path, FileInfo], pathToFileMetaInLatestVersion: Map[Path, FileMeta]): Try[Map[Int, FileInfo]] = Try {
-    trace(())
-    val intersection = pathToFileInfo.keySet intersect pathToFileMetaInLatestVersion.keySet
-    debug(s"The following files are in both deposit and latest published version: ${ intersection.mkString(", ") }")
-    val checksumsDiffer = intersection.filter(p => pathToFileInfo(p).checksum != pathToFileMetaInLatestVersion(p).dataFile.get.checksum.value)
-    debug(s"The following files are in both deposit and latest published version AND have a different checksum: ${ checksumsDiffer.mkString(", ") }")
-    checksumsDiffer.map(p => (pathToFileMetaInLatestVersion(p).dataFile.get.id, pathToFileInfo(p))).toMap
-  }
-
-  /**
-   * Creatings a mapping for moving files to a new location. To determine this, the file needs to be unique in the old and the new version, because
-   * its checksum is used to locate it. Files that occur multiple times in either the old or the new version cannot be moved in this way. They
-   * will appear to have been deleted in the old version and added in the new. This has the same net result, except that the "Changes" overview in
-   * Dataverse does not record that the file was effectively moved.
-   *
-   * @param pathToFileMetaInLatestVersion map from path to file metadata in the old version
-   * @param pathToFileInfo                map from path to file info in the new version (i.e. the deposit).
-   * @return
-   */
-  private def getOldToNewPathOfFilesToMove(pathToFileMetaInLatestVersion: Map[Path, FileMeta], pathToFileInfo: Map[Path, FileInfo]): Try[Map[Path, Path]] = {
-    for {
-      checksumsToPathNonDuplicatedFilesInDeposit <- getChecksumsToPathOfNonDuplicateFiles(pathToFileInfo.mapValues(_.checksum))
-      checksumsToPathNonDuplicatedFilesInLatestVersion <- getChecksumsToPathOfNonDuplicateFiles(pathToFileMetaInLatestVersion.mapValues(_.dataFile.get.checksum.value))
-      checksumsOfPotentiallyMovedFiles = checksumsToPathNonDuplicatedFilesInDeposit.keySet intersect checksumsToPathNonDuplicatedFilesInLatestVersion.keySet
-      oldToNewPathMovedFiles = checksumsOfPotentiallyMovedFiles
-        .map(c => (checksumsToPathNonDuplicatedFilesInLatestVersion(c), checksumsToPathNonDuplicatedFilesInDeposit(c)))
-      /*
-       * Work-around for a bug in Dataverse. The API seems to lose the directoryLabel when the draft of a second version is started. For now, we therefore don't filter
-       * away files that have kept the same path. They will be "moved" in place, making sure the directoryLabel is reconfirmed.
-       *
-       * For files with duplicates in the same dataset this will not work, because those are not collected above.
-       */
-      //        .filter { case (pathInLatestVersion, pathInDeposit) => pathInLatestVersion != pathInDeposit }
-    } yield oldToNewPathMovedFiles.toMap
-  }
-
-  private def getChecksumsToPathOfNonDuplicateFiles(pathToChecksum: Map[Path, String]): Try[Map[String, Path]] = Try {
-    pathToChecksum
-      .groupBy { case (_, c) => c }
-      .filter { case (_, pathToFileInfoMappings) => pathToFileInfoMappings.size == 1 }
-      .map { case (c, m) => (c, m.head._1) }
+  private def toPublishedFiles(pathToFileMeta: Map[Path, FileMeta]): Map[Path, PublishedFile] = {
+    pathToFileMeta.map { case (path, f) => (path, PublishedFile(f.dataFile.get.id, f.dataFile.get.checksum.value)) }
   }
 
-  private def getFileDeletions(paths: Set[Path], pathToFileMeta: Map[Path, FileMeta]): Try[Set[Int]] = Try {
-    paths.map(path => pathToFileMeta(path).dataFile.get.id)
+  private def deleteFiles(dataset: DatasetApi, databaseIds: List[DatabaseId]): Try[Unit] = {
+    fileMutationExecutor.delete(databaseIds, () => dataset.awaitUnlock(), getDeletedFromDraft(dataset)) {
+      id =>
+        debug(s"Deleting file, databaseId = $id")
+        instance.sword().deleteFile(id).map(_ => ())
+    }
   }
 
-  private def deleteFiles(dataset: DatasetApi, databaseIds: List[DatabaseId]): Try[Unit] = {
-    databaseIds.map(id => {
-      debug(s"Deleting file, databaseId = $id")
-      instance.sword().deleteFile(id)
-      dataset.awaitUnlock()
-    }).collectResults.map(_ => ())
+  private def getDeletedFromDraft(dataset: DatasetApi)(ids: List[DatabaseId]): Try[Set[DatabaseId]] = {
+    for {
+      response <- dataset.listFiles(Version.DRAFT)
+      files <- response.data
+      idsInDraft = files.flatMap(_.dataFile.map(_.id)).toSet
+    } yield ids.filterNot(idsInDraft.contains).toSet
   }
 
-  private def replaceFiles(dataset: DatasetApi, databaseIdToNewFile: Map[Int, FileInfo], prestagedFiles: Set[BasicFileMeta] = Set.empty): Try[Map[Int, FileMeta]] = {
+  private def replaceFiles(dataset: DatasetApi, databaseIdToNewFile: Map[Int, FileInfo], prestagedFiles: PrestagedFileIndex = PrestagedFileIndex.empty): Try[Map[Int, FileMeta]] = {
     trace(databaseIdToNewFile, prestagedFiles)
-    databaseIdToNewFile.map {
-      case (id, fileInfo) =>
-        val fileApi = instance.file(id)
-
-        for {
-          (replacementId, replacementMeta) <- replaceFile(fileApi, fileInfo, prestagedFiles)
-          _ <- dataset.awaitUnlock()
-        } yield (replacementId, replacementMeta)
-    }.toList.collectResults.map(_.toMap)
+    fileMutationExecutor.run(databaseIdToNewFile.toList, () => dataset.awaitUnlock()) {
+      case (id, fileInfo) => replaceFile(instance.file(id), fileInfo, prestagedFiles)
+    }.map(_.toMap)
   }
 
-  private def replaceFile(fileApi: FileApi, fileInfo: FileInfo, prestagedFiles: Set[BasicFileMeta]): Try[(Int, FileMeta)] = {
+  private def replaceFile(fileApi: FileApi, fileInfo: FileInfo, prestagedFiles: PrestagedFileIndex): Try[(Int, FileMeta)] = {
     /*
      * Note, forceReplace = true is used, so that the action does not fail if the replacement has a different MIME-type than
      * the replaced file. The only way to pass forceReplace is through the FileMeta. This means we are deleting any existing
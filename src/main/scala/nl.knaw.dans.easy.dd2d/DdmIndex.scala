@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.easy.dd2d
+
+import scala.collection.mutable
+import scala.collection.mutable.ListBuffer
+import scala.xml.{ Node, NodeSeq }
+
+/**
+ * The child elements of the `profile` and `dcmiMetadata` sections of a DDM, grouped by label in a single pass. Looking up a label returns the same
+ * nodes, in the same order, as `ddm \ "profile" \ label` or `ddm \ "dcmiMetadata" \ label`, without scanning the section again.
+ *
+ * @param ddm the DDM root element
+ */
+class DdmIndex(ddm: Node) {
+  val profileChildren: NodeSeq = ddm \ "profile" \ "_"
+  val dcmiMetadataChildren: NodeSeq = ddm \ "dcmiMetadata" \ "_"
+  private val profileByLabel = groupByLabel(profileChildren)
+  private val dcmiMetadataByLabel = groupByLabel(dcmiMetadataChildren)
+
+  def profile(label: String): NodeSeq = profileByLabel.getOrElse(label, NodeSeq.Empty)
+
+  def dcmiMetadata(label: String): NodeSeq = dcmiMetadataByLabel.getOrElse(label, NodeSeq.Empty)
+
+  private def groupByLabel(nodes: NodeSeq): Map[String, NodeSeq] = {
+    val buckets = mutable.HashMap[String, ListBuffer[Node]]()
+    nodes.foreach(n => buckets.getOrElseUpdate(n.label, ListBuffer[Node]()) += n)
+    buckets.map { case (label, bucket) => label -> NodeSeq.fromSeq(bucket.toList) }.toMap
+  }
+}
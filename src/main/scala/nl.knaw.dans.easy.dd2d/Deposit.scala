@@ -18,16 +18,17 @@ package nl.knaw.dans.easy.dd2d
 import better.files.File
 import gov.loc.repository.bagit.domain.Bag
 import gov.loc.repository.bagit.hash.StandardSupportedAlgorithms
-import gov.loc.repository.bagit.reader.BagReader
+import gov.loc.repository.bagit.reader.{ BagReader, KeyValueReader }
 import nl.knaw.dans.easy.dd2d.mapping.{ AccessRights, FileElement }
 import nl.knaw.dans.lib.error.TraversableTryExtensions
 import nl.knaw.dans.lib.logging.DebugEnhancedLogging
 import org.apache.commons.configuration.PropertiesConfiguration
 
+import java.nio.charset.StandardCharsets
 import java.nio.file.{ Path, Paths }
 import java.util.Date
-import scala.collection.JavaConverters.{ asScalaSetConverter, mapAsScalaMapConverter }
-import scala.util.{ Failure, Try }
+import scala.collection.JavaConverters.{ asScalaBufferConverter, asScalaSetConverter, mapAsScalaMapConverter }
+import scala.util.{ Failure, Success, Try }
 import scala.xml.{ Node, Utility, XML }
 
 /**
@@ -147,6 +148,10 @@ case class Deposit(dir: File) extends DebugEnhancedLogging {
     depositProperties.save()
   }
 
+  def urn: String = {
+    depositProperties.getString("identifier.urn", "")
+  }
+
   def setUrn(urn: String): Try[Unit] = Try {
     depositProperties.addProperty("identifier.urn", urn)
     depositProperties.save()
@@ -176,6 +181,26 @@ case class Deposit(dir: File) extends DebugEnhancedLogging {
     } yield isVersionOf != null && isVersionOf.size() > 0
   }
 
+  /**
+   * Reads the Is-Version-Of from bag-info.txt without loading the bag, which would also read its manifests.
+   */
+  def getOptIsVersionOfFromBagInfo: Try[Option[String]] = Try {
+    KeyValueReader.readKeyValuesFromFile((bagDir / "bag-info.txt").path, ":", StandardCharsets.UTF_8).asScala
+      .find(_.getKey == "Is-Version-Of")
+      .map(_.getValue)
+  }
+
+  /**
+   * Returns a key that is the same for all deposits of one dataset: the UUID of its first deposit. Updates refer to that deposit with their SWORD token
+   * (`sword:<UUID>`) or their Is-Version-Of (`urn:uuid:<UUID>`); for a first version, it is the ID of the deposit itself.
+   */
+  def getDatasetKey: Try[String] = {
+    Option(dataverseSwordToken).filter(_.nonEmpty)
+      .map(Success(_))
+      .getOrElse(getOptIsVersionOfFromBagInfo.map(_.getOrElse(depositId)))
+      .map(_.stripPrefix("sword:").stripPrefix("urn:uuid:"))
+  }
+
   def getIsVersionOf: Try[String] = {
     for {
       bag <- tryBag
@@ -230,10 +255,17 @@ case class Deposit(dir: File) extends DebugEnhancedLogging {
     depositProperties.getString("dataverse.id-identifier", "")
   }
 
-  private def dataverseBagId: String = {
+  def dataverseBagId: String = {
     depositProperties.getString("dataverse.bag-id", "")
   }
 
+  /**
+   * The bag ID by which later deposits refer to this one in their Is-Version-Of: the dataverse.bag-id, if set, or else the deposit ID as URN:UUID.
+   */
+  def bagId: String = {
+    Option(dataverseBagId).filter(_.nonEmpty).getOrElse(s"urn:uuid:$depositId")
+  }
+
   private def dataverseNbn: String = {
     depositProperties.getString("dataverse.nbn", "")
   }
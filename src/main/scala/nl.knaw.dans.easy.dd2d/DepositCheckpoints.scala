@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.easy.dd2d
+
+import nl.knaw.dans.easy.dd2d.DepositStage.DepositStage
+import nl.knaw.dans.lib.error.TryExtensions
+import nl.knaw.dans.lib.logging.DebugEnhancedLogging
+
+import java.nio.channels.ClosedByInterruptException
+import scala.util.Try
+
+/**
+ * The stages of an ingest after which it can be resumed, in the order in which they are reached.
+ */
+object DepositStage extends Enumeration {
+  // DATASET_CREATED: the draft that the deposit edits exists, being a new dataset or a new version of an existing one
+  type DepositStage = Value
+  val VALIDATED, DATASET_CREATED, FILES_UPLOADED, PUBLISH_SUBMITTED = Value
+}
+
+/**
+ * The last stage that the ingest of a deposit completed.
+ *
+ * @param stage        the name of a [[DepositStage]]
+ * @param persistentId the persistent ID of the dataset, once it is known
+ */
+case class DepositCheckpoint(stage: String, persistentId: Option[String])
+
+/**
+ * Persistent store of [[DepositCheckpoint]]s, by deposit ID.
+ */
+trait DepositCheckpointStore {
+  def get(depositId: String): Option[DepositCheckpoint]
+
+  def put(depositId: String, checkpoint: DepositCheckpoint): Unit
+
+  def remove(depositId: String): Unit
+}
+
+/**
+ * The checkpoints of one deposit. The checkpoint left by an earlier, interrupted run is read on first use, so that the ingest can skip the stages that it
+ * completed. A checkpoint that cannot be stored is logged and otherwise ignored: it only means that less can be skipped after an interruption.
+ *
+ * @param depositId the ID of the deposit
+ * @param optStore  the store, or `None` to not keep checkpoints
+ */
+class DepositCheckpoints(depositId: String, optStore: Option[DepositCheckpointStore]) extends DebugEnhancedLogging {
+  @volatile
+  private var loaded = false
+  @volatile
+  private var optCheckpoint: Option[(DepositStage, Option[String])] = None
+
+  private def current: Option[(DepositStage, Option[String])] = {
+    if (!loaded) {
+      optStore.foreach { store =>
+        optCheckpoint = Try { store.get(depositId) }
+          .doIfFailure { case e => logger.warn(s"Could not read checkpoint of deposit $depositId; starting from the beginning", e) }
+          .toOption.flatten
+          .flatMap(c => Try { (DepositStage.withName(c.stage), c.persistentId) }.toOption)
+      }
+      loaded = true
+    }
+    optCheckpoint
+  }
+
+  def isEnabled: Boolean = optStore.isDefined
+
+  /**
+   * @return the last stage completed, by this run or an interrupted earlier one
+   */
+  def getStage: Option[DepositStage] = current.map(_._1)
+
+  def isReached(stage: DepositStage): Boolean = getStage.exists(_ >= stage)
+
+  /**
+   * @return the persistent ID recorded with the checkpoint, if `stage` is the last stage completed
+   */
+  def getPersistentIdIfLastReached(stage: DepositStage): Option[String] = current.filter(_._1 == stage).flatMap(_._2)
+
+  def getPersistentId: Option[String] = current.flatMap(_._2)
+
+  /**
+   * Records that a stage was completed. The persistent ID recorded earlier is kept, unless a new one is given.
+   */
+  def reached(stage: DepositStage, optPersistentId: Option[String] = None): Unit = {
+    optStore.foreach { store =>
+      val persistentId = optPersistentId.orElse(getPersistentId)
+      optCheckpoint = Some((stage, persistentId))
+      Try { store.put(depositId, DepositCheckpoint(stage.toString, persistentId)) }
+        .doIfFailure { case e => logger.warn(s"Could not store checkpoint $stage of deposit $depositId", e) }
+    }
+  }
+
+  /**
+   * Forgets the checkpoints, once the deposit is no longer in progress.
+   */
+  def clear(): Unit = {
+    optStore.foreach { store =>
+      optCheckpoint = None
+      Try { store.remove(depositId) }
+        .doIfFailure { case e => logger.warn(s"Could not remove checkpoint of deposit $depositId", e) }
+    }
+  }
+}
+
+object DepositCheckpoints {
+  /**
+   * Checkpoints that are not kept.
+   */
+  val none = new DepositCheckpoints("", None)
+
+  /**
+   * Whether a failure means that the run was interrupted, e.g. because the service is shutting down, rather than that the deposit failed. Only an
+   * interrupted run is resumed from its checkpoint; a deposit that failed is moved to the outbox.
+   *
+   * @param e the failure
+   * @return true if the current thread was interrupted or the failure was caused by an interruption
+   */
+  def isInterruption(e: Throwable): Boolean = {
+    Thread.currentThread().isInterrupted || Iterator.iterate(e)(_.getCause).takeWhile(_ != null).take(maxCauseDepth).exists {
+      case _: InterruptedException | _: ClosedByInterruptException => true
+      case _ => false
+    }
+  }
+
+  private val maxCauseDepth = 20
+}
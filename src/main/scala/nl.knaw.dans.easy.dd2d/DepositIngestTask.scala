@@ -16,9 +16,10 @@
 package nl.knaw.dans.easy.dd2d
 
 import better.files.File
+import nl.knaw.dans.easy.dd2d.DepositStage.{ FILES_UPLOADED, PUBLISH_SUBMITTED, VALIDATED }
 import nl.knaw.dans.easy.dd2d.OutboxSubdir.{ FAILED, OutboxSubdir, PROCESSED, REJECTED }
 import nl.knaw.dans.easy.dd2d.dansbag.{ DansBagValidationResult, DansBagValidator }
-import nl.knaw.dans.easy.dd2d.mapping.JsonObject
+import nl.knaw.dans.easy.dd2d.mapping.{ JsonObject, LanguageVocabulary, LicenseVocabulary }
 import nl.knaw.dans.easy.dd2d.migrationinfo.MigrationInfo
 import nl.knaw.dans.lib.dataverse.DataverseInstance
 import nl.knaw.dans.lib.dataverse.model.dataset.UpdateType.major
@@ -30,7 +31,7 @@ import org.json4s.native.Serialization
 import org.json4s.{ DefaultFormats, Formats }
 
 import java.lang.Thread.sleep
-import java.net.URI
+import java.util.concurrent.Semaphore
 import java.util.regex.Pattern
 import scala.collection.mutable.ListBuffer
 import scala.language.postfixOps
@@ -39,51 +40,165 @@ import scala.util.{ Failure, Success, Try }
 import scala.xml.{ Elem, Node }
 
 /**
- * Checks one deposit and then ingests it into Dataverse.
+ * Checks one deposit and then ingests it into Dataverse. If a checkpoint store is given, the task records the stages it completes, so that after an
+ * interruption it resumes from the last completed stage. An interrupted deposit is left in the inbox for that; a deposit that is moved to the outbox
+ * loses its checkpoint.
  *
- * @param deposit  the deposit to ingest
- * @param instance the Dataverse instance to ingest in
+ * @param deposit              the deposit to ingest
+ * @param activeMetadataBlocks provides the metadata blocks enabled in the target dataverse
+ * @param instance             the Dataverse instance to ingest in
+ * @param optCheckpointStore   optional store for the checkpoints of the deposit
+ * @param optPersistentIdIndex optional local index in which the task records the dataset of the deposit after a successful ingest, and in which updates
+ *                             look up the dataset they target
  */
 case class DepositIngestTask(deposit: Deposit,
                              optFileExclusionPattern: Option[Pattern],
                              zipFileHandler: ZipFileHandler,
                              depositorRole: String,
                              deduplicate: Boolean,
-                             activeMetadataBlocks: List[String],
+                             activeMetadataBlocks: () => Try[List[String]],
                              optDansBagValidator: Option[DansBagValidator],
                              instance: DataverseInstance,
                              migrationInfo: Option[MigrationInfo],
                              publishAwaitUnlockMaxNumberOfRetries: Int,
                              publishAwaitUnlockMillisecondsBetweenRetries: Int,
                              narcisClassification: Elem,
-                             iso1ToDataverseLanguage: Map[String, String],
-                             iso2ToDataverseLanguage: Map[String, String],
-                             variantToLicense: Map[String, String],
-                             supportedLicenses: List[URI],
+                             languages: LanguageVocabulary,
+                             licenses: LicenseVocabulary,
                              repordIdToTerm: Map[String, String],
-                             outboxDir: File) extends Task[Deposit] with DebugEnhancedLogging {
+                             outboxDir: File,
+                             optDataverseEditPermits: Option[Semaphore] = None,
+                             optCheckpointStore: Option[DepositCheckpointStore] = None,
+                             fileMutationExecutor: FileMutationExecutor = FileMutationExecutor.sequential,
+                             optPersistentIdIndex: Option[PersistentIdIndex] = None) extends Task[Deposit] with DebugEnhancedLogging {
   trace(deposit)
 
-  private val datasetMetadataMapper = new DepositToDvDatasetMetadataMapper(deduplicate, activeMetadataBlocks, narcisClassification, iso1ToDataverseLanguage, iso2ToDataverseLanguage, repordIdToTerm)
+  protected val checkpoints = new DepositCheckpoints(deposit.depositId, optCheckpointStore)
+
   private val bagDirPath = File(deposit.bagDir.path)
 
   override def run(): Try[Unit] = {
-    doRun()
+    finish(prepareDataset().flatMap(doRun))
+  }
+
+  /**
+   * Checks, validates and maps the deposit, without changing anything in Dataverse. This does not depend on earlier deposits for the same dataset, so it
+   * may run ahead of them. If this step fails, the deposit is already moved to the outbox, unless it fails with an
+   * [[InterruptedDepositException]].
+   *
+   * @return the dataset metadata, to pass on to `run` or `startIngest`
+   */
+  def prepareIngest(): Try[Dataset] = {
+    prepareDataset().recoverWith {
+      case e => finishFailed(e)
+    }
+  }
+
+  /**
+   * Performs the rest of the deposit after [[prepareIngest]].
+   *
+   * @param dataverseDataset the result of [[prepareIngest]]
+   */
+  def run(dataverseDataset: Dataset): Try[Unit] = {
+    finish(doRun(dataverseDataset))
+  }
+
+  /**
+   * Performs the deposit up to and including the publish request, without waiting for the publication to finish. Together with [[isPublicationFinished]] and
+   * [[finishIngest]] this is the non-blocking alternative to [[run]]. If this step fails, the deposit is already moved to the outbox, unless it fails with an
+   * [[InterruptedDepositException]].
+   *
+   * @return the persistent ID of the dataset being published
+   */
+  def startIngest(): Try[String] = {
+    prepareIngest().flatMap(startIngest)
+  }
+
+  /**
+   * As `startIngest()`, for a deposit that was already prepared with [[prepareIngest]].
+   *
+   * @param dataverseDataset the result of [[prepareIngest]]
+   * @return the persistent ID of the dataset being published
+   */
+  def startIngest(dataverseDataset: Dataset): Try[String] = {
+    val result = for {
+      persistentId <- editDataset(dataverseDataset)
+      _ <- submitPublicationOnce(persistentId)
+    } yield persistentId
+    result.recoverWith {
+      case e => finishFailed(e)
+    }
+  }
+
+  /**
+   * Checks, without waiting, whether the publication started by [[startIngest]] has finished.
+   *
+   * @param persistentId the persistent ID of the dataset
+   * @return whether the dataset is released and no longer locked
+   */
+  def isPublicationFinished(persistentId: String): Try[Boolean] = {
+    for {
+      unlocked <- isUnlocked(persistentId)
+      released <- if (unlocked) getDatasetState(persistentId).map(_ == "RELEASED")
+                  else Success(false)
+    } yield released
+  }
+
+  /**
+   * Completes the deposit after [[isPublicationFinished]] has returned `true`, and moves it to the outbox.
+   *
+   * @param persistentId the persistent ID of the published dataset
+   */
+  def finishIngest(persistentId: String): Try[Unit] = {
+    finish(savePersistentIdentifiersInDepositProperties(persistentId).map(_ => recordInPersistentIdIndex(persistentId)))
+  }
+
+  /**
+   * Marks the deposit as failed, e.g. because its publication did not finish in time, and moves it to the outbox.
+   *
+   * @param e the cause
+   */
+  def failIngest(e: Throwable): Try[Unit] = {
+    finish(Failure(e))
+  }
+
+  private def finish(result: Try[Unit]): Try[Unit] = {
+    migrationInfo.foreach(_.depositFinished(deposit.depositId))
+    result
       .doIfSuccess(_ => {
         logger.info(s"SUCCESS: $deposit")
+        checkpoints.clear()
         deposit.setState("ARCHIVED", "The deposit was successfully ingested in the Data Station and will be automatically archived")
         moveDepositToOutbox(PROCESSED)
       })
       .doIfFailure {
         case e: RejectedDepositException =>
           logger.info(s"REJECTED: $deposit", e)
+          checkpoints.clear()
           deposit.setState("REJECTED", e.msg)
           moveDepositToOutbox(REJECTED)
+        case e if isResumable(e) =>
+          logger.info(s"INTERRUPTED: $deposit; leaving it in the inbox to resume after stage ${ checkpoints.getStage.getOrElse("none") }", e)
         case e =>
           logger.info(s"FAILED: $deposit", e)
+          checkpoints.clear()
           deposit.setState("FAILED", e.getMessage)
           moveDepositToOutbox(FAILED)
       }
+      .recoverWith {
+        case e if isResumable(e) => Failure(InterruptedDepositException(deposit, checkpoints.getStage, e))
+      }
+  }
+
+  /*
+   * Finishes a failed step that returns a result; the failure returned is the one from finish.
+   */
+  private def finishFailed[T](e: Throwable): Try[T] = {
+    finish(Failure(e)).flatMap(_ => Failure(e))
+  }
+
+  private def isResumable(e: Throwable): Boolean = {
+    !e.isInstanceOf[RejectedDepositException] && checkpoints.isEnabled && DepositCheckpoints.isInterruption(e)
   }
 
   private def moveDepositToOutbox(subDir: OutboxSubdir): Unit = {
@@ -94,23 +209,74 @@ case class DepositIngestTask(deposit: Deposit,
     }
   }
 
-  private def doRun(): Try[Unit] = {
+  private def doRun(dataverseDataset: Dataset): Try[Unit] = {
     trace(())
-    logger.info(s"Ingesting $deposit into Dataverse")
     for {
-      _ <- checkDepositType()
-      _ <- validateDeposit()
-      dataverseDataset <- getMetadata
-      isUpdate <- deposit.isUpdate
-      _ = debug(s"isUpdate? = $isUpdate")
-      editor = if (isUpdate) newDatasetUpdater(dataverseDataset)
-               else newDatasetCreator(dataverseDataset, depositorRole)
-      persistentId <- editor.performEdit()
+      persistentId <- editDataset(dataverseDataset)
       _ <- publishDataset(persistentId)
       _ <- postPublication(persistentId)
+      _ = recordInPersistentIdIndex(persistentId)
     } yield ()
   }
 
+  /*
+   * The index is only an optimization of the look-up of the dataset by later update deposits, which fall back to search if it has no entry. Therefore,
+   * failing to record the dataset does not fail the deposit.
+   */
+  private def recordInPersistentIdIndex(persistentId: String): Unit = {
+    optPersistentIdIndex.foreach {
+      index =>
+        Try {
+          val nbn = Option(deposit.vaultMetadata.dataverseNbn).filter(_.nonEmpty).getOrElse(deposit.urn)
+          index.put(deposit.bagId, deposit.vaultMetadata.dataverseSwordToken, nbn, persistentId)
+        }.doIfFailure {
+          case e => logger.warn(s"Could not record $persistentId of $deposit in the local persistent ID index", e)
+        }
+    }
+  }
+
+  private def prepareDataset(): Try[Dataset] = {
+    trace(())
+    for {
+      _ <- checkDepositType()
+      _ <- if (checkpoints.isReached(VALIDATED)) {
+             logger.info(s"Resuming $deposit after stage ${ checkpoints.getStage.get }")
+             Success(())
+           }
+           else validateDeposit().map(_ => checkpoints.reached(VALIDATED))
+      dataverseDataset <- getMetadata
+    } yield dataverseDataset
+  }
+
+  private def editDataset(dataverseDataset: Dataset): Try[String] = {
+    trace(())
+    if (checkpoints.isReached(FILES_UPLOADED)) {
+      logger.info(s"Dataset of $deposit was already edited; continuing with ${ checkpoints.getPersistentId.get }")
+      Success(checkpoints.getPersistentId.get)
+    }
+    else {
+      logger.info(s"Ingesting $deposit into Dataverse")
+      for {
+        isUpdate <- deposit.isUpdate
+        _ = debug(s"isUpdate? = $isUpdate")
+        editor = if (isUpdate) newDatasetUpdater(dataverseDataset)
+                 else newDatasetCreator(dataverseDataset, depositorRole)
+        persistentId <- withDataverseEditPermit(editor.performEdit())
+        _ = checkpoints.reached(FILES_UPLOADED, Some(persistentId))
+      } yield persistentId
+    }
+  }
+
+  private def withDataverseEditPermit[T](edit: => Try[T]): Try[T] = {
+    optDataverseEditPermits.map {
+      permits =>
+        Try { permits.acquire() }.flatMap(_ => {
+          try edit
+          finally permits.release()
+        })
+    }.getOrElse(edit)
+  }
+
   protected def checkDepositType(): Try[Unit] = {
     trace(())
     if (deposit.doi.nonEmpty) Failure(new IllegalArgumentException("Deposits must not have an identifier.doi property unless they are migrated"))
@@ -152,10 +318,18 @@ case class DepositIngestTask(deposit: Deposit,
       ddm <- deposit.tryDdm
       optAgreements <- deposit.tryOptAgreementsXml
       _ <- checkPersonalDataPresent(optAgreements)
+      datasetMetadataMapper <- createDatasetMetadataMapper
       dataverseDataset <- datasetMetadataMapper.toDataverseDataset(ddm, deposit.getOptOtherDoiId, optAgreements, optDateOfDeposit, datasetContacts, deposit.vaultMetadata)
     } yield dataverseDataset
   }
 
+  /*
+   * The active metadata blocks are only retrieved here, so that a task that is created while Dataverse is unavailable can still run once it is back.
+   */
+  private def createDatasetMetadataMapper: Try[DepositToDvDatasetMetadataMapper] = {
+    activeMetadataBlocks().map(new DepositToDvDatasetMetadataMapper(deduplicate, _, narcisClassification, languages, repordIdToTerm))
+  }
+
   /*
    * See DD-901. For non-migration imports we will accept missing agreement.xml for now
    */
@@ -184,17 +358,34 @@ case class DepositIngestTask(deposit: Deposit,
   }
 
   protected def newDatasetUpdater(dataverseDataset: Dataset): DatasetUpdater = {
-    new DatasetUpdater(deposit, optFileExclusionPattern, zipFileHandler, isMigration = false, dataverseDataset.datasetVersion.metadataBlocks, variantToLicense, supportedLicenses, instance, Option.empty)
+    new DatasetUpdater(deposit, optFileExclusionPattern, zipFileHandler, isMigration = false, dataverseDataset.datasetVersion.metadataBlocks, licenses, instance, Option.empty, checkpoints, fileMutationExecutor, optPersistentIdIndex)
   }
 
   protected def newDatasetCreator(dataverseDataset: Dataset, depositorRole: String): DatasetCreator = {
-    new DatasetCreator(deposit, optFileExclusionPattern, zipFileHandler, depositorRole, isMigration = false, dataverseDataset, variantToLicense, supportedLicenses, instance, Option.empty)
+    new DatasetCreator(deposit, optFileExclusionPattern, zipFileHandler, depositorRole, isMigration = false, dataverseDataset, licenses, instance, Option.empty, checkpoints)
+  }
+
+  protected def submitPublication(persistentId: String): Try[Unit] = {
+    trace(persistentId)
+    instance.dataset(persistentId).publish(major).map(_ => ())
+  }
+
+  /*
+   * A publication that was already submitted before an interruption is not submitted again, as Dataverse would reject that. The rest of the task
+   * then waits for it as usual.
+   */
+  private def submitPublicationOnce(persistentId: String): Try[Unit] = {
+    if (checkpoints.isReached(PUBLISH_SUBMITTED)) {
+      logger.info(s"Publication of $persistentId was already submitted")
+      Success(())
+    }
+    else submitPublication(persistentId).map(_ => checkpoints.reached(PUBLISH_SUBMITTED))
   }
 
-  protected def publishDataset(persistentId: String): Try[Unit] = {
+  private def publishDataset(persistentId: String): Try[Unit] = {
     trace(persistentId)
     for {
-      _ <- instance.dataset(persistentId).publish(major)
+      _ <- submitPublicationOnce(persistentId)
       _ <- instance.dataset(persistentId).awaitUnlock(
         maxNumberOfRetries = publishAwaitUnlockMaxNumberOfRetries,
         waitTimeInMilliseconds = publishAwaitUnlockMillisecondsBetweenRetries)
@@ -209,27 +400,34 @@ case class DepositIngestTask(deposit: Deposit,
     } yield ()
   }
 
+  protected def isUnlocked(persistentId: String): Try[Boolean] = {
+    for {
+      response <- instance.dataset(persistentId).getLocks
+      locks <- response.data
+    } yield locks.isEmpty
+  }
+
+  private def getDatasetState(persistentId: String): Try[String] = {
+    for {
+      response <- instance.dataset(persistentId).viewLatestVersion()
+      ds <- response.data
+      state = ds.latestVersion.versionState
+    } yield state.get
+  }
+
   private def waitForReleasedState(persistentId: String): Try[Unit] = {
     trace(persistentId)
     var numberOfTimesTried = 0
 
-    def getDatasetState: Try[String] = {
-      for {
-        response <- instance.dataset(persistentId).viewLatestVersion()
-        ds <- response.data
-        state = ds.latestVersion.versionState
-      } yield state.get
-    }
-
     def slept(): Boolean = {
       debug(s"Sleeping $publishAwaitUnlockMillisecondsBetweenRetries ms before next try..") // TODO: replace with dedicated settings for waiting for pub.
       sleep(publishAwaitUnlockMillisecondsBetweenRetries)
       true
     }
 
-    var maybeState = getDatasetState
+    var maybeState = getDatasetState(persistentId)
     do {
-      maybeState = getDatasetState
+      maybeState = getDatasetState(persistentId)
       numberOfTimesTried += 1
     } while (maybeState.isSuccess && maybeState.get != "RELEASED" && numberOfTimesTried != publishAwaitUnlockMaxNumberOfRetries && slept())
 
@@ -238,7 +436,7 @@ case class DepositIngestTask(deposit: Deposit,
          else Success(())
   }
 
-  private def savePersistentIdentifiersInDepositProperties(persistentId: String): Try[Unit] = {
+  protected def savePersistentIdentifiersInDepositProperties(persistentId: String): Try[Unit] = {
     implicit val jsonFormats: Formats = DefaultFormats
     for {
       _ <- instance.dataset(persistentId).awaitUnlock()
@@ -260,6 +458,16 @@ case class DepositIngestTask(deposit: Deposit,
     deposit
   }
 
+  /**
+   * The key by which the deposits are sequenced: deposits with the same key are processed one after the other, in order, the others in parallel. All
+   * deposits for one dataset have the same key. If it cannot be determined, the deposit gets a key of its own, so that it still runs and fails on its own.
+   */
+  lazy val sequencingTarget: String = {
+    deposit.getDatasetKey
+      .doIfFailure { case e => logger.warn(s"Could not determine the dataset of $deposit; sequencing it on its own", e) }
+      .getOrElse(deposit.depositId)
+  }
+
   override def toString: DepositName = {
     s"DepositIngestTask for ${ deposit }"
   }
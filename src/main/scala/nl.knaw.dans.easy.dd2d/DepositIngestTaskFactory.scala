@@ -24,6 +24,7 @@ import org.apache.commons.io.FileUtils
 
 import java.net.URI
 import java.nio.charset.StandardCharsets
+import java.util.concurrent.Semaphore
 import java.util.regex.Pattern
 import scala.collection.JavaConverters.{ asScalaBufferConverter, asScalaIteratorConverter }
 import scala.util.Try
@@ -33,15 +34,16 @@ import scala.xml.{ Elem, XML }
  * Factory for creating ingest tasks.
  *
  * @param isMigrated                                   is this a migrated dataset?
- * @param activeMetadataBlocks                         the metadata blocks enabled in the target dataverse
  * @param optDansBagValidator                          interface to the easy-validate-dans-bag service
  * @param instance                                     interface to the target Dataverse instance
  * @param migrationInfo                                optional interface to a migration info service
  * @param publishAwaitUnlockMaxNumberOfRetries         maximum number of times to poll for unlock after publish is called after ingest of the deposit
  * @param publishAwaitUnlockMillisecondsBetweenRetries number of milliseconds to wait between retries of unlock polling after publish
- * @param narcisClassification                         root element of the NARCIS SKOS file
- * @param iso2ToDataverseLanguage                      mapping of ISO639-2 to Dataverse language term
- * @param reportIdToTerm                               mapping of ABR report ID to term
+ * @param mappingDefinitionsRegistry                   provides the mapping definitions and the metadata blocks enabled in the target dataverse
+ * @param optDataverseEditPermits                      optional permits limiting the number of tasks that edit a dataset in Dataverse at the same time
+ * @param optCheckpointStore                           optional store in which the tasks record the stages they complete, so that they can resume after an interruption
+ * @param fileMutationExecutor                         performs the file deletions and replacements of updates
+ * @param optPersistentIdIndex                         optional local index of the datasets ingested, in which updates look up their dataset before searching
  */
 class DepositIngestTaskFactory(isMigrated: Boolean = false,
                                optFileExclusionPattern: Option[Pattern],
@@ -49,21 +51,20 @@ class DepositIngestTaskFactory(isMigrated: Boolean = false,
                                depositorRole: String,
                                deduplicateService: Boolean,
                                deduplicateImport: Boolean,
-                               activeMetadataBlocks: List[String],
                                optDansBagValidator: Option[DansBagValidator],
                                instance: DataverseInstance,
                                migrationInfo: Option[MigrationInfo],
                                publishAwaitUnlockMaxNumberOfRetries: Int,
                                publishAwaitUnlockMillisecondsBetweenRetries: Int,
-                               narcisClassification: Elem,
-                               iso1ToDataverseLanguage: Map[String, String],
-                               iso2ToDataverseLanguage: Map[String, String],
-                               variantToLicense: Map[String, String],
-                               supportedLicenses: List[URI],
-
-                               reportIdToTerm: Map[String, String]) {
+                               mappingDefinitionsRegistry: MappingDefinitionsRegistry,
+                               optDataverseEditPermits: Option[Semaphore] = None,
+                               optCheckpointStore: Option[DepositCheckpointStore] = None,
+                               fileMutationExecutor: FileMutationExecutor = FileMutationExecutor.sequential,
+                               optPersistentIdIndex: Option[PersistentIdIndex] = None) {
 
   def createDepositIngestTask(deposit: Deposit, outboxDir: File): DepositIngestTask = {
+    val mappingDefinitions = mappingDefinitionsRegistry.mappingDefinitions
+    val activeMetadataBlocks = () => mappingDefinitionsRegistry.activeMetadataBlocks
     if (isMigrated)
       new DepositMigrationTask(deposit,
         optFileExclusionPattern,
@@ -76,13 +77,15 @@ class DepositIngestTaskFactory(isMigrated: Boolean = false,
         migrationInfo,
         publishAwaitUnlockMaxNumberOfRetries,
         publishAwaitUnlockMillisecondsBetweenRetries,
-        narcisClassification,
-        iso1ToDataverseLanguage,
-        iso2ToDataverseLanguage,
-        variantToLicense,
-        supportedLicenses,
-        reportIdToTerm,
-        outboxDir)
+        mappingDefinitions.narcisClassification,
+        mappingDefinitions.languages,
+        mappingDefinitions.licenses,
+        mappingDefinitions.reportIdToTerm,
+        outboxDir,
+        optDataverseEditPermits,
+        optCheckpointStore,
+        fileMutationExecutor,
+        optPersistentIdIndex)
     else
       DepositIngestTask(
         deposit,
@@ -96,13 +99,15 @@ class DepositIngestTaskFactory(isMigrated: Boolean = false,
         Option.empty,
         publishAwaitUnlockMaxNumberOfRetries,
         publishAwaitUnlockMillisecondsBetweenRetries,
-        narcisClassification,
-        iso1ToDataverseLanguage,
-        iso2ToDataverseLanguage,
-        variantToLicense,
-        supportedLicenses,
-        reportIdToTerm,
-        outboxDir: File)
+        mappingDefinitions.narcisClassification,
+        mappingDefinitions.languages,
+        mappingDefinitions.licenses,
+        mappingDefinitions.reportIdToTerm,
+        outboxDir: File,
+        optDataverseEditPermits,
+        optCheckpointStore,
+        fileMutationExecutor,
+        optPersistentIdIndex)
   }
 }
 
@@ -17,12 +17,12 @@ package nl.knaw.dans.easy.dd2d
 
 import better.files.File
 import nl.knaw.dans.easy.dd2d.dansbag.DansBagValidator
-import nl.knaw.dans.easy.dd2d.mapping.Amd
+import nl.knaw.dans.easy.dd2d.mapping.{ Amd, LanguageVocabulary, LicenseVocabulary }
 import nl.knaw.dans.easy.dd2d.migrationinfo.MigrationInfo
 import nl.knaw.dans.lib.dataverse.DataverseInstance
 import nl.knaw.dans.lib.dataverse.model.dataset.Dataset
 
-import java.net.URI
+import java.util.concurrent.Semaphore
 import java.util.regex.Pattern
 import scala.language.postfixOps
 import scala.util.{ Failure, Success, Try }
@@ -33,19 +33,21 @@ class DepositMigrationTask(deposit: Deposit,
                            zipFileHandler: ZipFileHandler,
                            depositorRole: String,
                            deduplicate: Boolean,
-                           activeMetadataBlocks: List[String],
+                           activeMetadataBlocks: () => Try[List[String]],
                            optDansBagValidator: Option[DansBagValidator],
                            instance: DataverseInstance,
                            migrationInfo: Option[MigrationInfo],
                            publishAwaitUnlockMaxNumberOfRetries: Int,
                            publishAwaitUnlockMillisecondsBetweenRetries: Int,
                            narcisClassification: Elem,
-                           iso1ToDataverseLanguage: Map[String, String],
-                           iso2ToDataverseLanguage: Map[String, String],
-                           variantToLicense: Map[String, String],
-                           supportedLicenses: List[URI],
+                           languages: LanguageVocabulary,
+                           licenses: LicenseVocabulary,
                            repordIdToTerm: Map[String, String],
-                           outboxDir: File)
+                           outboxDir: File,
+                           optDataverseEditPermits: Option[Semaphore],
+                           optCheckpointStore: Option[DepositCheckpointStore] = None,
+                           fileMutationExecutor: FileMutationExecutor = FileMutationExecutor.sequential,
+                           optPersistentIdIndex: Option[PersistentIdIndex] = None)
   extends DepositIngestTask(deposit,
     optFileExclusionPattern,
     zipFileHandler,
@@ -58,12 +60,16 @@ class DepositMigrationTask(deposit: Deposit,
     publishAwaitUnlockMaxNumberOfRetries,
     publishAwaitUnlockMillisecondsBetweenRetries,
     narcisClassification,
-    iso1ToDataverseLanguage,
-    iso2ToDataverseLanguage,
-    variantToLicense,
-    supportedLicenses,
+    languages,
+    licenses,
     repordIdToTerm,
-    outboxDir) {
+    outboxDir,
+    optDataverseEditPermits,
+    optCheckpointStore,
+    fileMutationExecutor,
+    optPersistentIdIndex) {
+
+  override lazy val sequencingTarget: String = deposit.doi
 
   override protected def checkDepositType(): Try[Unit] = {
     for {
@@ -74,11 +80,11 @@ class DepositMigrationTask(deposit: Deposit,
   }
 
   override def newDatasetUpdater(dataverseDataset: Dataset): DatasetUpdater = {
-    new DatasetUpdater(deposit, optFileExclusionPattern, zipFileHandler, isMigration = true, dataverseDataset.datasetVersion.metadataBlocks, variantToLicense, supportedLicenses, instance, migrationInfo)
+    new DatasetUpdater(deposit, optFileExclusionPattern, zipFileHandler, isMigration = true, dataverseDataset.datasetVersion.metadataBlocks, licenses, instance, migrationInfo, checkpoints, fileMutationExecutor, optPersistentIdIndex)
   }
 
   override def newDatasetCreator(dataverseDataset: Dataset, depositorRole: String): DatasetCreator = {
-    new DatasetCreator(deposit, optFileExclusionPattern, zipFileHandler, depositorRole, isMigration = true, dataverseDataset, variantToLicense, supportedLicenses, instance, migrationInfo)
+    new DatasetCreator(deposit, optFileExclusionPattern, zipFileHandler, depositorRole, isMigration = true, dataverseDataset, licenses, instance, migrationInfo, checkpoints)
   }
 
   override protected def checkPersonalDataPresent(optAgreements: Option[Node]): Try[Unit] = {
@@ -93,7 +99,7 @@ class DepositMigrationTask(deposit: Deposit,
     } yield optDate
   }
 
-  override protected def publishDataset(persistentId: String): Try[Unit] = {
+  override protected def submitPublication(persistentId: String): Try[Unit] = {
     trace(persistentId)
     for {
       optAmd <- deposit.tryOptAmd
@@ -101,12 +107,16 @@ class DepositMigrationTask(deposit: Deposit,
       optPublicationDate <- getJsonLdPublicationdate(amd)
       publicationDate = optPublicationDate.getOrElse(throw new IllegalArgumentException(s"no publication date found in AMD for $persistentId"))
       _ <- instance.dataset(persistentId).releaseMigrated(publicationDate)
-      _ <- instance.dataset(persistentId).awaitUnlock(
-        maxNumberOfRetries = publishAwaitUnlockMaxNumberOfRetries,
-        waitTimeInMilliseconds = publishAwaitUnlockMillisecondsBetweenRetries)
     } yield ()
   }
 
+  /*
+   * As in postPublication, only the lock is waited for.
+   */
+  override def isPublicationFinished(persistentId: String): Try[Boolean] = {
+    isUnlocked(persistentId)
+  }
+
   private def getJsonLdPublicationdate(amd: Node): Try[Option[String]] = Try {
     Amd.toPublicationDate(amd)
       .map(d => s"""{"http://schema.org/datePublished": "$d"}""")
@@ -116,4 +126,8 @@ class DepositMigrationTask(deposit: Deposit,
     trace(persistentId)
     Success(())
   }
+
+  override protected def savePersistentIdentifiersInDepositProperties(persistentId: String): Try[Unit] = {
+    Success(())
+  }
 }
@@ -32,14 +32,13 @@ import scala.xml.{ Elem, Node, NodeSeq }
  * @param deduplicate             deduplicate metadata values
  * @param activeMetadataBlocks    the metadata blocks that are active in the target dataverse
  * @param narcisClassification    NARCIS classification SKOS, currently not used
- * @param iso2ToDataverseLanguage map from ISO639-2 to the Dataverse language terms
+ * @param languages               the Dataverse language terms for ISO639 codes
  * @param reportIdToTerm          map from Cultureel Erfgoed Report Type ID to the human readable term
  */
 class DepositToDvDatasetMetadataMapper(deduplicate: Boolean,
                                        activeMetadataBlocks: List[String],
                                        narcisClassification: Elem,
-                                       iso1ToDataverseLanguage: Map[String, String],
-                                       iso2ToDataverseLanguage: Map[String, String],
+                                       languages: LanguageVocabulary,
                                        reportIdToTerm: Map[String, String]) extends BlockCitation // TODO: not necessary anymore?
   with BlockArchaeologySpecific
   with BlockTemporalAndSpatial
@@ -55,21 +54,22 @@ class DepositToDvDatasetMetadataMapper(deduplicate: Boolean,
 
   def toDataverseDataset(ddm: Node, optOtherDoiId: Option[String], optAgreements: Option[Node], optDateOfDeposit: Option[String], contactData: List[JsonObject], vaultMetadata: VaultMetadata): Try[Dataset] = Try {
     // Please, keep ordered by order in Dataverse UI as much as possible!
+    val ddmIndex = new DdmIndex(ddm)
 
     if (activeMetadataBlocks.contains("citation")) {
-      val titles = ddm \ "profile" \ "title"
+      val titles = ddmIndex.profile("title")
       checkRequiredField(TITLE, titles)
 
-      val alternativeTitles = (ddm \ "dcmiMetadata" \ "title") ++ (ddm \ "dcmiMetadata" \ "alternative")
+      val alternativeTitles = ddmIndex.dcmiMetadata("title") ++ ddmIndex.dcmiMetadata("alternative")
 
       addPrimitiveFieldSingleValue(citationFields, TITLE, titles.head)
       addPrimitiveFieldSingleValue(citationFields, ALTERNATIVE_TITLE, alternativeTitles)
       addCompoundFieldMultipleValues(citationFields, OTHER_ID, DepositPropertiesVaultMetadata.toOtherIdValue(vaultMetadata.dataverseOtherId).toList)
-      addCompoundFieldMultipleValues(citationFields, OTHER_ID, (ddm \ "dcmiMetadata" \ "identifier").filter(Identifier canBeMappedToOtherId), Identifier toOtherIdValue)
+      addCompoundFieldMultipleValues(citationFields, OTHER_ID, ddmIndex.dcmiMetadata("identifier").filter(Identifier canBeMappedToOtherId), Identifier toOtherIdValue)
       addCompoundFieldMultipleValues(citationFields, OTHER_ID, optOtherDoiId.map(DepositPropertiesOtherDoi.toOtherIdValue).toList)
 
       // Loop over all creators to preserve the order in which they were entered
-      val creators = (ddm \ "profile" \ "_").filter(n => n.label == "creatorDetails" || n.label == "creator")
+      val creators = ddmIndex.profileChildren.filter(n => n.label == "creatorDetails" || n.label == "creator")
       creators.foreach {
         case node if node.label == "creatorDetails" && (node \ "author").nonEmpty =>
           addCompoundFieldMultipleValues(citationFields, AUTHOR, node \ "author", DcxDaiAuthor toAuthorValueObject)
@@ -81,32 +81,32 @@ class DepositToDvDatasetMetadataMapper(deduplicate: Boolean,
       }
 
       addCompoundFieldMultipleValues(citationFields, DATASET_CONTACT, contactData)
-      addCompoundFieldMultipleValues(citationFields, DESCRIPTION, ddm \ "profile" \ "description", Description toDescriptionValueObject)
+      addCompoundFieldMultipleValues(citationFields, DESCRIPTION, ddmIndex.profile("description"), Description toDescriptionValueObject)
       addCompoundFieldMultipleValues(citationFields, DESCRIPTION, if (alternativeTitles.isEmpty) NodeSeq.Empty
                                                                   else alternativeTitles.tail, Description toDescriptionValueObject)
       val otherDescriptions =
-        (ddm \ "dcmiMetadata" \ "date") ++
-        (ddm \ "dcmiMetadata" \ "dateAccepted") ++
-        (ddm \ "dcmiMetadata" \ "dateCopyrighted ") ++
-        (ddm \ "dcmiMetadata" \ "modified") ++
-        (ddm \ "dcmiMetadata" \ "issued") ++
-        (ddm \ "dcmiMetadata" \ "valid") ++
-        (ddm \ "dcmiMetadata" \ "coverage")
+        ddmIndex.dcmiMetadata("date") ++
+        ddmIndex.dcmiMetadata("dateAccepted") ++
+        ddmIndex.dcmiMetadata("dateCopyrighted ") ++
+        ddmIndex.dcmiMetadata("modified") ++
+        ddmIndex.dcmiMetadata("issued") ++
+        ddmIndex.dcmiMetadata("valid") ++
+        ddmIndex.dcmiMetadata("coverage")
       addCompoundFieldMultipleValues(citationFields, DESCRIPTION, otherDescriptions, Description toPrefixedDescription)
-      addCompoundFieldMultipleValues(citationFields, DESCRIPTION, (ddm \ "dcmiMetadata" \ "description").filter(Description isTechnicalInfo), Description toDescriptionValueObject)
-
-      checkRequiredField(SUBJECT, ddm \ "profile" \ "audience")
-      addCvFieldMultipleValues(citationFields, SUBJECT, ddm \ "profile" \ "audience", Audience toCitationBlockSubject)
-      addCompoundFieldMultipleValues(citationFields, KEYWORD, (ddm \ "dcmiMetadata" \ "subject").filter(Subject hasNoCvAttributes), Subject toKeyWordValue)
-      addCompoundFieldMultipleValues(citationFields, KEYWORD, (ddm \ "dcmiMetadata" \ "subject").filter(Subject isPanTerm), Subject toPanKeywordValue)
-      addCompoundFieldMultipleValues(citationFields, KEYWORD, (ddm \ "dcmiMetadata" \ "subject").filter(Subject isAatTerm), Subject toAatKeywordValue)
-      addCompoundFieldMultipleValues(citationFields, KEYWORD, (ddm \ "dcmiMetadata" \ "language").filterNot(Language isIsoLanguage), Language toKeywordValue)
-      addCompoundFieldMultipleValues(citationFields, PUBLICATION, (ddm \ "dcmiMetadata" \ "identifier").filter(Identifier isRelatedPublication), Identifier toRelatedPublicationValue)
-      addCvFieldMultipleValues(citationFields, LANGUAGE, ddm \ "dcmiMetadata" \ "language", Language.toCitationBlockLanguage(iso1ToDataverseLanguage, iso2ToDataverseLanguage))
-      addPrimitiveFieldSingleValue(citationFields, PRODUCTION_DATE, ddm \ "profile" \ "created", DateTypeElement toYearMonthDayFormat)
+      addCompoundFieldMultipleValues(citationFields, DESCRIPTION, ddmIndex.dcmiMetadata("description").filter(Description isTechnicalInfo), Description toDescriptionValueObject)
+
+      checkRequiredField(SUBJECT, ddmIndex.profile("audience"))
+      addCvFieldMultipleValues(citationFields, SUBJECT, ddmIndex.profile("audience"), Audience toCitationBlockSubject)
+      addCompoundFieldMultipleValues(citationFields, KEYWORD, ddmIndex.dcmiMetadata("subject").filter(Subject hasNoCvAttributes), Subject toKeyWordValue)
+      addCompoundFieldMultipleValues(citationFields, KEYWORD, ddmIndex.dcmiMetadata("subject").filter(Subject isPanTerm), Subject toPanKeywordValue)
+      addCompoundFieldMultipleValues(citationFields, KEYWORD, ddmIndex.dcmiMetadata("subject").filter(Subject isAatTerm), Subject toAatKeywordValue)
+      addCompoundFieldMultipleValues(citationFields, KEYWORD, ddmIndex.dcmiMetadata("language").filterNot(Language isIsoLanguage), Language toKeywordValue)
+      addCompoundFieldMultipleValues(citationFields, PUBLICATION, ddmIndex.dcmiMetadata("identifier").filter(Identifier isRelatedPublication), Identifier toRelatedPublicationValue)
+      addCvFieldMultipleValues(citationFields, LANGUAGE, ddmIndex.dcmiMetadata("language"), Language.toCitationBlockLanguage(languages))
+      addPrimitiveFieldSingleValue(citationFields, PRODUCTION_DATE, ddmIndex.profile("created"), DateTypeElement toYearMonthDayFormat)
 
       // Loop over all contributors to preserve the order in which they were entered
-      val contributors = ddm \ "dcmiMetadata" \ "contributorDetails"
+      val contributors = ddmIndex.dcmiMetadata("contributorDetails")
       contributors.foreach {
         case node if node.label == "contributorDetails" && (node \ "author").nonEmpty =>
           (node \ "author").filterNot(DcxDaiAuthor isRightsHolder).foreach(author => addCompoundFieldMultipleValues(citationFields, CONTRIBUTOR, author, DcxDaiAuthor toContributorValueObject))
@@ -121,56 +121,56 @@ class DepositToDvDatasetMetadataMapper(deduplicate: Boolean,
           (node \ "organization").filter(DcxDaiOrganization inAnyOfRoles(List("Funder"))).foreach(organization => addCompoundFieldMultipleValues(citationFields, GRANT_NUMBER, organization, DcxDaiOrganization toGrantNumberValueObject))
         case _ => // Do nothing
       }
-      addCompoundFieldMultipleValues(citationFields, GRANT_NUMBER, (ddm \ "dcmiMetadata" \ "identifier").filter(Identifier isNwoGrantNumber), Identifier toNwoGrantNumberValue)
+      addCompoundFieldMultipleValues(citationFields, GRANT_NUMBER, ddmIndex.dcmiMetadata("identifier").filter(Identifier isNwoGrantNumber), Identifier toNwoGrantNumberValue)
 
-      addCompoundFieldMultipleValues(citationFields, DISTRIBUTOR, (ddm \ "dcmiMetadata" \ "publisher").filterNot(Publisher isDans), Publisher toDistributorValueObject)
-      addPrimitiveFieldSingleValue(citationFields, DISTRIBUTION_DATE, ddm \ "profile" \ "available", DateTypeElement toYearMonthDayFormat)
+      addCompoundFieldMultipleValues(citationFields, DISTRIBUTOR, ddmIndex.dcmiMetadata("publisher").filterNot(Publisher isDans), Publisher toDistributorValueObject)
+      addPrimitiveFieldSingleValue(citationFields, DISTRIBUTION_DATE, ddmIndex.profile("available"), DateTypeElement toYearMonthDayFormat)
 
       addPrimitiveFieldSingleValue(citationFields, DATE_OF_DEPOSIT, optDateOfDeposit)
       // TODO: what to set dateOfDeposit to for SWORD or multi-deposits? Take from deposit.properties?
 
-      addCompoundFieldMultipleValues(citationFields, DATE_OF_COLLECTION, ddm \ "dcmiMetadata" \ "datesOfCollection", DatesOfCollection.toDateOfCollectionValue)
-      addPrimitiveFieldMultipleValues(citationFields, DATA_SOURCES, ddm \ "dcmiMetadata" \ "source")
+      addCompoundFieldMultipleValues(citationFields, DATE_OF_COLLECTION, ddmIndex.dcmiMetadata("datesOfCollection"), DatesOfCollection.toDateOfCollectionValue)
+      addPrimitiveFieldMultipleValues(citationFields, DATA_SOURCES, ddmIndex.dcmiMetadata("source"))
     }
     else {
       throw new IllegalStateException("Metadatablock citation should always be active")
     }
 
     if (activeMetadataBlocks.contains("dansRights")) {
-      checkRequiredField(RIGHTS_HOLDER, ddm \ "dcmiMetadata" \ "rightsHolder")
-      addPrimitiveFieldMultipleValues(rightsFields, RIGHTS_HOLDER, ddm \ "dcmiMetadata" \ "rightsHolder", AnyElement toText)
+      checkRequiredField(RIGHTS_HOLDER, ddmIndex.dcmiMetadata("rightsHolder"))
+      addPrimitiveFieldMultipleValues(rightsFields, RIGHTS_HOLDER, ddmIndex.dcmiMetadata("rightsHolder"), AnyElement toText)
       optAgreements.map { agreements =>
         addCvFieldSingleValue(rightsFields, PERSONAL_DATA_PRESENT, agreements \ "personalDataStatement", PersonalStatement toHasPersonalDataValue)
       }.doIfNone(() => addCvFieldSingleValue(rightsFields, PERSONAL_DATA_PRESENT, "Unknown"))
-      addPrimitiveFieldMultipleValues(rightsFields, RIGHTS_HOLDER, (ddm \ "dcmiMetadata" \ "contributorDetails" \ "author").filter(DcxDaiAuthor isRightsHolder), DcxDaiAuthor toRightsHolder)
-      addPrimitiveFieldMultipleValues(rightsFields, RIGHTS_HOLDER, (ddm \ "dcmiMetadata" \ "contributorDetails" \ "organization").filter(DcxDaiOrganization isRightsHolder), DcxDaiOrganization toRightsHolder)
-      addCvFieldMultipleValues(rightsFields, LANGUAGE_OF_METADATA, (ddm \ "profile" \ "_") ++ (ddm \ "dcmiMetadata" \ "_"), Language.langAttributeToMetadataLanguage(iso1ToDataverseLanguage, iso2ToDataverseLanguage))
+      addPrimitiveFieldMultipleValues(rightsFields, RIGHTS_HOLDER, (ddmIndex.dcmiMetadata("contributorDetails") \ "author").filter(DcxDaiAuthor isRightsHolder), DcxDaiAuthor toRightsHolder)
+      addPrimitiveFieldMultipleValues(rightsFields, RIGHTS_HOLDER, (ddmIndex.dcmiMetadata("contributorDetails") \ "organization").filter(DcxDaiOrganization isRightsHolder), DcxDaiOrganization toRightsHolder)
+      addCvFieldMultipleValues(rightsFields, LANGUAGE_OF_METADATA, ddmIndex.profileChildren ++ ddmIndex.dcmiMetadataChildren, Language.langAttributeToMetadataLanguage(languages))
     }
 
     if (activeMetadataBlocks.contains("dansRelationMetadata")) {
-      addPrimitiveFieldMultipleValues(relationFields, AUDIENCE, ddm \ "profile" \ "audience", Audience toNarcisTerm)
-      addPrimitiveFieldMultipleValues(relationFields, COLLECTION, ddm \ "dcmiMetadata" \ "inCollection", InCollection toCollection)
-      addCompoundFieldMultipleValues(relationFields, RELATION, (ddm \ "dcmiMetadata" \ "_").filter(Relation isRelation), Relation toRelationValueObject)
+      addPrimitiveFieldMultipleValues(relationFields, AUDIENCE, ddmIndex.profile("audience"), Audience toNarcisTerm)
+      addPrimitiveFieldMultipleValues(relationFields, COLLECTION, ddmIndex.dcmiMetadata("inCollection"), InCollection toCollection)
+      addCompoundFieldMultipleValues(relationFields, RELATION, ddmIndex.dcmiMetadataChildren.filter(Relation isRelation), Relation toRelationValueObject)
     }
 
     if (activeMetadataBlocks.contains("dansArchaeologyMetadata")) {
-      addPrimitiveFieldMultipleValues(archaeologySpecificFields, ARCHIS_ZAAK_ID, (ddm \ "dcmiMetadata" \ "identifier").filter(Identifier isArchisZaakId), Identifier toArchisZaakId)
-      addCompoundFieldMultipleValues(archaeologySpecificFields, ARCHIS_NUMBER, (ddm \ "dcmiMetadata" \ "identifier").filter(Identifier isArchisNumber), Identifier toArchisNumberValue)
-      addPrimitiveFieldMultipleValues(archaeologySpecificFields, ABR_RAPPORT_TYPE, (ddm \ "dcmiMetadata" \ "reportNumber").filter(AbrReportType isAbrReportType), AbrReportType toAbrRapportType)
-      addPrimitiveFieldMultipleValues(archaeologySpecificFields, ABR_RAPPORT_NUMMER, ddm \ "dcmiMetadata" \ "reportNumber")
-      addPrimitiveFieldMultipleValues(archaeologySpecificFields, ABR_VERWERVINGSWIJZE, (ddm \ "dcmiMetadata" \ "acquisitionMethod").filter(AbrAcquisitionMethod isAbrVerwervingswijze), AbrAcquisitionMethod toVerwervingswijze)
-      addPrimitiveFieldMultipleValues(archaeologySpecificFields, ABR_COMPLEX, (ddm \ "dcmiMetadata" \ "subject").filter(SubjectAbr isAbrComplex), SubjectAbr toAbrComplex)
-      addPrimitiveFieldMultipleValues(archaeologySpecificFields, ABR_ARTIFACT, (ddm \ "dcmiMetadata" \ "subject").filter(SubjectAbr isOldAbr), SubjectAbr fromAbrOldToAbrArtifact)
-      addPrimitiveFieldMultipleValues(archaeologySpecificFields, ABR_ARTIFACT, (ddm \ "dcmiMetadata" \ "subject").filter(SubjectAbr isAbrArtifact), SubjectAbr toAbrArtifact)
-      addPrimitiveFieldMultipleValues(archaeologySpecificFields, ABR_PERIOD, (ddm \ "dcmiMetadata" \ "temporal").filter(TemporalAbr isAbrPeriod), TemporalAbr toAbrPeriod)
+      addPrimitiveFieldMultipleValues(archaeologySpecificFields, ARCHIS_ZAAK_ID, ddmIndex.dcmiMetadata("identifier").filter(Identifier isArchisZaakId), Identifier toArchisZaakId)
+      addCompoundFieldMultipleValues(archaeologySpecificFields, ARCHIS_NUMBER, ddmIndex.dcmiMetadata("identifier").filter(Identifier isArchisNumber), Identifier toArchisNumberValue)
+      addPrimitiveFieldMultipleValues(archaeologySpecificFields, ABR_RAPPORT_TYPE, ddmIndex.dcmiMetadata("reportNumber").filter(AbrReportType isAbrReportType), AbrReportType toAbrRapportType)
+      addPrimitiveFieldMultipleValues(archaeologySpecificFields, ABR_RAPPORT_NUMMER, ddmIndex.dcmiMetadata("reportNumber"))
+      addPrimitiveFieldMultipleValues(archaeologySpecificFields, ABR_VERWERVINGSWIJZE, ddmIndex.dcmiMetadata("acquisitionMethod").filter(AbrAcquisitionMethod isAbrVerwervingswijze), AbrAcquisitionMethod toVerwervingswijze)
+      addPrimitiveFieldMultipleValues(archaeologySpecificFields, ABR_COMPLEX, ddmIndex.dcmiMetadata("subject").filter(SubjectAbr isAbrComplex), SubjectAbr toAbrComplex)
+      addPrimitiveFieldMultipleValues(archaeologySpecificFields, ABR_ARTIFACT, ddmIndex.dcmiMetadata("subject").filter(SubjectAbr isOldAbr), SubjectAbr fromAbrOldToAbrArtifact)
+      addPrimitiveFieldMultipleValues(archaeologySpecificFields, ABR_ARTIFACT, ddmIndex.dcmiMetadata("subject").filter(SubjectAbr isAbrArtifact), SubjectAbr toAbrArtifact)
+      addPrimitiveFieldMultipleValues(archaeologySpecificFields, ABR_PERIOD, ddmIndex.dcmiMetadata("temporal").filter(TemporalAbr isAbrPeriod), TemporalAbr toAbrPeriod)
     }
 
     if (activeMetadataBlocks.contains("dansTemporalSpatial")) {
-      addPrimitiveFieldMultipleValues(temporalSpatialFields, TEMPORAL_COVERAGE, (ddm \ "dcmiMetadata" \ "temporal").filterNot(TemporalAbr isAbrPeriod))
-      addCompoundFieldMultipleValues(temporalSpatialFields, SPATIAL_POINT, (ddm \ "dcmiMetadata" \ "spatial").filter(_.child.exists(_.label == "Point")), SpatialPoint toEasyTsmSpatialPointValueObject)
-      addCompoundFieldMultipleValues(temporalSpatialFields, SPATIAL_BOX, ddm \ "dcmiMetadata" \ "spatial" \ "boundedBy", SpatialBox toEasyTsmSpatialBoxValueObject)
-      addCvFieldMultipleValues(temporalSpatialFields, SPATIAL_COVERAGE_CONTROLLED, (ddm \ "dcmiMetadata" \ "spatial").filterNot(_.child.exists(_.isInstanceOf[Elem])), SpatialCoverage toControlledSpatialValue)
-      addPrimitiveFieldMultipleValues(temporalSpatialFields, SPATIAL_COVERAGE_UNCONTROLLED, (ddm \ "dcmiMetadata" \ "spatial").filterNot(_.child.exists(_.isInstanceOf[Elem])), SpatialCoverage toUncontrolledSpatialValue)
+      addPrimitiveFieldMultipleValues(temporalSpatialFields, TEMPORAL_COVERAGE, ddmIndex.dcmiMetadata("temporal").filterNot(TemporalAbr isAbrPeriod))
+      addCompoundFieldMultipleValues(temporalSpatialFields, SPATIAL_POINT, ddmIndex.dcmiMetadata("spatial").filter(_.child.exists(_.label == "Point")), SpatialPoint toEasyTsmSpatialPointValueObject)
+      addCompoundFieldMultipleValues(temporalSpatialFields, SPATIAL_BOX, ddmIndex.dcmiMetadata("spatial") \ "boundedBy", SpatialBox toEasyTsmSpatialBoxValueObject)
+      addCvFieldMultipleValues(temporalSpatialFields, SPATIAL_COVERAGE_CONTROLLED, ddmIndex.dcmiMetadata("spatial").filterNot(_.child.exists(_.isInstanceOf[Elem])), SpatialCoverage toControlledSpatialValue)
+      addPrimitiveFieldMultipleValues(temporalSpatialFields, SPATIAL_COVERAGE_UNCONTROLLED, ddmIndex.dcmiMetadata("spatial").filterNot(_.child.exists(_.isInstanceOf[Elem])), SpatialCoverage toUncontrolledSpatialValue)
     }
 
     if (activeMetadataBlocks.contains("dansDataVaultMetadata")) {
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.easy.dd2d
+
+import nl.knaw.dans.lib.logging.DebugEnhancedLogging
+
+import java.util.concurrent.{ ExecutorService, Semaphore }
+import scala.concurrent.duration.Duration
+import scala.concurrent.{ Await, ExecutionContext, Future }
+import scala.util.{ Failure, Success, Try }
+
+/**
+ * Performs the file deletions and replacements of a dataset update. By default, each mutation is performed on the calling thread and followed by a wait for
+ * the dataset lock. Only deletions can be performed concurrently instead: with a `concurrency` above 1 they are done in batches, with up to `concurrency`
+ * of them in progress at the same time, and the dataset lock is awaited once after each batch. A deletion that fails while others are in progress, e.g.
+ * because one of those locked the dataset, is only retried on its own if the file is still in the draft, which is checked once for all failed deletions of a batch, because a call that failed on the client side,
+ * e.g. on a read timeout, may still have been completed by Dataverse. All mutations are attempted, and the failures of all of them are reported.
+ *
+ * @param concurrency        the maximum number of deletions in progress at the same time, shared by all datasets; 1 performs them one by one
+ * @param batchSize          the number of concurrent deletions after which the dataset lock is awaited
+ * @param optExecutorService the executor to perform concurrent deletions on; required if `concurrency` is above 1. Its owner shuts it down.
+ */
+class FileMutationExecutor(concurrency: Int, batchSize: Int, optExecutorService: Option[ExecutorService]) extends DebugEnhancedLogging {
+  require(concurrency > 0, "concurrency must be at least 1")
+  require(batchSize > 0, "batchSize must be at least 1")
+  require(concurrency == 1 || optExecutorService.isDefined, "an executor service is required for a concurrency above 1")
+
+  private val optExecutionContext = if (concurrency > 1) optExecutorService.map(ExecutionContext.fromExecutorService)
+                                    else None
+
+  /**
+   * Applies `mutate` to each of `items`, one by one, each followed by a wait for the dataset lock.
+   *
+   * @param items       the items to mutate, e.g. database IDs of files
+   * @param awaitUnlock waits until the dataset that the mutations change is no longer locked
+   * @param mutate      the mutation
+   * @return the results in the order of `items`, or a [[FileMutationsFailedException]] with all individual failures
+   */
+  def run[T, R](items: List[T], awaitUnlock: () => Try[Unit])(mutate: T => Try[R]): Try[List[R]] = {
+    collectFailures(items.map(item => item -> mutate(item).flatMap(r => awaitUnlock().map(_ => r))))
+  }
+
+  /**
+   * Applies `deleteItem` to each of `items`, concurrently if so configured.
+   *
+   * @param items       the items to delete, e.g. database IDs of files
+   * @param awaitUnlock waits until the dataset that the deletions change is no longer locked
+   * @param getDeleted  returns those of the items of which the deletion was applied, even though the call failed
+   * @param deleteItem  the deletion
+   * @return a [[FileMutationsFailedException]] with all individual failures, if any
+   */
+  def delete[T](items: List[T], awaitUnlock: () => Try[Unit], getDeleted: List[T] => Try[Set[T]])(deleteItem: T => Try[Unit]): Try[Unit] = {
+    optExecutionContext.map {
+      executionContext =>
+        collectFailures(items.grouped(batchSize).toList.flatMap {
+          batch =>
+            val results = batch zip deleteConcurrently(batch, deleteItem)(executionContext)
+            awaitUnlock() match {
+              case Success(()) =>
+                val failed = results.collect { case (item, Failure(_)) => item }
+                val deleted = if (failed.isEmpty) Success(Set.empty[T])
+                              else getDeleted(failed)
+                results.map {
+                  case (item, Failure(e)) => item -> retryIfNotDeleted(item, e, deleted, awaitUnlock, deleteItem)
+                  case result => result
+                }
+              case Failure(e) => results :+ ("dataset lock" -> Failure(e))
+            }
+        }: List[(Any, Try[Unit])])
+    }.getOrElse(run(items, awaitUnlock)(deleteItem)).map(_ => ())
+  }
+
+  private def deleteConcurrently[T](batch: List[T], deleteItem: T => Try[Unit])(implicit executionContext: ExecutionContext): List[Try[Unit]] = {
+    val permits = new Semaphore(concurrency)
+    val inProgress = batch.map {
+      item =>
+        permits.acquire()
+        Future {
+          try deleteItem(item)
+          finally permits.release()
+        }
+    }
+    inProgress.map(f => Try { Await.result(f, Duration.Inf) }.flatten)
+  }
+
+  private def retryIfNotDeleted[T](item: T, e: Throwable, deleted: Try[Set[T]], awaitUnlock: () => Try[Unit], deleteItem: T => Try[Unit]): Try[Unit] = {
+    deleted.map(_.contains(item)) match {
+      case Success(true) =>
+        logger.warn(s"Deletion of $item failed in a concurrent batch, but was applied: ${ e.getMessage }")
+        Success(())
+      case Success(false) =>
+        logger.warn(s"Deletion of $item failed in a concurrent batch; retrying it on its own: ${ e.getMessage }")
+        deleteItem(item).flatMap(_ => awaitUnlock())
+      case Failure(checkFailure) =>
+        logger.warn(s"Could not check whether the failed deletion of $item was applied; not retrying it: ${ checkFailure.getMessage }")
+        Failure(e)
+    }
+  }
+
+  private def collectFailures[R](results: List[(Any, Try[R])]): Try[List[R]] = {
+    results.collect { case (item, Failure(e)) => item -> e } match {
+      case Nil => Success(results.map(_._2.get))
+      case failures => Failure(FileMutationsFailedException(failures))
+    }
+  }
+}
+
+object FileMutationExecutor {
+  /**
+   * One mutation at a time, each followed by a wait for the dataset lock.
+   */
+  val sequential = new FileMutationExecutor(1, 1, None)
+}
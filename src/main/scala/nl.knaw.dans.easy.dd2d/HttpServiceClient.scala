@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.easy.dd2d
+
+import org.apache.http.HttpResponse
+import org.apache.http.client.config.RequestConfig
+import org.apache.http.client.methods.{ Configurable, HttpGet, HttpPost, HttpRequestBase }
+import org.apache.http.client.{ HttpClient, ResponseHandler }
+import org.apache.http.impl.client.HttpClients
+import org.apache.http.util.EntityUtils
+
+import java.net.URI
+import java.nio.charset.StandardCharsets
+import scala.util.Try
+
+case class HttpServiceResponse(code: Int, body: String)
+
+/**
+ * Calls an HTTP service through a (possibly shared) client, so that connections are pooled and kept alive across calls. The timeouts apply to each
+ * request; all other request settings, such as the time to wait for a connection from the pool, are taken from the client.
+ *
+ * @param httpClient    the client
+ * @param connTimeoutMs the connection timeout in milliseconds
+ * @param readTimeoutMs the read timeout in milliseconds
+ */
+class HttpServiceClient(httpClient: HttpClient, connTimeoutMs: Int, readTimeoutMs: Int) {
+  private val requestConfig = (httpClient match {
+    case c: Configurable if c.getConfig != null => RequestConfig.copy(c.getConfig)
+    case _ => RequestConfig.custom()
+  }).setConnectTimeout(connTimeoutMs).setSocketTimeout(readTimeoutMs).build()
+
+  private val responseHandler = new ResponseHandler[HttpServiceResponse] {
+    override def handleResponse(response: HttpResponse): HttpServiceResponse = {
+      HttpServiceResponse(
+        response.getStatusLine.getStatusCode,
+        Option(response.getEntity).map(EntityUtils.toString(_, StandardCharsets.UTF_8)).getOrElse(""))
+    }
+  }
+
+  def get(uri: URI, headers: (String, String)*): Try[HttpServiceResponse] = execute(new HttpGet(uri), headers)
+
+  def post(uri: URI, headers: (String, String)*): Try[HttpServiceResponse] = execute(new HttpPost(uri), headers)
+
+  /*
+   * The response handler consumes the entity, which returns the connection to the pool.
+   */
+  private def execute(request: HttpRequestBase, headers: Seq[(String, String)]): Try[HttpServiceResponse] = Try {
+    request.setConfig(requestConfig)
+    headers.foreach { case (name, value) => request.setHeader(name, value) }
+    httpClient.execute(request, responseHandler)
+  }
+}
+
+object HttpServiceClient {
+  /**
+   * A pooled client with the library defaults, for callers that are not given a shared client.
+   */
+  lazy val defaultHttpClient: HttpClient = HttpClients.createSystem()
+}
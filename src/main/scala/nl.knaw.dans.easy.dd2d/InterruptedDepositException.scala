@@ -0,0 +1,23 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.easy.dd2d
+
+/**
+ * The deposit was interrupted after a checkpoint and left in the inbox, so that it is resumed from that checkpoint on the next run. Its processing has
+ * therefore not ended.
+ */
+case class InterruptedDepositException(deposit: Deposit, stage: Option[String], cause: Throwable = null)
+  extends RuntimeException(s"Interrupted ${ deposit.dir } after stage ${ stage.getOrElse("none") }", cause)
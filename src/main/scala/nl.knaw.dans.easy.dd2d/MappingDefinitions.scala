@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.easy.dd2d
+
+import better.files.File
+import nl.knaw.dans.easy.dd2d.DepositIngestTaskFactory.{ loadCsvToMap, loadTxtToUriList, readXml }
+import nl.knaw.dans.easy.dd2d.mapping.{ LanguageVocabulary, LicenseVocabulary }
+
+import scala.util.Try
+import scala.xml.Elem
+
+/**
+ * The mapping definitions read from the mapping-definitions directory, with the vocabularies compiled for look-up. An instance is immutable; a reload
+ * produces a new one.
+ *
+ * @param narcisClassification root element of the NARCIS SKOS file
+ * @param languages            the Dataverse language terms for ISO639-1 and ISO639-2 codes
+ * @param reportIdToTerm       mapping of ABR report ID to term
+ * @param licenses             the licenses supported by the target Dataverse and the variants of their URIs
+ */
+case class MappingDefinitions(narcisClassification: Elem,
+                              languages: LanguageVocabulary,
+                              reportIdToTerm: Map[String, String],
+                              licenses: LicenseVocabulary)
+
+object MappingDefinitions {
+  def load(mappingDefsDir: File): Try[MappingDefinitions] = {
+    for {
+      narcisClassification <- Try { readXml((mappingDefsDir / "narcis_classification.xml").toJava) }
+      iso1ToDataverseLanguage <- loadCsvToMap(mappingDefsDir / "iso639-1-to-dv.csv", "ISO639-1", "Dataverse-language")
+      iso2ToDataverseLanguage <- loadCsvToMap(mappingDefsDir / "iso639-2-to-dv.csv", "ISO639-2", "Dataverse-language")
+      reportIdToTerm <- loadCsvToMap(mappingDefsDir / "ABR-reports.csv", "URI-suffix", "Term")
+      variantToLicense <- loadCsvToMap(mappingDefsDir / "license-uri-variants.csv", "Variant", "Normalized")
+      supportedLicenses <- loadTxtToUriList(mappingDefsDir / "supported-licenses.txt")
+    } yield MappingDefinitions(
+      narcisClassification,
+      new LanguageVocabulary(iso1ToDataverseLanguage, iso2ToDataverseLanguage),
+      reportIdToTerm,
+      new LicenseVocabulary(supportedLicenses, variantToLicense))
+  }
+}
+
+/**
+ * Provides the mapping definitions and the active metadata blocks of the target Dataverse to the ingest tasks. One registry is shared by all task
+ * factories. Each task uses the definitions that are current when it is created.
+ */
+trait MappingDefinitionsRegistry {
+
+  /**
+   * @return the mapping definitions that were loaded last
+   */
+  def mappingDefinitions: MappingDefinitions
+
+  /**
+   * @return the metadata blocks enabled in the root dataverse, or a failure if they could not be retrieved (yet)
+   */
+  def activeMetadataBlocks: Try[List[String]]
+}
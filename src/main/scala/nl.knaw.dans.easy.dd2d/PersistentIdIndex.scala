@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.easy.dd2d
+
+/**
+ * Local index of the datasets created or updated by this service, so that the dataset that an update deposit targets can be found without depending on
+ * the Dataverse search index being up-to-date.
+ */
+trait PersistentIdIndex {
+
+  /**
+   * @param bagId the bag ID of one of the deposits of the dataset, e.g. the Is-Version-Of of an update
+   * @return the persistent ID of the dataset, if this deposit was ingested by this service
+   */
+  def findByBagId(bagId: String): Option[String]
+
+  /**
+   * @param swordToken the SWORD token of the dataset
+   * @return the persistent ID of the dataset, if one of its deposits was ingested by this service
+   */
+  def findBySwordToken(swordToken: String): Option[String]
+
+  /**
+   * Records the successful ingest of a deposit.
+   *
+   * @param bagId        the bag ID of the deposit
+   * @param swordToken   the SWORD token of the dataset, or an empty string
+   * @param nbn          the URN:NBN of the dataset, or an empty string
+   * @param persistentId the persistent ID of the dataset
+   */
+  def put(bagId: String, swordToken: String, nbn: String, persistentId: String): Unit
+}
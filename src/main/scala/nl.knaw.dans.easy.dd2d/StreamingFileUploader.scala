@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.easy.dd2d
+
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta
+import nl.knaw.dans.lib.logging.DebugEnhancedLogging
+import org.json4s.native.{ JsonMethods, Serialization }
+import org.json4s.{ DefaultFormats, Formats }
+
+import java.io.{ BufferedOutputStream, InputStream, OutputStream }
+import java.net.{ HttpURLConnection, URI, URLEncoder }
+import java.nio.charset.StandardCharsets.UTF_8
+import java.util.UUID
+import scala.io.Source
+import scala.util.Try
+
+/**
+ * Adds files to a dataset with the native API, streaming the content into the request body as it is produced. Unlike the uploads through
+ * [[nl.knaw.dans.lib.dataverse.DataverseInstance]], the content does not have to exist as a file first.
+ *
+ * @param baseUrl             the base URL of the Dataverse instance, ending in a slash
+ * @param apiKey              the API key
+ * @param connectionTimeoutMs the connection timeout in milliseconds
+ * @param readTimeoutMs       the read timeout in milliseconds
+ */
+class StreamingFileUploader(baseUrl: URI, apiKey: String, connectionTimeoutMs: Int, readTimeoutMs: Int) extends DebugEnhancedLogging {
+  private implicit val jsonFormats: Formats = DefaultFormats
+  private val chunkSize = 64 * 1024
+
+  /**
+   * Adds a file to the draft of the dataset.
+   *
+   * @param persistentId the persistent ID of the dataset
+   * @param fileName     the file name to send along with the content
+   * @param metadata     the metadata of the new file
+   * @param writeContent writes the content of the file to the stream it is passed; it must not close the stream
+   * @return the metadata of the files that Dataverse added
+   */
+  def addFile(persistentId: String, fileName: String, metadata: FileMeta)(writeContent: OutputStream => Unit): Try[List[FileMeta]] = Try {
+    trace(persistentId, fileName)
+    val url = baseUrl.resolve(s"api/datasets/:persistentId/add?persistentId=${ URLEncoder.encode(persistentId, "UTF-8") }").toURL
+    val boundary = s"dd-ingest-flow-${ UUID.randomUUID() }"
+    val connection = url.openConnection().asInstanceOf[HttpURLConnection]
+    try {
+      connection.setConnectTimeout(connectionTimeoutMs)
+      connection.setReadTimeout(readTimeoutMs)
+      connection.setRequestMethod("POST")
+      connection.setDoOutput(true)
+      connection.setChunkedStreamingMode(chunkSize)
+      connection.setRequestProperty("X-Dataverse-key", apiKey)
+      connection.setRequestProperty("Content-Type", s"multipart/form-data; boundary=$boundary")
+
+      val out = new BufferedOutputStream(connection.getOutputStream, chunkSize)
+      try {
+        writePartHeader(out, boundary, "form-data; name=\"jsonData\"", "application/json")
+        out.write(Serialization.write(metadata).getBytes(UTF_8))
+        out.write("\r\n".getBytes(UTF_8))
+        writePartHeader(out, boundary, s"""form-data; name="file"; ${ fileNameParameters(fileName) }""", "application/zip")
+        writeContent(out)
+        out.write(s"\r\n--$boundary--\r\n".getBytes(UTF_8))
+      }
+      finally {
+        out.close()
+      }
+
+      val code = connection.getResponseCode
+      val body = readBody(if (code < 400) connection.getInputStream
+                          else connection.getErrorStream)
+      if (code != 200) throw new RuntimeException(s"Could not add $fileName to $persistentId (${ code }): $body")
+      (JsonMethods.parse(body) \ "data" \ "files").extract[List[FileMeta]]
+    }
+    finally {
+      connection.disconnect()
+    }
+  }
+
+  /*
+   * The file name as a quoted string, in which only printable ASCII characters are kept and quotes and backslashes are escaped, followed by the complete
+   * name in the RFC 5987 encoding, for servers that support it.
+   */
+  private def fileNameParameters(fileName: String): String = {
+    val quoted = fileName.map(c => if (c < ' ' || c > '~') '_' else c).flatMap {
+      case c @ ('"' | '\\') => s"\\$c"
+      case c => c.toString
+    }
+    val encoded = fileName.getBytes(UTF_8).map {
+      case b if isAttrChar(b.toChar) => b.toChar.toString
+      case b => f"%%${ b & 0xff }%02X"
+    }.mkString
+    s"""filename="$quoted"; filename*=UTF-8''$encoded"""
+  }
+
+  private def isAttrChar(c: Char): Boolean = {
+    (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || "!#$&+-.^_`|~".contains(c)
+  }
+
+  private def writePartHeader(out: OutputStream, boundary: String, contentDisposition: String, contentType: String): Unit = {
+    out.write(s"--$boundary\r\nContent-Disposition: $contentDisposition\r\nContent-Type: $contentType\r\n\r\n".getBytes(UTF_8))
+  }
+
+  private def readBody(in: InputStream): String = {
+    if (in == null) ""
+    else {
+      val source = Source.fromInputStream(in, "UTF-8")
+      try source.mkString
+      finally source.close()
+    }
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.easy.dd2d
+
+import java.nio.file.Path
+import scala.collection.mutable
+import scala.util.Try
+
+/**
+ * A file in the latest published version of a dataset, as far as needed to plan an update of it.
+ *
+ * @param databaseId the database ID of the file
+ * @param checksum   the SHA-1 checksum of the file
+ */
+case class PublishedFile(databaseId: Int, checksum: String)
+
+/**
+ * The changes to the files of the latest published version that make its files equal to those of an update deposit.
+ *
+ * @param moves        the files to move, by database ID, with the deposited file whose path and metadata they get
+ * @param replacements the files to replace, by database ID, with the deposited file to replace them with
+ * @param deletions    the database IDs of the files to delete
+ * @param additions    the deposited files to add
+ */
+case class UpdatePlan(moves: Map[Int, FileInfo], replacements: Map[Int, FileInfo], deletions: Set[Int], additions: List[FileInfo]) {
+
+  /**
+   * The part of this plan that an interrupted run has not applied to the draft yet. A replacement is done if the replaced file is no longer in the draft,
+   * a deletion if the deleted file is no longer in the draft, and an addition if a file with its checksum was added to the draft. The moves are always
+   * repeated, as they only update metadata.
+   *
+   * @param pathToFileInfo      the files in the deposit, by path, that this plan was created from
+   * @param pathToPublishedFile the files in the latest published version, by path, that this plan was created from
+   * @param pathToFileInDraft   the files in the draft, by path
+   * @return the remaining plan, and the files that were already replaced or added, by their database ID in the draft
+   */
+  def remainingFor(pathToFileInfo: Map[Path, FileInfo], pathToPublishedFile: Map[Path, PublishedFile], pathToFileInDraft: Map[Path, PublishedFile]): Try[(UpdatePlan, Map[Int, FileInfo])] = Try {
+    val idsInDraft = pathToFileInDraft.values.map(_.databaseId).toSet
+    val publishedIds = pathToPublishedFile.values.map(_.databaseId).toSet
+    val (replacementsToDo, replacementsDone) = replacements.partition { case (id, _) => idsInDraft.contains(id) }
+    val uploaded = (replacementsDone.values ++ additions).toSet
+    val newFilesInDraft = pathToFileInDraft.filterNot { case (_, f) => publishedIds.contains(f.databaseId) }
+    val applied = DatasetCreator.matchFilesInDraft(pathToFileInfo.filter { case (_, f) => uploaded.contains(f) }, newFilesInDraft)
+      .map { case (path, id) => id -> pathToFileInfo(path) }
+    val appliedFiles = applied.values.toSet
+    replacementsDone.foreach {
+      case (id, fileInfo) if !appliedFiles.contains(fileInfo) => throw new IllegalStateException(s"File $id was replaced, but its replacement ${ fileInfo.file } is not in the draft")
+      case _ =>
+    }
+    (UpdatePlan(moves, replacementsToDo, deletions.filter(idsInDraft.contains), additions.filterNot(appliedFiles.contains)), applied)
+  }
+
+  override def toString: String = s"UpdatePlan(${ moves.size } moves, ${ replacements.size } replacements, ${ deletions.size } deletions, ${ additions.size } additions)"
+}
+
+object UpdatePlan {
+
+  /**
+   * Computes the plan from the paths of the deposit and the latest published version. Each side is indexed by checksum once, after which every path is
+   * classified with constant time lookups:
+   *
+   * - A file is moved if its checksum occurs exactly once in the deposit and exactly once in the latest version. Files that occur more than once on either
+   * side cannot be located by their checksum; they appear to be deleted and added, which has the same net result except in the "Changes" overview of
+   * Dataverse. Files that keep their path are also "moved", in place. This works around Dataverse losing the directoryLabel when the draft of a new
+   * version is started.
+   *
+   * - A file is replaced if the deposit has a different checksum at its path, and neither this path nor the file is involved in a move. Otherwise Dataverse
+   * would have to update the metadata of a file that is no longer the head of its version history, or add a file at a path that is still in use.
+   *
+   * - A file is deleted if its path is not in the deposit, or if another file is moved to its path. The file at the old path of a moved file is not deleted,
+   * as it is the file being moved.
+   *
+   * - A deposited file is added if its path is not occupied after the moves, replacements and deletions. This includes a path that a moved file vacated.
+   *
+   * @param pathToFileInfo      the files in the deposit, by path relative to the data directory
+   * @param pathToPublishedFile the files in the latest published version, by path
+   * @return the plan
+   */
+  def create(pathToFileInfo: Map[Path, FileInfo], pathToPublishedFile: Map[Path, PublishedFile]): UpdatePlan = {
+    val depositPathByUniqueChecksum = pathByUniqueChecksum(pathToFileInfo.iterator.map { case (path, f) => (path, f.checksum) })
+    val publishedPathByUniqueChecksum = pathByUniqueChecksum(pathToPublishedFile.iterator.map { case (path, f) => (path, f.checksum) })
+
+    val movedFrom = mutable.HashSet[Path]()
+    val movedTo = mutable.HashSet[Path]()
+    val moves = Map.newBuilder[Int, FileInfo]
+    depositPathByUniqueChecksum.foreach {
+      case (checksum, newPath) =>
+        publishedPathByUniqueChecksum.get(checksum).foreach {
+          oldPath =>
+            movedFrom += oldPath
+            movedTo += newPath
+            moves += pathToPublishedFile(oldPath).databaseId -> pathToFileInfo(newPath)
+        }
+    }
+
+    val replacements = Map.newBuilder[Int, FileInfo]
+    val additions = List.newBuilder[FileInfo]
+    pathToFileInfo.foreach {
+      case (path, _) if movedTo.contains(path) => // the target of a move
+      case (path, fileInfo) =>
+        pathToPublishedFile.get(path) match {
+          case Some(published) if !movedFrom.contains(path) =>
+            if (published.checksum != fileInfo.checksum) replacements += published.databaseId -> fileInfo
+          case _ => additions += fileInfo
+        }
+    }
+
+    val deletions = Set.newBuilder[Int]
+    pathToPublishedFile.foreach {
+      case (path, _) if movedFrom.contains(path) => // the file is moved
+      case (path, published) =>
+        if (movedTo.contains(path) || !pathToFileInfo.contains(path)) deletions += published.databaseId
+    }
+
+    UpdatePlan(moves.result(), replacements.result(), deletions.result(), additions.result())
+  }
+
+  private def pathByUniqueChecksum(pathsAndChecksums: Iterator[(Path, String)]): mutable.Map[String, Path] = {
+    val checksumToPath = mutable.HashMap[String, Path]()
+    val duplicates = mutable.HashSet[String]()
+    pathsAndChecksums.foreach {
+      case (path, checksum) =>
+        if (checksumToPath.put(checksum, path).isDefined) duplicates += checksum
+    }
+    checksumToPath --= duplicates
+  }
+}
@@ -16,13 +16,49 @@
 package nl.knaw.dans.easy.dd2d
 
 import better.files.File
+import nl.knaw.dans.easy.dd2d.ZipFileHandler.{ StreamWrapped, TempFileWrapped, Unwrapped, Upload }
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta
+import com.codahale.metrics.Timer
 import nl.knaw.dans.lib.logging.DebugEnhancedLogging
-import org.apache.tika.Tika
+import org.apache.tika.metadata.{ Metadata, TikaCoreProperties }
+import org.apache.tika.mime.MimeTypes
 
-import java.util.zip.Deflater
+import java.io.{ BufferedInputStream, OutputStream }
+import java.nio.file.Files
+import java.util
+import java.util.Collections
+import java.util.concurrent.{ ExecutorService, Executors, ThreadFactory, TimeUnit }
+import java.util.concurrent.atomic.{ AtomicInteger, AtomicLong }
+import java.util.zip.{ Deflater, ZipEntry, ZipOutputStream }
+import scala.collection.mutable
+import scala.concurrent.duration.Duration
+import scala.concurrent.{ Await, ExecutionContext, Future }
+import scala.util.{ Failure, Try }
 
-class ZipFileHandler(tempDir: File) extends DebugEnhancedLogging {
-  private val tika = new Tika()
+/**
+ * Wraps ZIP files in an extra ZIP, so that Dataverse does not unpack them on upload.
+ *
+ * @param tempDir              directory to create the wrappers in, if they are not streamed
+ * @param wrapperThreads       number of background threads used by [[wrapAhead]]; 0 means that files are wrapped on the calling thread
+ * @param optStreamingUploader if present, the wrappers are written directly into the upload request by this uploader, instead of to a file in `tempDir`
+ */
+class ZipFileHandler(tempDir: File, wrapperThreads: Int, optStreamingUploader: Option[StreamingFileUploader]) extends DebugEnhancedLogging {
+  private val mimeTypes = MimeTypes.getDefaultMimeTypes
+  private val detectionCacheSize = 100000
+  private val detectedMimeTypes = Collections.synchronizedMap(new util.LinkedHashMap[(String, Long, String), String](16, 0.75f, true) {
+    override def removeEldestEntry(eldest: util.Map.Entry[(String, Long, String), String]): Boolean = size() > detectionCacheSize
+  })
+  private val lookAhead = 2 * wrapperThreads
+
+  /**
+   * The time spent on MIME type detection, per call of [[wrapAhead]], i.e. per deposit.
+   */
+  val detectionTimer = new Timer()
+  private lazy val wrapperExecutionContext = ExecutionContext.fromExecutorService(createExecutorService())
+
+  def this(tempDir: File, wrapperThreads: Int) = this(tempDir, wrapperThreads, None)
+
+  def this(tempDir: File) = this(tempDir, 0)
   /*
    * The file types that Dataverse wants unpackage or repackage.
    */
@@ -32,18 +68,172 @@ class ZipFileHandler(tempDir: File) extends DebugEnhancedLogging {
     "application/fits-gzipped"
   )
 
-  def wrapIfZipFile(file: File): Option[File] = {
-    if (needsToBeWrapped(file)) {
-      logger.info("ZIP file found: {}. Creating ZIP-wrapper around it...", file)
-      val wrapper = file.zipTo(File.newTemporaryFile(s"zip-wrapped-${file.name}-", ".zip", Some(tempDir)), Deflater.NO_COMPRESSION)
-      logger.info("Wrapper created at {}", wrapper)
-      Option(wrapper)
+  /**
+   * Determines how a file must be uploaded and, if it must be wrapped in a temporary file, creates the wrapper.
+   *
+   * @param fileInfo       the file to upload
+   * @param detectionNanos accumulates the time spent on MIME type detection
+   * @return how to upload the file
+   */
+  private def prepare(fileInfo: FileInfo, detectionNanos: AtomicLong): Upload = {
+    val file = fileInfo.file
+    if (!needsToBeWrapped(fileInfo, detectionNanos)) Unwrapped(file)
+    else if (optStreamingUploader.isDefined) {
+      logger.info("ZIP file found: {}. Will wrap it while uploading", file)
+      StreamWrapped(file)
     }
-    else Option.empty
+    else TempFileWrapped(file, createWrapper(file))
   }
 
-  private def needsToBeWrapped(file: File): Boolean = {
-    file.name.toLowerCase.endsWith(".zip") ||
-      needToBeZipWrapped.contains(tika.detect(file.toJava))
+  /**
+   * Uploads a [[ZipFileHandler.StreamWrapped]] file, writing the wrapper into the request body while the file is read. The file is read only once.
+   *
+   * @param persistentId the dataset to add the file to
+   * @param file         the file to wrap and upload
+   * @param metadata     the metadata of the new file
+   * @return the metadata of the files that Dataverse added
+   */
+  def uploadWrapped(persistentId: String, file: File, metadata: FileMeta): Try[List[FileMeta]] = {
+    optStreamingUploader
+      .map(_.addFile(persistentId, s"zip-wrapped-${ file.name }.zip", metadata)(writeWrapper(file, _)))
+      .getOrElse(Failure(new IllegalStateException("Streaming of ZIP wrappers is not enabled")))
+  }
+
+  private[dd2d] def createWrapper(file: File): File = {
+    logger.info("ZIP file found: {}. Creating ZIP-wrapper around it...", file)
+    val wrapper = file.zipTo(File.newTemporaryFile(s"zip-wrapped-${ file.name }-", ".zip", Some(tempDir)), Deflater.NO_COMPRESSION)
+    logger.info("Wrapper created at {}", wrapper)
+    wrapper
+  }
+
+  /*
+   * Produces the same wrapper as createWrapper: one uncompressed deflate entry. Unlike a STORED entry, this does not need the CRC of the file before
+   * its content is written, so the file is read only once.
+   */
+  private[dd2d] def writeWrapper(file: File, out: OutputStream): Unit = {
+    val zip = new ZipOutputStream(out)
+    zip.setLevel(Deflater.NO_COMPRESSION)
+    zip.putNextEntry(new ZipEntry(file.name))
+    Files.copy(file.path, zip)
+    zip.closeEntry()
+    // Not close(), which would also close the request body
+    zip.finish()
+  }
+
+  /**
+   * Returns the result of [[prepare]] for each of `files`, in the same order. The files are examined and wrapped on background threads, a few
+   * files ahead of the consumer, so that this work overlaps with uploading the previous files. The caller must call `close()` on the result when done,
+   * so that wrappers that were prepared but not consumed are deleted.
+   *
+   * @param files the files to examine
+   * @return how to upload each of the files
+   */
+  def wrapAhead(files: List[FileInfo]): WrappedFiles = new WrappedFiles(files)
+
+  class WrappedFiles private[ZipFileHandler](files: List[FileInfo]) extends Iterator[Try[Upload]] with AutoCloseable {
+    private val remaining = files.iterator
+    private val inProgress = mutable.Queue[Future[Upload]]()
+    private val detectionNanos = new AtomicLong()
+    fill()
+
+    override def hasNext: Boolean = inProgress.nonEmpty || remaining.hasNext
+
+    override def next(): Try[Upload] = {
+      val result =
+        if (inProgress.isEmpty) Try { prepare(remaining.next(), detectionNanos) }
+        else Try { Await.result(inProgress.dequeue(), Duration.Inf) }
+      fill()
+      result
+    }
+
+    override def close(): Unit = {
+      while (inProgress.nonEmpty) {
+        Try { Await.result(inProgress.dequeue(), Duration.Inf) }.foreach {
+          case TempFileWrapped(_, wrapper) => wrapper.delete(swallowIOExceptions = true)
+          case _ =>
+        }
+      }
+      detectionTimer.update(detectionNanos.get(), TimeUnit.NANOSECONDS)
+      debug(s"MIME type detection for ${ files.size } files took ${ TimeUnit.NANOSECONDS.toMillis(detectionNanos.get()) } ms")
+    }
+
+    private def fill(): Unit = {
+      while (inProgress.size < lookAhead && remaining.hasNext) {
+        val file = remaining.next()
+        inProgress.enqueue(Future { prepare(file, detectionNanos) }(wrapperExecutionContext))
+      }
+    }
   }
+
+  private def createExecutorService(): ExecutorService = {
+    val count = new AtomicInteger()
+    Executors.newFixedThreadPool(wrapperThreads, new ThreadFactory {
+      override def newThread(r: Runnable): Thread = {
+        val thread = new Thread(r, s"zip-wrapper-${ count.incrementAndGet() }")
+        thread.setDaemon(true)
+        thread
+      }
+    })
+  }
+
+  private def needsToBeWrapped(fileInfo: FileInfo, detectionNanos: AtomicLong): Boolean = {
+    fileInfo.file.name.toLowerCase.endsWith(".zip") ||
+      needToBeZipWrapped.contains(detectMimeType(fileInfo, detectionNanos))
+  }
+
+  /*
+   * Files with the same content (checksum and size) and extension get the same MIME type, so this is remembered across deposits. The extension is part of
+   * the key, because detection also takes the file name into account, e.g. to tell a .docx from a plain ZIP.
+   */
+  private def detectMimeType(fileInfo: FileInfo, detectionNanos: AtomicLong): String = {
+    val key = (fileInfo.checksum, fileInfo.file.size, fileInfo.file.extension(includeDot = false, toLowerCase = true).getOrElse(""))
+    Option(detectedMimeTypes.get(key)).getOrElse {
+      val start = System.nanoTime()
+      try {
+        val mimeType = sniffMimeType(fileInfo.file)
+        detectedMimeTypes.put(key, mimeType)
+        mimeType
+      }
+      finally {
+        detectionNanos.addAndGet(System.nanoTime() - start)
+      }
+    }
+  }
+
+  /*
+   * Only the magic bytes in the header of the file and its name are used; MimeTypes reads no more of the file than its longest magic pattern. The full
+   * Tika detector chain would also look inside ZIP and OLE containers, which means reading much more of them.
+   */
+  private def sniffMimeType(file: File): String = {
+    val metadata = new Metadata()
+    metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, file.name)
+    val in = new BufferedInputStream(Files.newInputStream(file.path))
+    try mimeTypes.detect(in, metadata).toString
+    finally in.close()
+  }
+}
+
+object ZipFileHandler {
+
+  /**
+   * How a file is to be uploaded.
+   */
+  sealed trait Upload {
+    def file: File
+  }
+
+  /**
+   * The file is uploaded as is.
+   */
+  case class Unwrapped(file: File) extends Upload
+
+  /**
+   * The file is wrapped in a temporary ZIP file, which is uploaded instead and must be deleted afterwards.
+   */
+  case class TempFileWrapped(file: File, wrapper: File) extends Upload
+
+  /**
+   * The file is wrapped while it is uploaded, with [[ZipFileHandler#uploadWrapped]].
+   */
+  case class StreamWrapped(file: File) extends Upload
 }
@@ -16,22 +16,40 @@
 package nl.knaw.dans.easy.dd2d.dansbag
 
 import better.files.File
+import nl.knaw.dans.easy.dd2d.HttpServiceClient
+import nl.knaw.dans.lib.error.TryExtensions
 import nl.knaw.dans.lib.logging.DebugEnhancedLogging
-import scalaj.http.Http
+import org.apache.http.client.HttpClient
 
 import java.net.URI
-import scala.util.Try
+import java.nio.charset.StandardCharsets
+import java.security.MessageDigest
+import scala.util.{ Success, Try }
+
+/**
+ * Interface to the easy-validate-dans-bag service.
+ *
+ * @param optResultCache if present, results are stored here and bags with a stored result for the profile version of the last response of the service are
+ *                       not validated again
+ */
+class DansBagValidator(serviceUri: URI, connTimeoutMs: Int, readTimeoutMs: Int, optResultCache: Option[ValidationResultCache], httpClient: HttpClient) extends DebugEnhancedLogging {
+  private val service = new HttpServiceClient(httpClient, connTimeoutMs, readTimeoutMs)
+  /*
+   * The profile version of the last response from the service. Cached results for other versions are not used. Until the service has been called, the
+   * current version is unknown, so that the cache is not used: the service may have been upgraded since the results were stored.
+   */
+  @volatile
+  private var optProfileVersion: Option[Int] = None
+
+  def this(serviceUri: URI, connTimeoutMs: Int, readTimeoutMs: Int, optResultCache: Option[ValidationResultCache]) = {
+    this(serviceUri, connTimeoutMs, readTimeoutMs, optResultCache, HttpServiceClient.defaultHttpClient)
+  }
+
+  def this(serviceUri: URI, connTimeoutMs: Int, readTimeoutMs: Int) = this(serviceUri, connTimeoutMs, readTimeoutMs, None)
 
-class DansBagValidator(serviceUri: URI, connTimeoutMs: Int, readTimeoutMs: Int) extends DebugEnhancedLogging {
   def checkConnection(): Try[Unit] = {
     logger.info("Checking if validator service can be reached")
-    Try {
-      Http(s"$serviceUri")
-        .timeout(connTimeoutMs, readTimeoutMs)
-        .method("GET")
-        .header("Accept", "text/plain")
-        .asString
-    } map {
+    service.get(serviceUri, "Accept" -> "text/plain") map {
       case r if r.code == 200 =>
         logger.info("OK: validator service is reachable.")
         ()
@@ -41,17 +59,61 @@ class DansBagValidator(serviceUri: URI, connTimeoutMs: Int, readTimeoutMs: Int)
 
   def validateBag(bagDir: File): Try[DansBagValidationResult] = {
     trace(bagDir)
+    optResultCache
+      .map(validateBagUsingCache(bagDir, _))
+      .getOrElse(requestValidation(bagDir).flatMap(DansBagValidationResult.fromJson))
+  }
+
+  private def validateBagUsingCache(bagDir: File, cache: ValidationResultCache): Try[DansBagValidationResult] = {
+    val optDigest = getBagDigest(bagDir)
+      .doIfFailure { case e => logger.warn(s"Could not compute digest of $bagDir; not using validation result cache", e) }
+      .toOption
+    val optCachedResult = for {
+      digest <- optDigest
+      profileVersion <- optProfileVersion
+      cachedJson <- Try { cache.get(digest, profileVersion) }
+        .doIfFailure { case e => logger.warn("Could not read from validation result cache", e) }
+        .toOption.flatten
+      cachedResult <- DansBagValidationResult.fromJson(cachedJson).toOption
+    } yield cachedResult
+
+    optCachedResult.map { result =>
+      logger.info(s"Bag $bagDir has not changed since it was validated against profile version ${ result.profileVersion }; using the stored result")
+      Success(result)
+    }.getOrElse {
+      for {
+        json <- requestValidation(bagDir)
+        result <- DansBagValidationResult.fromJson(json)
+        _ = { optProfileVersion = Some(result.profileVersion) }
+        _ = optDigest.foreach(digest => Try { cache.put(digest, result.profileVersion, json) }
+          .doIfFailure { case e => logger.warn("Could not write to validation result cache", e) })
+      } yield result
+    }
+  }
+
+  /*
+   * The tag manifests cover the payload manifests, bag-info.txt and the metadata files. The payload manifest and bag-info.txt are included in case there
+   * are no tag manifests.
+   */
+  private def getBagDigest(bagDir: File): Try[String] = Try {
+    val tagManifests = bagDir.list(_.name.startsWith("tagmanifest-")).toList.sortBy(_.name)
+    val files = tagManifests ++ List(bagDir / "manifest-sha1.txt", bagDir / "bag-info.txt").filter(_.exists)
+    val digest = MessageDigest.getInstance("SHA-256")
+    files.foreach { f =>
+      digest.update(f.name.getBytes(StandardCharsets.UTF_8))
+      digest.update(f.byteArray)
+    }
+    digest.digest().map("%02x".format(_)).mkString
+  }
+
+  private def requestValidation(bagDir: File): Try[String] = {
     Try {
       val validationUri = serviceUri.resolve(s"validate?infoPackageType=SIP&uri=${ bagDir.path.toUri }")
       logger.debug(s"Calling Dans Bag Validation Service with ${ validationUri.toASCIIString }")
-      Http(s"${ validationUri.toASCIIString }")
-        .timeout(connTimeoutMs, readTimeoutMs)
-        .method("POST")
-        .header("Accept", "application/json")
-        .asString
-    } flatMap {
+      validationUri
+    } flatMap (service.post(_, "Accept" -> "application/json")) map {
       case r if r.code == 200 =>
-        DansBagValidationResult.fromJson(r.body)
+        r.body
       case r =>
         throw new RuntimeException(s"DANS Bag Validation failed (${ r.code }): ${ r.body }")
     }
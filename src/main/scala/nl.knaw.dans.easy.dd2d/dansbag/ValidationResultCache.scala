@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.easy.dd2d.dansbag
+
+/**
+ * Persistent store of the responses of the easy-validate-dans-bag service, so that bags that have not changed need not be validated again.
+ */
+trait ValidationResultCache {
+
+  /**
+   * @param bagDigest      digest of the bag's manifests and bag-info.txt
+   * @param profileVersion the profile version that the result must have been produced with
+   * @return the stored response, if any
+   */
+  def get(bagDigest: String, profileVersion: Int): Option[String]
+
+  /**
+   * @param bagDigest      digest of the bag's manifests and bag-info.txt
+   * @param profileVersion the profile version of the result
+   * @param resultJson     the response of the validation service
+   */
+  def put(bagDigest: String, profileVersion: Int, resultJson: String): Unit
+}
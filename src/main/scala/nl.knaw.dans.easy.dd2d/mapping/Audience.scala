@@ -17,6 +17,7 @@ package nl.knaw.dans.easy.dd2d.mapping
 
 import nl.knaw.dans.lib.logging.DebugEnhancedLogging
 
+import java.util.regex.Pattern
 import scala.xml.Node
 
 /**
@@ -43,6 +44,9 @@ object Audience extends DebugEnhancedLogging {
     "E15" -> "Earth and Environmental Sciences",
   )
 
+  private val narcisCodePattern = Pattern.compile("""^[D|E]\d{5}$""")
+  private lazy val narcisCodeToSubject = PrefixTrie(narcisToSubject)
+
   /**
    * Returns the best match for this NARCIS classification code in the Dataverse subject vocabulary
    * used in the Citation metadata block
@@ -51,17 +55,12 @@ object Audience extends DebugEnhancedLogging {
    * @return the Dataverse subject term
    */
   def toCitationBlockSubject(node: Node): Option[String] = {
-    if (!node.text.matches("""^[D|E]\d{5}$""")) {
+    val code = node.text
+    if (!narcisCodePattern.matcher(code).matches()) {
       throw new RuntimeException("NARCIS classification code incorrectly formatted")
     }
 
-    Some(narcisToSubject
-      .toSeq
-      .filter { case (x, _) => node.text.startsWith(x) })
-      .collect {
-        case l if l.nonEmpty => l.maxBy(_._1.length)._2
-        case _ => "Other"
-      }
+    narcisCodeToSubject.longestPrefixMatch(code).orElse(Some("Other"))
   }
 
   def toNarcisTerm(node: Node): Option[String] = {
@@ -27,18 +27,13 @@ object Language extends BlockCitation with DebugEnhancedLogging {
       node.attribute("encodingScheme").flatMap(_.headOption.map(_.text == "ISO639-2")).getOrElse(false)
   }
 
-  def toCitationBlockLanguage(iso1ToDataverse: Map[String, String], iso2ToDataverse: Map[String, String])(node: Node): Option[String] = {
-    if (isIsoLanguage(node)) node.attribute("code").flatMap(_.headOption.flatMap(a => isoToDataverse(iso1ToDataverse, iso2ToDataverse)(a.text)))
+  def toCitationBlockLanguage(languages: LanguageVocabulary)(node: Node): Option[String] = {
+    if (isIsoLanguage(node)) node.attribute("code").flatMap(_.headOption.flatMap(a => languages.toDataverse(a.text)))
     else Option.empty[String]
   }
 
-  def langAttributeToMetadataLanguage(iso1ToDataverse: Map[String, String], iso2ToDataverse: Map[String, String])(node: Node): Option[String] = {
-    node.attribute(XML_NAMESPACE_URI, "lang").flatMap(_.headOption.flatMap(a => isoToDataverse(iso1ToDataverse, iso2ToDataverse)(a.text)))
-  }
-
-  private def isoToDataverse(iso1ToDataverse: Map[String, String], iso2ToDataverse: Map[String, String])(code: String): Option[String] = {
-    if (code.length == 2) iso1ToDataverse.get(code)
-    else iso2ToDataverse.get(code)
+  def langAttributeToMetadataLanguage(languages: LanguageVocabulary)(node: Node): Option[String] = {
+    node.attribute(XML_NAMESPACE_URI, "lang").flatMap(_.headOption.flatMap(a => languages.toDataverse(a.text)))
   }
 
   def toKeywordValue(node: Node): JsonObject = {
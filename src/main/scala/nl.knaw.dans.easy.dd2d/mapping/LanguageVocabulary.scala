@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.easy.dd2d.mapping
+
+/**
+ * The Dataverse language terms for ISO639-1 and ISO639-2 codes, in a single table. Two-letter codes are looked up as ISO639-1, all others as ISO639-2.
+ * The terms are interned, as the two tables map many codes to the same terms.
+ *
+ * @param iso1ToDataverse mapping of ISO639-1 to Dataverse language term
+ * @param iso2ToDataverse mapping of ISO639-2 to Dataverse language term
+ */
+class LanguageVocabulary(iso1ToDataverse: Map[String, String], iso2ToDataverse: Map[String, String]) {
+  private val codeToTerm: Map[String, String] = {
+    iso2ToDataverse.filter { case (code, _) => code.length != 2 } ++ iso1ToDataverse.filter { case (code, _) => code.length == 2 }
+  }.map { case (code, term) => (code, term.intern()) }
+
+  def toDataverse(code: String): Option[String] = {
+    codeToTerm.get(code)
+  }
+}
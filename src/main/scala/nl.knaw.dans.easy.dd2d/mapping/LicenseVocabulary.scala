@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.easy.dd2d.mapping
+
+import java.net.URI
+
+/**
+ * The licenses supported by the target Dataverse, indexed on the parts of their URIs that identify them, together with the variants of license URIs that
+ * are normalized before the look-up.
+ *
+ * @param supportedLicenses   the supported licenses; if several have the same host, path, port and query, the first one is used
+ * @param variantToNormalized mapping of license URI variants to the normalized license URI
+ */
+class LicenseVocabulary(supportedLicenses: List[URI], variantToNormalized: Map[String, String]) {
+  private val licenseByKey: Map[LicenseVocabulary.Key, URI] = supportedLicenses.reverse.map(l => LicenseVocabulary.key(l) -> l).toMap
+
+  def normalizeVariant(uri: String): String = {
+    variantToNormalized.getOrElse(uri, uri)
+  }
+
+  /**
+   * @param uri a license URI
+   * @return the supported license with the same host, path, port and query, if it has an http or https scheme
+   */
+  def normalizeScheme(uri: URI): Option[URI] = {
+    licenseByKey.get(LicenseVocabulary.key(uri)).filter(l => l.getScheme == "http" || l.getScheme == "https")
+  }
+}
+
+object LicenseVocabulary {
+  private case class Key(host: String, path: String, port: Int, query: String)
+
+  private def key(uri: URI): Key = Key(uri.getHost, uri.getPath, uri.getPort, uri.getQuery)
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.easy.dd2d.mapping
+
+import scala.annotation.tailrec
+import scala.collection.mutable
+
+/**
+ * Finds the value of the longest key that is a prefix of a given string. The trie is built once; a look-up takes time proportional to the length of the
+ * string, independent of the number of keys.
+ */
+class PrefixTrie[V] private(root: PrefixTrie.Node[V]) {
+
+  def longestPrefixMatch(s: String): Option[V] = {
+    @tailrec
+    def walk(node: PrefixTrie.Node[V], i: Int, best: Option[V]): Option[V] = {
+      val bestSoFar = node.value.orElse(best)
+      if (i == s.length) bestSoFar
+      else node.children.get(s.charAt(i)) match {
+        case Some(child) => walk(child, i + 1, bestSoFar)
+        case None => bestSoFar
+      }
+    }
+
+    walk(root, 0, None)
+  }
+}
+
+object PrefixTrie {
+  private[mapping] class Node[V] {
+    var value: Option[V] = None
+    val children: mutable.Map[Char, Node[V]] = mutable.HashMap()
+  }
+
+  def apply[V](entries: Iterable[(String, V)]): PrefixTrie[V] = {
+    val root = new Node[V]
+    entries.foreach {
+      case (key, value) => key.foldLeft(root)((node, c) => node.children.getOrElseUpdate(c, new Node[V])).value = Some(value)
+    }
+    new PrefixTrie(root)
+  }
+}
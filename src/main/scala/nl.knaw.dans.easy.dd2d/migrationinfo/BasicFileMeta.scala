@@ -16,8 +16,24 @@
 package nl.knaw.dans.easy.dd2d.migrationinfo
 
 import nl.knaw.dans.lib.dataverse.model.file.prestaged.PrestagedFile
+import org.json4s.native.JsonMethods
+import org.json4s.{ DefaultFormats, Formats }
 
 case class BasicFileMeta(label: String,
                          directoryLabel: Option[String],
                          versionSequenceNumber: Int,
                          prestagedFile: PrestagedFile)
+
+object BasicFileMeta {
+  private implicit val jsonFormats: Formats = DefaultFormats
+
+  /**
+   * Parses a list of basic file metas, as returned by the migration-info service.
+   *
+   * @param json the JSON array
+   * @return the basic file metas
+   */
+  def listFromJson(json: String): List[BasicFileMeta] = {
+    JsonMethods.parse(json).extract[List[BasicFileMeta]]
+  }
+}
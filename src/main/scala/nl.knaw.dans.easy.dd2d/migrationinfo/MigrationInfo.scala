@@ -15,24 +15,44 @@
  */
 package nl.knaw.dans.easy.dd2d.migrationinfo
 
+import better.files.File
+import nl.knaw.dans.easy.dd2d.{ Deposit, HttpServiceClient }
+import nl.knaw.dans.lib.error.TryExtensions
 import nl.knaw.dans.lib.logging.DebugEnhancedLogging
-import org.json4s.native.JsonMethods
-import org.json4s.{ DefaultFormats, Formats }
-import scalaj.http.Http
+import org.apache.http.client.HttpClient
+import org.apache.http.client.utils.URIBuilder
 
 import java.net.URI
+import java.util.concurrent.{ Callable, ConcurrentHashMap, ConcurrentLinkedQueue, ExecutorService, FutureTask, Semaphore }
+import scala.collection.mutable
 import scala.util.{ Success, Try }
 
-class MigrationInfo(config: MigrationInfoConfig, prestagedFiles: Boolean) extends DebugEnhancedLogging {
-  private implicit val jsonFormats: Formats = DefaultFormats
+/**
+ * Client of the migration-info service.
+ *
+ * @param config              the service configuration
+ * @param prestagedFiles      whether to look up pre-staged files; if false, no deposit file is matched to a pre-staged file
+ * @param httpClient          the client to call the service with
+ * @param optPrefetchExecutor the executor to prefetch basic file metas on, or `None` to only retrieve them when they are needed; its number of threads
+ *                            limits the number of concurrent prefetch requests
+ * @param maxPrefetched       the maximum number of prefetched dataset versions that are kept, waiting to be used; a prefetched version that its deposit
+ *                            did not use is dropped when the deposit finishes (see [[depositFinished]])
+ */
+class MigrationInfo(config: MigrationInfoConfig, prestagedFiles: Boolean, httpClient: HttpClient, optPrefetchExecutor: Option[ExecutorService], maxPrefetched: Int)
+  extends DebugEnhancedLogging {
+  private val service = new HttpServiceClient(httpClient, config.connectionTimeout, config.readTimeout)
+  private val pendingPrefetches = new ConcurrentLinkedQueue[(String, Int)]()
+  private val prefetched = new ConcurrentHashMap[(String, Int), FutureTask[Try[PrestagedFileIndex]]]()
+  private val prefetchPermits = new Semaphore(maxPrefetched)
+  private val prefetchKeyByDepositId = new ConcurrentHashMap[String, (String, Int)]()
+
+  def this(config: MigrationInfoConfig, prestagedFiles: Boolean, httpClient: HttpClient) = this(config, prestagedFiles, httpClient, None, 0)
+
+  def this(config: MigrationInfoConfig, prestagedFiles: Boolean) = this(config, prestagedFiles, HttpServiceClient.defaultHttpClient)
 
   def checkConnection(): Try[Unit] = {
     logger.info(s"Checking if migration-info service can be reached at ${ config.baseUrl.toASCIIString }")
-    Try {
-      Http(config.baseUrl.toASCIIString)
-        .timeout(connTimeoutMs = config.connectionTimeout, readTimeoutMs = config.readTimeout)
-        .asBytes
-    } map {
+    service.get(config.baseUrl) map {
       case r if r.code == 200 =>
         logger.info("OK: migration-info service is reachable.")
         ()
@@ -46,14 +66,10 @@ class MigrationInfo(config: MigrationInfoConfig, prestagedFiles: Boolean) extend
       val url = (new URI(config.baseUrl + "/") resolve s"datasets/:persistentId/seq/$seqNr/basic-file-metas").toASCIIString
       debug(s"Retrieving pre-staged files for $doi from $url")
       Try {
-        Http(url)
-          .params("persistentId" -> doi)
-          .timeout(connTimeoutMs = config.connectionTimeout, readTimeoutMs = config.readTimeout)
-          .asString
-      } map {
+        new URIBuilder(url).addParameter("persistentId", doi).build()
+      } flatMap (service.get(_)) map {
         case r if r.code == 200 =>
-          val json = JsonMethods.parse(r.body)
-          json.extract[List[BasicFileMeta]].toSet
+          BasicFileMeta.listFromJson(r.body).toSet
         case r if r.code == 404 =>
           logger.warn(s"No pre-staged files could be found for dataset $doi. Returning empty result.")
           Set.empty
@@ -62,4 +78,124 @@ class MigrationInfo(config: MigrationInfoConfig, prestagedFiles: Boolean) extend
     }
     else Success(Set.empty[BasicFileMeta])
   }
+
+  /**
+   * Returns the basic file metas of a dataset version as an index. If they were prefetched, the prefetched result is used (and forgotten); otherwise,
+   * or if the prefetch failed, they are retrieved now.
+   *
+   * @param doi   the DOI of the dataset, with the `doi:` prefix
+   * @param seqNr the sequence number of the version
+   * @return the index
+   */
+  def getPrestagedFileIndexFor(doi: String, seqNr: Int): Try[PrestagedFileIndex] = {
+    trace(doi, seqNr)
+    Option(prefetched.remove((doi, seqNr))).map { task =>
+      prefetchPermits.release()
+      optPrefetchExecutor.foreach(startPrefetches)
+      // Runs the prefetch on this thread if the executor has not got to it yet
+      task.run()
+      Try { task.get() }.flatten
+        .doIfFailure { case e => logger.warn(s"Prefetching pre-staged files for $doi version $seqNr failed; retrying", e) }
+        .recoverWith { case _ => fetchIndex(doi, seqNr) }
+    }.getOrElse(fetchIndex(doi, seqNr))
+  }
+
+  /**
+   * Starts prefetching the basic file metas of the dataset versions that the deposits in a batch will create. The deposits must be given in the order in
+   * which they will be processed. Only the versions whose sequence numbers follow from the batch itself are prefetched: those of new datasets and of the
+   * updates to these in the same batch. At most `maxPrefetched` versions are kept; the next ones are prefetched as earlier ones are used.
+   *
+   * @param depositDirs the deposit directories of the batch
+   */
+  def prefetchForBatch(depositDirs: Seq[File]): Unit = {
+    optPrefetchExecutor.filter(_ => prestagedFiles).foreach { executor =>
+      // Reading the deposit properties of a large batch takes a while, so this is not done on the caller's thread
+      executor.execute(new Runnable {
+        override def run(): Unit = {
+          val versions = MigrationInfo.getVersionsCreatedBy(depositDirs)
+          logger.info(s"Prefetching pre-staged files for ${ versions.size } dataset versions")
+          versions.foreach {
+            case (depositId, key) =>
+              prefetchKeyByDepositId.put(depositId, key)
+              pendingPrefetches.add(key)
+          }
+          startPrefetches(executor)
+        }
+      })
+    }
+  }
+
+  /**
+   * Forgets the version prefetched for a deposit that has finished, whether it was processed, rejected, failed or interrupted. If the deposit did not use
+   * it, e.g. because it did not get to its files or because it created another version than was predicted, the version is dropped, so that its permit is
+   * available to prefetch the next versions.
+   *
+   * @param depositId the ID of the deposit
+   */
+  def depositFinished(depositId: String): Unit = {
+    Option(prefetchKeyByDepositId.remove(depositId)).foreach {
+      key =>
+        pendingPrefetches.remove(key)
+        Option(prefetched.remove(key)).foreach { task =>
+          debug(s"Dropping unused prefetched pre-staged files of ${ key._1 } version ${ key._2 }")
+          task.cancel(false)
+          prefetchPermits.release()
+          optPrefetchExecutor.foreach(startPrefetches)
+        }
+    }
+  }
+
+  private def startPrefetches(executor: ExecutorService): Unit = {
+    while (!pendingPrefetches.isEmpty && prefetchPermits.tryAcquire()) {
+      Option(pendingPrefetches.poll()) match {
+        case Some(key @ (doi, seqNr)) =>
+          val task = new FutureTask[Try[PrestagedFileIndex]](new Callable[Try[PrestagedFileIndex]] {
+            override def call(): Try[PrestagedFileIndex] = fetchIndex(doi, seqNr)
+          })
+          if (prefetched.putIfAbsent(key, task) == null) executor.execute(task)
+          else prefetchPermits.release()
+        case None => prefetchPermits.release()
+      }
+    }
+  }
+
+  private def fetchIndex(doi: String, seqNr: Int): Try[PrestagedFileIndex] = {
+    getPrestagedDataFilesFor(doi, seqNr).map(new PrestagedFileIndex(_))
+  }
+}
+
+object MigrationInfo extends DebugEnhancedLogging {
+
+  /**
+   * Determines which dataset versions the deposits will create, as far as this follows from the deposits themselves: a deposit that is not an update
+   * creates version 1 of the dataset with its DOI, and each update of a dataset that is created in the same batch creates its next version. The
+   * `Is-Version-Of` is read from the bag-info.txt only; the bags are not loaded.
+   *
+   * @param depositDirs the deposit directories, in the order in which they will be processed
+   * @return the deposit IDs with the DOIs (with the `doi:` prefix) and sequence numbers of the versions they create
+   */
+  def getVersionsCreatedBy(depositDirs: Seq[File]): List[(String, (String, Int))] = {
+    val doiByBagId = mutable.Map[String, String]()
+    val lastSeqNrByDoi = mutable.Map[String, Int]()
+    depositDirs.toList.flatMap { dir =>
+      Try {
+        val deposit = Deposit(dir)
+        deposit.getOptIsVersionOfFromBagInfo.get match {
+          case None if deposit.doi.nonEmpty =>
+            val doi = s"doi:${ deposit.doi }"
+            List(deposit.dataverseBagId, s"urn:uuid:${ deposit.depositId }").filter(_.nonEmpty).foreach(doiByBagId.put(_, doi))
+            lastSeqNrByDoi.put(doi, 1)
+            Option((deposit.depositId, (doi, 1)))
+          case Some(isVersionOf) =>
+            doiByBagId.get(isVersionOf).map { doi =>
+              val seqNr = lastSeqNrByDoi(doi) + 1
+              lastSeqNrByDoi.put(doi, seqNr)
+              (deposit.depositId, (doi, seqNr))
+            }
+          case _ => None
+        }
+      }.doIfFailure { case e => logger.warn(s"Could not determine dataset version of $dir; not prefetching its pre-staged files", e) }
+        .toOption.flatten
+    }
+  }
 }
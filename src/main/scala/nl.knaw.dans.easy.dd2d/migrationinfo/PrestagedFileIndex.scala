@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.easy.dd2d.migrationinfo
+
+import nl.knaw.dans.easy.dd2d.FileInfo
+import nl.knaw.dans.lib.dataverse.model.file.prestaged.PrestagedFile
+
+/**
+ * The basic file metas of one dataset version, indexed by checksum and by path, so that finding the pre-staged file for a deposited file does not
+ * require a scan of all of them.
+ *
+ * @param basicFileMetas the basic file metas
+ */
+class PrestagedFileIndex(basicFileMetas: Set[BasicFileMeta]) {
+  private val byChecksum: Map[String, List[BasicFileMeta]] = basicFileMetas.toList.groupBy(_.prestagedFile.checksum.`@value`)
+  private val byPath: Map[(Option[String], String), List[BasicFileMeta]] = basicFileMetas.toList.groupBy(bfm => (bfm.directoryLabel, bfm.label))
+
+  def size: Int = basicFileMetas.size
+
+  def isEmpty: Boolean = basicFileMetas.isEmpty
+
+  /**
+   * Finds the pre-staged file for a deposited file. A single file with the same checksum is a match. If there are several, the one with the same path is
+   * the match.
+   *
+   * @param fileInfo the deposited file
+   * @return the pre-staged file, if there is a match
+   * @throws IllegalArgumentException if several files with the same checksum also have the same path
+   */
+  def find(fileInfo: FileInfo): Option[PrestagedFile] = {
+    find(fileInfo.checksum, fileInfo.metadata.directoryLabel, fileInfo.metadata.label)
+  }
+
+  /**
+   * Same as `find(fileInfo)`, for the checksum and path of a deposited file.
+   */
+  def find(checksum: String, directoryLabel: Option[String], label: Option[String]): Option[PrestagedFile] = {
+    byChecksum.getOrElse(checksum, Nil) match {
+      case Nil => None
+      case single :: Nil => Option(single.prestagedFile)
+      case _ => byPath.getOrElse((directoryLabel, label.get), Nil) match {
+        case Nil => None
+        case single :: Nil => Option(single.prestagedFile)
+        case _ => throw new IllegalArgumentException("Found multiple basic file metas with the same path in a single dataset version")
+      }
+    }
+  }
+
+  override def toString: String = s"PrestagedFileIndex($size basic file metas)"
+}
+
+object PrestagedFileIndex {
+  val empty = new PrestagedFileIndex(Set.empty)
+}
@@ -64,6 +64,12 @@ package object dd2d {
   case class OutboxDirIsRegularFileException(outboxDir: File)
     extends RuntimeException(s"Output directory: $outboxDir is a regular file.")
 
+  case class FileMutationsFailedException(failures: List[(Any, Throwable)])
+    extends RuntimeException(s"${ failures.size } file mutation(s) failed: ${ failures.map { case (item, e) => s"$item: ${ e.getMessage }" }.mkString("; ") }",
+      failures.headOption.map(_._2).orNull) {
+    failures.drop(1).foreach { case (_, e) => addSuppressed(e) }
+  }
+
   object OutboxSubdir extends Enumeration {
     type OutboxSubdir = Value
     val PROCESSED = Value("processed")
@@ -18,6 +18,7 @@ package nl.knaw.dans.ingest.core;
 import better.files.File;
 import nl.knaw.dans.easy.dd2d.Deposit;
 import nl.knaw.dans.easy.dd2d.DepositMigrationTask;
+import nl.knaw.dans.easy.dd2d.FileMutationExecutor;
 import nl.knaw.dans.easy.dd2d.ZipFileHandler;
 import nl.knaw.dans.ingest.core.legacy.DepositImportTaskWrapper;
 import org.junit.jupiter.api.Test;
@@ -104,8 +105,10 @@ public class DepositStartImportTaskWrapperTest {
             null,
             null,
             null,
-            null,
-            null
+            Option.empty(),
+            Option.empty(),
+            FileMutationExecutor.sequential(),
+            Option.empty()
         ), null);
     }
 }
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.legacy;
+
+import nl.knaw.dans.easy.dd2d.Deposit;
+import nl.knaw.dans.easy.dd2d.DepositIngestTask;
+import nl.knaw.dans.easy.dd2d.FailedDepositException;
+import nl.knaw.dans.easy.dd2d.InterruptedDepositException;
+import nl.knaw.dans.ingest.core.TaskEvent.EventType;
+import nl.knaw.dans.ingest.core.TaskEvent.Result;
+import nl.knaw.dans.ingest.core.service.EventWriter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import scala.Option;
+import scala.util.Failure;
+
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DepositImportTaskWrapperTest {
+    private final UUID depositId = UUID.randomUUID();
+    private final Deposit deposit = mock(Deposit.class);
+    private final DepositIngestTask task = mock(DepositIngestTask.class);
+    private final EventWriter eventWriter = mock(EventWriter.class);
+
+    @BeforeEach
+    public void setUp() {
+        when(deposit.depositId()).thenReturn(depositId.toString());
+        when(task.deposit()).thenReturn(deposit);
+    }
+
+    @Test
+    public void interruptedDepositDoesNotEndProcessing() {
+        when(task.prepareIngest()).thenReturn(new Failure<>(new InterruptedDepositException(deposit, Option.apply("VALIDATED"), new InterruptedException())));
+
+        new DepositImportTaskWrapper(task, Instant.now(), eventWriter).run();
+
+        verify(eventWriter).write(depositId, EventType.START_PROCESSING, Result.OK, null);
+        verify(eventWriter, never()).write(eq(depositId), eq(EventType.END_PROCESSING), any(), any());
+    }
+
+    @Test
+    public void failedDepositEndsProcessingAsFailed() {
+        when(task.prepareIngest()).thenReturn(new Failure<>(new FailedDepositException(deposit, "invalid", null)));
+
+        new DepositImportTaskWrapper(task, Instant.now(), eventWriter).run();
+
+        verify(eventWriter).write(eq(depositId), eq(EventType.END_PROCESSING), eq(Result.FAILED), any());
+    }
+}
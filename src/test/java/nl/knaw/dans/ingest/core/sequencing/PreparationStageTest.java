@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.sequencing;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class PreparationStageTest {
+
+    @Test
+    public void prepareAheadShouldReturnNullWhenMaxPreparedAheadIsReached() throws Exception {
+        PreparationStage stage = new PreparationStage(Runnable::run, Runnable::run, 2);
+        CompletableFuture<String> first = stage.prepareAhead(() -> "first");
+        CompletableFuture<String> second = stage.prepareAhead(() -> "second");
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNull(stage.prepareAhead(() -> "third"));
+
+        assertEquals("first:done", stage.continueWith(first, r -> CompletableFuture.completedFuture(r + ":done")).toCompletableFuture().get());
+        assertEquals(1, stage.getNumberOfAvailablePermits());
+        assertNotNull(stage.prepareAhead(() -> "third"));
+    }
+
+    @Test
+    public void continueWithShouldContinueOnContinuationExecutorIfPreparationIsNotFinished() throws Exception {
+        ExecutorService preparationExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "preparation"));
+        ExecutorService continuationExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "continuation"));
+        CountDownLatch preparing = new CountDownLatch(1);
+        try {
+            PreparationStage stage = new PreparationStage(preparationExecutor, continuationExecutor, 1);
+            CompletableFuture<String> prepared = stage.prepareAhead(() -> {
+                try {
+                    preparing.await(5, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "prepared";
+            });
+            CompletableFuture<String> result = stage.continueWith(prepared, r -> CompletableFuture.completedFuture(Thread.currentThread().getName()))
+                .toCompletableFuture();
+            assertFalse(result.isDone());
+
+            preparing.countDown();
+            assertEquals("continuation", result.get(5, TimeUnit.SECONDS));
+            assertEquals(1, stage.getNumberOfAvailablePermits());
+        }
+        finally {
+            preparationExecutor.shutdownNow();
+            continuationExecutor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.sequencing;
+
+import nl.knaw.dans.ingest.core.TaskEvent;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TargetedTaskSequenceManagerTest {
+    private static final int NUMBER_OF_TARGETS = 64;
+    private static final int TASKS_PER_TARGET = 10;
+    private static final int NUMBER_OF_ENQUEUERS = 3;
+
+    private static class RecordingTask implements TargetedTask {
+        private final String target;
+        private final int sequenceNumber;
+        private final long sleepMs;
+        private final Map<String, List<Integer>> executionOrder;
+        private final Map<String, AtomicInteger> running;
+        private final AtomicInteger overlaps;
+        private final CountDownLatch done;
+
+        RecordingTask(String target, int sequenceNumber, long sleepMs, Map<String, List<Integer>> executionOrder, Map<String, AtomicInteger> running,
+            AtomicInteger overlaps, CountDownLatch done) {
+            this.target = target;
+            this.sequenceNumber = sequenceNumber;
+            this.sleepMs = sleepMs;
+            this.executionOrder = executionOrder;
+            this.running = running;
+            this.overlaps = overlaps;
+            this.done = done;
+        }
+
+        @Override
+        public String getTarget() {
+            return target;
+        }
+
+        @Override
+        public void writeEvent(TaskEvent.EventType eventType, TaskEvent.Result result, String message) {
+        }
+
+        @Override
+        public void run() {
+            AtomicInteger r = running.computeIfAbsent(target, t -> new AtomicInteger());
+            if (r.incrementAndGet() > 1) {
+                overlaps.incrementAndGet();
+            }
+            try {
+                if (sleepMs > 0) {
+                    Thread.sleep(sleepMs);
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            executionOrder.computeIfAbsent(target, t -> Collections.synchronizedList(new ArrayList<>())).add(sequenceNumber);
+            r.decrementAndGet();
+            done.countDown();
+        }
+    }
+
+    @Test
+    public void tasksForSameTargetShouldRunInOrderAndNeverConcurrently() throws Exception {
+        Map<String, List<Integer>> executionOrder = new ConcurrentHashMap<>();
+        AtomicInteger overlaps = new AtomicInteger();
+        TargetedTaskSequenceManager manager = run(8, 1, executionOrder, overlaps);
+
+        assertEquals(0, overlaps.get());
+        assertEquals(NUMBER_OF_TARGETS, executionOrder.size());
+        for (List<Integer> order : executionOrder.values()) {
+            assertEquals(TASKS_PER_TARGET, order.size());
+            for (int i = 0; i < TASKS_PER_TARGET; i++) {
+                assertEquals(i, (int) order.get(i));
+            }
+        }
+        assertEquals(0, manager.getNumberOfActiveSequencers());
+    }
+
+    @Test
+    public void tasksForDifferentTargetsShouldRunConcurrently() throws Exception {
+        int workerThreads = 8;
+        ExecutorService workers = Executors.newFixedThreadPool(workerThreads);
+        TargetedTaskSequenceManager manager = new TargetedTaskSequenceManager(workers);
+        // Each task waits until all of them have started, which only happens if they all run at the same time
+        CyclicBarrier allStarted = new CyclicBarrier(workerThreads);
+        AtomicInteger metAtBarrier = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(workerThreads);
+        try {
+            for (int i = 0; i < workerThreads; i++) {
+                manager.scheduleTask(new BarrierTask("target-" + i, allStarted, metAtBarrier, done));
+            }
+            assertTrue(done.await(20, TimeUnit.SECONDS), "Not all tasks finished in time");
+            assertEquals(workerThreads, metAtBarrier.get(), "Not all tasks for different targets ran at the same time");
+        }
+        finally {
+            workers.shutdown();
+            workers.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        assertEquals(0, manager.getNumberOfActiveSequencers());
+    }
+
+    private static class BarrierTask implements TargetedTask {
+        private final String target;
+        private final CyclicBarrier allStarted;
+        private final AtomicInteger metAtBarrier;
+        private final CountDownLatch done;
+
+        BarrierTask(String target, CyclicBarrier allStarted, AtomicInteger metAtBarrier, CountDownLatch done) {
+            this.target = target;
+            this.allStarted = allStarted;
+            this.metAtBarrier = metAtBarrier;
+            this.done = done;
+        }
+
+        @Override
+        public String getTarget() {
+            return target;
+        }
+
+        @Override
+        public void writeEvent(TaskEvent.EventType eventType, TaskEvent.Result result, String message) {
+        }
+
+        @Override
+        public void run() {
+            try {
+                allStarted.await(10, TimeUnit.SECONDS);
+                metAtBarrier.incrementAndGet();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            catch (BrokenBarrierException | TimeoutException e) {
+                // Not all tasks started in time; the test fails on the count
+            }
+            finally {
+                done.countDown();
+            }
+        }
+    }
+
+    @Test
+    public void waitingTaskShouldFreeWorkerThreadButHoldBackNextTaskForSameTarget() throws Exception {
+        ExecutorService workers = Executors.newSingleThreadExecutor();
+        TargetedTaskSequenceManager manager = new TargetedTaskSequenceManager(workers);
+        List<String> started = Collections.synchronizedList(new ArrayList<>());
+        CompletableFuture<Void> firstTaskCompletion = new CompletableFuture<>();
+        CountDownLatch otherTargetDone = new CountDownLatch(1);
+        CountDownLatch allDone = new CountDownLatch(3);
+        try {
+            manager.scheduleTask(new WaitingTask("a", "a1", started, firstTaskCompletion, allDone));
+            manager.scheduleTask(new WaitingTask("a", "a2", started, CompletableFuture.completedFuture(null), allDone));
+            manager.scheduleTask(new WaitingTask("b", "b1", started, CompletableFuture.completedFuture(null), allDone, otherTargetDone));
+
+            // Only one worker thread, so b1 can only run if a1 released it
+            assertTrue(otherTargetDone.await(10, TimeUnit.SECONDS), "Task for other target did not run while first task was waiting");
+            assertEquals(Arrays.asList("a1", "b1"), new ArrayList<>(started));
+
+            firstTaskCompletion.complete(null);
+            assertTrue(allDone.await(10, TimeUnit.SECONDS), "Not all tasks finished in time");
+            assertEquals(Arrays.asList("a1", "b1", "a2"), new ArrayList<>(started));
+        }
+        finally {
+            workers.shutdown();
+            workers.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        assertEquals(0, manager.getNumberOfActiveSequencers());
+    }
+
+    private static class WaitingTask implements TargetedTask {
+        private final String target;
+        private final String name;
+        private final List<String> started;
+        private final CompletableFuture<Void> completion;
+        private final CountDownLatch[] done;
+
+        WaitingTask(String target, String name, List<String> started, CompletableFuture<Void> completion, CountDownLatch... done) {
+            this.target = target;
+            this.name = name;
+            this.started = started;
+            this.completion = completion;
+            this.done = done;
+        }
+
+        @Override
+        public String getTarget() {
+            return target;
+        }
+
+        @Override
+        public void writeEvent(TaskEvent.EventType eventType, TaskEvent.Result result, String message) {
+        }
+
+        @Override
+        public void run() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletionStage<Void> start() {
+            started.add(name);
+            return completion.thenRun(() -> {
+                for (CountDownLatch latch : done) {
+                    latch.countDown();
+                }
+            });
+        }
+    }
+
+    /*
+     * Enqueues TASKS_PER_TARGET tasks for each of NUMBER_OF_TARGETS targets from several enqueuing threads at once, and waits for them to finish.
+     */
+    private TargetedTaskSequenceManager run(int workerThreads, long sleepMs, Map<String, List<Integer>> executionOrder, AtomicInteger overlaps) throws Exception {
+        ExecutorService workers = Executors.newFixedThreadPool(workerThreads);
+        ExecutorService enqueuers = Executors.newFixedThreadPool(NUMBER_OF_ENQUEUERS);
+        TargetedTaskSequenceManager manager = new TargetedTaskSequenceManager(workers);
+        Map<String, AtomicInteger> running = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(NUMBER_OF_TARGETS * TASKS_PER_TARGET);
+        try {
+            for (int e = 0; e < NUMBER_OF_ENQUEUERS; e++) {
+                int enqueuer = e;
+                enqueuers.execute(() -> {
+                    // Each target is enqueued by exactly one enqueuer, so that the order in which its tasks are scheduled is well-defined
+                    for (int i = 0; i < TASKS_PER_TARGET; i++) {
+                        for (int t = enqueuer; t < NUMBER_OF_TARGETS; t += NUMBER_OF_ENQUEUERS) {
+                            manager.scheduleTask(new RecordingTask("target-" + t, i, sleepMs, executionOrder, running, overlaps, done));
+                        }
+                    }
+                });
+            }
+            assertTrue(done.await(60, TimeUnit.SECONDS), "Not all tasks finished in time");
+            return manager;
+        }
+        finally {
+            enqueuers.shutdown();
+            workers.shutdown();
+            workers.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import nl.knaw.dans.ingest.core.TaskEvent;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BatchingTaskEventServiceTest {
+
+    private static class RecordingTaskEventService extends TaskEventServiceImpl {
+        private final List<List<TaskEvent>> batches = Collections.synchronizedList(new ArrayList<>());
+
+        RecordingTaskEventService() {
+            super(null);
+        }
+
+        @Override
+        public void writeEvents(List<TaskEvent> taskEvents) {
+            batches.add(taskEvents);
+        }
+
+        int numberOfEvents() {
+            synchronized (batches) {
+                return batches.stream().mapToInt(List::size).sum();
+            }
+        }
+    }
+
+    @Test
+    public void stopShouldWriteAllQueuedEventsInBatchesOfAtMostBatchSize() throws Exception {
+        RecordingTaskEventService delegate = new RecordingTaskEventService();
+        BatchingTaskEventService service = new BatchingTaskEventService(delegate, 50, 20, 60000);
+        service.start();
+        for (int i = 0; i < 500; i++) {
+            service.writeEvent("test", UUID.randomUUID(), TaskEvent.EventType.ENQUEUE, TaskEvent.Result.OK, "event " + i);
+        }
+        service.stop();
+
+        assertEquals(500, delegate.numberOfEvents());
+        for (List<TaskEvent> batch : delegate.batches) {
+            assertTrue(batch.size() <= 20);
+        }
+        assertEquals("event 0", delegate.batches.get(0).get(0).getMessage());
+    }
+
+    @Test
+    public void incompleteBatchShouldBeWrittenAfterMaxDelay() throws Exception {
+        RecordingTaskEventService delegate = new RecordingTaskEventService();
+        BatchingTaskEventService service = new BatchingTaskEventService(delegate, 50, 20, 100);
+        service.start();
+        service.writeEvent("test", UUID.randomUUID(), TaskEvent.EventType.ENQUEUE, TaskEvent.Result.OK, "");
+        service.writeEvent("test", UUID.randomUUID(), TaskEvent.EventType.START_PROCESSING, TaskEvent.Result.OK, "");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (delegate.numberOfEvents() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, delegate.numberOfEvents());
+        service.stop();
+    }
+
+    @Test
+    public void eventsShouldBeWrittenSynchronouslyWhenNotStarted() {
+        RecordingTaskEventService delegate = new RecordingTaskEventService();
+        BatchingTaskEventService service = new BatchingTaskEventService(delegate, 50, 20, 100);
+        service.writeEvent("test", UUID.randomUUID(), TaskEvent.EventType.ENQUEUE, TaskEvent.Result.OK, "");
+        assertEquals(1, delegate.numberOfEvents());
+    }
+
+    @Test
+    public void eventsShouldBeWrittenSynchronouslyAfterTheWriterThreadWasInterrupted() throws Exception {
+        RecordingTaskEventService delegate = new RecordingTaskEventService() {
+            @Override
+            public void writeEvents(List<TaskEvent> taskEvents) {
+                super.writeEvents(taskEvents);
+                if (Thread.currentThread().getName().equals("task-event-writer")) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        BatchingTaskEventService service = new BatchingTaskEventService(delegate, 2, 1, 10);
+        service.start();
+        // Would block forever on the full queue if the events were still queued for the ended writer thread
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            for (int i = 0; i < 100; i++) {
+                service.writeEvent("test", UUID.randomUUID(), TaskEvent.EventType.ENQUEUE, TaskEvent.Result.OK, "event " + i);
+            }
+        });
+        assertEquals(100, delegate.numberOfEvents());
+        service.stop();
+        assertEquals(100, delegate.numberOfEvents());
+    }
+}
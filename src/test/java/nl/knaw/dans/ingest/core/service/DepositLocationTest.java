@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DepositLocationTest {
+    private static final Path testDepositsBasedir = Paths.get("src/test/resources/unordered-stub-deposits/");
+
+    @Test
+    public void createdTimestampShouldBeReadFromBagInfo() {
+        DepositLocation location = DepositLocation.readFrom(testDepositsBasedir.resolve("deposit1_a"));
+        assertEquals(OffsetDateTime.parse("2020-02-15T09:02:00.345+01:00").toInstant(), location.getCreated());
+        assertEquals(testDepositsBasedir.resolve("deposit1_a"), location.getDir());
+    }
+
+    @Test
+    public void depositLocationsShouldBeOrderedByCreatedTimestamp() {
+        List<String> sorted = Stream.of("deposit2_a", "deposit1_b", "deposit1_a", "deposit1_first", "deposit2_first")
+            .map(d -> DepositLocation.readFrom(testDepositsBasedir.resolve(d)))
+            .sorted()
+            .map(l -> l.getDir().getFileName().toString())
+            .collect(Collectors.toList());
+
+        assertEquals(Arrays.asList("deposit2_first", "deposit1_first", "deposit1_a", "deposit1_b", "deposit2_a"), sorted);
+    }
+
+    @Test
+    public void failFastIfNoTimeZoneInCreatedTimestamp() {
+        assertThrows(DateTimeParseException.class, () -> DepositLocation.readFrom(testDepositsBasedir.resolve("deposit3_notimezone")));
+    }
+
+    @Test
+    public void failFastIfNoCreatedTimestamp() {
+        IllegalArgumentException thrown = assertThrows(IllegalArgumentException.class, () -> DepositLocation.readFrom(testDepositsBasedir.resolve("deposit3_nocreated")));
+        assertTrue(thrown.getMessage().contains("No Created value found in bag"));
+    }
+
+    @Test
+    public void failFastIfMultipleCreatedTimestamps() {
+        IllegalArgumentException thrown = assertThrows(IllegalArgumentException.class, () -> DepositLocation.readFrom(testDepositsBasedir.resolve("deposit3_2created")));
+        assertTrue(thrown.getMessage().contains("There should be exactly one Created value; found 2"));
+    }
+}
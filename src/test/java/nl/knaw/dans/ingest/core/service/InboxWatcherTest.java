@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import nl.knaw.dans.ingest.core.config.InboxWatchMode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class InboxWatcherTest {
+
+    @TempDir
+    Path inbox;
+
+    @Test
+    public void depositWithoutDepositPropertiesIsNotComplete() throws Exception {
+        Path deposit = createDeposit("deposit1");
+        Files.delete(deposit.resolve("deposit.properties"));
+        assertFalse(createWatcher(0).isComplete(deposit));
+    }
+
+    @Test
+    public void depositWithoutBagInfoIsNotComplete() throws Exception {
+        Path deposit = createDeposit("deposit1");
+        Files.delete(deposit.resolve("bag/bag-info.txt"));
+        assertFalse(createWatcher(0).isComplete(deposit));
+    }
+
+    @Test
+    public void recentlyModifiedDepositIsNotComplete() throws Exception {
+        Path deposit = createDeposit("deposit1");
+        assertFalse(createWatcher(60000).isComplete(deposit));
+    }
+
+    @Test
+    public void depositNotModifiedDuringQuietPeriodIsComplete() throws Exception {
+        Path deposit = createDeposit("deposit1");
+        setModifiedTime(deposit, System.currentTimeMillis() - 120000);
+        assertTrue(createWatcher(60000).isComplete(deposit));
+    }
+
+    @Test
+    public void depositWithNestedFileStillBeingCopiedIsNotComplete() throws Exception {
+        Path deposit = createDeposit("deposit1");
+        Path largeFile = Files.createDirectories(deposit.resolve("bag/data/deeply/nested")).resolve("large.bin");
+        Files.createFile(largeFile);
+        // Only the payload file changes while it is copied slowly; the rest of the deposit looks quiet
+        setModifiedTime(deposit, System.currentTimeMillis() - 120000);
+        InboxWatcher watcher = createWatcher(300);
+        byte[] chunk = new byte[64 * 1024];
+        try (OutputStream out = Files.newOutputStream(largeFile, StandardOpenOption.APPEND)) {
+            for (int i = 0; i < 10; i++) {
+                out.write(chunk);
+                out.flush();
+                Thread.sleep(100);
+                assertFalse(watcher.isComplete(deposit), "complete while copying chunk " + i);
+            }
+        }
+        Thread.sleep(500);
+        assertTrue(watcher.isComplete(deposit));
+    }
+
+    @Test
+    public void scanExistingShouldOnlyReturnCompleteDeposits() throws Exception {
+        Path complete = createDeposit("complete");
+        Path incomplete = createDeposit("incomplete");
+        Files.delete(incomplete.resolve("bag/bagit.txt"));
+        List<Path> existing = createWatcher(0).scanExisting();
+        assertEquals(Collections.singletonList(complete), existing);
+    }
+
+    @Test
+    public void incompleteDepositShouldBeReportedAfterMaxPendingTime() throws Exception {
+        Path incomplete = createDeposit("incomplete");
+        Files.delete(incomplete.resolve("bag/bagit.txt"));
+        setModifiedTime(incomplete, System.currentTimeMillis() - 120000);
+        BlockingQueue<Path> reported = new LinkedBlockingQueue<>();
+        InboxWatcher watcher = new InboxWatcher(inbox, InboxWatchMode.POLLING, 100, 0, 300, reported::add);
+        assertTrue(watcher.scanExisting().isEmpty());
+        watcher.start();
+        try {
+            assertEquals(incomplete, reported.poll(5, TimeUnit.SECONDS));
+        }
+        finally {
+            watcher.stop();
+        }
+    }
+
+    private InboxWatcher createWatcher(long quietPeriodMs) {
+        return new InboxWatcher(inbox, InboxWatchMode.POLLING, 100, quietPeriodMs, 600000, p -> {
+        });
+    }
+
+    private Path createDeposit(String name) throws IOException {
+        Path deposit = inbox.resolve(name);
+        Path bag = Files.createDirectories(deposit.resolve("bag"));
+        Files.createFile(deposit.resolve("deposit.properties"));
+        Files.createFile(bag.resolve("bagit.txt"));
+        Files.createFile(bag.resolve("bag-info.txt"));
+        return deposit;
+    }
+
+    private void setModifiedTime(Path dir, long millis) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) files::iterator) {
+                Files.setLastModifiedTime(p, FileTime.fromMillis(millis));
+            }
+        }
+    }
+}
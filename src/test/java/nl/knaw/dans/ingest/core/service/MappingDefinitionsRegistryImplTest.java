@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import io.dropwizard.util.Duration;
+import nl.knaw.dans.easy.dd2d.MappingDefinitions;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MappingDefinitionsRegistryImplTest {
+
+    @TempDir
+    Path mappingDefsDir;
+
+    @BeforeEach
+    public void copyMappingDefinitions() throws Exception {
+        FileUtils.copyDirectory(Paths.get("src/main/assembly/dist/cfg").toFile(), mappingDefsDir.toFile(), f -> !f.getName().endsWith(".yml"));
+    }
+
+    @Test
+    public void reloadShouldPickUpNewLicenseVariant() throws Exception {
+        MappingDefinitionsRegistryImpl registry = createRegistry();
+        assertEquals("http://example.com/license", registry.mappingDefinitions().licenses().normalizeVariant("http://example.com/license"));
+
+        Files.write(mappingDefsDir.resolve("license-uri-variants.csv"),
+            "Variant,Normalized\nhttp://example.com/license,http://creativecommons.org/publicdomain/zero/1.0\n".getBytes(StandardCharsets.UTF_8));
+
+        assertTrue(registry.reload());
+        assertEquals("http://creativecommons.org/publicdomain/zero/1.0", registry.mappingDefinitions().licenses().normalizeVariant("http://example.com/license"));
+    }
+
+    @Test
+    public void failedReloadShouldKeepPreviousDefinitions() throws Exception {
+        MappingDefinitionsRegistryImpl registry = createRegistry();
+        MappingDefinitions before = registry.mappingDefinitions();
+
+        Files.delete(mappingDefsDir.resolve("supported-licenses.txt"));
+
+        assertFalse(registry.reload());
+        assertSame(before, registry.mappingDefinitions());
+    }
+
+    private MappingDefinitionsRegistryImpl createRegistry() {
+        // Dataverse is not contacted, as long as the registry is not started and no active metadata blocks are requested
+        return new MappingDefinitionsRegistryImpl(mappingDefsDir, null, false, Duration.hours(1));
+    }
+}
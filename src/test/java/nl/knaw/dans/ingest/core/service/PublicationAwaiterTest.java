@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PublicationAwaiterTest {
+
+    @Test
+    public void awaitShouldCompleteWhenCheckReturnsTrue() throws Exception {
+        PublicationAwaiter awaiter = new PublicationAwaiter(1, 8, Runnable::run, true);
+        AtomicInteger checks = new AtomicInteger();
+        CompletableFuture<Void> future = awaiter.await("doi:10.5072/test", () -> checks.incrementAndGet() == 5, 10000);
+        future.get(5, TimeUnit.SECONDS);
+        assertEquals(5, checks.get());
+        assertEquals(0, awaiter.getNumberOfPendingPublications());
+        awaiter.stop();
+    }
+
+    @Test
+    public void awaitShouldFailWithTimeoutIfCheckNeverReturnsTrue() {
+        PublicationAwaiter awaiter = new PublicationAwaiter(1, 10, Runnable::run, true);
+        CompletableFuture<Void> future = awaiter.await("doi:10.5072/test", () -> false, 100);
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof TimeoutException);
+        awaiter.stop();
+    }
+
+    @Test
+    public void stopShouldDropPendingPublicationsOfResumableDeposits() {
+        PublicationAwaiter awaiter = new PublicationAwaiter(60000, 60000, Runnable::run, true);
+        CompletableFuture<Void> future = awaiter.await("doi:10.5072/test", () -> false, 600000);
+        awaiter.stop();
+        assertFalse(future.isDone());
+        assertEquals(0, awaiter.getNumberOfPendingPublications());
+    }
+
+    @Test
+    public void stopShouldFailPendingPublicationsOfDepositsThatAreNotResumable() {
+        PublicationAwaiter awaiter = new PublicationAwaiter(60000, 60000, Runnable::run, false);
+        CompletableFuture<Void> future = awaiter.await("doi:10.5072/test", () -> false, 600000);
+        awaiter.stop();
+        assertTrue(future.isCompletedExceptionally());
+        assertEquals(0, awaiter.getNumberOfPendingPublications());
+    }
+
+    @Test
+    public void stopShouldCompletePublicationsThatHaveFinished() {
+        PublicationAwaiter awaiter = new PublicationAwaiter(60000, 60000, Runnable::run, true);
+        CompletableFuture<Void> future = awaiter.await("doi:10.5072/test", () -> true, 600000);
+        awaiter.stop();
+        assertTrue(future.isDone());
+        assertFalse(future.isCompletedExceptionally());
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.core.service;
+
+import io.dropwizard.testing.junit5.DAOTestExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import io.dropwizard.util.Duration;
+import nl.knaw.dans.ingest.core.ValidationResultCacheEntry;
+import nl.knaw.dans.ingest.db.ValidationResultCacheDAO;
+import org.hsqldb.jdbc.JDBCDriver;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import scala.Option;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class ValidationResultCacheImplTest {
+
+    private final DAOTestExtension db = DAOTestExtension.newBuilder()
+        .setUrl("jdbc:hsqldb:mem:" + UUID.randomUUID())
+        .setDriver(JDBCDriver.class)
+        .addEntityClass(ValidationResultCacheEntry.class)
+        .build();
+
+    private ValidationResultCacheDAO dao;
+
+    @BeforeEach
+    public void setUp() {
+        dao = new ValidationResultCacheDAO(db.getSessionFactory());
+    }
+
+    private boolean isStored(String bagDigest) {
+        db.getSessionFactory().getCurrentSession().clear();
+        return db.inTransaction(() -> dao.get(bagDigest)).isPresent();
+    }
+
+    @Test
+    public void getShouldOnlyReturnResultsForTheRequestedProfileVersion() {
+        ValidationResultCacheImpl cache = new ValidationResultCacheImpl(dao, 100, Duration.days(1), 100);
+        db.inTransaction(() -> cache.put("digest", 1, "{}"));
+
+        assertEquals(Option.apply("{}"), db.inTransaction(() -> cache.get("digest", 1)));
+        assertEquals(Option.empty(), db.inTransaction(() -> cache.get("digest", 2)));
+        assertEquals(Option.empty(), db.inTransaction(() -> cache.get("other", 1)));
+    }
+
+    @Test
+    public void getShouldMarkTheEntryAsUsed() {
+        OffsetDateTime longAgo = OffsetDateTime.now().minusDays(10);
+        db.inTransaction(() -> dao.save(new ValidationResultCacheEntry("digest", 1, "{}", longAgo)));
+        ValidationResultCacheImpl cache = new ValidationResultCacheImpl(dao, 100, Duration.days(1), 100);
+
+        db.inTransaction(() -> cache.get("digest", 1));
+
+        db.getSessionFactory().getCurrentSession().clear();
+        assertTrue(db.inTransaction(() -> dao.get("digest")).orElseThrow(AssertionError::new).getLastUsed().isAfter(longAgo));
+    }
+
+    @Test
+    public void putShouldOnlyEvictOnceEveryEvictionInterval() {
+        db.inTransaction(() -> dao.save(new ValidationResultCacheEntry("expired", 1, "{}", OffsetDateTime.now().minusDays(10))));
+        ValidationResultCacheImpl cache = new ValidationResultCacheImpl(dao, 100, Duration.days(1), 3);
+
+        db.inTransaction(() -> cache.put("digest1", 1, "{}"));
+        db.inTransaction(() -> cache.put("digest2", 1, "{}"));
+        assertTrue(isStored("expired"));
+
+        db.inTransaction(() -> cache.put("digest3", 1, "{}"));
+        assertFalse(isStored("expired"));
+        assertTrue(isStored("digest1"));
+        assertTrue(isStored("digest2"));
+        assertTrue(isStored("digest3"));
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.db;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TaskEventCursorTest {
+
+    @Test
+    public void parseShouldReturnTheCursorThatWasFormatted() {
+        TaskEventCursor cursor = TaskEventCursor.parse(new TaskEventCursor(OffsetDateTime.parse("2022-05-17T13:45:01.123+02:00"), 42).toString());
+        assertEquals(OffsetDateTime.parse("2022-05-17T13:45:01.123+02:00"), cursor.getTimestamp());
+        assertEquals(42, cursor.getId());
+    }
+
+    @Test
+    public void parseShouldRejectInvalidCursors() {
+        assertThrows(IllegalArgumentException.class, () -> TaskEventCursor.parse("not a cursor"));
+        assertThrows(IllegalArgumentException.class, () -> TaskEventCursor.parse("bm90LWEtZGF0ZSA0Mg")); // "not-a-date 42"
+    }
+}
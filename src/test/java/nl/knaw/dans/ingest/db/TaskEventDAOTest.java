@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.db;
+
+import io.dropwizard.testing.junit5.DAOTestExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import nl.knaw.dans.ingest.core.TaskEvent;
+import nl.knaw.dans.ingest.core.TaskEvent.EventType;
+import nl.knaw.dans.ingest.core.TaskEvent.Result;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.query.Query;
+import org.hsqldb.jdbc.JDBCDriver;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class TaskEventDAOTest {
+    private static final OffsetDateTime T0 = OffsetDateTime.parse("2022-05-17T13:45:00Z");
+    private static final UUID DEPOSIT_1 = UUID.fromString("00000000-0000-0000-0000-000000000001");
+    private static final UUID DEPOSIT_2 = UUID.fromString("00000000-0000-0000-0000-000000000002");
+    private static final TaskEventFilter ALL = new TaskEventFilter(null, null, null, null, null, null);
+
+    private final DAOTestExtension db = DAOTestExtension.newBuilder()
+        .setUrl("jdbc:hsqldb:mem:" + UUID.randomUUID())
+        .setDriver(JDBCDriver.class)
+        .addEntityClass(TaskEvent.class)
+        .build();
+
+    private TaskEventDAO dao;
+
+    @BeforeEach
+    public void setUp() {
+        dao = new TaskEventDAO(db.getSessionFactory());
+    }
+
+    private void save(String source, int secondsAfterT0, UUID depositId, EventType eventType, Result result, String message) {
+        db.inTransaction(() -> dao.save(new TaskEvent(source, T0.plusSeconds(secondsAfterT0), depositId, eventType, result, message)));
+    }
+
+    private List<String> scrollMessages(TaskEventFilter filter, TaskEventCursor after, Integer limit) throws IOException {
+        return scrollMessages(filter, after, null, limit);
+    }
+
+    private List<String> scrollMessages(TaskEventFilter filter, TaskEventCursor after, TaskEventCursor upTo, Integer limit) throws IOException {
+        List<String> messages = new ArrayList<>();
+        dao.scrollEvents(filter, after, upTo, limit, e -> messages.add(e.getMessage()));
+        return messages;
+    }
+
+    private void saveFilterFixture() {
+        save("batch1", 0, DEPOSIT_1, EventType.ENQUEUE, Result.OK, "a");
+        save("batch1", 1, DEPOSIT_1, EventType.START_PROCESSING, Result.OK, "b");
+        save("batch1", 2, DEPOSIT_1, EventType.END_PROCESSING, Result.FAILED, "c");
+        save("batch2", 3, DEPOSIT_2, EventType.ENQUEUE, Result.OK, "d");
+        save("batch2", 4, DEPOSIT_2, EventType.END_PROCESSING, Result.REJECTED, "e");
+    }
+
+    @Test
+    public void scrollEventsShouldPassAllEventsOrderedByTimestampWithoutFilter() throws Exception {
+        save("batch1", 2, DEPOSIT_1, EventType.ENQUEUE, Result.OK, "later");
+        save("batch1", 1, DEPOSIT_1, EventType.ENQUEUE, Result.OK, "earlier");
+
+        assertEquals(Arrays.asList("earlier", "later"), scrollMessages(ALL, null, null));
+    }
+
+    @Test
+    public void scrollEventsShouldApplyEachFilterCriterion() throws Exception {
+        saveFilterFixture();
+
+        assertEquals(Arrays.asList("a", "b", "c"), scrollMessages(new TaskEventFilter("batch1", null, null, null, null, null), null, null));
+        assertEquals(Arrays.asList("d", "e"), scrollMessages(new TaskEventFilter(null, DEPOSIT_2.toString(), null, null, null, null), null, null));
+        assertEquals(Arrays.asList("a", "d"), scrollMessages(new TaskEventFilter(null, null, EventType.ENQUEUE, null, null, null), null, null));
+        assertEquals(Collections.singletonList("e"), scrollMessages(new TaskEventFilter(null, null, null, Result.REJECTED, null, null), null, null));
+        assertEquals(Arrays.asList("b", "c"), scrollMessages(new TaskEventFilter(null, null, null, null, T0.plusSeconds(1), T0.plusSeconds(3)), null, null));
+        assertEquals(Collections.singletonList("c"), scrollMessages(new TaskEventFilter("batch1", DEPOSIT_1.toString(), EventType.END_PROCESSING, Result.FAILED, null, null), null, null));
+    }
+
+    @Test
+    public void scrollEventsShouldPassNothingIfNoEventsMatch() throws Exception {
+        saveFilterFixture();
+
+        assertEquals(Collections.emptyList(), scrollMessages(new TaskEventFilter("no-such-batch", null, null, null, null, null), null, null));
+        assertEquals(Optional.empty(), db.inTransaction(() -> dao.getNextPageCursor(new TaskEventFilter("no-such-batch", null, null, null, null, null), null, 1)));
+    }
+
+    @Test
+    public void pagesShouldTogetherContainEveryEventOnceEvenIfTimestampsAreEqualAcrossAPageBoundary() throws Exception {
+        save("batch1", 0, DEPOSIT_1, EventType.ENQUEUE, Result.OK, "1");
+        for (int i = 2; i <= 6; i++) {
+            save("batch1", 1, DEPOSIT_1, EventType.START_PROCESSING, Result.OK, Integer.toString(i));
+        }
+        save("batch1", 2, DEPOSIT_1, EventType.END_PROCESSING, Result.OK, "7");
+
+        List<List<String>> pages = new ArrayList<>();
+        TaskEventCursor cursor = null;
+        do {
+            final TaskEventCursor after = cursor;
+            cursor = db.inTransaction(() -> dao.getNextPageCursor(ALL, after, 2)).orElse(null);
+            pages.add(scrollMessages(ALL, after, cursor, cursor == null ? 2 : null));
+        } while (cursor != null);
+
+        assertEquals(Arrays.asList(
+            Arrays.asList("1", "2"),
+            Arrays.asList("3", "4"),
+            Arrays.asList("5", "6"),
+            Collections.singletonList("7")), pages);
+    }
+
+    @Test
+    public void pageShouldEndAtTheCursorOfTheNextPageEvenIfEventsWereSavedInTheMeantime() throws Exception {
+        save("batch1", 0, DEPOSIT_1, EventType.ENQUEUE, Result.OK, "a");
+        save("batch1", 2, DEPOSIT_1, EventType.START_PROCESSING, Result.OK, "b");
+        save("batch1", 3, DEPOSIT_1, EventType.END_PROCESSING, Result.OK, "c");
+        TaskEventCursor next = db.inTransaction(() -> dao.getNextPageCursor(ALL, null, 2)).orElseThrow();
+
+        // Saved between computing the cursor and reading the page
+        save("batch1", 1, DEPOSIT_2, EventType.ENQUEUE, Result.OK, "late");
+
+        assertEquals(Arrays.asList("a", "late", "b"), scrollMessages(ALL, null, next, null));
+        assertEquals(Collections.singletonList("c"), scrollMessages(ALL, next, null, 2));
+    }
+
+    @Test
+    public void getNextPageCursorShouldBeEmptyIfThePageEndsWithTheLastEvent() {
+        saveFilterFixture();
+
+        assertTrue(db.inTransaction(() -> dao.getNextPageCursor(ALL, null, 4)).isPresent());
+        assertFalse(db.inTransaction(() -> dao.getNextPageCursor(ALL, null, 5)).isPresent());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void scrollEventsShouldCloseTheResultsAndTheSessionIfTheHandlerFails() {
+        SessionFactory sessionFactory = mock(SessionFactory.class);
+        StatelessSession session = mock(StatelessSession.class);
+        Query<TaskEvent> query = mock(Query.class, RETURNS_SELF);
+        ScrollableResults results = mock(ScrollableResults.class);
+        when(sessionFactory.openStatelessSession()).thenReturn(session);
+        when(session.beginTransaction()).thenReturn(mock(Transaction.class));
+        when(session.createQuery(anyString(), eq(TaskEvent.class))).thenReturn(query);
+        when(query.scroll(ScrollMode.FORWARD_ONLY)).thenReturn(results);
+        when(results.next()).thenReturn(true);
+        when(results.get(0)).thenReturn(new TaskEvent("batch1", T0, DEPOSIT_1, EventType.ENQUEUE, Result.OK, "a"));
+
+        // As when the client disconnects while the events are being written
+        assertThrows(IOException.class, () -> new TaskEventDAO(sessionFactory).scrollEvents(ALL, null, null, null, e -> {
+            throw new IOException("Broken pipe");
+        }));
+        verify(results).close();
+        verify(session).close();
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.db;
+
+import io.dropwizard.testing.junit5.DAOTestExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import nl.knaw.dans.ingest.core.ValidationResultCacheEntry;
+import org.hsqldb.jdbc.JDBCDriver;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class ValidationResultCacheDAOTest {
+    private static final OffsetDateTime T0 = OffsetDateTime.parse("2022-05-17T13:45:00Z");
+
+    private final DAOTestExtension db = DAOTestExtension.newBuilder()
+        .setUrl("jdbc:hsqldb:mem:" + UUID.randomUUID())
+        .setDriver(JDBCDriver.class)
+        .addEntityClass(ValidationResultCacheEntry.class)
+        .build();
+
+    private ValidationResultCacheDAO dao;
+
+    @BeforeEach
+    public void setUp() {
+        dao = new ValidationResultCacheDAO(db.getSessionFactory());
+    }
+
+    private void saveUsedAt(String bagDigest, int secondsAfterT0) {
+        db.inTransaction(() -> dao.save(new ValidationResultCacheEntry(bagDigest, 1, "{}", T0.plusSeconds(secondsAfterT0))));
+    }
+
+    private boolean isStored(String bagDigest) {
+        db.getSessionFactory().getCurrentSession().clear();
+        return db.inTransaction(() -> dao.get(bagDigest)).isPresent();
+    }
+
+    @Test
+    public void getShouldReturnTheSavedEntry() {
+        db.inTransaction(() -> dao.save(new ValidationResultCacheEntry("digest", 3, "{\"isCompliant\": true}", T0)));
+        db.getSessionFactory().getCurrentSession().clear();
+
+        ValidationResultCacheEntry entry = db.inTransaction(() -> dao.get("digest")).orElseThrow(AssertionError::new);
+        assertEquals(3, entry.getProfileVersion());
+        assertEquals("{\"isCompliant\": true}", entry.getResult());
+        assertFalse(db.inTransaction(() -> dao.get("other")).isPresent());
+    }
+
+    @Test
+    public void saveShouldReplaceTheEntryForTheSameDigest() {
+        saveUsedAt("digest", 0);
+        db.getSessionFactory().getCurrentSession().clear();
+        db.inTransaction(() -> dao.save(new ValidationResultCacheEntry("digest", 2, "{}", T0.plusSeconds(1))));
+        db.getSessionFactory().getCurrentSession().clear();
+
+        assertEquals(2, db.inTransaction(() -> dao.get("digest")).orElseThrow(AssertionError::new).getProfileVersion());
+    }
+
+    @Test
+    public void deleteLastUsedBeforeShouldOnlyDeleteEntriesNotUsedSinceTheCutoff() {
+        saveUsedAt("old", 0);
+        saveUsedAt("new", 10);
+
+        assertEquals(1, (int) db.inTransaction(() -> dao.deleteLastUsedBefore(T0.plusSeconds(5))));
+        assertFalse(isStored("old"));
+        assertTrue(isStored("new"));
+    }
+
+    @Test
+    public void deleteAllButMostRecentlyUsedShouldKeepTheMostRecentlyUsedEntries() {
+        for (int i = 0; i < 5; i++) {
+            saveUsedAt("digest" + i, i);
+        }
+
+        assertEquals(3, (int) db.inTransaction(() -> dao.deleteAllButMostRecentlyUsed(2)));
+        assertFalse(isStored("digest0"));
+        assertFalse(isStored("digest1"));
+        assertFalse(isStored("digest2"));
+        assertTrue(isStored("digest3"));
+        assertTrue(isStored("digest4"));
+    }
+
+    @Test
+    public void deleteAllButMostRecentlyUsedShouldDeleteNothingIfThereAreNoMoreThanMaxEntries() {
+        saveUsedAt("digest0", 0);
+        saveUsedAt("digest1", 1);
+
+        assertEquals(0, (int) db.inTransaction(() -> dao.deleteAllButMostRecentlyUsed(2)));
+        assertTrue(isStored("digest0"));
+        assertTrue(isStored("digest1"));
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.ingest.resources;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dropwizard.jackson.Jackson;
+import io.dropwizard.testing.junit5.DAOTestExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import nl.knaw.dans.ingest.core.CsvMessageBodyWriter;
+import nl.knaw.dans.ingest.core.TaskEvent;
+import nl.knaw.dans.ingest.core.TaskEvent.EventType;
+import nl.knaw.dans.ingest.core.TaskEvent.Result;
+import nl.knaw.dans.ingest.db.TaskEventDAO;
+import org.hsqldb.jdbc.JDBCDriver;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.core.Link;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriBuilder;
+import javax.ws.rs.core.UriInfo;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class EventsResourceTest {
+    private static final OffsetDateTime T0 = OffsetDateTime.parse("2022-05-17T13:45:00Z");
+    private static final UUID DEPOSIT_1 = UUID.fromString("00000000-0000-0000-0000-000000000001");
+    private static final UUID DEPOSIT_2 = UUID.fromString("00000000-0000-0000-0000-000000000002");
+
+    private final DAOTestExtension db = DAOTestExtension.newBuilder()
+        .setUrl("jdbc:hsqldb:mem:" + UUID.randomUUID())
+        .setDriver(JDBCDriver.class)
+        .addEntityClass(TaskEvent.class)
+        .build();
+
+    private final ObjectMapper objectMapper = Jackson.newObjectMapper();
+    private TaskEventDAO dao;
+    private EventsResource resource;
+
+    @BeforeEach
+    public void setUp() {
+        dao = new TaskEventDAO(db.getSessionFactory());
+        resource = new EventsResource(dao, CsvMessageBodyWriter.createCsvMapper(), objectMapper);
+    }
+
+    private void save(String source, int secondsAfterT0, UUID depositId, EventType eventType, Result result, String message) {
+        db.inTransaction(() -> dao.save(new TaskEvent(source, T0.plusSeconds(secondsAfterT0), depositId, eventType, result, message)));
+    }
+
+    private static UriInfo uriInfo(String requestUri) {
+        UriInfo uriInfo = mock(UriInfo.class);
+        when(uriInfo.getRequestUriBuilder()).thenAnswer(invocation -> UriBuilder.fromUri(requestUri));
+        return uriInfo;
+    }
+
+    private static String write(Response response) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(outputStream);
+        return outputStream.toString(StandardCharsets.UTF_8.name());
+    }
+
+    private List<String> messagesOf(String json) throws IOException {
+        List<String> messages = new ArrayList<>();
+        for (JsonNode event : objectMapper.readTree(json)) {
+            messages.add(event.get("message").asText());
+        }
+        return messages;
+    }
+
+    private static String afterParameterOf(Link link) {
+        String query = link.getUri().getQuery();
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith("after=")) {
+                return parameter.substring("after=".length());
+            }
+        }
+        throw new AssertionError("No after parameter in " + link);
+    }
+
+    @Test
+    public void getEventsAsJsonShouldStreamTheEventsThatMatchTheFilterParameters() throws Exception {
+        save("batch1", 0, DEPOSIT_1, EventType.ENQUEUE, Result.OK, "a");
+        save("batch1", 1, DEPOSIT_1, EventType.END_PROCESSING, Result.FAILED, "b");
+        save("batch2", 2, DEPOSIT_2, EventType.END_PROCESSING, Result.FAILED, "c");
+        save("batch2", 3, DEPOSIT_2, EventType.END_PROCESSING, Result.OK, "d");
+
+        Response response = resource.getEventsAsJson("batch2", DEPOSIT_2.toString(), "END_PROCESSING", "FAILED", T0.toString(), T0.plusSeconds(10).toString(), null, null,
+            uriInfo("http://localhost/events"));
+
+        assertEquals(Collections.singletonList("c"), messagesOf(write(response)));
+        assertNull(response.getLink("next"));
+    }
+
+    @Test
+    public void getEventsAsCsvShouldStreamAHeaderAndOneLinePerEvent() throws Exception {
+        save("batch1", 0, DEPOSIT_1, EventType.ENQUEUE, Result.OK, "a");
+        save("batch1", 1, DEPOSIT_1, EventType.START_PROCESSING, Result.OK, "b");
+
+        String[] lines = write(resource.getEventsAsCsv(null, null, null, null, null, null, null, null, uriInfo("http://localhost/events"))).split("\n");
+
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].contains("depositId") && lines[0].contains("message"), "header: " + lines[0]);
+        assertTrue(lines[1].contains(DEPOSIT_1.toString()) && lines[1].contains("ENQUEUE"), "line 1: " + lines[1]);
+        assertTrue(lines[2].contains(DEPOSIT_1.toString()) && lines[2].contains("START_PROCESSING"), "line 2: " + lines[2]);
+    }
+
+    @Test
+    public void emptyResultsShouldBeAnEmptyJsonArrayAndCsvWithoutEventLines() throws Exception {
+        assertEquals(Collections.emptyList(), messagesOf(write(resource.getEventsAsJson("no-such-batch", null, null, null, null, null, null, 10, uriInfo("http://localhost/events")))));
+
+        Response csvResponse = resource.getEventsAsCsv("no-such-batch", null, null, null, null, null, null, 10, uriInfo("http://localhost/events"));
+        assertEquals(1, write(csvResponse).split("\n").length);
+        assertNull(csvResponse.getLink("next"));
+    }
+
+    @Test
+    public void nextLinksShouldLeadThroughEveryEventOnceEvenIfTimestampsAreEqualAcrossAPageBoundary() throws Exception {
+        save("batch1", 0, DEPOSIT_1, EventType.ENQUEUE, Result.OK, "1");
+        for (int i = 2; i <= 6; i++) {
+            save("batch1", 1, DEPOSIT_1, EventType.START_PROCESSING, Result.OK, Integer.toString(i));
+        }
+        save("batch1", 2, DEPOSIT_1, EventType.END_PROCESSING, Result.OK, "7");
+
+        List<List<String>> pages = new ArrayList<>();
+        String after = null;
+        do {
+            String requestUri = "http://localhost/events?source=batch1&limit=3" + (after == null ? "" : "&after=" + after);
+            Response response = resource.getEventsAsJson("batch1", null, null, null, null, null, after, 3, uriInfo(requestUri));
+            pages.add(messagesOf(write(response)));
+            Link next = response.getLink("next");
+            if (next != null) {
+                assertTrue(next.getUri().getQuery().contains("source=batch1"), "next link keeps the filter: " + next);
+                after = afterParameterOf(next);
+            }
+            else {
+                after = null;
+            }
+        } while (after != null);
+
+        assertEquals(Arrays.asList(
+            Arrays.asList("1", "2", "3"),
+            Arrays.asList("4", "5", "6"),
+            Collections.singletonList("7")), pages);
+    }
+
+    @Test
+    public void invalidParametersShouldBeRejected() {
+        UriInfo uriInfo = uriInfo("http://localhost/events");
+        assertThrows(BadRequestException.class, () -> resource.getEventsAsJson(null, null, "NO_SUCH_TYPE", null, null, null, null, null, uriInfo));
+        assertThrows(BadRequestException.class, () -> resource.getEventsAsJson(null, null, null, null, "yesterday", null, null, null, uriInfo));
+        assertThrows(BadRequestException.class, () -> resource.getEventsAsJson(null, null, null, null, null, null, "not a cursor", null, uriInfo));
+        assertThrows(BadRequestException.class, () -> resource.getEventsAsJson(null, null, null, null, null, null, null, 0, uriInfo));
+    }
+
+    @Test
+    public void aClientDisconnectingMidStreamShouldEndTheStreamWithAnIoException() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            save("batch1", i, DEPOSIT_1, EventType.ENQUEUE, Result.OK, "event " + i);
+        }
+        Response response = resource.getEventsAsJson(null, null, null, null, null, null, null, null, uriInfo("http://localhost/events"));
+        OutputStream disconnected = new OutputStream() {
+            private int written;
+
+            @Override
+            public void write(int b) throws IOException {
+                if (++written > 500) {
+                    throw new IOException("Broken pipe");
+                }
+            }
+        };
+
+        assertThrows(IOException.class, () -> ((StreamingOutput) response.getEntity()).write(disconnected));
+        // The next request is not affected by the aborted one
+        assertEquals(100, messagesOf(write(resource.getEventsAsJson(null, null, null, null, null, null, null, null, uriInfo("http://localhost/events")))).size());
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.easy.dd2d
+
+import better.files.File
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta
+
+import java.nio.file.{ Path, Paths }
+
+class DatasetCreatorSpec extends TestSupportFixture {
+
+  private def deposited(files: (String, String)*): Map[Path, FileInfo] = {
+    files.map {
+      case (path, checksum) =>
+        val p = Paths.get(path)
+        p -> FileInfo(File("unused"), checksum, FileMeta(label = Option(p.getFileName.toString), directoryLabel = Option(p.getParent).map(_.toString)))
+    }.toMap
+  }
+
+  private def inDraft(files: (String, String, Int)*): Map[Path, PublishedFile] = {
+    files.map { case (path, checksum, id) => Paths.get(path) -> PublishedFile(id, checksum) }.toMap
+  }
+
+  "matchFilesInDraft" should "match a file on its checksum when its path in the draft differs" in {
+    DatasetCreator.matchFilesInDraft(
+      deposited("a/x.zip" -> "c1", "a/y.txt" -> "c2"),
+      inDraft(("x.zip", "c1", 1))) shouldBe Map(Paths.get("a/x.zip") -> 1)
+  }
+
+  it should "pair files with the same checksum on their path first" in {
+    DatasetCreator.matchFilesInDraft(
+      deposited("a/x.txt" -> "c1", "b/x.txt" -> "c1", "c/x.txt" -> "c1"),
+      inDraft(("b/x.txt", "c1", 1), ("renamed.txt", "c1", 2))) shouldBe Map(
+      Paths.get("b/x.txt") -> 1,
+      Paths.get("a/x.txt") -> 2)
+  }
+
+  it should "not match a file at the same path with another checksum" in {
+    DatasetCreator.matchFilesInDraft(
+      deposited("a/x.txt" -> "c1"),
+      inDraft(("a/x.txt", "c2", 1))) shouldBe empty
+  }
+}
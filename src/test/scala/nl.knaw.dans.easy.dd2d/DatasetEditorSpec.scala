@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.easy.dd2d
+
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta
+
+class DatasetEditorSpec extends TestSupportFixture {
+
+  private val requested = FileMeta(label = Option("x.txt"), directoryLabel = Option("a"), description = Option("descr"), restrict = Option(true))
+
+  "isMetadataApplied" should "return true if Dataverse stored the requested metadata" in {
+    DatasetEditor.isMetadataApplied(requested, FileMeta(label = Option("x.txt"), directoryLabel = Option("a"), description = Option("descr"), restricted = Option(true))) shouldBe true
+  }
+
+  it should "return false if Dataverse did not restrict a file that was requested to be restricted" in {
+    DatasetEditor.isMetadataApplied(requested, FileMeta(label = Option("x.txt"), directoryLabel = Option("a"), description = Option("descr"), restricted = Option(false))) shouldBe false
+    DatasetEditor.isMetadataApplied(requested, FileMeta(label = Option("x.txt"), directoryLabel = Option("a"), description = Option("descr"))) shouldBe false
+  }
+
+  it should "return false if Dataverse restricted a file that was requested to be open" in {
+    DatasetEditor.isMetadataApplied(requested.copy(restrict = Option(false)),
+      FileMeta(label = Option("x.txt"), directoryLabel = Option("a"), description = Option("descr"), restricted = Option(true))) shouldBe false
+  }
+
+  it should "return false if Dataverse changed the label" in {
+    DatasetEditor.isMetadataApplied(requested, FileMeta(label = Option("x_1.txt"), directoryLabel = Option("a"), description = Option("descr"), restricted = Option(true))) shouldBe false
+  }
+}
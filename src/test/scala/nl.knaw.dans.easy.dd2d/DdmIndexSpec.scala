@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.easy.dd2d
+
+class DdmIndexSpec extends TestSupportFixture {
+  private val ddm =
+    <ddm:DDM>
+      <ddm:profile>
+        <dc:title>Title</dc:title>
+        <dcx-dai:creatorDetails>Creator 1</dcx-dai:creatorDetails>
+        <!-- a comment -->
+        <dc:creator>Creator 2</dc:creator>
+        <ddm:audience>D10000</ddm:audience>
+        <ddm:audience>D20000</ddm:audience>
+      </ddm:profile>
+      <ddm:dcmiMetadata>
+        <dc:subject>one</dc:subject>
+        <dc:identifier>id</dc:identifier>
+        <dc:subject>two</dc:subject>
+        <dcx-gml:spatial><boundedBy>box</boundedBy></dcx-gml:spatial>
+      </ddm:dcmiMetadata>
+    </ddm:DDM>
+
+  private val index = new DdmIndex(ddm)
+
+  "profile" should "return the same nodes in the same order as a path projection" in {
+    index.profile("audience") shouldBe ddm \ "profile" \ "audience"
+    index.profile("audience").map(_.text) shouldBe List("D10000", "D20000")
+    index.profile("title") shouldBe ddm \ "profile" \ "title"
+  }
+
+  it should "return an empty NodeSeq for an absent label" in {
+    index.profile("available") shouldBe empty
+  }
+
+  "dcmiMetadata" should "return the same nodes in the same order as a path projection" in {
+    index.dcmiMetadata("subject") shouldBe ddm \ "dcmiMetadata" \ "subject"
+    index.dcmiMetadata("subject").map(_.text) shouldBe List("one", "two")
+    index.dcmiMetadata("spatial") \ "boundedBy" shouldBe ddm \ "dcmiMetadata" \ "spatial" \ "boundedBy"
+  }
+
+  "profileChildren" should "be the same as the wildcard projection" in {
+    index.profileChildren shouldBe ddm \ "profile" \ "_"
+    index.dcmiMetadataChildren shouldBe ddm \ "dcmiMetadata" \ "_"
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.easy.dd2d
+
+import nl.knaw.dans.easy.dd2d.DepositStage.{ DATASET_CREATED, FILES_UPLOADED, VALIDATED }
+
+import java.io.IOException
+import java.net.SocketTimeoutException
+import java.nio.channels.ClosedByInterruptException
+import scala.collection.mutable
+
+class DepositCheckpointsSpec extends TestSupportFixture {
+
+  private class InMemoryStore extends DepositCheckpointStore {
+    val checkpoints = mutable.Map[String, DepositCheckpoint]()
+
+    override def get(depositId: String): Option[DepositCheckpoint] = checkpoints.get(depositId)
+
+    override def put(depositId: String, checkpoint: DepositCheckpoint): Unit = checkpoints.put(depositId, checkpoint)
+
+    override def remove(depositId: String): Unit = checkpoints.remove(depositId)
+  }
+
+  "isReached" should "be true for the stages up to the one stored by an earlier run" in {
+    val store = new InMemoryStore
+    store.put("d1", DepositCheckpoint("DATASET_CREATED", Some("doi:10.5072/1")))
+    val checkpoints = new DepositCheckpoints("d1", Some(store))
+
+    checkpoints.isReached(VALIDATED) shouldBe true
+    checkpoints.isReached(DATASET_CREATED) shouldBe true
+    checkpoints.isReached(FILES_UPLOADED) shouldBe false
+    checkpoints.getPersistentIdIfLastReached(DATASET_CREATED) shouldBe Some("doi:10.5072/1")
+  }
+
+  "reached" should "keep the persistent ID recorded with an earlier stage" in {
+    val store = new InMemoryStore
+    val checkpoints = new DepositCheckpoints("d1", Some(store))
+    checkpoints.reached(DATASET_CREATED, Some("doi:10.5072/1"))
+    checkpoints.reached(FILES_UPLOADED)
+
+    store.get("d1") shouldBe Some(DepositCheckpoint("FILES_UPLOADED", Some("doi:10.5072/1")))
+    checkpoints.getPersistentIdIfLastReached(DATASET_CREATED) shouldBe empty
+  }
+
+  "clear" should "remove the checkpoint from the store" in {
+    val store = new InMemoryStore
+    val checkpoints = new DepositCheckpoints("d1", Some(store))
+    checkpoints.reached(VALIDATED)
+    checkpoints.clear()
+
+    store.get("d1") shouldBe empty
+    checkpoints.isReached(VALIDATED) shouldBe false
+  }
+
+  "isInterruption" should "be true for a failure caused by an interruption" in {
+    DepositCheckpoints.isInterruption(new IOException("upload aborted", new InterruptedException())) shouldBe true
+    DepositCheckpoints.isInterruption(new ClosedByInterruptException()) shouldBe true
+  }
+
+  it should "be false for other failures, including time-outs" in {
+    DepositCheckpoints.isInterruption(new RuntimeException("license not supported")) shouldBe false
+    DepositCheckpoints.isInterruption(new SocketTimeoutException()) shouldBe false
+  }
+
+  "DepositCheckpoints.none" should "never report a stage as reached" in {
+    DepositCheckpoints.none.reached(FILES_UPLOADED, Some("doi:10.5072/1"))
+
+    DepositCheckpoints.none.isReached(VALIDATED) shouldBe false
+  }
+}
@@ -18,6 +18,7 @@ package nl.knaw.dans.easy.dd2d
 import nl.knaw.dans.lib.dataverse.model.file.FileMeta
 
 import java.nio.file.Paths
+import scala.util.Success
 
 class DepositSpec extends TestSupportFixture {
 
@@ -76,4 +77,25 @@ class DepositSpec extends TestSupportFixture {
     val deposit = Deposit(testDirValid / "no-doi-in-vault-metadata")
     deposit.getOptOtherDoiId shouldBe empty
   }
+
+  "getDatasetKey" should "return the UUID in the SWORD token" in {
+    Deposit(testDirValid / "valid-easy-submitted").getDatasetKey shouldBe Success("123e4567-e89b-12d3-a456-556642440000")
+  }
+
+  it should "return the UUID in Is-Version-Of for an update without SWORD token" in {
+    Deposit(testDirValid / "updates" / "7d54ed60-7290-44b0-86fb-d983952ecafe").getDatasetKey shouldBe Success("021bad14-e899-4677-898b-609901db5a9d")
+  }
+
+  it should "return the deposit ID for a first version without SWORD token" in {
+    Deposit(testDirValid / "updates" / "021bad14-e899-4677-898b-609901db5a9d").getDatasetKey shouldBe Success("021bad14-e899-4677-898b-609901db5a9d")
+  }
+
+  "bagId" should "return dataverse.bag-id if set" in {
+    Deposit(testDirValid / "updates" / "7d54ed60-7290-44b0-86fb-d983952ecafe").bagId shouldBe "urn:uuid:7d54ed60-7290-44b0-86fb-d983952ecafe"
+  }
+
+  it should "return the deposit ID as URN:UUID if dataverse.bag-id is not set" in {
+    val deposit = Deposit(testDirValid / "valid-easy-submitted")
+    deposit.bagId shouldBe s"urn:uuid:${ deposit.depositId }"
+  }
 }
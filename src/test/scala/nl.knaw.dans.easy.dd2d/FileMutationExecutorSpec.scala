@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.easy.dd2d
+
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.{ ConcurrentHashMap, ConcurrentLinkedQueue, Executors }
+import scala.collection.JavaConverters._
+import scala.util.{ Failure, Success, Try }
+
+class FileMutationExecutorSpec extends TestSupportFixture {
+
+  private class Counting {
+    val unlockWaits = new AtomicInteger()
+    val attempts = new ConcurrentHashMap[Int, AtomicInteger]()
+
+    def awaitUnlock(): Try[Unit] = {
+      unlockWaits.incrementAndGet()
+      Success(())
+    }
+
+    def attempt(item: Int): Int = attempts.computeIfAbsent(item, _ => new AtomicInteger()).incrementAndGet()
+  }
+
+  private def withConcurrentExecutor[T](concurrency: Int, batchSize: Int)(f: FileMutationExecutor => T): T = {
+    val executorService = Executors.newFixedThreadPool(concurrency)
+    try f(new FileMutationExecutor(concurrency, batchSize, Option(executorService)))
+    finally executorService.shutdownNow()
+  }
+
+  private val notDeleted: List[Int] => Try[Set[Int]] = _ => Success(Set.empty)
+
+  "run" should "await the lock after each mutation" in {
+    val counting = new Counting
+
+    FileMutationExecutor.sequential.run((1 to 5).toList, counting.awaitUnlock _)(i => Success(i * 10)) shouldBe Success(List(10, 20, 30, 40, 50))
+    counting.unlockWaits.get() shouldBe 5
+  }
+
+  it should "await the lock after each mutation even if the executor deletes concurrently" in {
+    val counting = new Counting
+
+    withConcurrentExecutor(3, 10)(_.run((1 to 5).toList, counting.awaitUnlock _)(i => Success(i * 10))) shouldBe Success(List(10, 20, 30, 40, 50))
+    counting.unlockWaits.get() shouldBe 5
+  }
+
+  it should "attempt all items and surface every individual failure" in {
+    val result = FileMutationExecutor.sequential.run((1 to 25).toList, () => Success(())) {
+      i =>
+        if (i % 10 == 0) Failure(new IllegalStateException(s"failed $i"))
+        else Success(i)
+    }
+
+    inside(result) {
+      case Failure(FileMutationsFailedException(failures)) =>
+        failures.map { case (item, t) => (item, t.getMessage) } shouldBe List((10, "failed 10"), (20, "failed 20"))
+    }
+  }
+
+  "delete" should "await the lock after each deletion when not concurrent" in {
+    val counting = new Counting
+
+    FileMutationExecutor.sequential.delete((1 to 5).toList, counting.awaitUnlock _, notDeleted)(_ => Success(())) shouldBe Success(())
+    counting.unlockWaits.get() shouldBe 5
+  }
+
+  it should "await the lock once per batch when concurrent" in {
+    val counting = new Counting
+    val deleted = ConcurrentHashMap.newKeySet[Int]()
+
+    withConcurrentExecutor(3, 10)(_.delete((1 to 25).toList, counting.awaitUnlock _, notDeleted){
+      i =>
+        deleted.add(i)
+        Success(())
+    }) shouldBe Success(())
+    deleted.asScala shouldBe (1 to 25).toSet
+    counting.unlockWaits.get() shouldBe 3
+  }
+
+  it should "attempt all items, retry the failed ones that were not applied on their own and surface every individual failure" in {
+    val counting = new Counting
+
+    val result = withConcurrentExecutor(3, 10)(_.delete((1 to 25).toList, counting.awaitUnlock _, notDeleted) {
+      i =>
+        counting.attempt(i)
+        if (i % 10 == 0) Failure(new IllegalStateException(s"failed $i"))
+        else Success(())
+    })
+
+    inside(result) {
+      case Failure(e @ FileMutationsFailedException(failures)) =>
+        failures.map { case (item, t) => (item, t.getMessage) } shouldBe List((10, "failed 10"), (20, "failed 20"))
+        e.getMessage should (include("10: failed 10") and include("20: failed 20"))
+    }
+    (1 to 25).filter(_ % 10 != 0).foreach(i => counting.attempts.get(i).get() shouldBe 1)
+    counting.attempts.get(10).get() shouldBe 2
+    counting.attempts.get(20).get() shouldBe 2
+  }
+
+  it should "succeed if a deletion that failed in a concurrent batch succeeds on its own" in {
+    val counting = new Counting
+
+    withConcurrentExecutor(3, 10)(_.delete((1 to 5).toList, counting.awaitUnlock _, notDeleted) {
+      i =>
+        if (i == 3 && counting.attempt(i) == 1) Failure(new IllegalStateException("dataset locked"))
+        else Success(())
+    }) shouldBe Success(())
+  }
+
+  it should "not retry a deletion that failed in a concurrent batch but was applied" in {
+    val counting = new Counting
+
+    withConcurrentExecutor(3, 10)(_.delete((1 to 5).toList, counting.awaitUnlock _, items => Success(items.filter(_ == 3).toSet)) {
+      i =>
+        if (i == 3 && counting.attempt(i) == 1) Failure(new IllegalStateException("read timed out"))
+        else if (i == 3) Failure(new IllegalStateException("file not found"))
+        else Success(())
+    }) shouldBe Success(())
+    counting.attempts.get(3).get() shouldBe 1
+  }
+
+  it should "check once per batch which of the failed deletions were applied" in {
+    val counting = new Counting
+    val checked = new ConcurrentLinkedQueue[List[Int]]()
+
+    withConcurrentExecutor(3, 10)(_.delete((1 to 25).toList, counting.awaitUnlock _, items => {
+      checked.add(items.sorted)
+      Success(items.toSet)
+    }) {
+      i =>
+        if (i % 4 == 0) Failure(new IllegalStateException("read timed out"))
+        else Success(())
+    }) shouldBe Success(())
+    checked.asScala.toList shouldBe List(List(4, 8), List(12, 16, 20), List(24))
+  }
+
+  it should "not check the draft for a batch without failed deletions" in {
+    val counting = new Counting
+    val checks = new AtomicInteger()
+
+    withConcurrentExecutor(3, 10)(_.delete((1 to 25).toList, counting.awaitUnlock _, _ => {
+      checks.incrementAndGet()
+      Success(Set.empty)
+    })(_ => Success(()))) shouldBe Success(())
+    checks.get() shouldBe 0
+  }
+
+  it should "not retry a deletion that failed in a concurrent batch if it cannot be checked whether it was applied" in {
+    val counting = new Counting
+
+    val result = withConcurrentExecutor(3, 10)(_.delete((1 to 5).toList, counting.awaitUnlock _, _ => Failure(new IllegalStateException("cannot list files"))) {
+      i =>
+        counting.attempt(i)
+        if (i == 3) Failure(new IllegalStateException("read timed out"))
+        else Success(())
+    })
+
+    inside(result) {
+      case Failure(FileMutationsFailedException(failures)) =>
+        failures.map { case (item, t) => (item, t.getMessage) } shouldBe List((3, "read timed out"))
+    }
+    counting.attempts.get(3).get() shouldBe 1
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.easy.dd2d
+
+import com.sun.net.httpserver.HttpServer
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta
+
+import java.net.{ InetSocketAddress, URI }
+import java.nio.charset.StandardCharsets.{ ISO_8859_1, UTF_8 }
+import java.util.concurrent.atomic.AtomicReference
+
+class StreamingFileUploaderSpec extends TestSupportFixture {
+
+  private case class Request(method: String, uri: String, apiKey: String, contentType: String, body: String)
+
+  private class Dataverse(responseCode: Int, responseBody: String) {
+    val request = new AtomicReference[Request]()
+    private val server = HttpServer.create(new InetSocketAddress("localhost", 0), 0)
+    server.createContext("/api/datasets", exchange => {
+      request.set(Request(
+        exchange.getRequestMethod,
+        exchange.getRequestURI.toString,
+        exchange.getRequestHeaders.getFirst("X-Dataverse-key"),
+        exchange.getRequestHeaders.getFirst("Content-Type"),
+        new String(exchange.getRequestBody.readAllBytes(), ISO_8859_1)))
+      val body = responseBody.getBytes(UTF_8)
+      exchange.sendResponseHeaders(responseCode, body.length)
+      exchange.getResponseBody.write(body)
+      exchange.close()
+    })
+    server.start()
+
+    def uploader: StreamingFileUploader = new StreamingFileUploader(new URI(s"http://localhost:${ server.getAddress.getPort }/"), "the-key", 5000, 5000)
+
+    def stop(): Unit = server.stop(0)
+  }
+
+  private def withDataverse[T](responseCode: Int, responseBody: String)(f: Dataverse => T): T = {
+    val dataverse = new Dataverse(responseCode, responseBody)
+    try f(dataverse)
+    finally dataverse.stop()
+  }
+
+  private val okResponse = """{"status": "OK", "data": {"files": [{"label": "x.zip", "directoryLabel": "a"}]}}"""
+
+  "addFile" should "post the metadata and the streamed content as a multipart form" in withDataverse(200, okResponse) { dataverse =>
+    val result = dataverse.uploader.addFile("doi:10.5072/FK2/ABC", "x.zip", FileMeta(label = Option("x.zip"), directoryLabel = Option("a"))) {
+      _.write("the content".getBytes(UTF_8))
+    }
+
+    result.get shouldBe List(FileMeta(label = Option("x.zip"), directoryLabel = Option("a")))
+    val request = dataverse.request.get()
+    request.method shouldBe "POST"
+    request.uri shouldBe "/api/datasets/:persistentId/add?persistentId=doi%3A10.5072%2FFK2%2FABC"
+    request.apiKey shouldBe "the-key"
+    request.contentType should startWith("multipart/form-data; boundary=")
+    val boundary = request.contentType.substring("multipart/form-data; boundary=".length)
+    val parts = request.body.split(s"--$boundary").toList
+    parts.head shouldBe empty
+    parts.last shouldBe "--\r\n"
+    inside(parts.slice(1, parts.size - 1)) {
+      case List(jsonData, file) =>
+        jsonData should startWith("\r\nContent-Disposition: form-data; name=\"jsonData\"\r\nContent-Type: application/json\r\n\r\n")
+        jsonData should (include("\"label\":\"x.zip\"") and include("\"directoryLabel\":\"a\""))
+        file shouldBe "\r\nContent-Disposition: form-data; name=\"file\"; filename=\"x.zip\"; filename*=UTF-8''x.zip\r\nContent-Type: application/zip\r\n\r\nthe content\r\n"
+    }
+  }
+
+  it should "escape quotes and encode other characters in the file name" in withDataverse(200, okResponse) { dataverse =>
+    dataverse.uploader.addFile("doi:10.5072/FK2/ABC", "a \"b\"\\ é.zip", FileMeta())(_ => ()).get
+
+    dataverse.request.get().body should include("""filename="a \"b\"\\ _.zip"; filename*=UTF-8''a%20%22b%22%5C%20%C3%A9.zip""" + "\r\n")
+  }
+
+  it should "fail with the response body if Dataverse does not accept the file" in withDataverse(400, """{"status": "ERROR", "message": "not allowed"}""") { dataverse =>
+    val result = dataverse.uploader.addFile("doi:10.5072/FK2/ABC", "x.zip", FileMeta())(_.write(1))
+
+    result.failed.get.getMessage should (include("(400)") and include("not allowed"))
+  }
+
+  it should "fail if writing the content fails" in withDataverse(200, okResponse) { dataverse =>
+    val result = dataverse.uploader.addFile("doi:10.5072/FK2/ABC", "x.zip", FileMeta())(_ => throw new IllegalStateException("cannot read file"))
+
+    result.failed.get shouldBe an[IllegalStateException]
+  }
+}
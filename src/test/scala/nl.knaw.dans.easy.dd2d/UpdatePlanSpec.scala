@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.easy.dd2d
+
+import better.files.File
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta
+
+import java.nio.file.{ Path, Paths }
+import scala.util.Random
+
+class UpdatePlanSpec extends TestSupportFixture {
+
+  private def deposited(files: (String, String)*): Map[Path, FileInfo] = {
+    files.map {
+      case (path, checksum) =>
+        val p = Paths.get(path)
+        p -> FileInfo(File("unused"), checksum, FileMeta(label = Option(p.getFileName.toString), directoryLabel = Option(p.getParent).map(_.toString)))
+    }.toMap
+  }
+
+  private def published(files: (String, String, Int)*): Map[Path, PublishedFile] = {
+    files.map { case (path, checksum, id) => Paths.get(path) -> PublishedFile(id, checksum) }.toMap
+  }
+
+  private def paths(files: Iterable[FileInfo]): Set[String] = {
+    files.map(f => Paths.get(f.metadata.directoryLabel.getOrElse(""), f.metadata.label.get).toString).toSet
+  }
+
+  "create" should "move a file whose checksum is unique on both sides to its new path" in {
+    val plan = UpdatePlan.create(
+      deposited("b/x.txt" -> "c1"),
+      published(("a/x.txt", "c1", 1)))
+
+    plan.moves.mapValues(f => paths(List(f))) shouldBe Map(1 -> Set("b/x.txt"))
+    plan.replacements shouldBe empty
+    plan.deletions shouldBe empty
+    plan.additions shouldBe empty
+  }
+
+  it should "move a file that keeps its path in place" in {
+    val plan = UpdatePlan.create(
+      deposited("a/x.txt" -> "c1"),
+      published(("a/x.txt", "c1", 1)))
+
+    plan.moves.keySet shouldBe Set(1)
+    plan.deletions shouldBe empty
+    plan.additions shouldBe empty
+  }
+
+  it should "replace a file whose path has a different checksum in the deposit" in {
+    val plan = UpdatePlan.create(
+      deposited("a/x.txt" -> "c2"),
+      published(("a/x.txt", "c1", 1)))
+
+    plan.replacements.mapValues(_.checksum) shouldBe Map(1 -> "c2")
+    plan.moves shouldBe empty
+    plan.deletions shouldBe empty
+    plan.additions shouldBe empty
+  }
+
+  it should "delete the files that are not in the deposit and add the new ones" in {
+    val plan = UpdatePlan.create(
+      deposited("a/x.txt" -> "c1", "a/new.txt" -> "c3"),
+      published(("a/x.txt", "c1", 1), ("a/old.txt", "c2", 2)))
+
+    plan.deletions shouldBe Set(2)
+    paths(plan.additions) shouldBe Set("a/new.txt")
+  }
+
+  it should "delete the file at the path that another file is moved to" in {
+    val plan = UpdatePlan.create(
+      deposited("b.txt" -> "c1"),
+      published(("a.txt", "c1", 1), ("b.txt", "c2", 2)))
+
+    plan.moves.keySet shouldBe Set(1)
+    plan.deletions shouldBe Set(2)
+    plan.replacements shouldBe empty
+    plan.additions shouldBe empty
+  }
+
+  it should "add a new file at the path that a moved file vacated" in {
+    val plan = UpdatePlan.create(
+      deposited("b.txt" -> "c1", "a.txt" -> "c2"),
+      published(("a.txt", "c1", 1)))
+
+    plan.moves.keySet shouldBe Set(1)
+    plan.replacements shouldBe empty
+    plan.deletions shouldBe empty
+    paths(plan.additions) shouldBe Set("a.txt")
+  }
+
+  it should "delete and add files with a checksum that occurs more than once" in {
+    val plan = UpdatePlan.create(
+      deposited("b1.txt" -> "c1", "b2.txt" -> "c1"),
+      published(("a1.txt", "c1", 1), ("a2.txt", "c1", 2)))
+
+    plan.moves shouldBe empty
+    plan.deletions shouldBe Set(1, 2)
+    paths(plan.additions) shouldBe Set("b1.txt", "b2.txt")
+  }
+
+  it should "give the same plan as the set-based computation it replaced" in {
+    val random = new Random(42)
+    (1 to 50).foreach { _ =>
+      val numberOfFiles = random.nextInt(200)
+      def randomFiles(n: Int): Seq[(String, String)] = (0 until n).map(_ => s"d${ random.nextInt(5) }/f${ random.nextInt(numberOfFiles + 1) }.txt" -> s"c${ random.nextInt(numberOfFiles + 1) }")
+      val pathToFileInfo = deposited(randomFiles(numberOfFiles): _*)
+      val pathToPublishedFile = published(randomFiles(numberOfFiles).zipWithIndex.map { case ((p, c), i) => (p, c, i) }: _*)
+
+      val plan = UpdatePlan.create(pathToFileInfo, pathToPublishedFile)
+      val expected = setBasedPlan(pathToFileInfo, pathToPublishedFile)
+
+      plan.moves shouldBe expected.moves
+      plan.replacements shouldBe expected.replacements
+      plan.deletions shouldBe expected.deletions
+      plan.additions.toSet shouldBe expected.additions.toSet
+    }
+  }
+
+  private val depositForResume = deposited("a.txt" -> "c2", "n.txt" -> "c5", "new.txt" -> "c4")
+  private val publishedForResume = published(("a.txt", "c1", 1), ("b.txt", "c3", 2), ("m.txt", "c5", 3))
+
+  "remainingFor" should "leave the whole plan if nothing was applied to the draft yet" in {
+    val plan = UpdatePlan.create(depositForResume, publishedForResume)
+    val (remaining, applied) = plan.remainingFor(depositForResume, publishedForResume, publishedForResume).get
+
+    remaining shouldBe plan
+    applied shouldBe empty
+  }
+
+  it should "leave only the deletions and additions that were not applied yet" in {
+    val plan = UpdatePlan.create(depositForResume, publishedForResume)
+    val (remaining, applied) = plan.remainingFor(depositForResume, publishedForResume,
+      published(("a.txt", "c2", 10), ("b.txt", "c3", 2), ("m.txt", "c5", 3))).get
+
+    remaining.moves.keySet shouldBe Set(3)
+    remaining.replacements shouldBe empty
+    remaining.deletions shouldBe Set(2)
+    paths(remaining.additions) shouldBe Set("new.txt")
+    applied.mapValues(f => paths(List(f))) shouldBe Map(10 -> Set("a.txt"))
+  }
+
+  it should "leave only the moves if everything else was applied" in {
+    val plan = UpdatePlan.create(depositForResume, publishedForResume)
+    val (remaining, applied) = plan.remainingFor(depositForResume, publishedForResume,
+      published(("a.txt", "c2", 10), ("new.txt", "c4", 11), ("m.txt", "c5", 3))).get
+
+    remaining.moves.keySet shouldBe Set(3)
+    remaining.replacements shouldBe empty
+    remaining.deletions shouldBe empty
+    remaining.additions shouldBe empty
+    applied.keySet shouldBe Set(10, 11)
+  }
+
+  it should "fail if a replaced file is gone from the draft without its replacement" in {
+    val plan = UpdatePlan.create(depositForResume, publishedForResume)
+
+    plan.remainingFor(depositForResume, publishedForResume, published(("b.txt", "c3", 2), ("m.txt", "c5", 3))).failed.get shouldBe an[IllegalStateException]
+  }
+
+  /*
+   * The computation as DatasetUpdater did it before UpdatePlan, for comparison.
+   */
+  private def setBasedPlan(pathToFileInfo: Map[Path, FileInfo], pathToPublishedFile: Map[Path, PublishedFile]): UpdatePlan = {
+    def uniqueChecksums(pathToChecksum: Map[Path, String]): Map[String, Path] = pathToChecksum
+      .groupBy { case (_, c) => c }
+      .filter { case (_, m) => m.size == 1 }
+      .map { case (c, m) => (c, m.head._1) }
+
+    val depositChecksums = uniqueChecksums(pathToFileInfo.mapValues(_.checksum))
+    val publishedChecksums = uniqueChecksums(pathToPublishedFile.mapValues(_.checksum))
+    val oldToNew = (depositChecksums.keySet intersect publishedChecksums.keySet).map(c => (publishedChecksums(c), depositChecksums(c))).toMap
+    val candidates = pathToPublishedFile
+      .filterNot { case (path, _) => oldToNew.keySet.contains(path) }
+      .filterNot { case (path, _) => oldToNew.values.toSet.contains(path) }
+    val replacements = (pathToFileInfo.keySet intersect candidates.keySet)
+      .filter(p => pathToFileInfo(p).checksum != candidates(p).checksum)
+      .map(p => (candidates(p).databaseId, pathToFileInfo(p))).toMap
+    val pathsToDelete = pathToPublishedFile.keySet diff (pathToFileInfo.keySet diff oldToNew.values.toSet) diff oldToNew.keySet
+    val occupied = (pathToPublishedFile.keySet diff oldToNew.keySet diff pathsToDelete) union oldToNew.values.toSet
+    UpdatePlan(
+      moves = oldToNew.map { case (old, newPath) => (pathToPublishedFile(old).databaseId, pathToFileInfo(newPath)) },
+      replacements = replacements,
+      deletions = pathsToDelete.map(pathToPublishedFile(_).databaseId),
+      additions = (pathToFileInfo.keySet diff occupied).map(pathToFileInfo).toList)
+  }
+}
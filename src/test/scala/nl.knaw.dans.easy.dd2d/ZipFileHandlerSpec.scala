@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.easy.dd2d
+
+import better.files.File
+import nl.knaw.dans.easy.dd2d.ZipFileHandler.{ StreamWrapped, Unwrapped }
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta
+
+import java.io.ByteArrayOutputStream
+import java.net.URI
+import java.util.zip.{ ZipEntry, ZipFile }
+import scala.collection.JavaConverters._
+
+class ZipFileHandlerSpec extends TestSupportFixture {
+  private val tempDir = File.newTemporaryDirectory("zip-file-handler-spec-").deleteOnExit()
+  // Never called: preparing a streamed upload does not contact Dataverse
+  private val handler = new ZipFileHandler(tempDir, 0, Some(new StreamingFileUploader(new URI("http://localhost/"), "", 0, 0)))
+
+  private def fileInfo(file: File, checksum: String): FileInfo = FileInfo(file, checksum, FileMeta())
+
+  private def zipFileNamed(name: String): File = {
+    val content = (tempDir / "content.txt").write("some text")
+    val zip = content.zipTo(tempDir / name)
+    content.delete()
+    zip
+  }
+
+  "wrapAhead" should "recognize a ZIP file by its content, whatever its name" in {
+    val zip = zipFileNamed("archive.bin")
+    val text = (tempDir / "text.bin").write("not a zip file")
+
+    val wrappedFiles = handler.wrapAhead(List(fileInfo(zip, "sha1-zip"), fileInfo(text, "sha1-text")))
+    try {
+      wrappedFiles.toList.map(_.get) shouldBe List(StreamWrapped(zip), Unwrapped(text))
+    }
+    finally {
+      wrappedFiles.close()
+    }
+  }
+
+  it should "not examine the content of a file with a known checksum, size and extension again" in {
+    val zip = zipFileNamed("first.bin")
+    val first = handler.wrapAhead(List(fileInfo(zip, "same-sha1")))
+    first.next().get shouldBe StreamWrapped(zip)
+    first.close()
+
+    // Different content of the same size, but the same checksum according to the manifest
+    val other = (tempDir / "second.bin").write("x" * zip.size.toInt)
+    val second = handler.wrapAhead(List(fileInfo(other, "same-sha1")))
+    second.next().get shouldBe StreamWrapped(other)
+    second.close()
+
+    handler.detectionTimer.getCount shouldBe 2
+  }
+
+  private def entries(zip: File): List[(String, Int, Long, Long, Seq[Byte])] = {
+    val zipFile = new ZipFile(zip.toJava)
+    try {
+      zipFile.entries().asScala.map { e: ZipEntry =>
+        (e.getName, e.getMethod, e.getSize, e.getCrc, zipFile.getInputStream(e).readAllBytes().toSeq)
+      }.toList
+    }
+    finally {
+      zipFile.close()
+    }
+  }
+
+  "writeWrapper" should "write the same wrapper as the one created in a temporary file" in {
+    val zip = zipFileNamed("archive.zip")
+    val streamed = new ByteArrayOutputStream()
+    handler.writeWrapper(zip, streamed)
+    val streamedWrapper = (tempDir / "streamed.zip").writeByteArray(streamed.toByteArray)
+
+    val wrapperEntries = entries(streamedWrapper)
+    wrapperEntries shouldBe entries(handler.createWrapper(zip))
+    inside(wrapperEntries) {
+      case List((name, method, size, _, content)) =>
+        name shouldBe "archive.zip"
+        method shouldBe ZipEntry.DEFLATED
+        size shouldBe zip.size
+        content shouldBe zip.byteArray.toSeq
+    }
+  }
+
+  it should "not compress the wrapped file" in {
+    val zip = zipFileNamed("archive.zip")
+    val streamed = new ByteArrayOutputStream()
+    handler.writeWrapper(zip, streamed)
+    val streamedWrapper = (tempDir / "streamed.zip").writeByteArray(streamed.toByteArray)
+
+    val zipFile = new ZipFile(streamedWrapper.toJava)
+    try {
+      val entry = zipFile.entries().nextElement()
+      entry.getCompressedSize should be >= entry.getSize
+    }
+    finally {
+      zipFile.close()
+    }
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.easy.dd2d.dansbag
+
+import better.files.File
+import com.sun.net.httpserver.HttpServer
+import nl.knaw.dans.easy.dd2d.TestSupportFixture
+
+import java.net.{ InetSocketAddress, URI }
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import scala.util.Success
+
+class DansBagValidatorSpec extends TestSupportFixture {
+
+  private class InMemoryCache extends ValidationResultCache {
+    val entries = new ConcurrentHashMap[String, (Int, String)]()
+
+    override def get(bagDigest: String, profileVersion: Int): Option[String] = {
+      Option(entries.get(bagDigest)).collect { case (`profileVersion`, json) => json }
+    }
+
+    override def put(bagDigest: String, profileVersion: Int, resultJson: String): Unit = entries.put(bagDigest, (profileVersion, resultJson))
+  }
+
+  private class ValidationService {
+    val profileVersion = new AtomicInteger(1)
+    val calls = new AtomicInteger()
+    private val server = HttpServer.create(new InetSocketAddress("localhost", 0), 0)
+    server.createContext("/validate", exchange => {
+      calls.incrementAndGet()
+      val body = s"""{"bagUri": "file:///bag", "bag": "bag", "infoPackageType": "SIP", "profileVersion": ${ profileVersion.get() }, "isCompliant": true}"""
+        .getBytes(StandardCharsets.UTF_8)
+      exchange.sendResponseHeaders(200, body.length)
+      exchange.getResponseBody.write(body)
+      exchange.close()
+    })
+    server.start()
+
+    def uri: URI = new URI(s"http://localhost:${ server.getAddress.getPort }/")
+
+    def stop(): Unit = server.stop(0)
+  }
+
+  private def withService[T](f: ValidationService => T): T = {
+    val service = new ValidationService
+    try f(service)
+    finally service.stop()
+  }
+
+  private def createBag(bagInfo: String): File = {
+    val bag = File.newTemporaryDirectory("bag-").deleteOnExit()
+    (bag / "bag-info.txt").write(bagInfo)
+    (bag / "manifest-sha1.txt").write("da39a3ee5e6b4b0d3255bfef95601890afd80709  data/empty.txt\n")
+    bag
+  }
+
+  private def validator(service: ValidationService, cache: ValidationResultCache): DansBagValidator = {
+    new DansBagValidator(service.uri, 5000, 5000, Option(cache))
+  }
+
+  "validateBag" should "call the service for an unchanged bag once the profile version is known" in withService { service =>
+    val cache = new InMemoryCache
+    val bag = createBag("Created: 2022-05-17\n")
+    val dansBagValidator = validator(service, cache)
+
+    dansBagValidator.validateBag(bag).map(_.profileVersion) shouldBe Success(1)
+    dansBagValidator.validateBag(bag).map(_.profileVersion) shouldBe Success(1)
+    service.calls.get() shouldBe 1
+  }
+
+  it should "not use stored results before the service has reported its profile version" in withService { service =>
+    val cache = new InMemoryCache
+    val bag = createBag("Created: 2022-05-17\n")
+    validator(service, cache).validateBag(bag)
+    service.profileVersion.set(2) // e.g. upgraded before a restart
+
+    val restarted = validator(service, cache)
+    restarted.validateBag(bag).map(_.profileVersion) shouldBe Success(2)
+    service.calls.get() shouldBe 2
+    restarted.validateBag(bag).map(_.profileVersion) shouldBe Success(2)
+    service.calls.get() shouldBe 2
+  }
+
+  it should "not use results stored for an older profile version" in withService { service =>
+    val cache = new InMemoryCache
+    val bag1 = createBag("Created: 2022-05-17\n")
+    val bag2 = createBag("Created: 2022-05-18\n")
+    val dansBagValidator = validator(service, cache)
+    dansBagValidator.validateBag(bag1)
+    service.profileVersion.set(2)
+    dansBagValidator.validateBag(bag2)
+
+    dansBagValidator.validateBag(bag1).map(_.profileVersion) shouldBe Success(2)
+    service.calls.get() shouldBe 3
+  }
+
+  it should "call the service every time without a cache" in withService { service =>
+    val bag = createBag("Created: 2022-05-17\n")
+    val dansBagValidator = new DansBagValidator(service.uri, 5000, 5000)
+
+    dansBagValidator.validateBag(bag)
+    dansBagValidator.validateBag(bag)
+    service.calls.get() shouldBe 2
+  }
+}
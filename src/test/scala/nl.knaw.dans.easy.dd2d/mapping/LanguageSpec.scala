@@ -30,35 +30,36 @@ class LanguageSpec extends TestSupportFixture {
     loadCsvToMap(File(Paths.get("src/main/assembly/dist/cfg/iso639-2-to-dv.csv").toAbsolutePath),
       keyColumn = "ISO639-2",
       valueColumn = "Dataverse-language").get
+  private val languages = new LanguageVocabulary(iso1ToDataverseLanguage, iso2ToDataverseLanguage)
 
   "toCitationBlockLanguage" should "return English as the language name" in {
     val language = <dc:language xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance" xsi:type="ISO639-2" code="eng">Not used</dc:language>
-    toCitationBlockLanguage(iso1ToDataverseLanguage, iso2ToDataverseLanguage)(language) shouldBe Some("English")
+    toCitationBlockLanguage(languages)(language) shouldBe Some("English")
   }
 
   it should "return Dutch as the language name" in {
     val language = <dc:language xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance" xsi:type="ISO639-2" code="nld">Not used</dc:language>
-    toCitationBlockLanguage(iso1ToDataverseLanguage, iso2ToDataverseLanguage)(language) shouldBe Some("Dutch")
+    toCitationBlockLanguage(languages)(language) shouldBe Some("Dutch")
   }
 
   it should "return French as the language name" in {
     val language = <dc:language xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance" xsi:type="ISO639-2" code="fre">Not used</dc:language>
-    toCitationBlockLanguage(iso1ToDataverseLanguage, iso2ToDataverseLanguage)(language) shouldBe Some("French")
+    toCitationBlockLanguage(languages)(language) shouldBe Some("French")
   }
 
   it should "return German as the language name" in {
     val language = <dc:language xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance" xsi:type="ISO639-2" code="deu">Not used</dc:language>
-    toCitationBlockLanguage(iso1ToDataverseLanguage, iso2ToDataverseLanguage)(language) shouldBe Some("German")
+    toCitationBlockLanguage(languages)(language) shouldBe Some("German")
   }
 
   it should "return None when type attribute is not prefixed" in {
     val language = <dc:language type="ISO639-2" code="eng">Not used</dc:language>
-    toCitationBlockLanguage(iso1ToDataverseLanguage, iso2ToDataverseLanguage)(language) shouldBe None
+    toCitationBlockLanguage(languages)(language) shouldBe None
   }
 
   it should "return None when prefix in type attribute is not the correct one" in {
     val language = <dc:language xmlns:xsi="http://some.thing.else" xsi:type="ISO639-2" code="eng">Not used</dc:language>
-    toCitationBlockLanguage(iso1ToDataverseLanguage, iso2ToDataverseLanguage)(language) shouldBe None
+    toCitationBlockLanguage(languages)(language) shouldBe None
   }
 
   it should "map languages with diacritical marks correctly" in {
@@ -66,17 +67,17 @@ class LanguageSpec extends TestSupportFixture {
     val `Latin Small Letter M with Dot Above` = "\u1e41" // https://unicode-table.com/en/1E41/
     val `Latin Small Letter R with Dot Below` = "\u1e5b" // https://unicode-table.com/en/1E5B/
 
-    toCitationBlockLanguage(iso1ToDataverseLanguage, iso2ToDataverseLanguage)(language) shouldBe
+    toCitationBlockLanguage(languages)(language) shouldBe
       Some(s"Sanskrit (Sa${ `Latin Small Letter M with Dot Above` }sk${ `Latin Small Letter R with Dot Below` }ta)")
   }
 
   it should "also accept the encodingScheme attribute to indicate ISO639-2" in {
     val language = <dc:language encodingScheme="ISO639-2" code="deu">Not used</dc:language>
-    toCitationBlockLanguage(iso1ToDataverseLanguage, iso2ToDataverseLanguage)(language) shouldBe Some("German")
+    toCitationBlockLanguage(languages)(language) shouldBe Some("German")
   }
 
   it should "also understand two letter codes" in {
     val language = <dc:language xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance" xsi:type="ISO639-1" code="bg">Not used</dc:language>
-    toCitationBlockLanguage(iso1ToDataverseLanguage, iso2ToDataverseLanguage)(language) shouldBe Some("Bulgarian")
+    toCitationBlockLanguage(languages)(language) shouldBe Some("Bulgarian")
   }
 }
@@ -26,6 +26,7 @@ class LicenseSpec extends TestSupportFixture {
     keyColumn = "Variant",
     valueColumn = "Normalized").get
   private val supportedLicenses = loadTxtToList(File(Paths.get("src/main/assembly/dist/cfg/supported-licenses.txt"))).get.map(s => new URI(s))
+  private val licenses = new LicenseVocabulary(supportedLicenses, variantToLicense)
 
   "isLicense" should "return true if license element is found and has proper attribute" in {
     val lic = <dct:license xmlns:dct="http://purl.org/dc/terms/" xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance" xsi:type="dcterms:URI">http://creativecommons.org/licenses/by-sa/4.0/</dct:license>
@@ -51,26 +52,26 @@ class LicenseSpec extends TestSupportFixture {
     val s = "http://creativecommons.org/licenses/by-sa/4.0"
     val trailingSlash = "/"
     val lic = <dct:license xmlns:dct="http://purl.org/dc/terms/" xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance" xsi:type="dcterms:URI">{s}{trailingSlash}</dct:license>
-    License.getLicenseUri(supportedLicenses)(variantToLicense)(lic) shouldBe new URI(s)
+    License.getLicenseUri(licenses)(lic) shouldBe new URI(s)
   }
 
   it should "throw an IllegalArgumentException if isLicense returns false" in {
     val lic = <dct:rights xmlns:dct="http://purl.org/dc/terms/" xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance" xsi:type="dcterms:URI">http://creativecommons.org/licenses/by-sa/4.0/</dct:rights>
-    an[IllegalArgumentException] shouldBe thrownBy(License.getLicenseUri(supportedLicenses)(variantToLicense)(lic))
+    an[IllegalArgumentException] shouldBe thrownBy(License.getLicenseUri(licenses)(lic))
   }
 
   it should "Return a supported license given a configured variant" in {
     val variant = "http://www.gnu.org/licenses/old-licenses/gpl-2.0.en.html"
     val normalized = "http://www.gnu.org/licenses/old-licenses/gpl-2.0"
     val lic = <dct:license xmlns:dct="http://purl.org/dc/terms/" xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance" xsi:type="dcterms:URI">{variant}</dct:license>
-    License.getLicenseUri(supportedLicenses)(variantToLicense)(lic) shouldBe new URI(normalized)
+    License.getLicenseUri(licenses)(lic) shouldBe new URI(normalized)
   }
 
   it should "Accept supported license with either http or https scheme" in {
     val withHttps = "https://www.gnu.org/licenses/old-licenses/gpl-2.0"
     val normalizedWithoutHttps = "http://www.gnu.org/licenses/old-licenses/gpl-2.0"
     val lic = <dct:license xmlns:dct="http://purl.org/dc/terms/" xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance" xsi:type="dcterms:URI">{withHttps}</dct:license>
-    License.getLicenseUri(supportedLicenses)(variantToLicense)(lic) shouldBe new URI(normalizedWithoutHttps)
+    License.getLicenseUri(licenses)(lic) shouldBe new URI(normalizedWithoutHttps)
   }
 
   it should "Accept empty license variants file" in {
@@ -79,6 +80,6 @@ class LicenseSpec extends TestSupportFixture {
       valueColumn = "Normalized").get
     val alreadyNormalized = "http://www.gnu.org/licenses/old-licenses/gpl-2.0"
     val lic = <dct:license xmlns:dct="http://purl.org/dc/terms/" xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance" xsi:type="dcterms:URI">{alreadyNormalized}</dct:license>
-    License.getLicenseUri(supportedLicenses)(variantToLicense)(lic) shouldBe new URI(alreadyNormalized)
+    License.getLicenseUri(new LicenseVocabulary(supportedLicenses, variantToLicense))(lic) shouldBe new URI(alreadyNormalized)
   }
 }
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.easy.dd2d.mapping
+
+import nl.knaw.dans.easy.dd2d.TestSupportFixture
+
+class PrefixTrieSpec extends TestSupportFixture {
+  private val trie = PrefixTrie(Map("D1" -> "short", "D12" -> "long", "E15" -> "other"))
+
+  "longestPrefixMatch" should "return the value of the longest matching key" in {
+    trie.longestPrefixMatch("D12300") shouldBe Some("long")
+    trie.longestPrefixMatch("D13000") shouldBe Some("short")
+  }
+
+  it should "match a key that is the whole string" in {
+    trie.longestPrefixMatch("E15") shouldBe Some("other")
+  }
+
+  it should "return None if no key is a prefix" in {
+    trie.longestPrefixMatch("E1") shouldBe None
+    trie.longestPrefixMatch("") shouldBe None
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.easy.dd2d.migrationinfo
+
+import better.files.File
+import nl.knaw.dans.easy.dd2d.{ FileInfo, TestSupportFixture }
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta
+
+class PrestagedFileIndexSpec extends TestSupportFixture {
+
+  private def basicFileMeta(directoryLabel: Option[String], label: String, checksum: String, storageIdentifier: String): String = {
+    s"""{
+       |  "label": "$label",
+       |  ${ directoryLabel.map(d => s""""directoryLabel": "$d",""").getOrElse("") }
+       |  "versionSequenceNumber": 1,
+       |  "prestagedFile": {
+       |    "storageIdentifier": "$storageIdentifier",
+       |    "fileName": "$label",
+       |    "mimeType": "text/plain",
+       |    "checksum": { "@type": "SHA-1", "@value": "$checksum" },
+       |    "categories": [],
+       |    "restrict": false,
+       |    "forceReplace": false
+       |  }
+       |}""".stripMargin
+  }
+
+  private def index(basicFileMetas: String*): PrestagedFileIndex = {
+    new PrestagedFileIndex(BasicFileMeta.listFromJson(basicFileMetas.mkString("[", ",", "]")).toSet)
+  }
+
+  private def fileInfo(directoryLabel: Option[String], label: String, checksum: String): FileInfo = {
+    FileInfo(File("unused"), checksum, FileMeta(label = Option(label), directoryLabel = directoryLabel))
+  }
+
+  "find" should "return the only file with the same checksum, whatever its path" in {
+    val prestaged = index(
+      basicFileMeta(Some("a"), "one.txt", "c1", "s1"),
+      basicFileMeta(Some("a"), "two.txt", "c2", "s2"))
+
+    prestaged.find(fileInfo(Some("b"), "other.txt", "c2")).map(_.storageIdentifier) shouldBe Some("s2")
+  }
+
+  it should "return nothing if no file has the same checksum" in {
+    val prestaged = index(basicFileMeta(Some("a"), "one.txt", "c1", "s1"))
+
+    prestaged.find(fileInfo(Some("a"), "one.txt", "c3")) shouldBe empty
+  }
+
+  it should "return the file with the same path if several have the same checksum" in {
+    val prestaged = index(
+      basicFileMeta(Some("a"), "one.txt", "c1", "s1"),
+      basicFileMeta(None, "one.txt", "c1", "s2"),
+      basicFileMeta(Some("b"), "one.txt", "c1", "s3"))
+
+    prestaged.find(fileInfo(None, "one.txt", "c1")).map(_.storageIdentifier) shouldBe Some("s2")
+    prestaged.find(fileInfo(Some("b"), "one.txt", "c1")).map(_.storageIdentifier) shouldBe Some("s3")
+  }
+
+  it should "return nothing if several files have the same checksum, but none has the same path" in {
+    val prestaged = index(
+      basicFileMeta(Some("a"), "one.txt", "c1", "s1"),
+      basicFileMeta(Some("b"), "one.txt", "c1", "s2"))
+
+    prestaged.find(fileInfo(Some("c"), "one.txt", "c1")) shouldBe empty
+  }
+
+  it should "fail if several files have the same checksum and the same path" in {
+    val prestaged = index(
+      basicFileMeta(Some("a"), "one.txt", "c1", "s1"),
+      basicFileMeta(Some("a"), "one.txt", "c1", "s2"),
+      basicFileMeta(Some("b"), "one.txt", "c1", "s3"))
+
+    an[IllegalArgumentException] shouldBe thrownBy(prestaged.find(fileInfo(Some("a"), "one.txt", "c1")))
+  }
+}